@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.http.client;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * A JVM replacement for GWT's {@code URL}, whose methods are JSNI and only work in a browser. It takes the place of
+ * the GWT class in the benchmarks jar, see the shade filters in the pom, so that client code such as
+ * {@link com.gwtplatform.mvp.client.proxy.ParameterTokenFormatter} can be benchmarked unchanged.
+ * <p />
+ * The encoded strings match those of the browser's {@code encodeURIComponent} and {@code encodeURI}, but their cost
+ * does not.
+ */
+public final class URL {
+
+  private static final String CHARSET = "UTF-8";
+
+  private URL() {
+  }
+
+  public static String decode(String encodedURL) {
+    return decodeQueryString(encodedURL.replace("+", "%2B"));
+  }
+
+  @Deprecated
+  public static String decodeComponent(String encodedURLComponent) {
+    return decodeQueryString(encodedURLComponent);
+  }
+
+  @Deprecated
+  public static String decodeComponent(String encodedURLComponent, boolean fromQueryString) {
+    return fromQueryString ? decodeQueryString(encodedURLComponent) : decodePathSegment(encodedURLComponent);
+  }
+
+  public static String decodePathSegment(String encodedURLComponent) {
+    return decodeQueryString(encodedURLComponent.replace("+", "%2B"));
+  }
+
+  public static String decodeQueryString(String encodedURLComponent) {
+    try {
+      return URLDecoder.decode(encodedURLComponent, CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static String encode(String decodedURL) {
+    // encodeURI leaves the reserved characters of URLs alone.
+    return encodePathSegment(decodedURL).replace("%3B", ";").replace("%2F", "/").replace("%3F", "?")
+        .replace("%3A", ":").replace("%40", "@").replace("%26", "&").replace("%3D", "=").replace("%2B", "+")
+        .replace("%24", "$").replace("%2C", ",").replace("%23", "#");
+  }
+
+  @Deprecated
+  public static String encodeComponent(String decodedURLComponent) {
+    return encodeQueryString(decodedURLComponent);
+  }
+
+  @Deprecated
+  public static String encodeComponent(String decodedURLComponent, boolean toQueryString) {
+    return toQueryString ? encodeQueryString(decodedURLComponent) : encodePathSegment(decodedURLComponent);
+  }
+
+  public static String encodePathSegment(String decodedURLComponent) {
+    return encodeQueryString(decodedURLComponent).replace("+", "%20");
+  }
+
+  public static String encodeQueryString(String decodedURLComponent) {
+    try {
+      // URLEncoder escapes a few characters that encodeURIComponent leaves alone.
+      return URLEncoder.encode(decodedURLComponent, CHARSET).replace("%21", "!").replace("%27", "'")
+          .replace("%28", "(").replace("%29", ")").replace("%7E", "~");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingAction;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.RegistryType;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractLazyActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
+
+/**
+ * Measures {@link ActionHandlerValidatorRegistry#findActionHandlerValidator} on a warm registry, from one thread and
+ * under contention from 64 threads. The eager registry is the baseline of the
+ * {@link AbstractLazyActionHandlerValidatorRegistryImpl lazy} one, which should scale the same once warm.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionHandlerValidatorRegistryBenchmark {
+
+  @Param({"EAGER", "LAZY"})
+  public RegistryType registryType;
+
+  private ActionHandlerValidatorRegistry registry;
+  private PingAction pingAction;
+
+  @Setup
+  public void setUp() {
+    registry = BenchmarkActions.createRegistry(registryType);
+    pingAction = new PingAction(1);
+
+    // Creates the handler of the lazy registry before measuring.
+    registry.findActionHandlerValidator(pingAction);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public ActionHandlerValidatorInstance findSingleThreaded() {
+    return registry.findActionHandlerValidator(pingAction);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public ActionHandlerValidatorInstance findContended() {
+    return registry.findActionHandlerValidator(pingAction);
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingAction;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingBatchAction;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.RegistryType;
+import com.gwtplatform.dispatch.server.AbstractDispatchImpl;
+import com.gwtplatform.dispatch.server.Dispatch;
+import com.gwtplatform.dispatch.server.actionhandler.BatchActionHandler;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchAction.ExecutionStrategy;
+import com.gwtplatform.dispatch.shared.BatchResult;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * Measures the dispatch of {@link com.gwtplatform.dispatch.shared.BatchAction}s of various sizes through
+ * {@link BatchActionHandler}, with both execution strategies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchActionHandlerBenchmark {
+
+  @Param({"SEQUENTIAL", "PARALLEL"})
+  public ExecutionStrategy executionStrategy;
+
+  @Param({"1", "8", "64"})
+  public int batchSize;
+
+  private Dispatch dispatch;
+  private PingBatchAction batchAction;
+
+  @Setup
+  public void setUp() throws ActionException, ServiceException {
+    dispatch = new AbstractDispatchImpl(BenchmarkActions.createRegistry(RegistryType.EAGER)) {
+    };
+
+    PingAction[] actions = new PingAction[batchSize];
+    for (int i = 0; i < batchSize; i++) {
+      actions[i] = new PingAction(i);
+    }
+    batchAction = new PingBatchAction(executionStrategy, actions);
+
+    // Starts the threads of the shared pool before measuring.
+    dispatch.execute(batchAction);
+  }
+
+  @Benchmark
+  public BatchResult executeBatch() throws ActionException, ServiceException {
+    return dispatch.execute(batchAction);
+  }
+}
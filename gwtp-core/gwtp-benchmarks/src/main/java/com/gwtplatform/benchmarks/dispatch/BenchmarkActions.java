@@ -0,0 +1,208 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.dispatch;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.BatchActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractLazyActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorClass;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchAction;
+import com.gwtplatform.dispatch.shared.BatchResult;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * The actions, handlers and registries shared by the dispatch benchmarks. The handlers do as little work as possible
+ * so that the benchmarks measure the dispatch overhead.
+ */
+public final class BenchmarkActions {
+
+  /**
+   * The kind of {@link ActionHandlerValidatorRegistry} the dispatch is built on.
+   */
+  public enum RegistryType {
+    EAGER,
+    LAZY
+  }
+
+  /**
+   * The result of a {@link PingAction}.
+   */
+  public static class PingResult implements Result {
+    private final int value;
+
+    public PingResult(int value) {
+      this.value = value;
+    }
+
+    public int getValue() {
+      return value;
+    }
+  }
+
+  /**
+   * An action that does nothing but return its value.
+   */
+  public static class PingAction extends UnsecuredActionImpl<PingResult> {
+    private final int value;
+
+    public PingAction(int value) {
+      this.value = value;
+    }
+
+    public int getValue() {
+      return value;
+    }
+  }
+
+  /**
+   * An action whose handler runs a number of {@link PingAction}s through its {@link ExecutionContext}.
+   */
+  public static class CompoundAction extends UnsecuredActionImpl<PingResult> {
+    private final int subActions;
+
+    public CompoundAction(int subActions) {
+      this.subActions = subActions;
+    }
+
+    public int getSubActions() {
+      return subActions;
+    }
+  }
+
+  /**
+   * A {@link BatchAction} that is not secured, as the benchmarks don't go through a servlet.
+   */
+  public static class PingBatchAction extends BatchAction {
+    public PingBatchAction(ExecutionStrategy executionStrategy, Action<?>... actions) {
+      super(OnException.ROLLBACK, executionStrategy, actions);
+    }
+
+    @Override
+    public String getServiceName() {
+      return DEFAULT_SERVICE_NAME;
+    }
+
+    @Override
+    public boolean isSecured() {
+      return false;
+    }
+  }
+
+  /**
+   * Handles {@link PingAction}.
+   */
+  public static class PingHandler extends AbstractActionHandler<PingAction, PingResult> {
+    public PingHandler() {
+      super(PingAction.class);
+    }
+
+    @Override
+    public PingResult execute(PingAction action, ExecutionContext context) throws ActionException {
+      return new PingResult(action.getValue());
+    }
+
+    @Override
+    public void undo(PingAction action, PingResult result, ExecutionContext context) throws ActionException {
+    }
+  }
+
+  /**
+   * Handles {@link CompoundAction}.
+   */
+  public static class CompoundHandler extends AbstractActionHandler<CompoundAction, PingResult> {
+    public CompoundHandler() {
+      super(CompoundAction.class);
+    }
+
+    @Override
+    public PingResult execute(CompoundAction action, ExecutionContext context) throws ActionException {
+      int sum = 0;
+      try {
+        for (int i = 0; i < action.getSubActions(); i++) {
+          sum += context.execute(new PingAction(i)).getValue();
+        }
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      return new PingResult(sum);
+    }
+
+    @Override
+    public void undo(CompoundAction action, PingResult result, ExecutionContext context) throws ActionException {
+    }
+  }
+
+  private BenchmarkActions() {
+  }
+
+  /**
+   * Creates a registry of the given type, with handlers for all the benchmark actions.
+   *
+   * @param type The {@link RegistryType}.
+   * @return The new registry.
+   */
+  public static ActionHandlerValidatorRegistry createRegistry(RegistryType type) {
+    if (type == RegistryType.EAGER) {
+      AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+      };
+      registry.addActionHandlerValidator(PingAction.class,
+          new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new PingHandler()));
+      registry.addActionHandlerValidator(CompoundAction.class,
+          new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new CompoundHandler()));
+      registry.addActionHandlerValidator(PingBatchAction.class,
+          new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new BatchActionHandler()));
+      return registry;
+    }
+
+    AbstractLazyActionHandlerValidatorRegistryImpl registry = new AbstractLazyActionHandlerValidatorRegistryImpl() {
+      @Override
+      protected <B> B getInstance(Class<B> clazz) {
+        try {
+          return clazz.newInstance();
+        } catch (InstantiationException e) {
+          throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    registry.addActionHandlerValidatorClass(PingAction.class,
+        new ActionHandlerValidatorClass<PingAction, PingResult>(PingHandler.class, AbstractDefaultActionValidator.class));
+    registry.addActionHandlerValidatorClass(CompoundAction.class,
+        new ActionHandlerValidatorClass<CompoundAction, PingResult>(CompoundHandler.class,
+            AbstractDefaultActionValidator.class));
+    registry.addActionHandlerValidatorClass(batchActionClass(),
+        new ActionHandlerValidatorClass<BatchAction, BatchResult>(BatchActionHandler.class,
+            AbstractDefaultActionValidator.class));
+    return registry;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<BatchAction> batchActionClass() {
+    // BatchActionHandler handles every BatchAction, but the registry is keyed by the concrete class.
+    return (Class<BatchAction>) (Class<?>) PingBatchAction.class;
+  }
+}
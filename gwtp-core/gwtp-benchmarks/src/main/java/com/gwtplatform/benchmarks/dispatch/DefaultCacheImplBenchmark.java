@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingAction;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingResult;
+import com.gwtplatform.dispatch.client.actionhandler.caching.DefaultCacheImpl;
+
+/**
+ * Measures {@link DefaultCacheImpl#get} and {@link DefaultCacheImpl#put} with and without auto expiration. Like the
+ * browser it is written for, the cache is single threaded so every benchmark thread has its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DefaultCacheImplBenchmark {
+
+  private static final int KEYS = 1024;
+  private static final int KEY_MASK = KEYS - 1;
+
+  @Param({"-1", "60000"})
+  public long autoExpireTimeInMs;
+
+  private DefaultCacheImpl cache;
+  private PingAction[] cachedKeys;
+  private PingAction[] missingKeys;
+  private PingResult value;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    cache = new DefaultCacheImpl(autoExpireTimeInMs);
+    cachedKeys = new PingAction[KEYS];
+    missingKeys = new PingAction[KEYS];
+    value = new PingResult(0);
+
+    for (int i = 0; i < KEYS; i++) {
+      cachedKeys[i] = new PingAction(i);
+      missingKeys[i] = new PingAction(i);
+      cache.put(cachedKeys[i], value);
+    }
+  }
+
+  @Benchmark
+  public Object getHit() {
+    return cache.get(cachedKeys[next()]);
+  }
+
+  @Benchmark
+  public Object getMiss() {
+    return cache.get(missingKeys[next()]);
+  }
+
+  @Benchmark
+  public void put() {
+    cache.put(cachedKeys[next()], value);
+  }
+
+  private int next() {
+    index = (index + 1) & KEY_MASK;
+    return index;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.CompoundAction;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingAction;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.PingResult;
+import com.gwtplatform.benchmarks.dispatch.BenchmarkActions.RegistryType;
+import com.gwtplatform.dispatch.server.AbstractDispatchImpl;
+import com.gwtplatform.dispatch.server.Dispatch;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * Measures {@link AbstractDispatchImpl#execute} on a warm dispatch, with an eager and a lazy registry, from one thread
+ * and from as many threads as there are processors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+  private static final int SUB_ACTIONS = 4;
+
+  @Param({"EAGER", "LAZY"})
+  public RegistryType registryType;
+
+  private Dispatch dispatch;
+  private PingAction pingAction;
+  private CompoundAction compoundAction;
+
+  @Setup
+  public void setUp() throws ActionException, ServiceException {
+    dispatch = new AbstractDispatchImpl(BenchmarkActions.createRegistry(registryType)) {
+    };
+    pingAction = new PingAction(1);
+    compoundAction = new CompoundAction(SUB_ACTIONS);
+
+    // Creates the handlers of the lazy registry and the pipelines before measuring.
+    dispatch.execute(pingAction);
+    dispatch.execute(compoundAction);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public PingResult executeSingleThreaded() throws ActionException, ServiceException {
+    return dispatch.execute(pingAction);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public PingResult executeMultiThreaded() throws ActionException, ServiceException {
+    return dispatch.execute(pingAction);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public PingResult executeCompoundSingleThreaded() throws ActionException, ServiceException {
+    return dispatch.execute(compoundAction);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public PingResult executeCompoundMultiThreaded() throws ActionException, ServiceException {
+    return dispatch.execute(compoundAction);
+  }
+}
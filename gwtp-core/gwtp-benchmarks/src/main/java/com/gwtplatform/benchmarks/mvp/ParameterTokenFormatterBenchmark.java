@@ -0,0 +1,86 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.mvp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gwtplatform.mvp.client.proxy.ParameterTokenFormatter;
+import com.gwtplatform.mvp.client.proxy.PlaceRequest;
+
+/**
+ * Measures {@link ParameterTokenFormatter#toHistoryToken} and {@link ParameterTokenFormatter#toPlaceRequestHierarchy}
+ * on hierarchies of various depths, with parameters that need escaping.
+ * <p />
+ * GWT's {@link com.google.gwt.http.client.URL} only works in a browser, so the benchmarks jar replaces it with one
+ * based on {@link java.net.URLEncoder}. It produces the same query strings, but its cost is not the cost of the
+ * browser's {@code encodeURIComponent}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParameterTokenFormatterBenchmark {
+
+  private static final int PARAMETERS_PER_PLACE = 3;
+
+  @Param({"1", "3", "6"})
+  public int depth;
+
+  private ParameterTokenFormatter formatter;
+  private List<PlaceRequest> placeRequestHierarchy;
+  private String historyToken;
+
+  @Setup
+  public void setUp() {
+    formatter = new ParameterTokenFormatter();
+    placeRequestHierarchy = new ArrayList<PlaceRequest>(depth);
+    for (int i = 0; i < depth; i++) {
+      PlaceRequest placeRequest = new PlaceRequest("place" + i);
+      for (int j = 0; j < PARAMETERS_PER_PLACE; j++) {
+        placeRequest = placeRequest.with("param" + j, "value/" + j + "=x;y z");
+      }
+      placeRequestHierarchy.add(placeRequest);
+    }
+    historyToken = formatter.toHistoryToken(placeRequestHierarchy);
+  }
+
+  @Benchmark
+  public String toHistoryToken() {
+    return formatter.toHistoryToken(placeRequestHierarchy);
+  }
+
+  @Benchmark
+  public List<PlaceRequest> toPlaceRequestHierarchy() {
+    return formatter.toPlaceRequestHierarchy(historyToken);
+  }
+}
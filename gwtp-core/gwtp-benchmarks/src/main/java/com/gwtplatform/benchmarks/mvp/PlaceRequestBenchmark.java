@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.benchmarks.mvp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gwtplatform.mvp.client.proxy.PlaceRequest;
+
+/**
+ * Measures chains of {@link PlaceRequest#with} calls, the usual way of building a {@link PlaceRequest} with
+ * parameters. Every call copies the parameters of the previous request, so the cost grows with the chain length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaceRequestBenchmark {
+
+  @Param({"1", "4", "16"})
+  public int parameters;
+
+  private String[] names;
+  private String[] values;
+  private PlaceRequest placeRequest;
+
+  @Setup
+  public void setUp() {
+    names = new String[parameters];
+    values = new String[parameters];
+    for (int i = 0; i < parameters; i++) {
+      names[i] = "param" + i;
+      values[i] = "value" + i;
+    }
+    placeRequest = withChain();
+  }
+
+  @Benchmark
+  public PlaceRequest withChain() {
+    PlaceRequest request = new PlaceRequest("nameToken");
+    for (int i = 0; i < parameters; i++) {
+      request = request.with(names[i], values[i]);
+    }
+    return request;
+  }
+
+  @Benchmark
+  public String getParameter() {
+    return placeRequest.getParameter(names[parameters - 1], null);
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.DispatchAsync;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SideEffectFree;
+
+/**
+ * A {@link DispatchAsync} that shares one round trip between equal actions: while an action is in flight, executing an
+ * equal action doesn't send anything and the caller receives the same {@link Result}, or the same failure, when it
+ * comes back.
+ * <p />
+ * Each caller gets its own {@link DispatchRequest}. Cancelling it only stops that caller from being called back, and
+ * the request sent to the server is cancelled once every caller waiting on it has cancelled.
+ * <p />
+ * By default only actions implementing {@link SideEffectFree} are deduplicated; override
+ * {@link #shouldDeduplicate(Action)} to change that. Undo requests are never deduplicated.
+ */
+public class DeduplicatingDispatchAsync implements DispatchAsync {
+
+  /**
+   * A caller waiting on an in-flight action.
+   */
+  private static final class Waiter<R> implements DispatchRequest {
+    private final InFlight inFlight;
+    private final AsyncCallback<R> callback;
+    private boolean pending = true;
+
+    Waiter(InFlight inFlight, AsyncCallback<R> callback) {
+      this.inFlight = inFlight;
+      this.callback = callback;
+    }
+
+    @Override
+    public void cancel() {
+      if (pending) {
+        pending = false;
+        inFlight.onWaiterCancelled();
+      }
+    }
+
+    @Override
+    public boolean isPending() {
+      return pending;
+    }
+
+    @SuppressWarnings("unchecked")
+    void onSuccess(Object result) {
+      if (pending) {
+        pending = false;
+        callback.onSuccess((R) result);
+      }
+    }
+
+    void onFailure(Throwable caught) {
+      if (pending) {
+        pending = false;
+        callback.onFailure(caught);
+      }
+    }
+  }
+
+  /**
+   * An action sent to the server, and the callers waiting on it.
+   */
+  private final class InFlight implements AsyncCallback<Object> {
+    private final Action<?> action;
+    private final List<Waiter<?>> waiters = new ArrayList<Waiter<?>>();
+    private DispatchRequest request;
+    private boolean done;
+
+    InFlight(Action<?> action) {
+      this.action = action;
+    }
+
+    <R> Waiter<R> addWaiter(AsyncCallback<R> callback) {
+      Waiter<R> waiter = new Waiter<R>(this, callback);
+      waiters.add(waiter);
+      return waiter;
+    }
+
+    void setRequest(DispatchRequest request) {
+      if (!done) {
+        this.request = request;
+      }
+    }
+
+    @Override
+    public void onSuccess(Object result) {
+      if (finish()) {
+        for (Waiter<?> waiter : waiters) {
+          waiter.onSuccess(result);
+        }
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      if (finish()) {
+        for (Waiter<?> waiter : waiters) {
+          waiter.onFailure(caught);
+        }
+      }
+    }
+
+    void onWaiterCancelled() {
+      for (Waiter<?> waiter : waiters) {
+        if (waiter.isPending()) {
+          return;
+        }
+      }
+
+      DispatchRequest toCancel = request;
+      if (finish() && toCancel != null) {
+        toCancel.cancel();
+      }
+    }
+
+    private boolean finish() {
+      if (done) {
+        return false;
+      }
+      done = true;
+      request = null;
+      if (inFlightActions.get(action) == this) {
+        inFlightActions.remove(action);
+      }
+      return true;
+    }
+  }
+
+  private final DispatchAsync delegate;
+  private final Map<Action<?>, InFlight> inFlightActions = new HashMap<Action<?>, InFlight>();
+
+  /**
+   * @param delegate The {@link DispatchAsync} that sends the actions.
+   */
+  public DeduplicatingDispatchAsync(DispatchAsync delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> DispatchRequest execute(A action, AsyncCallback<R> callback) {
+    if (!shouldDeduplicate(action)) {
+      return delegate.execute(action, callback);
+    }
+
+    InFlight inFlight = inFlightActions.get(action);
+    if (inFlight != null) {
+      return inFlight.addWaiter(callback);
+    }
+
+    inFlight = new InFlight(action);
+    inFlightActions.put(action, inFlight);
+    Waiter<R> waiter = inFlight.addWaiter(callback);
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    AsyncCallback<R> sharedCallback = (AsyncCallback) inFlight;
+    try {
+      inFlight.setRequest(delegate.execute(action, sharedCallback));
+    } catch (RuntimeException e) {
+      inFlightActions.remove(action);
+      throw e;
+    }
+
+    return waiter;
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> DispatchRequest undo(A action, R result,
+      AsyncCallback<Void> callback) {
+    return delegate.undo(action, result, callback);
+  }
+
+  /**
+   * Decides whether equal in-flight executions of an action may share a single request.
+   *
+   * @param action The action about to be executed.
+   * @return {@code true} if the action implements {@link SideEffectFree}.
+   */
+  protected boolean shouldDeduplicate(Action<?> action) {
+    return action instanceof SideEffectFree;
+  }
+}
@@ -17,6 +17,7 @@
 package com.gwtplatform.dispatch.client;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.ServiceDefTarget;
 
@@ -26,11 +27,17 @@ import com.gwtplatform.dispatch.client.actionhandler.ClientActionHandlerMismatch
 import com.gwtplatform.dispatch.client.actionhandler.ClientActionHandlerRegistry;
 import com.gwtplatform.dispatch.client.actionhandler.ExecuteCommand;
 import com.gwtplatform.dispatch.client.actionhandler.UndoCommand;
+import com.gwtplatform.dispatch.client.actionhandler.caching.CacheTagRegistry;
 import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.BatchDispatchService;
+import com.gwtplatform.dispatch.shared.BatchDispatchServiceAsync;
 import com.gwtplatform.dispatch.shared.DispatchAsync;
+import com.gwtplatform.dispatch.shared.DispatchPriority;
 import com.gwtplatform.dispatch.shared.DispatchRequest;
 import com.gwtplatform.dispatch.shared.DispatchService;
 import com.gwtplatform.dispatch.shared.DispatchServiceAsync;
+import com.gwtplatform.dispatch.shared.HasDispatchPriority;
+import com.gwtplatform.dispatch.shared.InvalidatesCacheTags;
 import com.gwtplatform.dispatch.shared.Result;
 import com.gwtplatform.dispatch.shared.SecurityCookieAccessor;
 
@@ -49,26 +56,85 @@ public class DefaultDispatchAsync implements DispatchAsync {
   private final ExceptionHandler exceptionHandler;
   private final SecurityCookieAccessor securityCookieAccessor;
   private final ClientActionHandlerRegistry registry;
-
+  private final CacheTagRegistry cacheTagRegistry;
+
+  private final DispatchBatcher batcher;
+  private final DispatchQueue queue;
+
+  /**
+   * Creates a dispatch that sends every action in its own request, as soon as
+   * it is executed.
+   *
+   * @param exceptionHandler The {@link ExceptionHandler}, may be {@code null}.
+   * @param securityCookieAccessor The {@link SecurityCookieAccessor}.
+   * @param registry The {@link ClientActionHandlerRegistry}.
+   */
   public DefaultDispatchAsync(ExceptionHandler exceptionHandler,
       SecurityCookieAccessor securityCookieAccessor,
       ClientActionHandlerRegistry registry) {
+    this(exceptionHandler, securityCookieAccessor, registry, false, 0, null);
+  }
+
+  /**
+   * Creates the dispatch, usually through
+   * {@link com.gwtplatform.dispatch.client.gin.DispatchAsyncModule.Builder}.
+   *
+   * @param exceptionHandler The {@link ExceptionHandler}, may be {@code null}.
+   * @param securityCookieAccessor The {@link SecurityCookieAccessor}.
+   * @param registry The {@link ClientActionHandlerRegistry}.
+   * @param batchRequests If {@code true}, the actions executed during the same
+   *          browser tick are sent together in a single request per service,
+   *          see {@link BatchDispatchService#executeBatch}. Undo requests are never
+   *          batched.
+   * @param maxRequestsPerService The maximum number of requests in flight to
+   *          each service, or {@code 0} for no limit. Requests over the limit
+   *          are queued and sent by {@link DispatchPriority} as soon as a
+   *          request to the same service completes. When batching, each action
+   *          of a batch counts as one request.
+   * @param cacheTagRegistry The registry whose caches are evicted of the tags
+   *          of every {@link InvalidatesCacheTags} action successfully
+   *          executed or undone, before its callback is called. May be
+   *          {@code null}.
+   */
+  public DefaultDispatchAsync(ExceptionHandler exceptionHandler,
+      SecurityCookieAccessor securityCookieAccessor,
+      ClientActionHandlerRegistry registry,
+      boolean batchRequests,
+      int maxRequestsPerService,
+      CacheTagRegistry cacheTagRegistry) {
     this.exceptionHandler = exceptionHandler;
     this.securityCookieAccessor = securityCookieAccessor;
     this.registry = registry;
+    this.cacheTagRegistry = cacheTagRegistry;
     String entryPointUrl = ((ServiceDefTarget) realService).getServiceEntryPoint();
     if (entryPointUrl == null) {
       this.baseUrl = "";
     } else {
       this.baseUrl = entryPointUrl;
     }
+
+    if (batchRequests) {
+      final BatchDispatchServiceAsync batchService = GWT.create(BatchDispatchService.class);
+      batcher = new DispatchBatcher(batchService, Scheduler.get()) {
+        @Override
+        protected void prepareService(String serviceName) {
+          DefaultDispatchAsync.this.prepareService((ServiceDefTarget) batchService, baseUrl, serviceName);
+        }
+      };
+    } else {
+      batcher = null;
+    }
+
+    if (maxRequestsPerService > 0) {
+      queue = new DispatchQueue(maxRequestsPerService);
+    } else {
+      queue = null;
+    }
   }
 
   @SuppressWarnings("unchecked")
   public <A extends Action<R>, R extends Result> DispatchRequest execute(
       final A action, final AsyncCallback<R> callback) {
-    prepareService((ServiceDefTarget) realService, baseUrl, action.getServiceName());
-
     final String securityCookie = securityCookieAccessor.getCookieContent();
 
     final IndirectProvider<ClientActionHandler<?, ?>> clientActionHandlerProvider = registry.find(action.getClass());
@@ -120,31 +186,63 @@ public class DefaultDispatchAsync implements DispatchAsync {
   }
 
   private <A extends Action<R>, R extends Result> DispatchRequest serviceExecute(
-      String securityCookie, final A action, final AsyncCallback<R> callback) {
-    return new GwtHttpDispatchRequest(realService.execute(securityCookie,
-        action, new AsyncCallback<Result>() {
-          public void onFailure(Throwable caught) {
-            DefaultDispatchAsync.this.onExecuteFailure(action, caught, callback);
-          }
+      final String securityCookie, final A action, final AsyncCallback<R> callback) {
+    AsyncCallback<Result> resultCallback = new AsyncCallback<Result>() {
+      public void onFailure(Throwable caught) {
+        DefaultDispatchAsync.this.onExecuteFailure(action, caught, callback);
+      }
+
+      @SuppressWarnings("unchecked")
+      public void onSuccess(Result result) {
+        if (cacheTagRegistry != null && action instanceof InvalidatesCacheTags) {
+          cacheTagRegistry.invalidate(((InvalidatesCacheTags) action).getInvalidatedCacheTags());
+        }
 
-          @SuppressWarnings("unchecked")
-          public void onSuccess(Result result) {
+        // Note: This cast is a dodgy hack to get around a GWT
+        // 1.6 async
+        // compiler issue
+        DefaultDispatchAsync.this.onExecuteSuccess(action, (R) result,
+            callback);
+      }
+    };
+
+    if (queue == null) {
+      return sendExecute(securityCookie, action, resultCallback);
+    }
 
-            // Note: This cast is a dodgy hack to get around a GWT
-            // 1.6 async
-            // compiler issue
-            DefaultDispatchAsync.this.onExecuteSuccess(action, (R) result,
-                callback);
+    return queue.submit(action.getServiceName(), priorityOf(action), resultCallback,
+        new DispatchQueue.Sender<Result>() {
+          @Override
+          public DispatchRequest send(AsyncCallback<Result> queuedCallback) {
+            return sendExecute(securityCookie, action, queuedCallback);
           }
-        }));
+        });
+  }
+
+  /**
+   * Sends an action to the server, once the client action handlers and the
+   * request queue have let it through. Override to use another transport.
+   *
+   * @param securityCookie The content of the security cookie.
+   * @param action The {@link Action}.
+   * @param callback The callback that receives the {@link Result}.
+   * @return A {@link DispatchRequest} that cancels the request.
+   */
+  protected DispatchRequest sendExecute(String securityCookie, Action<?> action,
+      AsyncCallback<Result> callback) {
+    if (batcher != null) {
+      return batcher.execute(action.getServiceName(), securityCookie, action, callback);
+    }
+
+    prepareService((ServiceDefTarget) realService, baseUrl, action.getServiceName());
+    return new GwtHttpDispatchRequest(realService.execute(securityCookie,
+        action, callback));
   }
 
   @SuppressWarnings("unchecked")
   @Override
   public <A extends Action<R>, R extends Result> DispatchRequest undo(
       final A action, final R result, final AsyncCallback<Void> callback) {
-    prepareService((ServiceDefTarget) realService, baseUrl, action.getServiceName());
-
     final String securityCookie = securityCookieAccessor.getCookieContent();
 
     final IndirectProvider<ClientActionHandler<?, ?>> clientActionHandlerProvider = registry.find(action.getClass());
@@ -196,20 +294,61 @@ public class DefaultDispatchAsync implements DispatchAsync {
   }
 
   private <A extends Action<R>, R extends Result> DispatchRequest serviceUndo(
-      String securityCookie, final A action, final R result,
+      final String securityCookie, final A action, final R result,
       final AsyncCallback<Void> callback) {
+    AsyncCallback<Void> voidCallback = new AsyncCallback<Void>() {
+      public void onFailure(Throwable caught) {
+        DefaultDispatchAsync.this.onUndoFailure(action, caught, callback);
+      }
+
+      public void onSuccess(Void voidResult) {
+        // Undoing a write changes the same data as executing it.
+        if (cacheTagRegistry != null && action instanceof InvalidatesCacheTags) {
+          cacheTagRegistry.invalidate(((InvalidatesCacheTags) action).getInvalidatedCacheTags());
+        }
 
-    return new GwtHttpDispatchRequest(realService.undo(securityCookie, action,
-        result, new AsyncCallback<Void>() {
-          public void onFailure(Throwable caught) {
-            DefaultDispatchAsync.this.onUndoFailure(action, caught, callback);
-          }
+        DefaultDispatchAsync.this.onUndoSuccess(action, voidResult,
+            callback);
+      }
+    };
+
+    if (queue == null) {
+      return sendUndo(securityCookie, action, result, voidCallback);
+    }
 
-          public void onSuccess(Void voidResult) {
-            DefaultDispatchAsync.this.onUndoSuccess(action, voidResult,
-                callback);
+    return queue.submit(action.getServiceName(), priorityOf(action), voidCallback,
+        new DispatchQueue.Sender<Void>() {
+          @Override
+          public DispatchRequest send(AsyncCallback<Void> queuedCallback) {
+            return sendUndo(securityCookie, action, result, queuedCallback);
           }
-        }));
+        });
+  }
+
+  /**
+   * Sends an undo request to the server. Override to use another transport.
+   *
+   * @param securityCookie The content of the security cookie.
+   * @param action The {@link Action} to undo.
+   * @param result The {@link Result} of the action.
+   * @param callback The callback called once the action is undone.
+   * @return A {@link DispatchRequest} that cancels the request.
+   */
+  protected DispatchRequest sendUndo(String securityCookie, Action<?> action, Result result,
+      AsyncCallback<Void> callback) {
+    prepareService((ServiceDefTarget) realService, baseUrl, action.getServiceName());
+    return new GwtHttpDispatchRequest(realService.undo(securityCookie, action,
+        result, callback));
+  }
+
+  private DispatchPriority priorityOf(Action<?> action) {
+    if (action instanceof HasDispatchPriority) {
+      DispatchPriority priority = ((HasDispatchPriority) action).getDispatchPriority();
+      if (priority != null) {
+        return priority;
+      }
+    }
+    return DispatchPriority.INTERACTIVE;
   }
 
   protected <A extends Action<R>, R extends Result> void onExecuteFailure(
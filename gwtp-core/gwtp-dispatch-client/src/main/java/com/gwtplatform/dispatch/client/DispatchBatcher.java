@@ -0,0 +1,234 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.BatchDispatchServiceAsync;
+import com.gwtplatform.dispatch.shared.DispatchBatchResult;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Collects the actions executed during one browser tick and sends them with a single
+ * {@link BatchDispatchServiceAsync#executeBatch} request per service, once the current event has been handled. The
+ * {@link Result} or failure of every action is then handed to its own callback.
+ * <p />
+ * Each action gets its own {@link DispatchRequest}. Cancelling it before the batch is sent removes the action from the
+ * batch, cancelling it afterwards only drops its result. The underlying request is cancelled once every action it
+ * carries has been cancelled.
+ */
+abstract class DispatchBatcher {
+
+  /**
+   * An action waiting for its batch to be sent or answered.
+   */
+  private final class Entry implements DispatchRequest {
+    private final Action<?> action;
+    private final AsyncCallback<Result> callback;
+    private Batch batch;
+    private boolean pending = true;
+
+    Entry(Action<?> action, AsyncCallback<Result> callback) {
+      this.action = action;
+      this.callback = callback;
+    }
+
+    @Override
+    public void cancel() {
+      if (pending) {
+        pending = false;
+        batch.onEntryCancelled();
+      }
+    }
+
+    @Override
+    public boolean isPending() {
+      return pending;
+    }
+
+    void onSuccess(Result result) {
+      if (pending) {
+        pending = false;
+        callback.onSuccess(result);
+      }
+    }
+
+    void onFailure(Throwable caught) {
+      if (pending) {
+        pending = false;
+        callback.onFailure(caught);
+      }
+    }
+  }
+
+  /**
+   * The actions of one tick that go to the same service with the same security cookie.
+   */
+  private final class Batch {
+    private final String serviceName;
+    private final String securityCookie;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private Request request;
+
+    Batch(String serviceName, String securityCookie) {
+      this.serviceName = serviceName;
+      this.securityCookie = securityCookie;
+    }
+
+    void add(Entry entry) {
+      entry.batch = this;
+      entries.add(entry);
+    }
+
+    void send() {
+      final List<Entry> toSend = new ArrayList<Entry>(entries.size());
+      for (Entry entry : entries) {
+        if (entry.pending) {
+          toSend.add(entry);
+        }
+      }
+
+      if (toSend.isEmpty()) {
+        return;
+      }
+
+      prepareService(serviceName);
+      if (toSend.size() == 1) {
+        final Entry entry = toSend.get(0);
+        request = service.execute(securityCookie, entry.action, new AsyncCallback<Result>() {
+          @Override
+          public void onSuccess(Result result) {
+            entry.onSuccess(result);
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            entry.onFailure(caught);
+          }
+        });
+        return;
+      }
+
+      Action<?>[] actions = new Action<?>[toSend.size()];
+      for (int i = 0; i < actions.length; i++) {
+        actions[i] = toSend.get(i).action;
+      }
+
+      request = service.executeBatch(securityCookie, actions, new AsyncCallback<DispatchBatchResult>() {
+        @Override
+        public void onSuccess(DispatchBatchResult batchResult) {
+          for (int i = 0; i < toSend.size(); i++) {
+            Throwable caught = batchResult.getFailure(i);
+            if (caught == null) {
+              toSend.get(i).onSuccess(batchResult.getResult(i));
+            } else {
+              toSend.get(i).onFailure(caught);
+            }
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable caught) {
+          for (Entry entry : toSend) {
+            entry.onFailure(caught);
+          }
+        }
+      });
+    }
+
+    void onEntryCancelled() {
+      if (request == null) {
+        return;
+      }
+
+      for (Entry entry : entries) {
+        if (entry.pending) {
+          return;
+        }
+      }
+      request.cancel();
+    }
+  }
+
+  private final BatchDispatchServiceAsync service;
+  private final Scheduler scheduler;
+  private final Map<String, Batch> batches = new LinkedHashMap<String, Batch>();
+
+  private final ScheduledCommand flushCommand = new ScheduledCommand() {
+    @Override
+    public void execute() {
+      flush();
+    }
+  };
+
+  DispatchBatcher(BatchDispatchServiceAsync service, Scheduler scheduler) {
+    this.service = service;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Queues an action for the batch sent at the end of the current tick.
+   *
+   * @param serviceName The service the action is sent to, see {@link Action#getServiceName()}.
+   * @param securityCookie The content of the security cookie.
+   * @param action The action to execute.
+   * @param callback The callback receiving the {@link Result} of this action only.
+   * @return The {@link DispatchRequest} of this action.
+   */
+  DispatchRequest execute(String serviceName, String securityCookie, Action<?> action,
+      AsyncCallback<Result> callback) {
+    if (batches.isEmpty()) {
+      scheduler.scheduleDeferred(flushCommand);
+    }
+
+    String key = serviceName + '\n' + securityCookie;
+    Batch batch = batches.get(key);
+    if (batch == null) {
+      batch = new Batch(serviceName, securityCookie);
+      batches.put(key, batch);
+    }
+
+    Entry entry = new Entry(action, callback);
+    batch.add(entry);
+    return entry;
+  }
+
+  /**
+   * Points the service to the given service name before a batch is sent.
+   *
+   * @param serviceName The service name of the actions in the batch.
+   */
+  protected abstract void prepareService(String serviceName);
+
+  private void flush() {
+    List<Batch> toSend = new ArrayList<Batch>(batches.values());
+    batches.clear();
+
+    for (Batch batch : toSend) {
+      batch.send();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.DispatchPriority;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+
+/**
+ * Limits the number of requests in flight to each service, so that background actions can't hold all the connections
+ * the browser allows per host. Requests over the limit wait in a queue and are sent by {@link DispatchPriority}, then
+ * in the order they were submitted. A request cancelled while it's queued is removed and never sent.
+ */
+class DispatchQueue {
+
+  /**
+   * Sends a request once the queue lets it through.
+   *
+   * @param <T> The type of the callback.
+   */
+  interface Sender<T> {
+    DispatchRequest send(AsyncCallback<T> callback);
+  }
+
+  /**
+   * The queued, in flight or completed requests of one service.
+   */
+  private final class ServiceQueue {
+    private final LinkedList<QueuedRequest<?>>[] waiting;
+    private int inFlight;
+
+    @SuppressWarnings("unchecked")
+    ServiceQueue() {
+      waiting = new LinkedList[DispatchPriority.values().length];
+      for (int i = 0; i < waiting.length; i++) {
+        waiting[i] = new LinkedList<QueuedRequest<?>>();
+      }
+    }
+
+    void submit(QueuedRequest<?> request) {
+      if (inFlight < maxInFlight) {
+        inFlight++;
+        request.send();
+      } else {
+        waiting[request.priority.ordinal()].add(request);
+      }
+    }
+
+    void remove(QueuedRequest<?> request) {
+      waiting[request.priority.ordinal()].remove(request);
+    }
+
+    void release() {
+      inFlight--;
+    }
+
+    void sendWaiting() {
+      while (inFlight < maxInFlight) {
+        QueuedRequest<?> next = pollHighestPriority();
+        if (next == null) {
+          return;
+        }
+        inFlight++;
+        next.send();
+      }
+    }
+
+    private QueuedRequest<?> pollHighestPriority() {
+      for (LinkedList<QueuedRequest<?>> queue : waiting) {
+        if (!queue.isEmpty()) {
+          return queue.removeFirst();
+        }
+      }
+      return null;
+    }
+  }
+
+  private enum State {
+    QUEUED, SENT, DONE
+  }
+
+  /**
+   * The {@link DispatchRequest} handed to the caller, whether the request has been sent or not.
+   */
+  private static final class QueuedRequest<T> implements DispatchRequest {
+    private final ServiceQueue serviceQueue;
+    private final DispatchPriority priority;
+    private final Sender<T> sender;
+    private final AsyncCallback<T> callback;
+    private State state = State.QUEUED;
+    private DispatchRequest delegate;
+
+    QueuedRequest(ServiceQueue serviceQueue, DispatchPriority priority, Sender<T> sender,
+        AsyncCallback<T> callback) {
+      this.serviceQueue = serviceQueue;
+      this.priority = priority;
+      this.sender = sender;
+      this.callback = callback;
+    }
+
+    void send() {
+      state = State.SENT;
+      DispatchRequest request = sender.send(new AsyncCallback<T>() {
+        @Override
+        public void onSuccess(T result) {
+          if (complete()) {
+            try {
+              callback.onSuccess(result);
+            } finally {
+              serviceQueue.sendWaiting();
+            }
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable caught) {
+          if (complete()) {
+            try {
+              callback.onFailure(caught);
+            } finally {
+              serviceQueue.sendWaiting();
+            }
+          }
+        }
+      });
+
+      // The callback may already have been called if the request completed synchronously.
+      if (state == State.SENT) {
+        delegate = request;
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (state == State.QUEUED) {
+        state = State.DONE;
+        serviceQueue.remove(this);
+        return;
+      }
+
+      DispatchRequest sent = delegate;
+      if (complete()) {
+        if (sent != null) {
+          sent.cancel();
+        }
+        serviceQueue.sendWaiting();
+      }
+    }
+
+    @Override
+    public boolean isPending() {
+      return state != State.DONE;
+    }
+
+    private boolean complete() {
+      if (state != State.SENT) {
+        return false;
+      }
+      state = State.DONE;
+      delegate = null;
+      serviceQueue.release();
+      return true;
+    }
+  }
+
+  private final int maxInFlight;
+  private final Map<String, ServiceQueue> serviceQueues = new HashMap<String, ServiceQueue>();
+
+  /**
+   * @param maxInFlight The maximum number of requests in flight to any given service.
+   */
+  DispatchQueue(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1");
+    }
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Sends the request right away if the service has a free slot, queues it otherwise.
+   *
+   * @param serviceName The service the request goes to.
+   * @param priority The {@link DispatchPriority} of the request.
+   * @param callback The callback that receives the outcome of the request.
+   * @param sender Sends the request with the callback it's given, once there is a free slot.
+   * @return A {@link DispatchRequest} that can cancel the request whether it has been sent or not.
+   */
+  <T> DispatchRequest submit(String serviceName, DispatchPriority priority, AsyncCallback<T> callback,
+      Sender<T> sender) {
+    ServiceQueue serviceQueue = serviceQueues.get(serviceName);
+    if (serviceQueue == null) {
+      serviceQueue = new ServiceQueue();
+      serviceQueues.put(serviceName, serviceQueue);
+    }
+
+    QueuedRequest<T> request = new QueuedRequest<T>(serviceQueue, priority, sender, callback);
+    serviceQueue.submit(request);
+    return request;
+  }
+}
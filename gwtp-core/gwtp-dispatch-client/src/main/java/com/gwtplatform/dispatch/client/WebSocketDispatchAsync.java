@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.SerializationStreamFactory;
+import com.gwtplatform.dispatch.client.actionhandler.ClientActionHandlerRegistry;
+import com.gwtplatform.dispatch.client.actionhandler.caching.CacheTagRegistry;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.DispatchAsync;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.DispatchService;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SecurityCookieAccessor;
+
+/**
+ * A {@link DispatchAsync} that sends every action over a single WebSocket instead of one HTTP request each. Requests are
+ * tagged with an id, so any number of them can be in flight at once and the server answers each one as soon as its
+ * handler completes, in any order. The server side is
+ * {@code com.gwtplatform.dispatch.server.atmosphere.WebSocketDispatchHandler}.
+ * <p />
+ * Client action handlers, the {@link ExceptionHandler} and cache tag invalidation work as in
+ * {@link DefaultDispatchAsync}. Actions and results are serialized with GWT-RPC, and all of them go through the socket
+ * whatever their service name. The socket is opened by the first action; if it closes, the requests in flight fail with
+ * an {@link com.google.gwt.user.client.rpc.InvocationException InvocationException} and the next action reopens it.
+ * Browsers without WebSocket support fall back to GWT-RPC over HTTP.
+ */
+public class WebSocketDispatchAsync extends DefaultDispatchAsync {
+  private static final SerializationStreamFactory streamFactory = GWT.create(DispatchService.class);
+
+  private final WebSocketDispatchChannel channel;
+
+  /**
+   * @param url The URL of the socket: {@code ws:} or {@code wss:}, or relative to the module base URL, in which case
+   *          the scheme follows the one of the page.
+   * @param cacheTagRegistry The registry whose caches are evicted of the tags of every successful
+   *          {@link com.gwtplatform.dispatch.shared.InvalidatesCacheTags InvalidatesCacheTags} action. May be
+   *          {@code null}.
+   */
+  public WebSocketDispatchAsync(ExceptionHandler exceptionHandler,
+      SecurityCookieAccessor securityCookieAccessor,
+      ClientActionHandlerRegistry registry,
+      CacheTagRegistry cacheTagRegistry,
+      String url) {
+    super(exceptionHandler, securityCookieAccessor, registry, false, 0, cacheTagRegistry);
+
+    if (WebSocketDispatchChannel.isSupported()) {
+      channel = new WebSocketDispatchChannel(toWebSocketUrl(url), streamFactory);
+    } else {
+      channel = null;
+    }
+  }
+
+  /**
+   * Closes the socket. The requests in flight fail, and the next action opens a new socket.
+   */
+  public void close() {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  @Override
+  protected DispatchRequest sendExecute(String securityCookie, Action<?> action,
+      AsyncCallback<Result> callback) {
+    if (channel == null) {
+      return super.sendExecute(securityCookie, action, callback);
+    }
+    return channel.execute(securityCookie, action, callback);
+  }
+
+  @Override
+  protected DispatchRequest sendUndo(String securityCookie, Action<?> action, Result result,
+      AsyncCallback<Void> callback) {
+    if (channel == null) {
+      return super.sendUndo(securityCookie, action, result, callback);
+    }
+    return channel.undo(securityCookie, action, result, callback);
+  }
+
+  private static String toWebSocketUrl(String url) {
+    if (url.startsWith("ws:") || url.startsWith("wss:")) {
+      return url;
+    }
+
+    String absoluteUrl = url.startsWith("http:") || url.startsWith("https:") ? url : GWT.getModuleBaseURL() + url;
+    // http becomes ws, and https wss.
+    return "ws" + absoluteUrl.substring("http".length());
+  }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.InvocationException;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamFactory;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Multiplexes requests over one WebSocket. Each request frame is tagged with an id, and the reply with the same id
+ * completes it whenever it arrives. The frames are described in
+ * {@code com.gwtplatform.dispatch.server.atmosphere.WebSocketDispatchConnection}.
+ * <p />
+ * The socket is opened by the first request, and the requests made while it's connecting are sent once it's open. When
+ * it closes, every request that wasn't answered fails with an {@link InvocationException} and the next request opens
+ * a new socket.
+ */
+class WebSocketDispatchChannel {
+
+  private enum State {
+    CLOSED, CONNECTING, OPEN
+  }
+
+  /**
+   * A request sent, or waiting for the socket to open.
+   */
+  private final class PendingRequest<T> implements DispatchRequest {
+    private final int id;
+    private final String frame;
+    private final AsyncCallback<T> callback;
+    private boolean sent;
+
+    PendingRequest(int id, String frame, AsyncCallback<T> callback) {
+      this.id = id;
+      this.frame = frame;
+      this.callback = callback;
+    }
+
+    @Override
+    public void cancel() {
+      if (requests.remove(id) == null) {
+        return;
+      }
+
+      if (!sent) {
+        outbox.remove(this);
+      } else if (state == State.OPEN) {
+        WebSocketDispatchChannel.send(socket, id + ":C:");
+      }
+    }
+
+    @Override
+    public boolean isPending() {
+      return requests.get(id) == this;
+    }
+
+    void send() {
+      sent = true;
+      WebSocketDispatchChannel.send(socket, frame);
+    }
+
+    @SuppressWarnings("unchecked")
+    void onSuccess(Object value) {
+      callback.onSuccess((T) value);
+    }
+
+    void onFailure(Throwable caught) {
+      callback.onFailure(caught);
+    }
+  }
+
+  private final String url;
+  private final SerializationStreamFactory streamFactory;
+  private final Map<Integer, PendingRequest<?>> requests = new HashMap<Integer, PendingRequest<?>>();
+  private final List<PendingRequest<?>> outbox = new ArrayList<PendingRequest<?>>();
+  private State state = State.CLOSED;
+  private JavaScriptObject socket;
+  private int nextId;
+
+  /**
+   * @param url The {@code ws:} or {@code wss:} URL of the socket.
+   * @param streamFactory Serializes the requests and deserializes the replies, usually the GWT-RPC proxy of
+   *          {@link com.gwtplatform.dispatch.shared.DispatchService DispatchService}.
+   */
+  WebSocketDispatchChannel(String url, SerializationStreamFactory streamFactory) {
+    this.url = url;
+    this.streamFactory = streamFactory;
+  }
+
+  /**
+   * @return {@code true} if the browser supports WebSockets.
+   */
+  static native boolean isSupported() /*-{
+    return !!$wnd.WebSocket;
+  }-*/;
+
+  DispatchRequest execute(String securityCookie, Action<?> action, AsyncCallback<Result> callback) {
+    SerializationStreamWriter writer = streamFactory.createStreamWriter();
+    try {
+      writer.writeString(securityCookie);
+      writer.writeObject(action);
+    } catch (SerializationException e) {
+      callback.onFailure(e);
+      return new CompletedDispatchRequest();
+    }
+
+    return submit('E', writer.toString(), callback);
+  }
+
+  DispatchRequest undo(String securityCookie, Action<?> action, Result result, AsyncCallback<Void> callback) {
+    SerializationStreamWriter writer = streamFactory.createStreamWriter();
+    try {
+      writer.writeString(securityCookie);
+      writer.writeObject(action);
+      writer.writeObject(result);
+    } catch (SerializationException e) {
+      callback.onFailure(e);
+      return new CompletedDispatchRequest();
+    }
+
+    return submit('U', writer.toString(), callback);
+  }
+
+  /**
+   * Closes the socket. The requests that weren't answered fail.
+   */
+  void close() {
+    if (socket != null) {
+      JavaScriptObject closing = socket;
+      onClose(closing, 1000);
+      close(closing);
+    }
+  }
+
+  private <T> DispatchRequest submit(char op, String payload, AsyncCallback<T> callback) {
+    int id = nextId++;
+    PendingRequest<T> request = new PendingRequest<T>(id, id + ":" + op + ":" + payload, callback);
+    requests.put(id, request);
+
+    if (state == State.OPEN) {
+      request.send();
+    } else {
+      outbox.add(request);
+      if (state == State.CLOSED) {
+        state = State.CONNECTING;
+        socket = open(url);
+      }
+    }
+    return request;
+  }
+
+  private void onOpen(JavaScriptObject source) {
+    if (source != socket) {
+      return;
+    }
+
+    state = State.OPEN;
+    for (PendingRequest<?> request : outbox) {
+      request.send();
+    }
+    outbox.clear();
+  }
+
+  private void onMessage(JavaScriptObject source, String frame) {
+    if (source != socket) {
+      return;
+    }
+
+    int idEnd = frame.indexOf(':');
+    PendingRequest<?> request = requests.remove(Integer.valueOf(frame.substring(0, idEnd)));
+    if (request == null) {
+      // Cancelled.
+      return;
+    }
+
+    char status = frame.charAt(idEnd + 1);
+    String payload = frame.substring(idEnd + 3);
+    Object value;
+    try {
+      value = payload.length() == 0 ? null : streamFactory.createStreamReader(payload).readObject();
+    } catch (SerializationException e) {
+      request.onFailure(e);
+      return;
+    }
+
+    if (status == 'R') {
+      request.onSuccess(value);
+    } else {
+      request.onFailure((Throwable) value);
+    }
+  }
+
+  private void onClose(JavaScriptObject source, int code) {
+    if (source != socket) {
+      return;
+    }
+
+    socket = null;
+    state = State.CLOSED;
+    List<PendingRequest<?>> failed = new ArrayList<PendingRequest<?>>(requests.values());
+    requests.clear();
+    outbox.clear();
+
+    InvocationException caught = new InvocationException("The dispatch WebSocket " + url + " closed with code "
+        + code);
+    for (PendingRequest<?> request : failed) {
+      request.onFailure(caught);
+    }
+  }
+
+  private native JavaScriptObject open(String url) /*-{
+    var self = this;
+    var socket = new $wnd.WebSocket(url);
+    socket.onopen = $entry(function() {
+      self.@com.gwtplatform.dispatch.client.WebSocketDispatchChannel::onOpen(Lcom/google/gwt/core/client/JavaScriptObject;)(socket);
+    });
+    socket.onmessage = $entry(function(event) {
+      self.@com.gwtplatform.dispatch.client.WebSocketDispatchChannel::onMessage(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(socket, event.data);
+    });
+    socket.onclose = $entry(function(event) {
+      self.@com.gwtplatform.dispatch.client.WebSocketDispatchChannel::onClose(Lcom/google/gwt/core/client/JavaScriptObject;I)(socket, event.code);
+    });
+    return socket;
+  }-*/;
+
+  private static native void send(JavaScriptObject socket, String frame) /*-{
+    socket.send(frame);
+  }-*/;
+
+  private static native void close(JavaScriptObject socket) /*-{
+    socket.close();
+  }-*/;
+}
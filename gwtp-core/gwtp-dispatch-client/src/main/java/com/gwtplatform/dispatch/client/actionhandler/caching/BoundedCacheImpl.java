@@ -0,0 +1,453 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import java.util.HashMap;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+
+/**
+ * A {@link Cache} that holds a bounded number of entries, or entries of a bounded estimated size, and evicts the least
+ * recently used ones to make room. Entries expire after {@link #getAutoExpireTimeInMs()}, or after the time to live
+ * given to {@link #put(Object, Object, long)}.
+ * <p />
+ * Expired entries are dropped when they're looked up and, if the cache is given a {@link Scheduler}, by a sweep, so
+ * that entries nobody asks for again don't linger. A sweep starts every sweep delay and runs as an incremental command,
+ * looking at a few entries at a time between browser events. The sweeps stop while the cache is empty.
+ * <p />
+ * Use the {@link Builder} to create one:
+ *
+ * <pre>
+ * Cache cache = new BoundedCacheImpl.Builder().maximumSize(500).autoExpireTimeInMs(60000)
+ *     .sweepWith(Scheduler.get()).build();
+ * </pre>
+ */
+public class BoundedCacheImpl implements Cache {
+
+  /**
+   * Estimates how much room an entry takes in the cache, in any unit consistent with {@link Builder#maximumWeight}.
+   */
+  public interface SizeEstimator {
+    int estimateSize(Object key, Object value);
+  }
+
+  /**
+   * A {@link BoundedCacheImpl} builder. By default, the cache holds up to {@link #DEFAULT_MAXIMUM_SIZE} entries that
+   * never expire, and isn't swept.
+   */
+  public static class Builder {
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    public static final int DEFAULT_SWEEP_DELAY_MS = 1000;
+
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private long maximumWeight = -1;
+    private SizeEstimator sizeEstimator;
+    private long autoExpireTimeInMs = -1;
+    private Scheduler scheduler;
+    private int sweepDelayMs = DEFAULT_SWEEP_DELAY_MS;
+
+    /**
+     * @param maximumSize The maximum number of entries.
+     * @return a {@link Builder} object.
+     */
+    public Builder maximumSize(int maximumSize) {
+      if (maximumSize < 1) {
+        throw new IllegalArgumentException("maximumSize must be at least 1");
+      }
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Bounds the cache by the estimated size of its entries instead of their number.
+     *
+     * @param maximumWeight The maximum total estimated size.
+     * @param sizeEstimator Estimates the size of every entry put in the cache.
+     * @return a {@link Builder} object.
+     */
+    public Builder maximumWeight(long maximumWeight, SizeEstimator sizeEstimator) {
+      if (maximumWeight < 1) {
+        throw new IllegalArgumentException("maximumWeight must be at least 1");
+      }
+      if (sizeEstimator == null) {
+        throw new NullPointerException("sizeEstimator is null");
+      }
+      this.maximumWeight = maximumWeight;
+      this.sizeEstimator = sizeEstimator;
+      return this;
+    }
+
+    /**
+     * @param autoExpireTimeInMs The default time to live of the entries, {@code -1} for entries that never expire.
+     * @return a {@link Builder} object.
+     */
+    public Builder autoExpireTimeInMs(long autoExpireTimeInMs) {
+      this.autoExpireTimeInMs = autoExpireTimeInMs;
+      return this;
+    }
+
+    /**
+     * Sweeps expired entries every {@link #DEFAULT_SWEEP_DELAY_MS} milliseconds.
+     *
+     * @param scheduler The {@link Scheduler}, usually {@link Scheduler#get()}.
+     * @return a {@link Builder} object.
+     */
+    public Builder sweepWith(Scheduler scheduler) {
+      return sweepWith(scheduler, DEFAULT_SWEEP_DELAY_MS);
+    }
+
+    /**
+     * @param scheduler The {@link Scheduler}, usually {@link Scheduler#get()}.
+     * @param sweepDelayMs The delay between the start of two sweeps.
+     * @return a {@link Builder} object.
+     */
+    public Builder sweepWith(Scheduler scheduler, int sweepDelayMs) {
+      this.scheduler = scheduler;
+      this.sweepDelayMs = sweepDelayMs;
+      return this;
+    }
+
+    public BoundedCacheImpl build() {
+      return new BoundedCacheImpl(this);
+    }
+  }
+
+  /**
+   * An entry, linked from the least to the most recently used.
+   */
+  private static final class Entry {
+    private final Object key;
+    private Object value;
+    private long lastUpdateTime;
+    private long timeToLiveMs;
+    private int weight;
+    private Entry previous;
+    private Entry next;
+
+    Entry(Object key) {
+      this.key = key;
+    }
+  }
+
+  /**
+   * The number of entries the sweep looks at in one step.
+   */
+  private static final int SWEEP_STEP_SIZE = 64;
+
+  /**
+   * Marks entries that expire after the {@link #getAutoExpireTimeInMs() default time}.
+   */
+  private static final long DEFAULT_TIME_TO_LIVE = -2;
+
+  private final HashMap<Object, Entry> map = new HashMap<Object, Entry>();
+  private final int maximumSize;
+  private final long maximumWeight;
+  private final SizeEstimator sizeEstimator;
+  private final Scheduler scheduler;
+  private final int sweepDelayMs;
+
+  private final RepeatingCommand sweepTimer = new RepeatingCommand() {
+    @Override
+    public boolean execute() {
+      return startSweep();
+    }
+  };
+
+  private final RepeatingCommand sweepCommand = new RepeatingCommand() {
+    @Override
+    public boolean execute() {
+      return sweepStep();
+    }
+  };
+
+  private long autoExpireTimeInMs;
+  private Entry head;
+  private Entry tail;
+  private long weight;
+  private Entry sweepCursor;
+  private boolean sweepScheduled;
+  private boolean sweeping;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+  private long expirationCount;
+
+  protected BoundedCacheImpl(Builder builder) {
+    this.maximumSize = builder.maximumSize;
+    this.maximumWeight = builder.maximumWeight;
+    this.sizeEstimator = builder.sizeEstimator;
+    this.autoExpireTimeInMs = builder.autoExpireTimeInMs;
+    this.scheduler = builder.scheduler;
+    this.sweepDelayMs = builder.sweepDelayMs;
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    put(key, value, DEFAULT_TIME_TO_LIVE);
+  }
+
+  /**
+   * Puts the key-value pair in the cache with its own time to live, instead of {@link #getAutoExpireTimeInMs()}.
+   *
+   * @param key The key for the entry to be cached
+   * @param value The corresponding value
+   * @param timeToLiveMs The time in milliseconds after which the entry expires, {@code -1} if it never expires.
+   */
+  public void put(Object key, Object value, long timeToLiveMs) {
+    if (key == null) {
+      throw new NullPointerException("key is null");
+    }
+    if (value == null) {
+      throw new NullPointerException("value is null");
+    }
+
+    long effectiveTimeToLive = timeToLiveMs == DEFAULT_TIME_TO_LIVE ? autoExpireTimeInMs : timeToLiveMs;
+    int entryWeight = sizeEstimator == null ? 1 : sizeEstimator.estimateSize(key, value);
+    // No point caching what expires immediately or can't fit at all.
+    if (effectiveTimeToLive == 0 || (maximumWeight > 0 && entryWeight > maximumWeight)) {
+      remove(key);
+      return;
+    }
+
+    Entry entry = map.get(key);
+    if (entry == null) {
+      entry = new Entry(key);
+      map.put(key, entry);
+    } else {
+      unlink(entry);
+      weight -= entry.weight;
+    }
+
+    entry.value = value;
+    entry.lastUpdateTime = currentTimeMillis();
+    entry.timeToLiveMs = timeToLiveMs;
+    entry.weight = entryWeight;
+    weight += entryWeight;
+    linkLast(entry);
+
+    evictIfNeeded();
+    scheduleSweep();
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (key == null) {
+      throw new NullPointerException("key is null");
+    }
+
+    Entry entry = map.get(key);
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+
+    if (isExpired(entry, currentTimeMillis())) {
+      expirationCount++;
+      missCount++;
+      removeEntry(entry);
+      return null;
+    }
+
+    hitCount++;
+    if (entry != tail) {
+      unlink(entry);
+      linkLast(entry);
+    }
+    return entry.value;
+  }
+
+  @Override
+  public void clear() {
+    map.clear();
+    head = null;
+    tail = null;
+    sweepCursor = null;
+    weight = 0;
+  }
+
+  @Override
+  public void remove(Object key) {
+    Entry entry = map.get(key);
+    if (entry != null) {
+      removeEntry(entry);
+    }
+  }
+
+  @Override
+  public long getLastUpateTime(Object key) {
+    if (key == null) {
+      throw new NullPointerException("key is null");
+    }
+
+    Entry entry = map.get(key);
+    return entry == null ? -1 : entry.lastUpdateTime;
+  }
+
+  @Override
+  public long getAutoExpireTimeInMs() {
+    return autoExpireTimeInMs;
+  }
+
+  @Override
+  public void setAutoExpireTimeInMs(long autoExpireTimeInMs) {
+    this.autoExpireTimeInMs = autoExpireTimeInMs;
+  }
+
+  /**
+   * @return The number of entries in the cache, including the expired ones not swept yet.
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * @return The total estimated size of the entries, or their number if the cache isn't bounded by size.
+   */
+  public long getWeight() {
+    return weight;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return The number of entries removed to make room for others.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return The number of entries removed because they expired.
+   */
+  public long getExpirationCount() {
+    return expirationCount;
+  }
+
+  /**
+   * @return The current time in milliseconds. Tests may override it.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    long timeToLive = entry.timeToLiveMs == DEFAULT_TIME_TO_LIVE ? autoExpireTimeInMs : entry.timeToLiveMs;
+    return timeToLive >= 0 && entry.lastUpdateTime + timeToLive < now;
+  }
+
+  private void evictIfNeeded() {
+    while (head != null && (maximumWeight > 0 ? weight > maximumWeight : map.size() > maximumSize)) {
+      evictionCount++;
+      removeEntry(head);
+    }
+  }
+
+  private void scheduleSweep() {
+    if (scheduler != null && !sweepScheduled) {
+      sweepScheduled = true;
+      scheduler.scheduleFixedDelay(sweepTimer, sweepDelayMs);
+    }
+  }
+
+  /**
+   * Starts a sweep from the least recently used entry, unless the previous one is still running.
+   *
+   * @return {@code false} to stop the sweeps, once the cache is empty.
+   */
+  private boolean startSweep() {
+    if (map.isEmpty()) {
+      sweepScheduled = false;
+      return false;
+    }
+
+    if (!sweeping) {
+      sweeping = true;
+      sweepCursor = head;
+      scheduler.scheduleIncremental(sweepCommand);
+    }
+    return true;
+  }
+
+  /**
+   * Looks at the next {@link #SWEEP_STEP_SIZE} entries of the sweep.
+   *
+   * @return {@code false} once the sweep has reached the most recently used entry.
+   */
+  private boolean sweepStep() {
+    long now = currentTimeMillis();
+    Entry entry = sweepCursor;
+    for (int i = 0; i < SWEEP_STEP_SIZE && entry != null; i++) {
+      Entry next = entry.next;
+      if (isExpired(entry, now)) {
+        expirationCount++;
+        removeEntry(entry);
+      }
+      entry = next;
+    }
+    sweepCursor = entry;
+
+    if (entry == null) {
+      sweeping = false;
+      return false;
+    }
+    return true;
+  }
+
+  private void removeEntry(Entry entry) {
+    map.remove(entry.key);
+    unlink(entry);
+    weight -= entry.weight;
+  }
+
+  private void linkLast(Entry entry) {
+    entry.previous = tail;
+    entry.next = null;
+    if (tail == null) {
+      head = entry;
+    } else {
+      tail.next = entry;
+    }
+    tail = entry;
+  }
+
+  private void unlink(Entry entry) {
+    if (sweepCursor == entry) {
+      sweepCursor = entry.next;
+    }
+
+    if (entry.previous == null) {
+      head = entry.next;
+    } else {
+      entry.previous.next = entry.next;
+    }
+    if (entry.next == null) {
+      tail = entry.previous;
+    } else {
+      entry.next.previous = entry.previous;
+    }
+    entry.previous = null;
+    entry.next = null;
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.CacheInvalidationBatch;
+import com.gwtplatform.dispatch.shared.DispatchAsync;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.WatchCacheInvalidationsAction;
+
+/**
+ * Listens to the cache invalidations pushed by the server and applies them to the caches of a
+ * {@link CacheTagRegistry}. It keeps one {@link WatchCacheInvalidationsAction} in flight to the Atmosphere poll
+ * dispatch service, and sends the next one as soon as a batch arrives. After a failure, it waits before polling again.
+ * <p />
+ * The watch request stays open until the server has something to say, so don't send it through a
+ * {@link DispatchAsync} that batches requests to the poll service or limits the number of requests in flight to it.
+ */
+public class CacheInvalidationSubscriber {
+  private static final int DEFAULT_RETRY_DELAY_MS = 5000;
+
+  private final DispatchAsync dispatcher;
+  private final CacheTagRegistry registry;
+  private final String serviceName;
+  private final int retryDelayMs;
+
+  private DispatchRequest request;
+  private boolean started;
+  private long lastEpoch;
+  private long lastSequence = -1;
+
+  /**
+   * @param dispatcher The {@link DispatchAsync} used to poll the server.
+   * @param registry The registry of the caches to invalidate.
+   * @param serviceName The name of the Atmosphere poll dispatch service.
+   */
+  public CacheInvalidationSubscriber(DispatchAsync dispatcher, CacheTagRegistry registry, String serviceName) {
+    this(dispatcher, registry, serviceName, DEFAULT_RETRY_DELAY_MS);
+  }
+
+  /**
+   * @param dispatcher The {@link DispatchAsync} used to poll the server.
+   * @param registry The registry of the caches to invalidate.
+   * @param serviceName The name of the Atmosphere poll dispatch service.
+   * @param retryDelayMs The delay before polling again after a failure, in milliseconds.
+   */
+  public CacheInvalidationSubscriber(DispatchAsync dispatcher, CacheTagRegistry registry, String serviceName,
+      int retryDelayMs) {
+    this.dispatcher = dispatcher;
+    this.registry = registry;
+    this.serviceName = serviceName;
+    this.retryDelayMs = retryDelayMs;
+  }
+
+  /**
+   * Starts listening, if not already started.
+   */
+  public void start() {
+    if (!started) {
+      started = true;
+      watch();
+    }
+  }
+
+  /**
+   * Stops listening and cancels the pending poll.
+   */
+  public void stop() {
+    started = false;
+    if (request != null) {
+      request.cancel();
+      request = null;
+    }
+  }
+
+  public boolean isStarted() {
+    return started;
+  }
+
+  private void watch() {
+    DispatchRequest sent = dispatcher.execute(new WatchCacheInvalidationsAction(serviceName, lastEpoch, lastSequence),
+        new AsyncCallback<CacheInvalidationBatch>() {
+          @Override
+          public void onSuccess(CacheInvalidationBatch batch) {
+            request = null;
+            if (!started) {
+              return;
+            }
+
+            if (batch != null) {
+              lastEpoch = batch.getEpoch();
+              lastSequence = batch.getSequence();
+              registry.apply(batch);
+            }
+            watch();
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            request = null;
+            if (started) {
+              retryLater();
+            }
+          }
+        });
+
+    // A client action handler may have answered already, and the callback may have sent the next poll.
+    if (sent.isPending()) {
+      request = sent;
+    }
+  }
+
+  private void retryLater() {
+    Scheduler.get().scheduleFixedDelay(new RepeatingCommand() {
+      @Override
+      public boolean execute() {
+        if (started && request == null) {
+          watch();
+        }
+        return false;
+      }
+    }, retryDelayMs);
+  }
+}
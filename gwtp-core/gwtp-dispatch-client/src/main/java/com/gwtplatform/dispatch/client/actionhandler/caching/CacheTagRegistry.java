@@ -0,0 +1,102 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gwtplatform.dispatch.shared.CacheInvalidation;
+import com.gwtplatform.dispatch.shared.CacheInvalidationBatch;
+import com.gwtplatform.dispatch.shared.InvalidatesCacheTags;
+
+/**
+ * Keeps track of the {@link TaggedCache}s of the application so that the entries carrying a given tag can be evicted
+ * from all of them at once. {@link com.gwtplatform.dispatch.client.DefaultDispatchAsync DefaultDispatchAsync} calls
+ * {@link #invalidate(String...)} with the tags of every {@link InvalidatesCacheTags} action that succeeds, and
+ * {@link CacheInvalidationSubscriber} applies the invalidations pushed by the server.
+ * <p />
+ * {@link com.gwtplatform.dispatch.client.gin.DispatchAsyncModule DispatchAsyncModule} binds a single instance of this
+ * class; inject it where you create your {@link TaggedCache}s.
+ */
+public class CacheTagRegistry {
+  private final List<TaggedCache> caches = new ArrayList<TaggedCache>();
+
+  /**
+   * Registers a cache. {@link TaggedCache} registers itself on construction.
+   *
+   * @param cache The cache to evict tagged entries from.
+   */
+  public void register(TaggedCache cache) {
+    if (!caches.contains(cache)) {
+      caches.add(cache);
+    }
+  }
+
+  /**
+   * Stops evicting tagged entries from a cache.
+   *
+   * @param cache The cache to unregister.
+   */
+  public void unregister(TaggedCache cache) {
+    caches.remove(cache);
+  }
+
+  /**
+   * Removes the entries carrying any of the tags from every registered cache.
+   *
+   * @param tags The tags to invalidate. {@code null} and empty arrays are ignored.
+   */
+  public void invalidate(String... tags) {
+    if (tags == null || tags.length == 0) {
+      return;
+    }
+
+    for (TaggedCache cache : caches) {
+      cache.invalidate(tags);
+    }
+  }
+
+  /**
+   * Applies a batch of invalidations pushed by the server to every registered cache.
+   *
+   * @param batch The {@link CacheInvalidationBatch}.
+   */
+  public void apply(CacheInvalidationBatch batch) {
+    if (batch.isClearAll()) {
+      for (TaggedCache cache : caches) {
+        cache.clear();
+      }
+      return;
+    }
+
+    for (CacheInvalidation invalidation : batch.getInvalidations()) {
+      for (TaggedCache cache : caches) {
+        apply(cache, invalidation);
+      }
+    }
+  }
+
+  private void apply(TaggedCache cache, CacheInvalidation invalidation) {
+    if (invalidation.getKey() != null) {
+      cache.remove(invalidation.getKey());
+    } else if (invalidation.getTag() != null) {
+      cache.invalidate(invalidation.getActionClassName(), invalidation.getTag());
+    } else {
+      cache.invalidateClass(invalidation.getActionClassName());
+    }
+  }
+}
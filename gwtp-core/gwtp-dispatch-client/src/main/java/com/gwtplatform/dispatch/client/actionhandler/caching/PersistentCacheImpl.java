@@ -0,0 +1,471 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.storage.client.Storage;
+
+/**
+ * A {@link Cache} that keeps its entries in Web Storage, so that they survive page reloads, behind a
+ * {@link BoundedCacheImpl} holding the recently used ones in memory.
+ * <p />
+ * Nothing is read from storage up front: an entry is only decoded the first time it's looked up. The space used by the
+ * cache is measured the first time something is written, from the length of the stored strings, and the oldest entries
+ * are removed when it goes over the quota or when the browser refuses a write.
+ * <p />
+ * Every stored entry records the version of its key class given to {@link Builder#version(Class, int)}. Bump it when
+ * the shape of a {@link com.gwtplatform.dispatch.shared.Result Result} changes and the entries written by older
+ * releases are ignored and removed as they're found.
+ * <p />
+ * When storage isn't available, the cache only keeps entries in memory.
+ *
+ * <pre>
+ * Cache cache = new PersistentCacheImpl.Builder(Storage.getLocalStorageIfSupported(), new MyCodec())
+ *     .namespace("myapp").version(RetrieveCountriesAction.class, 2).autoExpireTimeInMs(24 * 3600 * 1000).build();
+ * </pre>
+ */
+public class PersistentCacheImpl implements Cache {
+
+  /**
+   * A {@link PersistentCacheImpl} builder.
+   */
+  public static class Builder {
+    public static final String DEFAULT_NAMESPACE = "gwtp-cache";
+    public static final int DEFAULT_QUOTA = 1000000;
+    public static final int DEFAULT_MEMORY_SIZE = 100;
+
+    private final Storage storage;
+    private final StorageCodec codec;
+    private final Map<Class<?>, Integer> versions = new HashMap<Class<?>, Integer>();
+    private String namespace = DEFAULT_NAMESPACE;
+    private int quota = DEFAULT_QUOTA;
+    private int memorySize = DEFAULT_MEMORY_SIZE;
+    private long autoExpireTimeInMs = -1;
+
+    /**
+     * @param storage The storage, usually {@link Storage#getLocalStorageIfSupported()}. May be {@code null}.
+     * @param codec The {@link StorageCodec} of the keys and values.
+     */
+    public Builder(Storage storage, StorageCodec codec) {
+      if (codec == null) {
+        throw new NullPointerException("codec is null");
+      }
+      this.storage = storage;
+      this.codec = codec;
+    }
+
+    /**
+     * @param namespace The prefix of the storage keys of this cache. Caches sharing a storage need distinct ones.
+     * @return a {@link Builder} object.
+     */
+    public Builder namespace(String namespace) {
+      this.namespace = namespace;
+      return this;
+    }
+
+    /**
+     * @param quota The maximum number of characters this cache keeps in storage.
+     * @return a {@link Builder} object.
+     */
+    public Builder quota(int quota) {
+      this.quota = quota;
+      return this;
+    }
+
+    /**
+     * @param memorySize The maximum number of entries kept in memory.
+     * @return a {@link Builder} object.
+     */
+    public Builder memorySize(int memorySize) {
+      this.memorySize = memorySize;
+      return this;
+    }
+
+    /**
+     * @param keyClass The class of the keys, usually an {@link com.gwtplatform.dispatch.shared.Action Action} class.
+     * @param version The version of the entries of that class. Entries of any other version are ignored.
+     * @return a {@link Builder} object.
+     */
+    public Builder version(Class<?> keyClass, int version) {
+      versions.put(keyClass, version);
+      return this;
+    }
+
+    /**
+     * @param autoExpireTimeInMs The time to live of the entries, {@code -1} for entries that never expire.
+     * @return a {@link Builder} object.
+     */
+    public Builder autoExpireTimeInMs(long autoExpireTimeInMs) {
+      this.autoExpireTimeInMs = autoExpireTimeInMs;
+      return this;
+    }
+
+    public PersistentCacheImpl build() {
+      return new PersistentCacheImpl(this);
+    }
+  }
+
+  /**
+   * The parsed header of a stored entry: {@code version|lastUpdateTime|expirationTime|encodedValue}.
+   */
+  private static final class StoredEntry {
+    private final int version;
+    private final long lastUpdateTime;
+    private final long expirationTime;
+    private final String encodedValue;
+
+    private StoredEntry(int version, long lastUpdateTime, long expirationTime, String encodedValue) {
+      this.version = version;
+      this.lastUpdateTime = lastUpdateTime;
+      this.expirationTime = expirationTime;
+      this.encodedValue = encodedValue;
+    }
+
+    static StoredEntry parse(String item) {
+      int first = item.indexOf(SEPARATOR);
+      int second = first < 0 ? -1 : item.indexOf(SEPARATOR, first + 1);
+      int third = second < 0 ? -1 : item.indexOf(SEPARATOR, second + 1);
+      if (third < 0) {
+        return null;
+      }
+
+      try {
+        return new StoredEntry(Integer.parseInt(item.substring(0, first)),
+            Long.parseLong(item.substring(first + 1, second)),
+            Long.parseLong(item.substring(second + 1, third)),
+            item.substring(third + 1));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    static String format(int version, long lastUpdateTime, long expirationTime, String encodedValue) {
+      return version + SEPARATOR + lastUpdateTime + SEPARATOR + expirationTime + SEPARATOR + encodedValue;
+    }
+  }
+
+  /**
+   * What the cache knows about a stored item without decoding it.
+   */
+  private static final class ItemInfo {
+    private final String storageKey;
+    private final int size;
+    private final long lastUpdateTime;
+
+    ItemInfo(String storageKey, int size, long lastUpdateTime) {
+      this.storageKey = storageKey;
+      this.size = size;
+      this.lastUpdateTime = lastUpdateTime;
+    }
+  }
+
+  private static final String SEPARATOR = "|";
+  private static final long NEVER = -1;
+
+  private final Storage storage;
+  private final StorageCodec codec;
+  private final Map<Class<?>, Integer> versions;
+  private final String prefix;
+  private final int quota;
+  private final BoundedCacheImpl memory;
+
+  private long autoExpireTimeInMs;
+  private Map<String, ItemInfo> items;
+  private int usedSpace;
+
+  protected PersistentCacheImpl(Builder builder) {
+    this.storage = builder.storage;
+    this.codec = builder.codec;
+    this.versions = new HashMap<Class<?>, Integer>(builder.versions);
+    this.prefix = builder.namespace + ":";
+    this.quota = builder.quota;
+    this.autoExpireTimeInMs = builder.autoExpireTimeInMs;
+    // Both tiers read the same clock, so that an entry loaded from storage expires when its stored copy does.
+    this.memory = new BoundedCacheImpl(new BoundedCacheImpl.Builder().maximumSize(builder.memorySize)) {
+      @Override
+      protected long currentTimeMillis() {
+        return PersistentCacheImpl.this.currentTimeMillis();
+      }
+    };
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    if (key == null) {
+      throw new NullPointerException("key is null");
+    }
+    if (value == null) {
+      throw new NullPointerException("value is null");
+    }
+    if (autoExpireTimeInMs == 0) {
+      // The new value would expire right away, but the previous one mustn't outlive it.
+      remove(key);
+      return;
+    }
+
+    long now = currentTimeMillis();
+    long expirationTime = autoExpireTimeInMs < 0 ? NEVER : now + autoExpireTimeInMs;
+    memory.put(key, value, autoExpireTimeInMs);
+
+    String storageKey = storageKey(key);
+    if (storageKey == null) {
+      return;
+    }
+
+    String encodedValue = codec.encodeValue(value);
+    if (encodedValue == null) {
+      removeItem(storageKey);
+      return;
+    }
+
+    String item = StoredEntry.format(versionOf(key), now, expirationTime, encodedValue);
+    writeItem(storageKey, item, now);
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (key == null) {
+      throw new NullPointerException("key is null");
+    }
+
+    Object value = memory.get(key);
+    if (value != null) {
+      return value;
+    }
+
+    String storageKey = storageKey(key);
+    if (storageKey == null) {
+      return null;
+    }
+
+    StoredEntry entry = readEntry(key, storageKey);
+    if (entry == null) {
+      return null;
+    }
+
+    try {
+      value = codec.decodeValue(key, entry.encodedValue);
+    } catch (RuntimeException e) {
+      value = null;
+    }
+    if (value == null) {
+      removeItem(storageKey);
+      return null;
+    }
+
+    long remaining = entry.expirationTime == NEVER ? -1 : entry.expirationTime - currentTimeMillis();
+    memory.put(key, value, remaining);
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    memory.clear();
+    if (storage == null) {
+      return;
+    }
+
+    for (String storageKey : storageKeys()) {
+      storage.removeItem(storageKey);
+    }
+    items = new HashMap<String, ItemInfo>();
+    usedSpace = 0;
+  }
+
+  @Override
+  public void remove(Object key) {
+    memory.remove(key);
+    String storageKey = storageKey(key);
+    if (storageKey != null) {
+      removeItem(storageKey);
+    }
+  }
+
+  @Override
+  public long getLastUpateTime(Object key) {
+    if (key == null) {
+      throw new NullPointerException("key is null");
+    }
+
+    long lastUpdateTime = memory.getLastUpateTime(key);
+    if (lastUpdateTime >= 0) {
+      return lastUpdateTime;
+    }
+
+    String storageKey = storageKey(key);
+    StoredEntry entry = storageKey == null ? null : readEntry(key, storageKey);
+    return entry == null ? -1 : entry.lastUpdateTime;
+  }
+
+  @Override
+  public long getAutoExpireTimeInMs() {
+    return autoExpireTimeInMs;
+  }
+
+  @Override
+  public void setAutoExpireTimeInMs(long autoExpireTimeInMs) {
+    this.autoExpireTimeInMs = autoExpireTimeInMs;
+  }
+
+  /**
+   * @return The number of characters this cache uses in storage, once it has been measured by a write.
+   */
+  public int getUsedSpace() {
+    return usedSpace;
+  }
+
+  /**
+   * @return The current time in milliseconds. Tests may override it.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private String storageKey(Object key) {
+    if (storage == null) {
+      return null;
+    }
+
+    String encodedKey = codec.encodeKey(key);
+    return encodedKey == null ? null : prefix + encodedKey;
+  }
+
+  private int versionOf(Object key) {
+    Integer version = versions.get(key.getClass());
+    return version == null ? 0 : version;
+  }
+
+  /**
+   * Reads an entry, and removes it from storage if it's unreadable, from another version or expired.
+   */
+  private StoredEntry readEntry(Object key, String storageKey) {
+    String item = storage.getItem(storageKey);
+    if (item == null) {
+      return null;
+    }
+
+    StoredEntry entry = StoredEntry.parse(item);
+    if (entry == null || entry.version != versionOf(key)
+        || (entry.expirationTime != NEVER && entry.expirationTime < currentTimeMillis())) {
+      removeItem(storageKey);
+      return null;
+    }
+    return entry;
+  }
+
+  private void writeItem(String storageKey, String item, long now) {
+    ensureMeasured();
+    removeItem(storageKey);
+
+    int size = storageKey.length() + item.length();
+    if (size > quota) {
+      return;
+    }
+
+    makeRoom(quota - size);
+    try {
+      storage.setItem(storageKey, item);
+    } catch (RuntimeException e) {
+      // The browser's own quota is full, possibly because of someone else: free half of ours and try once more.
+      makeRoom(Math.min(quota - size, usedSpace / 2));
+      try {
+        storage.setItem(storageKey, item);
+      } catch (RuntimeException again) {
+        return;
+      }
+    }
+
+    items.put(storageKey, new ItemInfo(storageKey, size, now));
+    usedSpace += size;
+  }
+
+  private void removeItem(String storageKey) {
+    storage.removeItem(storageKey);
+    if (items != null) {
+      ItemInfo info = items.remove(storageKey);
+      if (info != null) {
+        usedSpace -= info.size;
+      }
+    }
+  }
+
+  /**
+   * Removes the least recently written items until the cache uses at most {@code maxUsedSpace} characters.
+   */
+  private void makeRoom(int maxUsedSpace) {
+    if (usedSpace <= maxUsedSpace) {
+      return;
+    }
+
+    List<ItemInfo> oldestFirst = new ArrayList<ItemInfo>(items.values());
+    Collections.sort(oldestFirst, new Comparator<ItemInfo>() {
+      @Override
+      public int compare(ItemInfo first, ItemInfo second) {
+        return first.lastUpdateTime < second.lastUpdateTime ? -1
+            : first.lastUpdateTime == second.lastUpdateTime ? 0 : 1;
+      }
+    });
+
+    for (ItemInfo info : oldestFirst) {
+      if (usedSpace <= maxUsedSpace) {
+        return;
+      }
+      removeItem(info.storageKey);
+    }
+  }
+
+  /**
+   * Measures the items of this cache the first time it writes, without decoding any of them.
+   */
+  private void ensureMeasured() {
+    if (items != null) {
+      return;
+    }
+
+    items = new HashMap<String, ItemInfo>();
+    usedSpace = 0;
+    for (String storageKey : storageKeys()) {
+      String item = storage.getItem(storageKey);
+      StoredEntry entry = item == null ? null : StoredEntry.parse(item);
+      if (entry == null) {
+        storage.removeItem(storageKey);
+        continue;
+      }
+
+      int size = storageKey.length() + item.length();
+      items.put(storageKey, new ItemInfo(storageKey, size, entry.lastUpdateTime));
+      usedSpace += size;
+    }
+  }
+
+  private List<String> storageKeys() {
+    List<String> storageKeys = new ArrayList<String>();
+    for (int i = 0; i < storage.getLength(); i++) {
+      String storageKey = storage.key(i);
+      if (storageKey != null && storageKey.startsWith(prefix)) {
+        storageKeys.add(storageKey);
+      }
+    }
+    return storageKeys;
+  }
+}
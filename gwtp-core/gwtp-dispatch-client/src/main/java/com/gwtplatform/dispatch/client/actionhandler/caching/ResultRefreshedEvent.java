@@ -0,0 +1,76 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import com.google.gwt.event.shared.GwtEvent;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Fired by a {@link StaleWhileRevalidateCachingHandler} when the background refresh of a stale entry brings back a
+ * {@link Result} that isn't equal to the one that had been served. The event is fired from the {@link Action} as its
+ * source, so a presenter can listen to the refreshes of one action only:
+ *
+ * <pre>
+ * eventBus.addHandlerToSource(ResultRefreshedEvent.getType(), new RetrieveFooAction(id), handler);
+ * </pre>
+ */
+public class ResultRefreshedEvent extends GwtEvent<ResultRefreshedHandler> {
+
+  private static final Type<ResultRefreshedHandler> TYPE = new Type<ResultRefreshedHandler>();
+
+  public static Type<ResultRefreshedHandler> getType() {
+    return TYPE;
+  }
+
+  private final Action<?> action;
+  private final Result previousResult;
+  private final Result result;
+
+  /**
+   * @param action The action whose result was refreshed.
+   * @param previousResult The stale result that had been served.
+   * @param result The refreshed result, now in the cache.
+   */
+  public ResultRefreshedEvent(Action<?> action, Result previousResult, Result result) {
+    this.action = action;
+    this.previousResult = previousResult;
+    this.result = result;
+  }
+
+  @Override
+  public Type<ResultRefreshedHandler> getAssociatedType() {
+    return TYPE;
+  }
+
+  public Action<?> getAction() {
+    return action;
+  }
+
+  public Result getPreviousResult() {
+    return previousResult;
+  }
+
+  public Result getResult() {
+    return result;
+  }
+
+  @Override
+  protected void dispatch(ResultRefreshedHandler handler) {
+    handler.onResultRefreshed(this);
+  }
+}
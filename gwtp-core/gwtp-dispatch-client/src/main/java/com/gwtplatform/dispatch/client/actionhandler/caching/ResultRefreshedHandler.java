@@ -0,0 +1,33 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import com.google.gwt.event.shared.EventHandler;
+
+/**
+ * Handler for {@link ResultRefreshedEvent}.
+ */
+public interface ResultRefreshedHandler extends EventHandler {
+
+  /**
+   * Called when a cached {@link com.gwtplatform.dispatch.shared.Result Result} was refreshed in the background and
+   * differs from the one that had been served.
+   *
+   * @param event The event.
+   */
+  void onResultRefreshed(ResultRefreshedEvent event);
+}
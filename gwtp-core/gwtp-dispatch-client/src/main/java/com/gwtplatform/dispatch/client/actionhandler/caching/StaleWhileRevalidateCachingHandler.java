@@ -0,0 +1,225 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.web.bindery.event.shared.EventBus;
+import com.gwtplatform.dispatch.client.CallbackDispatchRequest;
+import com.gwtplatform.dispatch.client.CompletedDispatchRequest;
+import com.gwtplatform.dispatch.client.DefaultCallbackDispatchRequest;
+import com.gwtplatform.dispatch.client.DelagatingCallbackDispatchRequest;
+import com.gwtplatform.dispatch.client.actionhandler.AbstractClientActionHandler;
+import com.gwtplatform.dispatch.client.actionhandler.ExecuteCommand;
+import com.gwtplatform.dispatch.client.actionhandler.UndoCommand;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * A caching client action handler that serves stale results while it revalidates them.
+ * <p />
+ * A cached result younger than the soft time to live is served as is. Once it's older, it's still served right away,
+ * but the action is also sent to the server through the {@link ExecuteCommand}. When the fresh result comes back it
+ * replaces the cached one and, if it isn't {@code equal} to what was served, a {@link ResultRefreshedEvent} is fired
+ * so that the presenters showing the stale result can update. A result older than the hard time to live isn't served
+ * and the caller waits for the server, as with an empty cache.
+ * <p />
+ * Equal actions sent while one is in flight share its round trip. The {@link Cache} must keep entries for at least the
+ * hard time to live.
+ *
+ * @param <A> The type of the action extending {@link Action}.
+ * @param <R> The type of the result extending {@link Result}.
+ */
+public class StaleWhileRevalidateCachingHandler<A extends Action<R>, R extends Result>
+    extends AbstractClientActionHandler<A, R> {
+
+  private final Cache cache;
+  private final EventBus eventBus;
+  private final long softTimeToLiveMs;
+  private final long hardTimeToLiveMs;
+
+  private final HashMap<A, List<CallbackDispatchRequest<R>>> inFlight = new HashMap<A, List<CallbackDispatchRequest<R>>>();
+
+  /**
+   * @param actionType The class of the cached actions.
+   * @param cache The {@link Cache} holding the results.
+   * @param eventBus The {@link EventBus} on which {@link ResultRefreshedEvent}s are fired.
+   * @param softTimeToLiveMs The age after which a cached result is refreshed in the background.
+   * @param hardTimeToLiveMs The age after which a cached result isn't served anymore.
+   */
+  public StaleWhileRevalidateCachingHandler(Class<A> actionType, Cache cache, EventBus eventBus,
+      long softTimeToLiveMs, long hardTimeToLiveMs) {
+    super(actionType);
+    if (softTimeToLiveMs > hardTimeToLiveMs) {
+      throw new IllegalArgumentException("softTimeToLiveMs can't be greater than hardTimeToLiveMs");
+    }
+    this.cache = cache;
+    this.eventBus = eventBus;
+    this.softTimeToLiveMs = softTimeToLiveMs;
+    this.hardTimeToLiveMs = hardTimeToLiveMs;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public DispatchRequest execute(A action, AsyncCallback<R> resultCallback, ExecuteCommand<A, R> executeCommand) {
+    Object cached = cache.get(action);
+    long lastUpdateTime = cache.getLastUpateTime(action);
+
+    if (cached != null && lastUpdateTime >= 0) {
+      long age = currentTimeMillis() - lastUpdateTime;
+      if (age < hardTimeToLiveMs) {
+        if (age >= softTimeToLiveMs) {
+          // Sent before calling back, as the caller could cancel its request from the callback.
+          fetch(action, (R) cached, null, executeCommand);
+        }
+        resultCallback.onSuccess((R) cached);
+        return new CompletedDispatchRequest();
+      }
+      cache.remove(action);
+    }
+
+    return fetch(action, null, resultCallback, executeCommand);
+  }
+
+  @Override
+  public DispatchRequest undo(A action, R result, AsyncCallback<Void> callback, UndoCommand<A, R> undoCommand) {
+    cache.remove(action);
+    return undoCommand.undo(action, result, callback);
+  }
+
+  /**
+   * @return The current time in milliseconds, comparable to {@link Cache#getLastUpateTime(Object)}. Tests may
+   *         override it.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Sends the action, unless an equal one is already in flight.
+   *
+   * @param previousResult The stale result being refreshed, or {@code null} on a miss.
+   * @param resultCallback The callback of the caller waiting on the server, or {@code null} for a refresh.
+   * @return The {@link DispatchRequest} of the caller, or {@code null} for a refresh.
+   */
+  private DispatchRequest fetch(final A action, final R previousResult, AsyncCallback<R> resultCallback,
+      ExecuteCommand<A, R> executeCommand) {
+    CallbackDispatchRequest<R> callbackRequest = resultCallback == null ? null
+        : new DefaultCallbackDispatchRequest<R>(resultCallback);
+
+    List<CallbackDispatchRequest<R>> waiting = inFlight.get(action);
+    if (waiting != null) {
+      if (callbackRequest != null) {
+        waiting.add(callbackRequest);
+      }
+      return callbackRequest;
+    }
+
+    final List<CallbackDispatchRequest<R>> newWaiting = new ArrayList<CallbackDispatchRequest<R>>();
+    if (callbackRequest != null) {
+      newWaiting.add(callbackRequest);
+    }
+    inFlight.put(action, newWaiting);
+
+    DispatchRequest request = executeCommand.execute(action, new AsyncCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        complete(action, newWaiting);
+        cache.put(action, result);
+
+        if (previousResult != null && !previousResult.equals(result)) {
+          eventBus.fireEventFromSource(new ResultRefreshedEvent(action, previousResult, result), action);
+        }
+
+        for (CallbackDispatchRequest<R> callback : newWaiting) {
+          if (callback.isPending()) {
+            callback.onSuccess(result);
+          }
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        // A failed refresh leaves the stale result in the cache until its hard time to live.
+        complete(action, newWaiting);
+        for (CallbackDispatchRequest<R> callback : newWaiting) {
+          if (callback.isPending()) {
+            callback.onFailure(caught);
+          }
+        }
+      }
+    });
+
+    if (request == null) {
+      // The dispatch request was cancelled before the action could be sent.
+      complete(action, newWaiting);
+      return callbackRequest;
+    }
+    return callbackRequest == null ? null : new SharedDispatchRequest(action, newWaiting, request, callbackRequest);
+  }
+
+  /**
+   * Stops sharing a round trip with the actions executed from now on.
+   */
+  private void complete(A action, List<CallbackDispatchRequest<R>> waiting) {
+    if (inFlight.get(action) == waiting) {
+      inFlight.remove(action);
+    }
+  }
+
+  /**
+   * The {@link DispatchRequest} of the caller that sent the action. Cancelling it only cancels the round trip once no
+   * other caller waits on it.
+   */
+  private class SharedDispatchRequest extends DelagatingCallbackDispatchRequest<R> {
+    private final A action;
+    private final List<CallbackDispatchRequest<R>> waiting;
+    private final CallbackDispatchRequest<R> callbackRequest;
+
+    SharedDispatchRequest(A action, List<CallbackDispatchRequest<R>> waiting, DispatchRequest request,
+        CallbackDispatchRequest<R> callbackRequest) {
+      super(request, callbackRequest);
+      this.action = action;
+      this.waiting = waiting;
+      this.callbackRequest = callbackRequest;
+    }
+
+    @Override
+    public void cancel() {
+      if (!callbackRequest.isPending()) {
+        return;
+      }
+      callbackRequest.cancel();
+      for (CallbackDispatchRequest<R> callback : waiting) {
+        if (callback.isPending()) {
+          return;
+        }
+      }
+      complete(action, waiting);
+      super.cancel();
+    }
+
+    @Override
+    public boolean isPending() {
+      return callbackRequest.isPending() && super.isPending();
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+/**
+ * Turns the keys and values of a {@link PersistentCacheImpl} into strings that can be kept in Web Storage, and back.
+ * GWT doesn't offer a client-side serializer able to read what it writes, so the encoding is up to the application:
+ * JSON, AutoBeans, or the fields of a {@code @GenDispatch} result joined together are all fine.
+ */
+public interface StorageCodec {
+
+  /**
+   * Encodes the key of an entry. The encoding must be stable across page loads and unique per key.
+   *
+   * @param key The key, usually an {@link com.gwtplatform.dispatch.shared.Action Action}.
+   * @return The encoded key, or {@code null} if entries with this key shouldn't be persisted.
+   */
+  String encodeKey(Object key);
+
+  /**
+   * @param value The value, usually a {@link com.gwtplatform.dispatch.shared.Result Result}.
+   * @return The encoded value, or {@code null} if this value shouldn't be persisted.
+   */
+  String encodeValue(Object value);
+
+  /**
+   * @param key The key the value was stored with.
+   * @param encodedValue A value returned by {@link #encodeValue(Object)}.
+   * @return The decoded value.
+   */
+  Object decodeValue(Object key, String encodedValue);
+}
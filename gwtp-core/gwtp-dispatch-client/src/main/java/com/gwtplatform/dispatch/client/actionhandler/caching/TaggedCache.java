@@ -0,0 +1,257 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.gwtplatform.dispatch.shared.HasCacheTags;
+
+/**
+ * A {@link Cache} decorator that indexes its entries by tag, so that all the entries carrying a tag can be removed in
+ * one call to {@link #invalidate(String...)}. The tags of an entry are taken from its key when the key implements
+ * {@link HasCacheTags}, which is the case of the actions generated with
+ * {@code @GenDispatch(cacheTags = ...)}, or given explicitly to {@link #put(Object, Object, String...)}. Entries are
+ * also indexed by the class of their key, so that {@link #invalidateClass(String)} can evict every result of an action
+ * class.
+ * <p />
+ * The index is made of hash maps, so invalidating a tag costs time proportional to the number of entries carrying
+ * it, not to the size of the cache. Entries that the wrapped cache drops on its own (expiry, size limits) are removed
+ * from the index when they are next looked up or invalidated, and by a sweep that runs whenever the index has doubled
+ * since the previous one.
+ */
+public class TaggedCache implements Cache {
+  private static final String[] NO_TAGS = new String[0];
+  private static final int MIN_SWEEP_SIZE = 64;
+
+  private final Cache cache;
+  private final Map<String, Set<Object>> keysByTag = new HashMap<String, Set<Object>>();
+  private final Map<String, Set<Object>> keysByClass = new HashMap<String, Set<Object>>();
+  private final Map<Object, String[]> tagsByKey = new HashMap<Object, String[]>();
+  private int sweepSize = MIN_SWEEP_SIZE;
+
+  /**
+   * @param cache The cache holding the entries.
+   * @param registry The registry this cache is registered with, or {@code null}.
+   */
+  public TaggedCache(Cache cache, CacheTagRegistry registry) {
+    this.cache = cache;
+    if (registry != null) {
+      registry.register(this);
+    }
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    put(key, value, tagsOf(key));
+  }
+
+  /**
+   * Puts the key-value pair in the cache and tags it.
+   *
+   * @param key The key for the entry to be cached
+   * @param value The corresponding value
+   * @param tags The tags of the entry, replacing any previous ones.
+   */
+  public void put(Object key, Object value, String... tags) {
+    cache.put(key, value);
+    unindex(key);
+    index(key, tags == null ? NO_TAGS : tags);
+  }
+
+  @Override
+  public Object get(Object key) {
+    Object value = cache.get(key);
+    if (value == null) {
+      unindex(key);
+    }
+    return value;
+  }
+
+  @Override
+  public void remove(Object key) {
+    cache.remove(key);
+    unindex(key);
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+    keysByTag.clear();
+    keysByClass.clear();
+    tagsByKey.clear();
+    sweepSize = MIN_SWEEP_SIZE;
+  }
+
+  @Override
+  public long getLastUpateTime(Object key) {
+    return cache.getLastUpateTime(key);
+  }
+
+  @Override
+  public long getAutoExpireTimeInMs() {
+    return cache.getAutoExpireTimeInMs();
+  }
+
+  @Override
+  public void setAutoExpireTimeInMs(long autoExpireTimeInMs) {
+    cache.setAutoExpireTimeInMs(autoExpireTimeInMs);
+  }
+
+  /**
+   * Removes every entry carrying any of the tags.
+   *
+   * @param tags The tags to invalidate.
+   */
+  public void invalidate(String... tags) {
+    for (String tag : tags) {
+      Set<Object> keys = keysByTag.get(tag);
+      if (keys == null) {
+        continue;
+      }
+
+      for (Object key : new ArrayList<Object>(keys)) {
+        remove(key);
+      }
+    }
+  }
+
+  /**
+   * Removes every entry carrying the tag whose key is an instance of a class.
+   *
+   * @param className The name of the class of the keys, as returned by {@link Class#getName()}.
+   * @param tag The tag to invalidate.
+   */
+  public void invalidate(String className, String tag) {
+    Set<Object> keys = keysByTag.get(tag);
+    if (keys == null) {
+      return;
+    }
+
+    for (Object key : new ArrayList<Object>(keys)) {
+      if (key.getClass().getName().equals(className)) {
+        remove(key);
+      }
+    }
+  }
+
+  /**
+   * Removes every entry whose key is an instance of a class.
+   *
+   * @param className The name of the class of the keys, as returned by {@link Class#getName()}.
+   */
+  public void invalidateClass(String className) {
+    Set<Object> keys = keysByClass.get(className);
+    if (keys == null) {
+      return;
+    }
+
+    for (Object key : new ArrayList<Object>(keys)) {
+      remove(key);
+    }
+  }
+
+  /**
+   * Returns the number of entries in the index.
+   *
+   * @return The number of indexed keys.
+   */
+  public int getIndexedKeyCount() {
+    return tagsByKey.size();
+  }
+
+  /**
+   * Returns the cache wrapped by this one.
+   *
+   * @return The underlying {@link Cache}.
+   */
+  public Cache getCache() {
+    return cache;
+  }
+
+  private String[] tagsOf(Object key) {
+    if (key instanceof HasCacheTags) {
+      String[] tags = ((HasCacheTags) key).getCacheTags();
+      return tags == null ? NO_TAGS : tags;
+    }
+    return NO_TAGS;
+  }
+
+  private void index(Object key, String[] tags) {
+    tagsByKey.put(key, tags);
+    add(keysByClass, key.getClass().getName(), key);
+    for (String tag : tags) {
+      add(keysByTag, tag, key);
+    }
+
+    if (tagsByKey.size() >= sweepSize) {
+      sweep();
+    }
+  }
+
+  private void unindex(Object key) {
+    String[] tags = tagsByKey.remove(key);
+    if (tags == null) {
+      return;
+    }
+
+    remove(keysByClass, key.getClass().getName(), key);
+    for (String tag : tags) {
+      remove(keysByTag, tag, key);
+    }
+  }
+
+  private static void add(Map<String, Set<Object>> index, String name, Object key) {
+    Set<Object> keys = index.get(name);
+    if (keys == null) {
+      keys = new HashSet<Object>();
+      index.put(name, keys);
+    }
+    keys.add(key);
+  }
+
+  private static void remove(Map<String, Set<Object>> index, String name, Object key) {
+    Set<Object> keys = index.get(name);
+    if (keys != null) {
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        index.remove(name);
+      }
+    }
+  }
+
+  /**
+   * Drops the keys the wrapped cache no longer holds, so the index can't outgrow a bounded cache.
+   */
+  private void sweep() {
+    List<Object> gone = new ArrayList<Object>();
+    for (Object key : tagsByKey.keySet()) {
+      if (cache.getLastUpateTime(key) == -1) {
+        gone.add(key);
+      }
+    }
+    for (Object key : gone) {
+      unindex(key);
+    }
+
+    sweepSize = Math.max(MIN_SWEEP_SIZE, tagsByKey.size() * 2);
+  }
+}
@@ -19,12 +19,15 @@ package com.gwtplatform.dispatch.client.gin;
 import com.google.gwt.inject.client.AbstractGinModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.gwtplatform.dispatch.client.DeduplicatingDispatchAsync;
 import com.gwtplatform.dispatch.client.DefaultDispatchAsync;
 import com.gwtplatform.dispatch.client.DefaultExceptionHandler;
 import com.gwtplatform.dispatch.client.DefaultSecurityCookieAccessor;
 import com.gwtplatform.dispatch.client.ExceptionHandler;
+import com.gwtplatform.dispatch.client.WebSocketDispatchAsync;
 import com.gwtplatform.dispatch.client.actionhandler.ClientActionHandlerRegistry;
 import com.gwtplatform.dispatch.client.actionhandler.DefaultClientActionHandlerRegistry;
+import com.gwtplatform.dispatch.client.actionhandler.caching.CacheTagRegistry;
 import com.gwtplatform.dispatch.shared.DispatchAsync;
 import com.gwtplatform.dispatch.shared.SecurityCookieAccessor;
 
@@ -67,6 +70,12 @@ public class DispatchAsyncModule extends AbstractGinModule {
   protected final Class<? extends ExceptionHandler> exceptionHandlerType;
   protected final Class<? extends SecurityCookieAccessor> sessionAccessorType;
   protected final Class<? extends ClientActionHandlerRegistry> clientActionHandlerRegistryType;
+  protected final boolean batchRequests;
+  protected final int maxRequestsPerService;
+  protected final boolean deduplicateRequests;
+  protected final String webSocketUrl;
+
+  private CacheTagRegistry cacheTagRegistry;
 
   /**
    * A {@link DispatchAsyncModule} builder.
@@ -82,6 +91,10 @@ public class DispatchAsyncModule extends AbstractGinModule {
     protected Class<? extends ExceptionHandler> exceptionHandlerType = DefaultExceptionHandler.class;
     protected Class<? extends SecurityCookieAccessor> sessionAccessorType = DefaultSecurityCookieAccessor.class;
     protected Class<? extends ClientActionHandlerRegistry> clientActionHandlerRegistryType = DefaultClientActionHandlerRegistry.class;
+    protected boolean batchRequests;
+    protected int maxRequestsPerService;
+    protected boolean deduplicateRequests = true;
+    protected String webSocketUrl;
 
     /**
      * Constructs {@link DispatchAsyncModule} builder.
@@ -125,6 +138,63 @@ public class DispatchAsyncModule extends AbstractGinModule {
       return this;
     }
 
+    /**
+     * Send the actions executed during the same browser tick in a single
+     * request. Off by default. The servlet must implement
+     * {@link com.gwtplatform.dispatch.shared.BatchDispatchService BatchDispatchService},
+     * as the ones provided by GWTP do.
+     *
+     * @param batchRequests {@code true} to batch the requests.
+     * @return a {@link Builder} object.
+     */
+    public Builder batchRequests(boolean batchRequests) {
+      this.batchRequests = batchRequests;
+      return this;
+    }
+
+    /**
+     * Limit the number of requests in flight to each service. Requests over
+     * the limit are queued and sent by
+     * {@link com.gwtplatform.dispatch.shared.DispatchPriority DispatchPriority}.
+     * Unlimited by default.
+     *
+     * @param maxRequestsPerService The maximum number of requests in flight,
+     *          or {@code 0} for no limit.
+     * @return a {@link Builder} object.
+     */
+    public Builder maxRequestsPerService(int maxRequestsPerService) {
+      this.maxRequestsPerService = maxRequestsPerService;
+      return this;
+    }
+
+    /**
+     * Share a single request between equal
+     * {@link com.gwtplatform.dispatch.shared.SideEffectFree SideEffectFree}
+     * actions executed while one of them is in flight. On by default.
+     *
+     * @param deduplicateRequests {@code false} to send every action.
+     * @return a {@link Builder} object.
+     * @see DeduplicatingDispatchAsync
+     */
+    public Builder deduplicateRequests(boolean deduplicateRequests) {
+      this.deduplicateRequests = deduplicateRequests;
+      return this;
+    }
+
+    /**
+     * Send every action over a single WebSocket, see
+     * {@link WebSocketDispatchAsync}. Batching and the limit of requests per
+     * service don't apply then. Off by default.
+     *
+     * @param webSocketUrl The URL of the socket, {@code ws:}, {@code wss:} or
+     *          relative to the module base URL, or {@code null} to use HTTP.
+     * @return a {@link Builder} object.
+     */
+    public Builder webSocketUrl(String webSocketUrl) {
+      this.webSocketUrl = webSocketUrl;
+      return this;
+    }
+
     /**
      * Build the {@link DispatchAsyncModule}.
      * @return The built {@link DispatchAsyncModule}.
@@ -138,6 +208,10 @@ public class DispatchAsyncModule extends AbstractGinModule {
     this.exceptionHandlerType = builder.exceptionHandlerType;
     this.sessionAccessorType = builder.sessionAccessorType;
     this.clientActionHandlerRegistryType = builder.clientActionHandlerRegistryType;
+    this.batchRequests = builder.batchRequests;
+    this.maxRequestsPerService = builder.maxRequestsPerService;
+    this.deduplicateRequests = builder.deduplicateRequests;
+    this.webSocketUrl = builder.webSocketUrl;
   }
 
   public DispatchAsyncModule() {
@@ -179,15 +253,45 @@ public class DispatchAsyncModule extends AbstractGinModule {
     bind(ExceptionHandler.class).to(exceptionHandlerType);
     bind(SecurityCookieAccessor.class).to(sessionAccessorType);
     bind(ClientActionHandlerRegistry.class).to(clientActionHandlerRegistryType).asEagerSingleton();
+    bind(CacheTagRegistry.class).in(Singleton.class);
   }
 
   @Provides
   @Singleton
+  protected DispatchAsync provideDispatchAsync(
+      ExceptionHandler exceptionHandler,
+      SecurityCookieAccessor secureSessionAccessor,
+      ClientActionHandlerRegistry registry,
+      CacheTagRegistry cacheTagRegistry) {
+    this.cacheTagRegistry = cacheTagRegistry;
+    return provideDispatchAsync(exceptionHandler, secureSessionAccessor, registry);
+  }
+
+  /**
+   * Creates the {@link DispatchAsync} configured by the {@link Builder}.
+   * Override it to provide your own implementation.
+   *
+   * @param exceptionHandler The {@link ExceptionHandler}.
+   * @param secureSessionAccessor The {@link SecurityCookieAccessor}.
+   * @param registry The {@link ClientActionHandlerRegistry}.
+   * @return The {@link DispatchAsync}.
+   */
   protected DispatchAsync provideDispatchAsync(
       ExceptionHandler exceptionHandler,
       SecurityCookieAccessor secureSessionAccessor,
       ClientActionHandlerRegistry registry) {
-    return new DefaultDispatchAsync(exceptionHandler, secureSessionAccessor,
-        registry);
+    DispatchAsync dispatchAsync;
+    if (webSocketUrl != null) {
+      dispatchAsync = new WebSocketDispatchAsync(exceptionHandler,
+          secureSessionAccessor, registry, cacheTagRegistry, webSocketUrl);
+    } else {
+      dispatchAsync = new DefaultDispatchAsync(exceptionHandler,
+          secureSessionAccessor, registry, batchRequests, maxRequestsPerService,
+          cacheTagRegistry);
+    }
+    if (deduplicateRequests) {
+      dispatchAsync = new DeduplicatingDispatchAsync(dispatchAsync);
+    }
+    return dispatchAsync;
   }
 }
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.topic;
+
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Receives the {@link Result}s published to a topic, see {@link TopicSubscriber}.
+ */
+public interface TopicHandler {
+
+  /**
+   * Called with the latest result published to the topic since the previous call.
+   *
+   * @param topic The topic.
+   * @param result The {@link Result}.
+   */
+  void onMessage(String topic, Result result);
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.topic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+import com.gwtplatform.dispatch.shared.DispatchAsync;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SubscribeTopicsAction;
+import com.gwtplatform.dispatch.shared.TopicMessage;
+import com.gwtplatform.dispatch.shared.TopicMessages;
+
+/**
+ * Subscribes to the topics published on the server, see
+ * {@code com.gwtplatform.dispatch.server.atmosphere.TopicPublisher}. All the topics share one connection: a single
+ * {@link SubscribeTopicsAction} is kept in flight to the Atmosphere poll dispatch service, and the next one is sent as
+ * soon as a delivery arrives. Adding or removing a topic sends a new poll with the new set of topics, at the end of
+ * the current browser tick. After a failure, it waits before polling again.
+ * <p />
+ * The poll stays open until the server has something to say, so don't send it through a {@link DispatchAsync} that
+ * batches requests to the poll service or limits the number of requests in flight to it.
+ */
+public class TopicSubscriber {
+  private static final int DEFAULT_RETRY_DELAY_MS = 5000;
+
+  private final DispatchAsync dispatcher;
+  private final String serviceName;
+  private final int retryDelayMs;
+  private final Map<String, List<TopicHandler>> handlers = new HashMap<String, List<TopicHandler>>();
+
+  private DispatchRequest request;
+  private String subscriberId;
+  private long lastSequence = -1;
+  private boolean pollScheduled;
+  private boolean retryScheduled;
+
+  /**
+   * @param dispatcher The {@link DispatchAsync} used to poll the server.
+   * @param serviceName The name of the Atmosphere poll dispatch service.
+   */
+  public TopicSubscriber(DispatchAsync dispatcher, String serviceName) {
+    this(dispatcher, serviceName, DEFAULT_RETRY_DELAY_MS);
+  }
+
+  /**
+   * @param dispatcher The {@link DispatchAsync} used to poll the server.
+   * @param serviceName The name of the Atmosphere poll dispatch service.
+   * @param retryDelayMs The delay before polling again after a failure, in milliseconds.
+   */
+  public TopicSubscriber(DispatchAsync dispatcher, String serviceName, int retryDelayMs) {
+    this.dispatcher = dispatcher;
+    this.serviceName = serviceName;
+    this.retryDelayMs = retryDelayMs;
+  }
+
+  /**
+   * Subscribes to a topic.
+   *
+   * @param topic The topic.
+   * @param handler Receives the results published to the topic.
+   * @return A {@link HandlerRegistration} that unsubscribes the handler.
+   */
+  public HandlerRegistration subscribe(final String topic, final TopicHandler handler) {
+    List<TopicHandler> topicHandlers = handlers.get(topic);
+    if (topicHandlers == null) {
+      topicHandlers = new ArrayList<TopicHandler>();
+      handlers.put(topic, topicHandlers);
+      schedulePoll();
+    }
+    topicHandlers.add(handler);
+
+    return new HandlerRegistration() {
+      @Override
+      public void removeHandler() {
+        unsubscribe(topic, handler);
+      }
+    };
+  }
+
+  /**
+   * @return {@code true} if subscribed to at least one topic.
+   */
+  public boolean isSubscribed() {
+    return !handlers.isEmpty();
+  }
+
+  private void unsubscribe(String topic, TopicHandler handler) {
+    List<TopicHandler> topicHandlers = handlers.get(topic);
+    if (topicHandlers != null && topicHandlers.remove(handler) && topicHandlers.isEmpty()) {
+      handlers.remove(topic);
+      schedulePoll();
+    }
+  }
+
+  /**
+   * Polls again with the new set of topics, once every change of the current tick has been made.
+   */
+  private void schedulePoll() {
+    if (!pollScheduled) {
+      pollScheduled = true;
+      Scheduler.get().scheduleFinally(new ScheduledCommand() {
+        @Override
+        public void execute() {
+          pollScheduled = false;
+          cancelPoll();
+          if (!retryScheduled) {
+            poll();
+          }
+        }
+      });
+    }
+  }
+
+  private void cancelPoll() {
+    if (request != null) {
+      request.cancel();
+      request = null;
+    }
+  }
+
+  private void poll() {
+    if (handlers.isEmpty()) {
+      return;
+    }
+
+    DispatchRequest sent = dispatcher.execute(
+        new SubscribeTopicsAction(serviceName, subscriberId, lastSequence, handlers.keySet()),
+        new AsyncCallback<TopicMessages>() {
+          @Override
+          public void onSuccess(TopicMessages messages) {
+            request = null;
+            if (messages != null) {
+              subscriberId = messages.getSubscriberId();
+              lastSequence = messages.getSequence();
+              deliver(messages);
+            }
+            poll();
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            request = null;
+            retryLater();
+          }
+        });
+
+    // A client action handler may have answered already, and the callback may have sent the next poll.
+    if (sent.isPending()) {
+      request = sent;
+    }
+  }
+
+  private void deliver(TopicMessages messages) {
+    for (TopicMessage message : messages.getMessages()) {
+      List<TopicHandler> topicHandlers = handlers.get(message.getTopic());
+      if (topicHandlers == null) {
+        continue;
+      }
+
+      Result result = message.getResult();
+      for (TopicHandler handler : new ArrayList<TopicHandler>(topicHandlers)) {
+        handler.onMessage(message.getTopic(), result);
+      }
+    }
+  }
+
+  private void retryLater() {
+    retryScheduled = true;
+    Scheduler.get().scheduleFixedDelay(new RepeatingCommand() {
+      @Override
+      public boolean execute() {
+        retryScheduled = false;
+        if (request == null) {
+          poll();
+        }
+        return false;
+      }
+    }, retryDelayMs);
+  }
+}
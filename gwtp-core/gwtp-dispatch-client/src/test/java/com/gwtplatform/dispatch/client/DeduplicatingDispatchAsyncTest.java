@@ -0,0 +1,281 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.DispatchAsync;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SideEffectFree;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for {@link DeduplicatingDispatchAsync}.
+ */
+public class DeduplicatingDispatchAsyncTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class GetFooAction extends UnsecuredActionImpl<FooResult> implements SideEffectFree {
+    private final int id;
+
+    GetFooAction(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof GetFooAction && ((GetFooAction) obj).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+  }
+
+  /**
+   * Equal to any other instance, but not {@link SideEffectFree}.
+   */
+  static class UpdateFooAction extends UnsecuredActionImpl<FooResult> {
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof UpdateFooAction;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+  }
+
+  /**
+   * A request sent by the {@link FakeDispatchAsync}.
+   */
+  static class Sent implements DispatchRequest {
+    final Action<?> action;
+    final AsyncCallback<Object> callback;
+    boolean cancelled;
+
+    Sent(Action<?> action, AsyncCallback<Object> callback) {
+      this.action = action;
+      this.callback = callback;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    @Override
+    public boolean isPending() {
+      return !cancelled;
+    }
+  }
+
+  class FakeDispatchAsync implements DispatchAsync {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public <A extends Action<R>, R extends Result> DispatchRequest execute(A action, AsyncCallback<R> callback) {
+      Sent request = new Sent(action, (AsyncCallback) callback);
+      sent.add(request);
+      if (synchronousResult != null) {
+        callback.onSuccess((R) synchronousResult);
+      }
+      return request;
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> DispatchRequest undo(A action, R result,
+        AsyncCallback<Void> callback) {
+      undone.add(action);
+      return new Sent(action, null);
+    }
+  }
+
+  static class RecordingCallback implements AsyncCallback<FooResult> {
+    FooResult result;
+    Throwable caught;
+    int calls;
+
+    @Override
+    public void onSuccess(FooResult result) {
+      this.result = result;
+      calls++;
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      this.caught = caught;
+      calls++;
+    }
+  }
+
+  private final List<Sent> sent = new ArrayList<Sent>();
+  private final List<Action<?>> undone = new ArrayList<Action<?>>();
+  private FooResult synchronousResult;
+  private final DeduplicatingDispatchAsync dispatchAsync = new DeduplicatingDispatchAsync(new FakeDispatchAsync());
+
+  @Test
+  public void equalSideEffectFreeActionsShouldShareOneRequestAndItsResult() {
+    // Given
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    dispatchAsync.execute(new GetFooAction(1), first);
+    dispatchAsync.execute(new GetFooAction(1), second);
+    FooResult result = new FooResult();
+
+    // When
+    sent.get(0).callback.onSuccess(result);
+
+    // Then
+    assertEquals(1, sent.size());
+    assertSame(result, first.result);
+    assertSame(result, second.result);
+  }
+
+  @Test
+  public void equalSideEffectFreeActionsShouldShareTheFailure() {
+    // Given
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    dispatchAsync.execute(new GetFooAction(1), first);
+    dispatchAsync.execute(new GetFooAction(1), second);
+    Throwable caught = new RuntimeException("failed");
+
+    // When
+    sent.get(0).callback.onFailure(caught);
+
+    // Then
+    assertEquals(1, sent.size());
+    assertSame(caught, first.caught);
+    assertSame(caught, second.caught);
+    assertNull(first.result);
+  }
+
+  @Test
+  public void differentActionsShouldBeSentSeparately() {
+    // When
+    dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+    dispatchAsync.execute(new GetFooAction(2), new RecordingCallback());
+
+    // Then
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void actionsWithoutSideEffectFreeShouldAlwaysBeSent() {
+    // When
+    dispatchAsync.execute(new UpdateFooAction(), new RecordingCallback());
+    dispatchAsync.execute(new UpdateFooAction(), new RecordingCallback());
+
+    // Then
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void actionExecutedAfterCompletionShouldBeSentAgain() {
+    // Given
+    dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+    sent.get(0).callback.onSuccess(new FooResult());
+
+    // When
+    dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+
+    // Then
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void synchronouslyCompletedActionShouldNotBeShared() {
+    // Given
+    synchronousResult = new FooResult();
+    RecordingCallback first = new RecordingCallback();
+    dispatchAsync.execute(new GetFooAction(1), first);
+
+    // When
+    dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+
+    // Then
+    assertSame(synchronousResult, first.result);
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void cancellingOneCallerShouldNotAffectTheOthers() {
+    // Given
+    RecordingCallback cancelledCallback = new RecordingCallback();
+    RecordingCallback otherCallback = new RecordingCallback();
+    DispatchRequest cancelled = dispatchAsync.execute(new GetFooAction(1), cancelledCallback);
+    DispatchRequest other = dispatchAsync.execute(new GetFooAction(1), otherCallback);
+    FooResult result = new FooResult();
+
+    // When
+    cancelled.cancel();
+    sent.get(0).callback.onSuccess(result);
+
+    // Then
+    assertFalse(cancelled.isPending());
+    assertFalse(sent.get(0).cancelled);
+    assertEquals(0, cancelledCallback.calls);
+    assertSame(result, otherCallback.result);
+    assertFalse(other.isPending());
+  }
+
+  @Test
+  public void cancellingEveryCallerShouldCancelTheRequest() {
+    // Given
+    DispatchRequest first = dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+    DispatchRequest second = dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+
+    // When
+    first.cancel();
+    second.cancel();
+
+    // Then
+    assertTrue(sent.get(0).cancelled);
+
+    // When
+    dispatchAsync.execute(new GetFooAction(1), new RecordingCallback());
+
+    // Then
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void undoShouldNeverBeDeduplicated() {
+    // When
+    dispatchAsync.undo(new GetFooAction(1), new FooResult(), null);
+    dispatchAsync.undo(new GetFooAction(1), new FooResult(), null);
+
+    // Then
+    assertEquals(2, undone.size());
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.client.actionhandler.DefaultClientActionHandlerRegistry;
+import com.gwtplatform.dispatch.client.actionhandler.caching.CacheTagRegistry;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.DispatchPriority;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.HasDispatchPriority;
+import com.gwtplatform.dispatch.shared.InvalidatesCacheTags;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SecurityCookieAccessor;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for the request limit and the cache tag invalidation of {@link DefaultDispatchAsync}.
+ */
+public class DefaultDispatchAsyncGwtTestInSuite extends GWTTestCase {
+
+  static class FooResult implements Result {
+  }
+
+  static class FooAction extends UnsecuredActionImpl<FooResult> implements HasDispatchPriority {
+    private final String serviceName;
+    private final DispatchPriority priority;
+
+    FooAction(String serviceName, DispatchPriority priority) {
+      this.serviceName = serviceName;
+      this.priority = priority;
+    }
+
+    @Override
+    public String getServiceName() {
+      return serviceName;
+    }
+
+    @Override
+    public DispatchPriority getDispatchPriority() {
+      return priority;
+    }
+  }
+
+  static class WriteAction extends FooAction implements InvalidatesCacheTags {
+    WriteAction() {
+      super("a", DispatchPriority.INTERACTIVE);
+    }
+
+    @Override
+    public String[] getInvalidatedCacheTags() {
+      return new String[] {"foo"};
+    }
+  }
+
+  /**
+   * Records the invalidated tags instead of evicting caches.
+   */
+  static class RecordingCacheTagRegistry extends CacheTagRegistry {
+    final List<String> invalidated = new ArrayList<String>();
+
+    @Override
+    public void invalidate(String... tags) {
+      for (String tag : tags) {
+        invalidated.add(tag);
+      }
+    }
+  }
+
+  /**
+   * Records the actions instead of sending them.
+   */
+  class RecordingDispatchAsync extends DefaultDispatchAsync {
+    RecordingDispatchAsync(int maxRequestsPerService) {
+      this(maxRequestsPerService, null);
+    }
+
+    RecordingDispatchAsync(int maxRequestsPerService, CacheTagRegistry cacheTagRegistry) {
+      super(null, new SecurityCookieAccessor() {
+        @Override
+        public String getCookieContent() {
+          return null;
+        }
+      }, new DefaultClientActionHandlerRegistry(), false, maxRequestsPerService, cacheTagRegistry);
+    }
+
+    @Override
+    protected DispatchRequest sendUndo(String securityCookie, Action<?> action, Result result,
+        AsyncCallback<Void> callback) {
+      undoCallbacks.add(callback);
+      return null;
+    }
+
+    @Override
+    protected DispatchRequest sendExecute(String securityCookie, Action<?> action,
+        final AsyncCallback<Result> callback) {
+      sent.add(action);
+      callbacks.add(callback);
+      return new DispatchRequest() {
+        @Override
+        public void cancel() {
+          cancelled.add(callback);
+        }
+
+        @Override
+        public boolean isPending() {
+          return !cancelled.contains(callback);
+        }
+      };
+    }
+  }
+
+  static class NoopUndoCallback implements AsyncCallback<Void> {
+    @Override
+    public void onSuccess(Void result) {
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+    }
+  }
+
+  static class NoopCallback implements AsyncCallback<FooResult> {
+    @Override
+    public void onSuccess(FooResult result) {
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+    }
+  }
+
+  private List<Action<?>> sent;
+  private List<AsyncCallback<Result>> callbacks;
+  private List<AsyncCallback<Result>> cancelled;
+  private List<AsyncCallback<Void>> undoCallbacks;
+
+  @Override
+  public String getModuleName() {
+    return "com.gwtplatform.dispatch.DispatchTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    super.gwtSetUp();
+    sent = new ArrayList<Action<?>>();
+    callbacks = new ArrayList<AsyncCallback<Result>>();
+    cancelled = new ArrayList<AsyncCallback<Result>>();
+    undoCallbacks = new ArrayList<AsyncCallback<Void>>();
+  }
+
+  public void testQueuedActionsAreSentByPriority() {
+    // Given
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(1);
+    FooAction busy = new FooAction("a", DispatchPriority.BACKGROUND);
+    FooAction background = new FooAction("a", DispatchPriority.BACKGROUND);
+    FooAction prefetch = new FooAction("a", DispatchPriority.PREFETCH);
+    FooAction interactive = new FooAction("a", DispatchPriority.INTERACTIVE);
+    dispatchAsync.execute(busy, new NoopCallback());
+    dispatchAsync.execute(background, new NoopCallback());
+    dispatchAsync.execute(prefetch, new NoopCallback());
+    dispatchAsync.execute(interactive, new NoopCallback());
+    assertEquals(1, sent.size());
+
+    // When
+    for (int i = 0; i < 3; i++) {
+      callbacks.get(i).onSuccess(new FooResult());
+    }
+
+    // Then
+    assertEquals(4, sent.size());
+    assertSame(busy, sent.get(0));
+    assertSame(interactive, sent.get(1));
+    assertSame(prefetch, sent.get(2));
+    assertSame(background, sent.get(3));
+  }
+
+  public void testLimitAppliesPerService() {
+    // Given
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(1);
+    dispatchAsync.execute(new FooAction("a", DispatchPriority.INTERACTIVE), new NoopCallback());
+    dispatchAsync.execute(new FooAction("a", DispatchPriority.INTERACTIVE), new NoopCallback());
+
+    // When
+    FooAction other = new FooAction("b", DispatchPriority.INTERACTIVE);
+    dispatchAsync.execute(other, new NoopCallback());
+
+    // Then
+    assertEquals(2, sent.size());
+    assertSame(other, sent.get(1));
+  }
+
+  public void testCancelledQueuedActionIsNeverSent() {
+    // Given
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(1);
+    dispatchAsync.execute(new FooAction("a", DispatchPriority.INTERACTIVE), new NoopCallback());
+    DispatchRequest queued = dispatchAsync.execute(new FooAction("a", DispatchPriority.INTERACTIVE),
+        new NoopCallback());
+    FooAction last = new FooAction("a", DispatchPriority.INTERACTIVE);
+    dispatchAsync.execute(last, new NoopCallback());
+
+    // When
+    queued.cancel();
+    callbacks.get(0).onSuccess(new FooResult());
+
+    // Then
+    assertFalse(queued.isPending());
+    assertEquals(2, sent.size());
+    assertSame(last, sent.get(1));
+  }
+
+  public void testUnlimitedDispatchSendsEverythingRightAway() {
+    // Given
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(0);
+
+    // When
+    for (int i = 0; i < 10; i++) {
+      dispatchAsync.execute(new FooAction("a", DispatchPriority.BACKGROUND), new NoopCallback());
+    }
+
+    // Then
+    assertEquals(10, sent.size());
+  }
+
+  public void testExecutedWriteInvalidatesItsTags() {
+    // Given
+    RecordingCacheTagRegistry cacheTagRegistry = new RecordingCacheTagRegistry();
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(0, cacheTagRegistry);
+    dispatchAsync.execute(new WriteAction(), new NoopCallback());
+    assertTrue(cacheTagRegistry.invalidated.isEmpty());
+
+    // When
+    callbacks.get(0).onSuccess(new FooResult());
+
+    // Then
+    assertEquals(1, cacheTagRegistry.invalidated.size());
+    assertEquals("foo", cacheTagRegistry.invalidated.get(0));
+  }
+
+  public void testUndoneWriteInvalidatesItsTags() {
+    // Given
+    RecordingCacheTagRegistry cacheTagRegistry = new RecordingCacheTagRegistry();
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(0, cacheTagRegistry);
+    dispatchAsync.undo(new WriteAction(), new FooResult(), new NoopUndoCallback());
+    assertTrue(cacheTagRegistry.invalidated.isEmpty());
+
+    // When
+    undoCallbacks.get(0).onSuccess(null);
+
+    // Then
+    assertEquals(1, cacheTagRegistry.invalidated.size());
+    assertEquals("foo", cacheTagRegistry.invalidated.get(0));
+  }
+
+  public void testFailedUndoKeepsTheTags() {
+    // Given
+    RecordingCacheTagRegistry cacheTagRegistry = new RecordingCacheTagRegistry();
+    DefaultDispatchAsync dispatchAsync = new RecordingDispatchAsync(0, cacheTagRegistry);
+    dispatchAsync.undo(new WriteAction(), new FooResult(), new NoopUndoCallback());
+
+    // When
+    undoCallbacks.get(0).onFailure(new RuntimeException());
+
+    // Then
+    assertTrue(cacheTagRegistry.invalidated.isEmpty());
+  }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.core.client.testing.StubScheduler;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchDispatchServiceAsync;
+import com.gwtplatform.dispatch.shared.DispatchBatchResult;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for {@link DispatchBatcher}.
+ */
+public class DispatchBatcherTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class FakeRequest extends Request {
+    boolean cancelled;
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+
+  /**
+   * A request sent to the {@link FakeService}.
+   */
+  static class Sent {
+    final String serviceName;
+    final String securityCookie;
+    final List<Action<?>> actions;
+    final AsyncCallback<Result> callback;
+    final AsyncCallback<DispatchBatchResult> batchCallback;
+    final FakeRequest request = new FakeRequest();
+
+    Sent(String serviceName, String securityCookie, List<Action<?>> actions, AsyncCallback<Result> callback,
+        AsyncCallback<DispatchBatchResult> batchCallback) {
+      this.serviceName = serviceName;
+      this.securityCookie = securityCookie;
+      this.actions = actions;
+      this.callback = callback;
+      this.batchCallback = batchCallback;
+    }
+  }
+
+  class FakeService implements BatchDispatchServiceAsync {
+    @Override
+    public Request execute(String cookieSentByRPC, Action<?> action, AsyncCallback<Result> callback) {
+      Sent request = new Sent(serviceName, cookieSentByRPC, Arrays.<Action<?>>asList(action), callback, null);
+      sent.add(request);
+      return request.request;
+    }
+
+    @Override
+    public Request executeBatch(String cookieSentByRPC, Action<?>[] actions,
+        AsyncCallback<DispatchBatchResult> callback) {
+      Sent request = new Sent(serviceName, cookieSentByRPC, Arrays.asList(actions), null, callback);
+      sent.add(request);
+      return request.request;
+    }
+
+    @Override
+    public Request undo(String cookieSentByRPC, Action<?> action, Result result, AsyncCallback<Void> callback) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  static class RecordingCallback implements AsyncCallback<Result> {
+    Result result;
+    Throwable caught;
+    int calls;
+
+    @Override
+    public void onSuccess(Result result) {
+      this.result = result;
+      calls++;
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      this.caught = caught;
+      calls++;
+    }
+  }
+
+  private final StubScheduler scheduler = new StubScheduler();
+  private final List<Sent> sent = new ArrayList<Sent>();
+  private String serviceName;
+  private DispatchBatcher batcher;
+
+  @Before
+  public void setUp() {
+    batcher = new DispatchBatcher(new FakeService(), scheduler) {
+      @Override
+      protected void prepareService(String serviceName) {
+        DispatchBatcherTest.this.serviceName = serviceName;
+      }
+    };
+  }
+
+  @Test
+  public void actionsOfOneTickShouldBeSentInOneBatchPerServiceAndCookie() {
+    // Given
+    FooAction first = new FooAction();
+    FooAction second = new FooAction();
+    FooAction other = new FooAction();
+    FooAction otherCookie = new FooAction();
+    batcher.execute("a", "cookie", first, new RecordingCallback());
+    batcher.execute("b", "cookie", other, new RecordingCallback());
+    batcher.execute("a", "cookie", second, new RecordingCallback());
+    batcher.execute("a", "cookie2", otherCookie, new RecordingCallback());
+    assertTrue(sent.isEmpty());
+    assertEquals(1, scheduler.getScheduledCommands().size());
+
+    // When
+    runDeferredCommands();
+
+    // Then
+    assertEquals(3, sent.size());
+    assertBatch(sent.get(0), "a", "cookie", first, second);
+    assertEquals("b", sent.get(1).serviceName);
+    assertEquals(Arrays.<Action<?>>asList(other), sent.get(1).actions);
+    assertNull(sent.get(1).batchCallback);
+    assertEquals("a", sent.get(2).serviceName);
+    assertEquals("cookie2", sent.get(2).securityCookie);
+  }
+
+  @Test
+  public void nextTickShouldStartANewBatch() {
+    // Given
+    FooAction first = new FooAction();
+    FooAction second = new FooAction();
+    batcher.execute("a", "cookie", first, new RecordingCallback());
+    runDeferredCommands();
+
+    // When
+    batcher.execute("a", "cookie", second, new RecordingCallback());
+    runDeferredCommands();
+
+    // Then
+    assertEquals(2, sent.size());
+    assertEquals(Arrays.<Action<?>>asList(second), sent.get(1).actions);
+  }
+
+  @Test
+  public void cancellingBeforeTheFlushShouldDropTheActionFromTheBatch() {
+    // Given
+    FooAction first = new FooAction();
+    FooAction second = new FooAction();
+    FooAction third = new FooAction();
+    RecordingCallback cancelledCallback = new RecordingCallback();
+    batcher.execute("a", "cookie", first, new RecordingCallback());
+    DispatchRequest request = batcher.execute("a", "cookie", second, cancelledCallback);
+    batcher.execute("a", "cookie", third, new RecordingCallback());
+
+    // When
+    request.cancel();
+    runDeferredCommands();
+
+    // Then
+    assertFalse(request.isPending());
+    assertEquals(1, sent.size());
+    assertBatch(sent.get(0), "a", "cookie", first, third);
+    assertEquals(0, cancelledCallback.calls);
+  }
+
+  @Test
+  public void cancellingEveryActionBeforeTheFlushShouldSendNothing() {
+    // Given
+    DispatchRequest request = batcher.execute("a", "cookie", new FooAction(), new RecordingCallback());
+
+    // When
+    request.cancel();
+    runDeferredCommands();
+
+    // Then
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  public void cancellingAfterTheFlushShouldOnlyDropItsResult() {
+    // Given
+    RecordingCallback cancelledCallback = new RecordingCallback();
+    RecordingCallback otherCallback = new RecordingCallback();
+    DispatchRequest request = batcher.execute("a", "cookie", new FooAction(), cancelledCallback);
+    batcher.execute("a", "cookie", new FooAction(), otherCallback);
+    runDeferredCommands();
+    FooResult result = new FooResult();
+
+    // When
+    request.cancel();
+    sent.get(0).batchCallback.onSuccess(batchResult(result, result));
+
+    // Then
+    assertFalse(sent.get(0).request.cancelled);
+    assertEquals(0, cancelledCallback.calls);
+    assertEquals(1, otherCallback.calls);
+    assertSame(result, otherCallback.result);
+  }
+
+  @Test
+  public void cancellingEveryActionAfterTheFlushShouldCancelTheRequest() {
+    // Given
+    DispatchRequest first = batcher.execute("a", "cookie", new FooAction(), new RecordingCallback());
+    DispatchRequest second = batcher.execute("a", "cookie", new FooAction(), new RecordingCallback());
+    runDeferredCommands();
+
+    // When
+    first.cancel();
+    assertFalse(sent.get(0).request.cancelled);
+    second.cancel();
+
+    // Then
+    assertTrue(sent.get(0).request.cancelled);
+  }
+
+  @Test
+  public void failingActionShouldNotFailTheOthers() {
+    // Given
+    RecordingCallback firstCallback = new RecordingCallback();
+    RecordingCallback secondCallback = new RecordingCallback();
+    RecordingCallback thirdCallback = new RecordingCallback();
+    batcher.execute("a", "cookie", new FooAction(), firstCallback);
+    batcher.execute("a", "cookie", new FooAction(), secondCallback);
+    batcher.execute("a", "cookie", new FooAction(), thirdCallback);
+    runDeferredCommands();
+    FooResult result = new FooResult();
+    ActionException caught = new ActionException("failed");
+    DispatchBatchResult batchResult = batchResult(result, null, result);
+    batchResult.setFailure(1, caught);
+
+    // When
+    sent.get(0).batchCallback.onSuccess(batchResult);
+
+    // Then
+    assertSame(result, firstCallback.result);
+    assertNull(firstCallback.caught);
+    assertSame(caught, secondCallback.caught);
+    assertNull(secondCallback.result);
+    assertSame(result, thirdCallback.result);
+    assertNull(thirdCallback.caught);
+  }
+
+  @Test
+  public void failedBatchRequestShouldFailEveryAction() {
+    // Given
+    RecordingCallback firstCallback = new RecordingCallback();
+    RecordingCallback secondCallback = new RecordingCallback();
+    batcher.execute("a", "cookie", new FooAction(), firstCallback);
+    batcher.execute("a", "cookie", new FooAction(), secondCallback);
+    runDeferredCommands();
+    Throwable caught = new RuntimeException("offline");
+
+    // When
+    sent.get(0).batchCallback.onFailure(caught);
+
+    // Then
+    assertSame(caught, firstCallback.caught);
+    assertSame(caught, secondCallback.caught);
+  }
+
+  /**
+   * Runs the commands deferred so far, the way the browser does at the end of the event loop.
+   */
+  private void runDeferredCommands() {
+    List<ScheduledCommand> commands = new ArrayList<ScheduledCommand>(scheduler.getScheduledCommands());
+    scheduler.getScheduledCommands().clear();
+    for (ScheduledCommand command : commands) {
+      command.execute();
+    }
+  }
+
+  private void assertBatch(Sent request, String serviceName, String securityCookie, Action<?>... actions) {
+    assertEquals(serviceName, request.serviceName);
+    assertEquals(securityCookie, request.securityCookie);
+    assertEquals(Arrays.asList(actions), request.actions);
+    assertNull(request.callback);
+  }
+
+  private DispatchBatchResult batchResult(Result... results) {
+    DispatchBatchResult batchResult = new DispatchBatchResult(results.length);
+    for (int i = 0; i < results.length; i++) {
+      batchResult.setResult(i, results[i]);
+    }
+    return batchResult;
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.gwtplatform.dispatch.shared.DispatchPriority;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+
+/**
+ * Tests for {@link DispatchQueue}.
+ */
+public class DispatchQueueTest {
+
+  /**
+   * A request handed to the transport by the queue.
+   */
+  static class SentRequest implements DispatchRequest {
+    final String name;
+    final AsyncCallback<String> callback;
+    boolean cancelled;
+
+    SentRequest(String name, AsyncCallback<String> callback) {
+      this.name = name;
+      this.callback = callback;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    @Override
+    public boolean isPending() {
+      return !cancelled;
+    }
+  }
+
+  static class RecordingCallback implements AsyncCallback<String> {
+    final List<String> results = new ArrayList<String>();
+
+    @Override
+    public void onSuccess(String result) {
+      results.add(result);
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      results.add("failure");
+    }
+  }
+
+  private final List<SentRequest> sent = new ArrayList<SentRequest>();
+  private final RecordingCallback callback = new RecordingCallback();
+
+  @Test
+  public void requestsUnderTheLimitShouldBeSentRightAway() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(2);
+
+    // When
+    DispatchRequest first = submit(queue, "service", DispatchPriority.BACKGROUND, "first");
+    DispatchRequest second = submit(queue, "service", DispatchPriority.BACKGROUND, "second");
+
+    // Then
+    assertEquals(Arrays.asList("first", "second"), sentNames());
+    assertTrue(first.isPending());
+    assertTrue(second.isPending());
+  }
+
+  @Test
+  public void requestsOverTheLimitShouldWaitForAFreeSlot() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "first");
+    DispatchRequest second = submit(queue, "service", DispatchPriority.INTERACTIVE, "second");
+    assertEquals(Arrays.asList("first"), sentNames());
+    assertTrue(second.isPending());
+
+    // When
+    sent.get(0).callback.onSuccess("first done");
+
+    // Then
+    assertEquals(Arrays.asList("first", "second"), sentNames());
+    assertEquals(Arrays.asList("first done"), callback.results);
+  }
+
+  @Test
+  public void failedRequestShouldAlsoFreeItsSlot() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "first");
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "second");
+
+    // When
+    sent.get(0).callback.onFailure(new RuntimeException());
+
+    // Then
+    assertEquals(Arrays.asList("first", "second"), sentNames());
+    assertEquals(Arrays.asList("failure"), callback.results);
+  }
+
+  @Test
+  public void queuedRequestsShouldBeSentByPriorityThenInOrder() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    submit(queue, "service", DispatchPriority.BACKGROUND, "busy");
+    submit(queue, "service", DispatchPriority.BACKGROUND, "background1");
+    submit(queue, "service", DispatchPriority.PREFETCH, "prefetch");
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "interactive1");
+    submit(queue, "service", DispatchPriority.BACKGROUND, "background2");
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "interactive2");
+
+    // When
+    for (int i = 0; i < 5; i++) {
+      sent.get(i).callback.onSuccess("done");
+    }
+
+    // Then
+    assertEquals(Arrays.asList("busy", "interactive1", "interactive2", "prefetch", "background1", "background2"),
+        sentNames());
+  }
+
+  @Test
+  public void limitShouldApplyToEachServiceSeparately() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    submit(queue, "a", DispatchPriority.INTERACTIVE, "a1");
+    submit(queue, "a", DispatchPriority.INTERACTIVE, "a2");
+
+    // When
+    submit(queue, "b", DispatchPriority.BACKGROUND, "b1");
+
+    // Then
+    assertEquals(Arrays.asList("a1", "b1"), sentNames());
+
+    // When
+    sent.get(1).callback.onSuccess("b1 done");
+
+    // Then
+    assertEquals(Arrays.asList("a1", "b1"), sentNames());
+  }
+
+  @Test
+  public void cancellingAQueuedRequestShouldRemoveItFromTheQueue() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "first");
+    DispatchRequest second = submit(queue, "service", DispatchPriority.INTERACTIVE, "second");
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "third");
+
+    // When
+    second.cancel();
+    sent.get(0).callback.onSuccess("first done");
+
+    // Then
+    assertFalse(second.isPending());
+    assertEquals(Arrays.asList("first", "third"), sentNames());
+    assertEquals(Arrays.asList("first done"), callback.results);
+  }
+
+  @Test
+  public void cancellingASentRequestShouldCancelItAndFreeItsSlot() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    DispatchRequest first = submit(queue, "service", DispatchPriority.INTERACTIVE, "first");
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "second");
+
+    // When
+    first.cancel();
+
+    // Then
+    assertFalse(first.isPending());
+    assertTrue(sent.get(0).cancelled);
+    assertEquals(Arrays.asList("first", "second"), sentNames());
+
+    // When
+    sent.get(0).callback.onSuccess("late");
+
+    // Then
+    assertTrue(callback.results.isEmpty());
+  }
+
+  @Test
+  public void synchronousCompletionShouldFreeTheSlotRightAway() {
+    // Given
+    DispatchQueue queue = new DispatchQueue(1);
+    queue.submit("service", DispatchPriority.INTERACTIVE, callback, new DispatchQueue.Sender<String>() {
+      @Override
+      public DispatchRequest send(AsyncCallback<String> queuedCallback) {
+        queuedCallback.onSuccess("cached");
+        return new SentRequest("cached", queuedCallback);
+      }
+    });
+
+    // When
+    submit(queue, "service", DispatchPriority.INTERACTIVE, "next");
+
+    // Then
+    assertEquals(Arrays.asList("next"), sentNames());
+    assertEquals(Arrays.asList("cached"), callback.results);
+  }
+
+  private DispatchRequest submit(DispatchQueue queue, String serviceName, DispatchPriority priority,
+      final String name) {
+    return queue.submit(serviceName, priority, callback, new DispatchQueue.Sender<String>() {
+      @Override
+      public DispatchRequest send(AsyncCallback<String> queuedCallback) {
+        SentRequest request = new SentRequest(name, queuedCallback);
+        sent.add(request);
+        return request;
+      }
+    });
+  }
+
+  private List<String> sentNames() {
+    List<String> names = new ArrayList<String>();
+    for (SentRequest request : sent) {
+      names.add(request.name);
+    }
+    return names;
+  }
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gwt.core.client.testing.StubScheduler;
+
+/**
+ * Tests for {@link BoundedCacheImpl}.
+ */
+public class BoundedCacheImplTest {
+
+  /**
+   * Keeps the fixed delay and the incremental commands apart, so that the tests run them explicitly.
+   */
+  static class RecordingScheduler extends StubScheduler {
+    final List<RepeatingCommand> fixedDelayCommands = new ArrayList<RepeatingCommand>();
+    final List<RepeatingCommand> incrementalCommands = new ArrayList<RepeatingCommand>();
+    int lastDelayMs;
+
+    @Override
+    public void scheduleFixedDelay(RepeatingCommand cmd, int delayMs) {
+      fixedDelayCommands.add(cmd);
+      lastDelayMs = delayMs;
+    }
+
+    @Override
+    public void scheduleIncremental(RepeatingCommand cmd) {
+      incrementalCommands.add(cmd);
+    }
+
+    boolean runFixedDelay() {
+      return run(fixedDelayCommands);
+    }
+
+    boolean runIncremental() {
+      return run(incrementalCommands);
+    }
+
+    private boolean run(List<RepeatingCommand> commands) {
+      assertEquals(1, commands.size());
+      if (commands.get(0).execute()) {
+        return true;
+      }
+      commands.clear();
+      return false;
+    }
+  }
+
+  private final RecordingScheduler scheduler = new RecordingScheduler();
+  private long now = 1000;
+
+  @Test
+  public void leastRecentlyUsedEntryShouldBeEvictedFirst() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().maximumSize(3));
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.put("c", "3");
+    cache.get("a");
+
+    // When
+    cache.put("d", "4");
+
+    // Then
+    assertEquals(3, cache.size());
+    assertNull(cache.get("b"));
+    assertEquals("1", cache.get("a"));
+    assertEquals("3", cache.get("c"));
+    assertEquals("4", cache.get("d"));
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  public void replacingAnEntryShouldMakeItTheMostRecentlyUsed() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().maximumSize(2));
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.put("a", "3");
+
+    // When
+    cache.put("c", "4");
+
+    // Then
+    assertEquals("3", cache.get("a"));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void weightShouldBoundTheCacheInsteadOfTheNumberOfEntries() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().maximumSize(1).maximumWeight(10,
+        new BoundedCacheImpl.SizeEstimator() {
+          @Override
+          public int estimateSize(Object key, Object value) {
+            return ((String) value).length();
+          }
+        }));
+    cache.put("a", "1234");
+    cache.put("b", "1234");
+    assertEquals(8, cache.getWeight());
+    assertEquals(2, cache.size());
+
+    // When
+    cache.put("c", "123");
+
+    // Then
+    assertNull(cache.get("a"));
+    assertEquals("1234", cache.get("b"));
+    assertEquals("123", cache.get("c"));
+    assertEquals(7, cache.getWeight());
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  public void entryHeavierThanTheBoundShouldReplaceNothing() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().maximumWeight(10,
+        new BoundedCacheImpl.SizeEstimator() {
+          @Override
+          public int estimateSize(Object key, Object value) {
+            return ((String) value).length();
+          }
+        }));
+    cache.put("a", "1234");
+    cache.put("b", "1234");
+
+    // When
+    cache.put("a", "12345678901");
+
+    // Then
+    assertNull(cache.get("a"));
+    assertEquals("1234", cache.get("b"));
+    assertEquals(4, cache.getWeight());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  public void entriesShouldExpireAfterTheDefaultTimeToLive() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().autoExpireTimeInMs(100));
+    cache.put("a", "1");
+
+    // When
+    now += 100;
+
+    // Then
+    assertEquals("1", cache.get("a"));
+
+    // When
+    now += 1;
+
+    // Then
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getExpirationCount());
+  }
+
+  @Test
+  public void changingTheDefaultTimeToLiveShouldApplyToExistingEntries() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder());
+    cache.put("a", "1");
+    cache.put("b", "2", 1000);
+    now += 50;
+
+    // When
+    cache.setAutoExpireTimeInMs(10);
+
+    // Then
+    assertNull(cache.get("a"));
+    assertEquals("2", cache.get("b"));
+  }
+
+  @Test
+  public void perEntryTimeToLiveShouldOverrideTheDefault() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().autoExpireTimeInMs(100));
+    cache.put("short", "1", 10);
+    cache.put("forever", "2", -1);
+    cache.put("default", "3");
+
+    // When
+    now += 50;
+
+    // Then
+    assertNull(cache.get("short"));
+    assertEquals("2", cache.get("forever"));
+    assertEquals("3", cache.get("default"));
+
+    // When
+    now += 1000000;
+
+    // Then
+    assertEquals("2", cache.get("forever"));
+    assertNull(cache.get("default"));
+  }
+
+  @Test
+  public void zeroTimeToLiveShouldRemoveTheEntry() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder());
+    cache.put("a", "1");
+
+    // When
+    cache.put("a", "2", 0);
+
+    // Then
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void lastUpdateTimeShouldBeThePutTime() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder());
+    cache.put("a", "1");
+    now += 10;
+
+    // When
+    cache.get("a");
+
+    // Then
+    assertEquals(1000, cache.getLastUpateTime("a"));
+    assertEquals(-1, cache.getLastUpateTime("b"));
+  }
+
+  @Test
+  public void statisticsShouldCountHitsAndMisses() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().autoExpireTimeInMs(10));
+    cache.put("a", "1");
+    cache.put("b", "2");
+
+    // When
+    cache.get("a");
+    cache.get("a");
+    cache.get("c");
+    now += 20;
+    cache.get("b");
+
+    // Then
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1, cache.getExpirationCount());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  public void sweepShouldRemoveExpiredEntriesAFewAtATime() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().autoExpireTimeInMs(10).sweepWith(scheduler, 500));
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "value");
+    }
+    cache.put("fresh", "value", -1);
+    assertEquals(500, scheduler.lastDelayMs);
+    assertTrue(scheduler.incrementalCommands.isEmpty());
+    now += 20;
+
+    // When
+    assertTrue(scheduler.runFixedDelay());
+
+    // Then
+    assertEquals(101, cache.size());
+
+    // When
+    assertTrue(scheduler.runIncremental());
+
+    // Then
+    assertEquals(37, cache.size());
+
+    // When
+    assertFalse(scheduler.runIncremental());
+
+    // Then
+    assertEquals(1, cache.size());
+    assertEquals("value", cache.get("fresh"));
+    assertEquals(100, cache.getExpirationCount());
+  }
+
+  @Test
+  public void sweepShouldNotStartWhileThePreviousOneIsRunning() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().autoExpireTimeInMs(10).sweepWith(scheduler));
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "value");
+    }
+    assertTrue(scheduler.runFixedDelay());
+
+    // When
+    assertTrue(scheduler.runFixedDelay());
+
+    // Then
+    assertEquals(1, scheduler.incrementalCommands.size());
+  }
+
+  @Test
+  public void sweepCursorShouldSurviveTheRemovalOfItsEntry() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().autoExpireTimeInMs(10).sweepWith(scheduler));
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "value");
+    }
+    scheduler.runFixedDelay();
+    scheduler.runIncremental();
+    now += 20;
+
+    // When
+    cache.remove(64);
+    cache.get(65);
+    scheduler.runIncremental();
+
+    // Then
+    assertEquals(64, cache.size());
+    assertEquals(35, cache.getExpirationCount());
+  }
+
+  @Test
+  public void sweepsShouldStopOnceTheCacheIsEmptyAndRestartOnPut() {
+    // Given
+    BoundedCacheImpl cache = create(new BoundedCacheImpl.Builder().sweepWith(scheduler));
+    cache.put("a", "1");
+    cache.clear();
+
+    // When
+    boolean again = scheduler.runFixedDelay();
+
+    // Then
+    assertFalse(again);
+    assertTrue(scheduler.fixedDelayCommands.isEmpty());
+
+    // When
+    cache.put("b", "2");
+
+    // Then
+    assertEquals(1, scheduler.fixedDelayCommands.size());
+  }
+
+  private BoundedCacheImpl create(BoundedCacheImpl.Builder builder) {
+    return new BoundedCacheImpl(builder) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+  }
+}
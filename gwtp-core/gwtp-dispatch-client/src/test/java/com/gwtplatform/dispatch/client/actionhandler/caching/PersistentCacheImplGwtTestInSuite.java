@@ -0,0 +1,242 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.storage.client.Storage;
+
+/**
+ * Tests for {@link PersistentCacheImpl}, against the local storage of the browser.
+ */
+public class PersistentCacheImplGwtTestInSuite extends GWTTestCase {
+
+  private static final String NAMESPACE = "gwtp-test";
+
+  /**
+   * Stores strings as they are and counts the values it decodes.
+   */
+  static class CountingCodec implements StorageCodec {
+    int decodeCount;
+
+    @Override
+    public String encodeKey(Object key) {
+      return (String) key;
+    }
+
+    @Override
+    public String encodeValue(Object value) {
+      return (String) value;
+    }
+
+    @Override
+    public Object decodeValue(Object key, String encodedValue) {
+      decodeCount++;
+      return encodedValue;
+    }
+  }
+
+  private Storage storage;
+  private CountingCodec codec;
+  private long now;
+
+  @Override
+  public String getModuleName() {
+    return "com.gwtplatform.dispatch.DispatchTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    super.gwtSetUp();
+    storage = Storage.getLocalStorageIfSupported();
+    assertNotNull("Local storage isn't supported", storage);
+    clearNamespace();
+    codec = new CountingCodec();
+    now = 1000;
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    clearNamespace();
+    super.gwtTearDown();
+  }
+
+  public void testEntriesAreOnlyDecodedWhenLookedUp() {
+    // Given
+    PersistentCacheImpl writer = create(builder());
+    writer.put("a", "1");
+    writer.put("b", "2");
+
+    // When
+    PersistentCacheImpl reader = create(builder());
+
+    // Then
+    assertEquals(0, codec.decodeCount);
+
+    // When
+    Object value = reader.get("a");
+    reader.get("a");
+
+    // Then
+    assertEquals("1", value);
+    assertEquals(1, codec.decodeCount);
+    assertEquals("2", reader.get("b"));
+    assertEquals(2, codec.decodeCount);
+  }
+
+  public void testEntriesOfAnotherVersionAreIgnoredAndRemoved() {
+    // Given
+    PersistentCacheImpl writer = create(builder().version(String.class, 1));
+    writer.put("a", "1");
+
+    // When
+    PersistentCacheImpl reader = create(builder().version(String.class, 2));
+
+    // Then
+    assertNull(reader.get("a"));
+    assertNull(storage.getItem(NAMESPACE + ":a"));
+    assertEquals(0, codec.decodeCount);
+  }
+
+  public void testOldestEntriesAreRemovedOverTheQuota() {
+    // Given
+    String value = repeat('x', 100);
+    PersistentCacheImpl cache = create(builder().quota(250).memorySize(1));
+    cache.put("a", value);
+    now++;
+    cache.put("b", value);
+    int usedByTwo = cache.getUsedSpace();
+    now++;
+
+    // When
+    cache.put("c", value);
+
+    // Then
+    assertNull(storage.getItem(NAMESPACE + ":a"));
+    assertNotNull(storage.getItem(NAMESPACE + ":b"));
+    assertNotNull(storage.getItem(NAMESPACE + ":c"));
+    assertEquals(usedByTwo, cache.getUsedSpace());
+    assertNull(cache.get("a"));
+  }
+
+  public void testEntryLargerThanTheQuotaIsOnlyKeptInMemory() {
+    // Given
+    PersistentCacheImpl cache = create(builder().quota(50));
+
+    // When
+    cache.put("a", repeat('x', 100));
+
+    // Then
+    assertNull(storage.getItem(NAMESPACE + ":a"));
+    assertEquals(0, cache.getUsedSpace());
+    assertNotNull(cache.get("a"));
+  }
+
+  public void testStoredEntriesExpire() {
+    // Given
+    PersistentCacheImpl writer = create(builder().autoExpireTimeInMs(100));
+    writer.put("a", "1");
+    now += 100;
+
+    // When
+    PersistentCacheImpl reader = create(builder().autoExpireTimeInMs(100));
+
+    // Then
+    assertEquals("1", reader.get("a"));
+
+    // When
+    now += 1;
+
+    // Then
+    assertNull(create(builder().autoExpireTimeInMs(100)).get("a"));
+    assertNull(storage.getItem(NAMESPACE + ":a"));
+  }
+
+  public void testEntriesLoadedFromStorageKeepTheirExpirationInMemory() {
+    // Given
+    PersistentCacheImpl writer = create(builder().autoExpireTimeInMs(100));
+    writer.put("a", "1");
+    now += 60;
+    PersistentCacheImpl reader = create(builder().autoExpireTimeInMs(100));
+    reader.get("a");
+
+    // When
+    now += 41;
+
+    // Then
+    assertNull(reader.get("a"));
+  }
+
+  public void testPutWithZeroTimeToLiveRemovesThePreviousValue() {
+    // Given
+    PersistentCacheImpl cache = create(builder());
+    cache.put("a", "1");
+
+    // When
+    cache.setAutoExpireTimeInMs(0);
+    cache.put("a", "2");
+
+    // Then
+    assertNull(cache.get("a"));
+    assertNull(storage.getItem(NAMESPACE + ":a"));
+  }
+
+  public void testClearOnlyRemovesTheEntriesOfItsNamespace() {
+    // Given
+    storage.setItem("other:a", "1");
+    PersistentCacheImpl cache = create(builder());
+    cache.put("a", "1");
+
+    // When
+    cache.clear();
+
+    // Then
+    assertNull(cache.get("a"));
+    assertNull(storage.getItem(NAMESPACE + ":a"));
+    assertEquals("1", storage.getItem("other:a"));
+    storage.removeItem("other:a");
+  }
+
+  private PersistentCacheImpl.Builder builder() {
+    return new PersistentCacheImpl.Builder(storage, codec).namespace(NAMESPACE);
+  }
+
+  private PersistentCacheImpl create(PersistentCacheImpl.Builder builder) {
+    return new PersistentCacheImpl(builder) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+  }
+
+  private void clearNamespace() {
+    for (int i = storage.getLength() - 1; i >= 0; i--) {
+      String key = storage.key(i);
+      if (key != null && key.startsWith(NAMESPACE + ":")) {
+        storage.removeItem(key);
+      }
+    }
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder builder = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.client.actionhandler.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.web.bindery.event.shared.Event;
+import com.google.web.bindery.event.shared.EventBus;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+import com.gwtplatform.dispatch.client.DelagatingCallbackDispatchRequest;
+import com.gwtplatform.dispatch.client.actionhandler.ExecuteCommand;
+import com.gwtplatform.dispatch.shared.DispatchRequest;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for {@link StaleWhileRevalidateCachingHandler}.
+ */
+public class StaleWhileRevalidateCachingHandlerTest {
+
+  private static final long SOFT_TTL_MS = 100;
+  private static final long HARD_TTL_MS = 1000;
+
+  static class FooResult implements Result {
+    private final String value;
+
+    FooResult(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof FooResult && ((FooResult) obj).value.equals(value);
+    }
+
+    @Override
+    public int hashCode() {
+      return value.hashCode();
+    }
+  }
+
+  static class GetFooAction extends UnsecuredActionImpl<FooResult> {
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof GetFooAction;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+  }
+
+  static class FakeRequest implements DispatchRequest {
+    boolean cancelled;
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    @Override
+    public boolean isPending() {
+      return !cancelled;
+    }
+  }
+
+  /**
+   * Keeps the actions sent to the server until the test answers them.
+   */
+  static class FakeExecuteCommand implements ExecuteCommand<GetFooAction, FooResult> {
+    final List<AsyncCallback<FooResult>> callbacks = new ArrayList<AsyncCallback<FooResult>>();
+    final List<FakeRequest> requests = new ArrayList<FakeRequest>();
+
+    @Override
+    public DispatchRequest execute(GetFooAction action, AsyncCallback<FooResult> resultCallback) {
+      callbacks.add(resultCallback);
+      FakeRequest request = new FakeRequest();
+      requests.add(request);
+      return request;
+    }
+
+    void answer(int index, FooResult result) {
+      callbacks.get(index).onSuccess(result);
+    }
+  }
+
+  static class RecordingEventBus extends EventBus {
+    final List<Event<?>> events = new ArrayList<Event<?>>();
+
+    @Override
+    public <H> HandlerRegistration addHandler(Event.Type<H> type, H handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <H> HandlerRegistration addHandlerToSource(Event.Type<H> type, Object source, H handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void fireEvent(Event<?> event) {
+      events.add(event);
+    }
+
+    @Override
+    public void fireEventFromSource(Event<?> event, Object source) {
+      events.add(event);
+    }
+  }
+
+  static class RecordingCallback implements AsyncCallback<FooResult> {
+    final List<FooResult> results = new ArrayList<FooResult>();
+    final List<Throwable> failures = new ArrayList<Throwable>();
+
+    @Override
+    public void onSuccess(FooResult result) {
+      results.add(result);
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      failures.add(caught);
+    }
+  }
+
+  private long now;
+  private Cache cache;
+  private RecordingEventBus eventBus;
+  private FakeExecuteCommand executeCommand;
+  private StaleWhileRevalidateCachingHandler<GetFooAction, FooResult> handler;
+
+  @Before
+  public void setUp() {
+    now = 10000;
+    cache = new BoundedCacheImpl(new BoundedCacheImpl.Builder()) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+    eventBus = new RecordingEventBus();
+    executeCommand = new FakeExecuteCommand();
+    handler = new StaleWhileRevalidateCachingHandler<GetFooAction, FooResult>(GetFooAction.class, cache, eventBus,
+        SOFT_TTL_MS, HARD_TTL_MS) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+  }
+
+  @Test
+  public void freshResultShouldBeServedWithoutARoundTrip() {
+    // Given
+    FooResult cached = new FooResult("a");
+    cache.put(new GetFooAction(), cached);
+    now += SOFT_TTL_MS - 1;
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    DispatchRequest request = handler.execute(new GetFooAction(), callback, executeCommand);
+
+    // Then
+    assertEquals(1, callback.results.size());
+    assertSame(cached, callback.results.get(0));
+    assertFalse(request.isPending());
+    assertTrue(executeCommand.callbacks.isEmpty());
+  }
+
+  @Test
+  public void softStaleResultShouldBeServedAndRefreshed() {
+    // Given
+    FooResult cached = new FooResult("a");
+    cache.put(new GetFooAction(), cached);
+    now += SOFT_TTL_MS;
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    handler.execute(new GetFooAction(), callback, executeCommand);
+
+    // Then
+    assertSame(cached, callback.results.get(0));
+    assertEquals(1, executeCommand.callbacks.size());
+
+    // When
+    FooResult fresh = new FooResult("a");
+    executeCommand.answer(0, fresh);
+
+    // Then
+    assertEquals(1, callback.results.size());
+    assertSame(fresh, cache.get(new GetFooAction()));
+    assertEquals(now, cache.getLastUpateTime(new GetFooAction()));
+    assertTrue(eventBus.events.isEmpty());
+  }
+
+  @Test
+  public void refreshWithADifferentResultShouldFireResultRefreshedEvent() {
+    // Given
+    FooResult cached = new FooResult("a");
+    cache.put(new GetFooAction(), cached);
+    now += SOFT_TTL_MS;
+    handler.execute(new GetFooAction(), new RecordingCallback(), executeCommand);
+
+    // When
+    FooResult fresh = new FooResult("b");
+    executeCommand.answer(0, fresh);
+
+    // Then
+    assertEquals(1, eventBus.events.size());
+    ResultRefreshedEvent event = (ResultRefreshedEvent) eventBus.events.get(0);
+    assertEquals(new GetFooAction(), event.getAction());
+    assertSame(cached, event.getPreviousResult());
+    assertSame(fresh, event.getResult());
+  }
+
+  @Test
+  public void refreshShouldBeSharedByStaleHits() {
+    // Given
+    cache.put(new GetFooAction(), new FooResult("a"));
+    now += SOFT_TTL_MS;
+
+    // When
+    handler.execute(new GetFooAction(), new RecordingCallback(), executeCommand);
+    handler.execute(new GetFooAction(), new RecordingCallback(), executeCommand);
+
+    // Then
+    assertEquals(1, executeCommand.callbacks.size());
+  }
+
+  @Test
+  public void hardStaleResultShouldNotBeServed() {
+    // Given
+    cache.put(new GetFooAction(), new FooResult("a"));
+    now += HARD_TTL_MS;
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    DispatchRequest request = handler.execute(new GetFooAction(), callback, executeCommand);
+
+    // Then
+    assertTrue(callback.results.isEmpty());
+    assertNull(cache.get(new GetFooAction()));
+    assertTrue(request.isPending());
+
+    // When
+    FooResult fresh = new FooResult("b");
+    executeCommand.answer(0, fresh);
+
+    // Then
+    assertEquals(1, callback.results.size());
+    assertSame(fresh, callback.results.get(0));
+    assertSame(fresh, cache.get(new GetFooAction()));
+    assertTrue(eventBus.events.isEmpty());
+  }
+
+  @Test
+  public void missShouldReturnARequestThatCancelsTheRoundTrip() {
+    // Given
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    DispatchRequest request = handler.execute(new GetFooAction(), callback, executeCommand);
+
+    // Then
+    assertTrue(request instanceof DelagatingCallbackDispatchRequest);
+    assertTrue(request.isPending());
+
+    // When
+    request.cancel();
+
+    // Then
+    assertFalse(request.isPending());
+    assertTrue(executeCommand.requests.get(0).cancelled);
+
+    // When
+    handler.execute(new GetFooAction(), new RecordingCallback(), executeCommand);
+
+    // Then
+    assertEquals(2, executeCommand.callbacks.size());
+  }
+
+  @Test
+  public void cancellingTheFirstMissShouldNotCancelTheRoundTripOthersWaitOn() {
+    // Given
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    DispatchRequest firstRequest = handler.execute(new GetFooAction(), first, executeCommand);
+    handler.execute(new GetFooAction(), second, executeCommand);
+
+    // When
+    firstRequest.cancel();
+    executeCommand.answer(0, new FooResult("a"));
+
+    // Then
+    assertFalse(executeCommand.requests.get(0).cancelled);
+    assertTrue(first.results.isEmpty());
+    assertEquals(1, second.results.size());
+  }
+
+  @Test
+  public void failedMissShouldFailEveryWaitingCaller() {
+    // Given
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    handler.execute(new GetFooAction(), first, executeCommand);
+    handler.execute(new GetFooAction(), second, executeCommand);
+
+    // When
+    executeCommand.callbacks.get(0).onFailure(new RuntimeException());
+
+    // Then
+    assertEquals(1, first.failures.size());
+    assertEquals(1, second.failures.size());
+    assertNull(cache.get(new GetFooAction()));
+  }
+}
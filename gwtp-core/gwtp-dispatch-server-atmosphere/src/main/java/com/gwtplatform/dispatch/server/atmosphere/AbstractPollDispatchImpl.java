@@ -16,19 +16,31 @@
 
 package com.gwtplatform.dispatch.server.atmosphere;
 
+import com.gwtplatform.dispatch.server.CancellableContext;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
 import com.gwtplatform.dispatch.server.actionhandler.ActionResult;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
 import com.gwtplatform.dispatch.server.actionvalidator.ActionValidator;
 import com.gwtplatform.dispatch.server.atmosphere.actionhandler.PollActionHandler;
+import com.gwtplatform.dispatch.server.metrics.ActionMetrics;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
 import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionCancelledException;
 import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
 import com.gwtplatform.dispatch.shared.Result;
 import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.TimeBudget;
 import com.gwtplatform.dispatch.shared.UnsupportedActionException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This is the server-side implementation of the {@link com.gwtplatform.dispatch.server.Dispatch} service with an arbitrary action type, for which the
@@ -50,26 +62,65 @@ import java.util.List;
  */
 public abstract class AbstractPollDispatchImpl implements PollDispatch {
 
-  private static class DefaultExecutionContext implements PollExecutionContext {
+  /**
+   * Records the sub-actions executed or undone through the context so that they can be rolled back if the action
+   * fails. It also tracks the deadline of the top-level action: sub-actions fail fast once it has passed or once the
+   * action has failed, which is also what blocking handlers waiting on sub-actions see through
+   * {@link CancellableContext}.
+   */
+  private static class DefaultExecutionContext implements PollExecutionContext, CancellableContext {
 
     private final List<ActionResult<?, ?>> actionResults;
     private final AbstractPollDispatchImpl dispatch;
+    private final long timeBudgetMs;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
 
     private DefaultExecutionContext(AbstractPollDispatchImpl dispatch) {
+      this(dispatch, 0);
+    }
+
+    /**
+     * @param timeBudgetMs The time budget starting now, in milliseconds, or {@code 0} for no deadline.
+     */
+    private DefaultExecutionContext(AbstractPollDispatchImpl dispatch, long timeBudgetMs) {
       this.dispatch = dispatch;
-      this.actionResults = new ArrayList<ActionResult<?, ?>>();
+      this.timeBudgetMs = timeBudgetMs;
+      this.deadlineNanos = timeBudgetMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMs) : 0;
+      // Sub-actions may complete on any thread.
+      this.actionResults = Collections.synchronizedList(new ArrayList<ActionResult<?, ?>>());
     }
 
     @Override
     public <A extends Action<R>, R extends Result> void execute(final A action, final PollCallback<A, R> callback)
         throws ActionException, ServiceException {
-      dispatch.doExecute(action, this, new PollCallback<A, R>() {
-          @Override
-          public void onSuccess(R r) {
-              actionResults.add(new ActionResult<A, R>(action, (R) r, true));
-              callback.onSuccess(r);
-          }
-      });
+      checkNotCancelled(action);
+      final ActionMetrics metrics = dispatch.metricsFor(action);
+      final long start = metrics == null ? 0 : metrics.begin();
+      try {
+        dispatch.doExecute(action, this, new PollCallback<A, R>() {
+            @Override
+            public void onSuccess(R r) {
+                if (metrics != null) {
+                  metrics.succeeded(start);
+                }
+                actionResults.add(new ActionResult<A, R>(action, (R) r, true));
+                callback.onSuccess(r);
+            }
+
+            @Override
+            public void onFailure(Throwable caught) {
+                failed(metrics, start, caught);
+                callback.onFailure(caught);
+            }
+        }, metrics);
+      } catch (ActionException e) {
+        failed(metrics, start, e);
+        throw e;
+      } catch (ServiceException e) {
+        failed(metrics, start, e);
+        throw e;
+      }
     }
 
     @Override
@@ -81,65 +132,226 @@ public abstract class AbstractPollDispatchImpl implements PollDispatch {
               actionResults.add(new ActionResult<A, R>(action, result, false));
               callback.onSuccess(r);
           }
-      });
+
+          @Override
+          public void onFailure(Throwable caught) {
+              callback.onFailure(caught);
+          }
+      }, dispatch.metricsFor(action));
+    }
+
+    @Override
+    public long getRemainingTimeMs() {
+      if (timeBudgetMs <= 0) {
+        return Long.MAX_VALUE;
+      }
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      return remainingNanos > 0 ? TimeUnit.NANOSECONDS.toMillis(remainingNanos) : 0;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      if (cancelled) {
+        return true;
+      }
+      if (timeBudgetMs > 0 && deadlineNanos - System.nanoTime() <= 0) {
+        cancelled = true;
+      }
+      return cancelled;
     }
 
-      /**
-     * Rolls back all logged executed actions.
+    private void cancel() {
+      cancelled = true;
+    }
+
+    private void checkNotCancelled(Action<?> action) throws ActionCancelledException {
+      if (!isCancelled()) {
+        return;
+      }
+      if (timeBudgetMs > 0 && deadlineNanos - System.nanoTime() <= 0) {
+        throw new DeadlineExceededException("The time budget of " + timeBudgetMs + " ms was spent before executing "
+            + action.getClass().getName());
+      }
+      throw new ActionCancelledException("The execution was cancelled before executing " + action.getClass().getName());
+    }
+
+    /**
+     * Rolls back all logged executed actions, most recent first. As the handlers are asynchronous, each action is
+     * rolled back once the handler of the previous one has called back. A failure to roll back an action is logged
+     * and does not stop the rollback of the others.
      *
-     * @throws com.gwtplatform.dispatch.shared.ActionException If there is an action exception while rolling back.
-     * @throws com.gwtplatform.dispatch.shared.ServiceException If there is a low level problem while rolling back.
+     * @param metrics The {@link ActionMetrics} of the failed action, or {@code null}.
+     * @param onDone Run once every action has been rolled back, or {@code null}.
      */
-    private void rollback() throws ActionException, ServiceException {
-      DefaultExecutionContext ctx = new DefaultExecutionContext(dispatch);
-      for (int i = actionResults.size() - 1; i >= 0; i--) {
-        ActionResult<?, ?> actionResult = actionResults.get(i);
-        rollback(actionResult, ctx);
+    private void rollback(ActionMetrics metrics, Runnable onDone) {
+      ActionResult<?, ?>[] executed;
+      synchronized (actionResults) {
+        executed = actionResults.toArray(new ActionResult<?, ?>[actionResults.size()]);
+      }
+
+      if (metrics != null && executed.length > 0) {
+        metrics.rolledBack();
+      }
+
+      rollback(executed, executed.length - 1, new DefaultExecutionContext(dispatch), onDone);
+    }
+
+    private void rollback(final ActionResult<?, ?>[] executed, final int index, final PollExecutionContext ctx,
+        final Runnable onDone) {
+      if (index < 0) {
+        if (onDone != null) {
+          onDone.run();
+        }
+        return;
+      }
+
+      Runnable next = new Runnable() {
+        @Override
+        public void run() {
+          rollback(executed, index - 1, ctx, onDone);
+        }
+      };
+      try {
+        rollback(executed[index], ctx, next);
+      } catch (Exception e) {
+        rollbackFailed(executed[index].getAction(), e);
+        next.run();
       }
     }
 
-    private <A extends Action<R>, R extends Result> void rollback(ActionResult<A, R> actionResult, PollExecutionContext ctx) throws ActionException,
-    ServiceException {
+    private <A extends Action<R>, R extends Result> void rollback(final ActionResult<A, R> actionResult,
+        PollExecutionContext ctx, final Runnable next) throws ActionException, ServiceException {
+      PollCallback<A, R> callback = new PollCallback<A, R>() {
+        @Override
+        public void onSuccess(R result) {
+          next.run();
+        }
+
+        @Override
+        public void onFailure(Throwable caught) {
+          rollbackFailed(actionResult.getAction(), caught);
+          next.run();
+        }
+      };
+
       if (actionResult.isExecuted()) {
-        dispatch.doUndo(actionResult.getAction(), actionResult.getResult(), ctx, new PollCallback<A, R>() {
-            @Override
-            public void onSuccess(R result) {
-            }
-        });
+        dispatch.doUndo(actionResult.getAction(), actionResult.getResult(), ctx, callback,
+            dispatch.metricsFor(actionResult.getAction()));
       } else {
-        dispatch.doExecute(actionResult.getAction(), ctx, new PollCallback<A, R>() {
-            @Override
-            public void onSuccess(R result) {
-            }
-        });
+        dispatch.doExecute(actionResult.getAction(), ctx, callback, dispatch.metricsFor(actionResult.getAction()));
+      }
+    }
+
+    private static void rollbackFailed(Action<?> action, Throwable caught) {
+      if (logger.isLoggable(Level.WARNING)) {
+        logger.log(Level.WARNING, "Exception while rolling back " + action.getClass().getName() + ": "
+            + caught.getMessage(), caught);
       }
     }
   }
 
+  /**
+   * Lazily creates the executor of the blocking handlers shared by all the dispatches that weren't given one.
+   */
+  private static class DefaultBlockingExecutorHolder {
+    private static final BlockingHandlerExecutor EXECUTOR = new BlockingHandlerExecutor();
+  }
+
   private static final String actionValidatorMessage = " couldn't allow access to action : ";
+  private static final Logger logger = Logger.getLogger(AbstractPollDispatchImpl.class.getName());
 
   private final ActionHandlerValidatorRegistry actionHandlerValidatorRegistry;
+  private volatile DispatchMetrics dispatchMetrics;
+  private volatile BlockingHandlerExecutor blockingHandlerExecutor;
+  private volatile long defaultTimeBudgetMs;
 
   protected AbstractPollDispatchImpl(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry) {
     this.actionHandlerValidatorRegistry = actionHandlerValidatorRegistry;
   }
 
+  /**
+   * Starts recording per action class metrics, or stops if {@code dispatchMetrics} is {@code null}. The latency of an
+   * action runs until its handler calls back.
+   *
+   * @param dispatchMetrics The {@link DispatchMetrics}.
+   */
+  protected void setDispatchMetrics(DispatchMetrics dispatchMetrics) {
+    this.dispatchMetrics = dispatchMetrics;
+  }
+
+  /**
+   * Sets the executor of the handlers that aren't {@link PollActionHandler}s. By default, they share an executor that
+   * runs them on virtual threads when the JDK has them.
+   *
+   * @param blockingHandlerExecutor The {@link BlockingHandlerExecutor}.
+   */
+  protected void setBlockingHandlerExecutor(BlockingHandlerExecutor blockingHandlerExecutor) {
+    this.blockingHandlerExecutor = blockingHandlerExecutor;
+  }
+
+  /**
+   * Sets the time budget of the actions that have no {@link TimeBudget} annotation. Once it is spent, their
+   * sub-actions fail with a {@link DeadlineExceededException} and they are rolled back. It is unlimited by default.
+   *
+   * @param defaultTimeBudgetMs The budget in milliseconds, {@code 0} for unlimited.
+   */
+  protected void setDefaultTimeBudgetMs(long defaultTimeBudgetMs) {
+    if (defaultTimeBudgetMs < 0) {
+      throw new IllegalArgumentException("defaultTimeBudgetMs must be positive or 0");
+    }
+    this.defaultTimeBudgetMs = defaultTimeBudgetMs;
+  }
+
   @Override
   public <A extends Action<R>, R extends Result> void execute(A action, final PollDispatchCallback callback)
           throws ActionException, ServiceException {
-    DefaultExecutionContext ctx = new DefaultExecutionContext(this);
+    final ActionMetrics metrics = metricsFor(action);
+    final long start = metrics == null ? 0 : metrics.begin();
+    final DefaultExecutionContext ctx = new DefaultExecutionContext(this, timeBudgetOf(action));
+    // A handler may call back and throw anyway, only the first outcome counts.
+    final AtomicBoolean calledBack = new AtomicBoolean();
     try {
       doExecute(action, ctx, new PollCallback<A, R>() {
         @Override
         public void onSuccess(R r) {
+            if (!calledBack.compareAndSet(false, true)) {
+              return;
+            }
+            if (metrics != null) {
+              metrics.succeeded(start);
+            }
             callback.onSuccess(r);
         }
-    });
+
+        @Override
+        public void onFailure(final Throwable caught) {
+            if (!calledBack.compareAndSet(false, true)) {
+              return;
+            }
+            failed(metrics, start, caught);
+            // Blocking handlers still running for this action can give up.
+            ctx.cancel();
+            ctx.rollback(metrics, new Runnable() {
+              @Override
+              public void run() {
+                callback.onFailure(caught);
+              }
+            });
+        }
+    }, metrics);
     } catch (ActionException e) {
-      ctx.rollback();
+      if (calledBack.compareAndSet(false, true)) {
+        failed(metrics, start, e);
+        ctx.cancel();
+        ctx.rollback(metrics, null);
+      }
       throw e;
     } catch (ServiceException e) {
-      ctx.rollback();
+      if (calledBack.compareAndSet(false, true)) {
+        failed(metrics, start, e);
+        ctx.cancel();
+        ctx.rollback(metrics, null);
+      }
       throw e;
     }
   }
@@ -147,19 +359,40 @@ public abstract class AbstractPollDispatchImpl implements PollDispatch {
   @Override
   public <A extends Action<R>, R extends Result> void undo(A action, R result, final PollDispatchCallback callback)
           throws ActionException, ServiceException {
-    DefaultExecutionContext ctx = new DefaultExecutionContext(this);
+    final ActionMetrics metrics = metricsFor(action);
+    final DefaultExecutionContext ctx = new DefaultExecutionContext(this);
+    final AtomicBoolean calledBack = new AtomicBoolean();
     try {
       doUndo(action, result, ctx, new PollCallback<A, R>() {
           @Override
           public void onSuccess(R r) {
-              callback.onSuccess(null);
+              if (calledBack.compareAndSet(false, true)) {
+                callback.onSuccess(null);
+              }
           }
-      });
+
+          @Override
+          public void onFailure(final Throwable caught) {
+              if (!calledBack.compareAndSet(false, true)) {
+                return;
+              }
+              ctx.rollback(metrics, new Runnable() {
+                @Override
+                public void run() {
+                  callback.onFailure(caught);
+                }
+              });
+          }
+      }, metrics);
     } catch (ActionException e) {
-      ctx.rollback();
+      if (calledBack.compareAndSet(false, true)) {
+        ctx.rollback(metrics, null);
+      }
       throw e;
     } catch (ServiceException e) {
-      ctx.rollback();
+      if (calledBack.compareAndSet(false, true)) {
+        ctx.rollback(metrics, null);
+      }
       throw e;
     }
   }
@@ -174,16 +407,23 @@ public abstract class AbstractPollDispatchImpl implements PollDispatch {
    * @throws com.gwtplatform.dispatch.shared.ActionException
    * @throws com.gwtplatform.dispatch.shared.ServiceException
    */
-  private <A extends Action<R>, R extends Result> void doExecute(A action, PollExecutionContext ctx, PollCallback<A, R> callback)
-          throws ActionException, ServiceException {
-    PollActionHandler<A, R> handler = findHandler(action);
+  private <A extends Action<R>, R extends Result> void doExecute(A action, PollExecutionContext ctx, PollCallback<A, R> callback,
+      ActionMetrics metrics) throws ActionException, ServiceException {
+    ActionHandler<A, R> handler = findHandler(action);
 
     ActionValidator actionValidator = findActionValidator(action);
 
     try {
       if (actionValidator.isValid(action)) {
-        handler.execute(action, ctx, callback);
+        if (handler instanceof PollActionHandler) {
+          ((PollActionHandler<A, R>) handler).execute(action, ctx, callback);
+        } else {
+          getBlockingHandlerExecutor().execute(handler, action, ctx, callback);
+        }
       } else {
+        if (metrics != null) {
+          metrics.validatorRejected();
+        }
         throw new ServiceException(actionValidator.getClass().getName() + actionValidatorMessage + action.getClass().getName());
       }
     } catch (ActionException e) {
@@ -196,16 +436,23 @@ public abstract class AbstractPollDispatchImpl implements PollDispatch {
     }
   }
 
-  private <A extends Action<R>, R extends Result> void doUndo(A action, R result, PollExecutionContext ctx, PollCallback<A, R> callback)
-          throws ActionException, ServiceException {
+  private <A extends Action<R>, R extends Result> void doUndo(A action, R result, PollExecutionContext ctx, PollCallback<A, R> callback,
+      ActionMetrics metrics) throws ActionException, ServiceException {
 
     ActionValidator actionValidator = findActionValidator(action);
 
-    PollActionHandler<A, R> handler = findHandler(action);
+    ActionHandler<A, R> handler = findHandler(action);
     try {
       if (actionValidator.isValid(action)) {
-        handler.undo(action, result, ctx, callback);
+        if (handler instanceof PollActionHandler) {
+          ((PollActionHandler<A, R>) handler).undo(action, result, ctx, callback);
+        } else {
+          getBlockingHandlerExecutor().undo(handler, action, result, ctx, callback);
+        }
       } else {
+        if (metrics != null) {
+          metrics.validatorRejected();
+        }
         throw new ServiceException(actionValidator.getClass().getName() + actionValidatorMessage + action.getClass().getName());
       }
     } catch (ActionException e) {
@@ -215,6 +462,27 @@ public abstract class AbstractPollDispatchImpl implements PollDispatch {
     }
   }
 
+  private long timeBudgetOf(Action<?> action) {
+    TimeBudget timeBudget = action.getClass().getAnnotation(TimeBudget.class);
+    return timeBudget == null ? defaultTimeBudgetMs : timeBudget.value();
+  }
+
+  private BlockingHandlerExecutor getBlockingHandlerExecutor() {
+    BlockingHandlerExecutor executor = blockingHandlerExecutor;
+    return executor == null ? DefaultBlockingExecutorHolder.EXECUTOR : executor;
+  }
+
+  private ActionMetrics metricsFor(Action<?> action) {
+    DispatchMetrics metrics = dispatchMetrics;
+    return metrics == null ? null : metrics.forAction(action.getClass());
+  }
+
+  private static void failed(ActionMetrics metrics, long start, Throwable caught) {
+    if (metrics != null) {
+      metrics.failed(start, caught);
+    }
+  }
+
   private <A extends Action<R>, R extends Result> ActionValidator findActionValidator(A action) throws UnsupportedActionException {
     ActionHandlerValidatorInstance handlerValidator = actionHandlerValidatorRegistry.findActionHandlerValidator(action);
     if (handlerValidator == null) {
@@ -225,13 +493,13 @@ public abstract class AbstractPollDispatchImpl implements PollDispatch {
   }
 
   @SuppressWarnings("unchecked")
-  private <A extends Action<R>, R extends Result> PollActionHandler<A, R> findHandler(A action) throws UnsupportedActionException {
+  private <A extends Action<R>, R extends Result> ActionHandler<A, R> findHandler(A action) throws UnsupportedActionException {
     ActionHandlerValidatorInstance handlerValidator = actionHandlerValidatorRegistry.findActionHandlerValidator(action);
 
     if (handlerValidator == null) {
       throw new UnsupportedActionException(action);
     }
 
-    return (PollActionHandler<A, R>) handlerValidator.getActionHandler();
+    return (ActionHandler<A, R>) handlerValidator.getActionHandler();
   }
 }
\ No newline at end of file
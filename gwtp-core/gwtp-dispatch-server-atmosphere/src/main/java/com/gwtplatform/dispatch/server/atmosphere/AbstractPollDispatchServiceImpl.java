@@ -19,7 +19,8 @@ package com.gwtplatform.dispatch.server.atmosphere;
 import com.gwtplatform.dispatch.server.RequestProvider;
 import com.gwtplatform.dispatch.shared.Action;
 import com.gwtplatform.dispatch.shared.ActionException;
-import com.gwtplatform.dispatch.shared.DispatchService;
+import com.gwtplatform.dispatch.shared.BatchDispatchService;
+import com.gwtplatform.dispatch.shared.DispatchBatchResult;
 import com.gwtplatform.dispatch.shared.Result;
 import com.gwtplatform.dispatch.shared.ServiceException;
 import org.atmosphere.gwt.poll.AtmospherePollService;
@@ -27,6 +28,16 @@ import org.atmosphere.gwt.poll.AtmospherePollService;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +47,11 @@ import java.util.logging.Logger;
  * <p />
  * This class is closely related to {@link com.gwtplatform.dispatch.server.AbstractDispatchImpl}, in theory the latter wouldn't be needed, but we use it
  * to workaround a GWT limitation described in {@link com.gwtplatform.dispatch.shared.DispatchAsync}.
+ * <p />
+ * Every action holds a suspended connection until its handler calls back. If the handler hasn't called back within
+ * the suspend timeout of the action, see {@link #setSuspendTimeout(Class, long)}, the connection is resumed with a
+ * {@link ServiceException} and the late outcome is dropped. {@link #getTimedOutSuspensionCount()} and
+ * {@link #getOrphanedSuspensionCount()} count these events.
  *
  * @see com.gwtplatform.dispatch.shared.DispatchAsync
  * @see com.gwtplatform.dispatch.server.Dispatch
@@ -46,22 +62,172 @@ import java.util.logging.Logger;
  * @author Christian Goudreau
  * @author David Peterson
  */
-public abstract class AbstractPollDispatchServiceImpl extends AtmospherePollService implements DispatchService {
+public abstract class AbstractPollDispatchServiceImpl extends AtmospherePollService implements BatchDispatchService {
 
   private static final String noSecurityCookieMessage = "You have to define a security cookie in order to use secured actions. See com.gwtplatform.dispatch.shared.SecurityCookie for details.";
 
   private static final long serialVersionUID = -4753225025940949024L;
   private static final String xsrfAttackMessage = "Cookie provided by RPC doesn't match request cookie, aborting action, possible XSRF attack. (Maybe you forgot to set the security cookie?)";
 
+  /**
+   * The default suspend timeout, in milliseconds.
+   */
+  public static final long DEFAULT_SUSPEND_TIMEOUT_MS = 60000;
+
+  /**
+   * Resumes a suspended connection exactly once: with the outcome of the action, or with a {@link ServiceException}
+   * if the suspend timeout of the action expires first.
+   */
+  private abstract class Suspension implements PollDispatchCallback {
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final ScheduledFuture<?> timeout;
+
+    private Suspension(final Action<?> action) {
+      pendingSuspensions.incrementAndGet();
+
+      final long timeoutMs = getSuspendTimeout(action);
+      if (timeoutMs > 0) {
+        timeout = timeoutScheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            if (finish()) {
+              timedOutSuspensions.incrementAndGet();
+              fail(new ServiceException("Action " + action.getClass().getName() + " timed out after " + timeoutMs
+                  + " ms"));
+            }
+          }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+      } else {
+        timeout = null;
+      }
+    }
+
+    @Override
+    public void onSuccess(Result result) {
+      if (finish()) {
+        succeed(result);
+      } else {
+        orphanedSuspensions.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      if (finish()) {
+        fail(caught instanceof ActionException || caught instanceof ServiceException ? caught
+            : new ServiceException(caught));
+      } else {
+        orphanedSuspensions.incrementAndGet();
+      }
+    }
+
+    /**
+     * Releases the suspension when the action failed synchronously and the exception is reported instead.
+     *
+     * @return {@code false} if the handler had already called back.
+     */
+    private boolean cancel() {
+      return finish();
+    }
+
+    private boolean finish() {
+      if (!done.compareAndSet(false, true)) {
+        return false;
+      }
+
+      pendingSuspensions.decrementAndGet();
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+      return true;
+    }
+
+    protected abstract void succeed(Result result);
+
+    /**
+     * @param caught An {@link ActionException} or a {@link ServiceException}.
+     */
+    protected abstract void fail(Throwable caught);
+  }
+
   protected final PollDispatch dispatch;
   protected final Logger logger;
 
   protected RequestProvider requestProvider;
 
+  private final transient ScheduledExecutorService timeoutScheduler;
+  private final ConcurrentMap<Class<?>, Long> suspendTimeouts = new ConcurrentHashMap<Class<?>, Long>();
+  private volatile long defaultSuspendTimeoutMs = DEFAULT_SUSPEND_TIMEOUT_MS;
+  private final AtomicInteger pendingSuspensions = new AtomicInteger();
+  private final AtomicLong timedOutSuspensions = new AtomicLong();
+  private final AtomicLong orphanedSuspensions = new AtomicLong();
+
   protected AbstractPollDispatchServiceImpl(final Logger logger, final PollDispatch dispatch, RequestProvider requestProvider) {
     this.logger = logger;
     this.dispatch = dispatch;
     this.requestProvider = requestProvider;
+    this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "gwtp-poll-dispatch-timeout");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Sets the suspend timeout of the actions that have none of their own.
+   *
+   * @param timeoutMs The timeout in milliseconds, or {@code 0} to wait for the handlers forever.
+   */
+  public void setDefaultSuspendTimeout(long timeoutMs) {
+    this.defaultSuspendTimeoutMs = timeoutMs;
+  }
+
+  /**
+   * Sets the suspend timeout of the actions of a class. Long polling actions should use a timeout longer than the
+   * time they are held by the server.
+   *
+   * @param actionClass The {@link Action} class.
+   * @param timeoutMs The timeout in milliseconds, or {@code 0} to wait for the handler forever.
+   */
+  public void setSuspendTimeout(Class<? extends Action<?>> actionClass, long timeoutMs) {
+    suspendTimeouts.put(actionClass, timeoutMs);
+  }
+
+  /**
+   * @return The number of connections currently suspended, waiting for their handler.
+   */
+  public int getPendingSuspensionCount() {
+    return pendingSuspensions.get();
+  }
+
+  /**
+   * @return The number of connections resumed with a {@link ServiceException} because their handler didn't call back
+   *         in time.
+   */
+  public long getTimedOutSuspensionCount() {
+    return timedOutSuspensions.get();
+  }
+
+  /**
+   * @return The number of handler outcomes dropped because their connection had already been resumed, usually by the
+   *         timeout.
+   */
+  public long getOrphanedSuspensionCount() {
+    return orphanedSuspensions.get();
+  }
+
+  @Override
+  public void destroy() {
+    timeoutScheduler.shutdownNow();
+    super.destroy();
+  }
+
+  private long getSuspendTimeout(Action<?> action) {
+    Long timeoutMs = suspendTimeouts.get(action.getClass());
+    return timeoutMs == null ? defaultSuspendTimeoutMs : timeoutMs;
   }
 
   public String getSecurityCookieName() {
@@ -79,36 +245,115 @@ public abstract class AbstractPollDispatchServiceImpl extends AtmospherePollServ
     }
 
     final SuspendInfo suspend = suspend();
-    try {
-      dispatch.execute(action, new PollDispatchCallback() {
-        @Override
-        public void onSuccess(Result result) {
-          try {
-            suspend.writeAndResume(result);
-          } catch (IOException e) {
-            if (logger.isLoggable(Level.WARNING)) {
-              logger.log(Level.WARNING, "IOException while asynchronous executing " + action.getClass().getName() + ": " + e.getMessage(), e);
-            }
-          }
+    Suspension suspension = new Suspension(action) {
+      @Override
+      protected void succeed(Result result) {
+        resume(suspend, result, "executing " + action.getClass().getName());
+      }
+
+      @Override
+      protected void fail(Throwable caught) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "Asynchronous exception while executing " + action.getClass().getName() + ": " + caught.getMessage(), caught);
         }
-      });
-      return null;
+        resume(suspend, caught, "executing " + action.getClass().getName());
+      }
+    };
+    try {
+      dispatch.execute(action, suspension);
     } catch (ActionException e) {
-      if (logger.isLoggable(Level.WARNING)) {
-        logger.log(Level.WARNING, "Action exception while executing " + action.getClass().getName() + ": " + e.getMessage(), e);
+      if (suspension.cancel()) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "Action exception while executing " + action.getClass().getName() + ": " + e.getMessage(), e);
+        }
+        throw e;
       }
-      throw e;
+      logDropped("executing " + action.getClass().getName(), e);
     } catch (ServiceException e) {
-      if (logger.isLoggable(Level.WARNING)) {
-        logger.log(Level.WARNING, "Service exception while executing " + action.getClass().getName() + ": " + e.getMessage(), e);
+      if (suspension.cancel()) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "Service exception while executing " + action.getClass().getName() + ": " + e.getMessage(), e);
+        }
+        throw e;
       }
-      throw e;
+      logDropped("executing " + action.getClass().getName(), e);
     } catch (RuntimeException e) {
-      if (logger.isLoggable(Level.WARNING)) {
-        logger.log(Level.WARNING, "Unexpected exception while executing " + action.getClass().getName() + ": " + e.getMessage(), e);
+      if (suspension.cancel()) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "Unexpected exception while executing " + action.getClass().getName() + ": " + e.getMessage(), e);
+        }
+        throw new ServiceException(e);
       }
-      throw new ServiceException(e);
+      logDropped("executing " + action.getClass().getName(), e);
     }
+    return null;
+  }
+
+  /**
+   * Executes every action independently and resumes the suspended request once all of them have completed, with the
+   * {@link Result} or the exception of each one.
+   */
+  @Override
+  public DispatchBatchResult executeBatch(String cookieSentByRPC, Action<?>[] actions) throws ServiceException {
+    final DispatchBatchResult batchResult = new DispatchBatchResult(actions.length);
+    final AtomicInteger remaining = new AtomicInteger(actions.length + 1);
+    final SuspendInfo suspend = suspend();
+
+    for (int i = 0; i < actions.length; i++) {
+      final int index = i;
+      final Action<?> action = actions[i];
+      Suspension suspension = null;
+      try {
+        if (action.isSecured() && !cookieMatch(cookieSentByRPC)) {
+          String message = xsrfAttackMessage + " While executing action: " + action.getClass().getName();
+
+          logger.severe(message);
+          throw new ServiceException(message);
+        }
+
+        suspension = new Suspension(action) {
+          @Override
+          protected void succeed(Result result) {
+            batchResult.setResult(index, result);
+            resumeIfDone(suspend, remaining, batchResult);
+          }
+
+          @Override
+          protected void fail(Throwable caught) {
+            logger.warning("Asynchronous exception while executing " + action.getClass().getName() + ": " + caught.getMessage());
+            if (caught instanceof ActionException) {
+              batchResult.setFailure(index, (ActionException) caught);
+            } else {
+              batchResult.setFailure(index, (ServiceException) caught);
+            }
+            resumeIfDone(suspend, remaining, batchResult);
+          }
+        };
+        dispatch.execute(action, suspension);
+      } catch (ActionException e) {
+        if (cancel(suspension)) {
+          logger.warning("Action exception while executing " + action.getClass().getName() + ": " + e.getMessage());
+          batchResult.setFailure(index, e);
+          resumeIfDone(suspend, remaining, batchResult);
+        }
+      } catch (ServiceException e) {
+        if (cancel(suspension)) {
+          logger.warning("Service exception while executing " + action.getClass().getName() + ": " + e.getMessage());
+          batchResult.setFailure(index, e);
+          resumeIfDone(suspend, remaining, batchResult);
+        }
+      } catch (RuntimeException e) {
+        if (cancel(suspension)) {
+          logger.warning("Unexpected exception while executing " + action.getClass().getName() + ": " + e.getMessage());
+          batchResult.setFailure(index, new ServiceException(e));
+          resumeIfDone(suspend, remaining, batchResult);
+        }
+      }
+    }
+
+    // Accounts for the extra count taken above, so the response isn't written while actions are still being started.
+    resumeIfDone(suspend, remaining, batchResult);
+    return null;
   }
 
   @Override
@@ -122,28 +367,77 @@ public abstract class AbstractPollDispatchServiceImpl extends AtmospherePollServ
     }
 
     final SuspendInfo suspend = suspend();
+    Suspension suspension = new Suspension(action) {
+      @Override
+      protected void succeed(Result r) {
+        resume(suspend, null, "undoing " + action.getClass().getName());
+      }
+
+      @Override
+      protected void fail(Throwable caught) {
+        logger.warning("Asynchronous exception while undoing " + action.getClass().getName() + ": " + caught.getMessage());
+        resume(suspend, caught, "undoing " + action.getClass().getName());
+      }
+    };
     try {
-      dispatch.undo(action, result, new PollDispatchCallback() {
-        @Override
-        public void onSuccess(Result r) {
-          try {
-            suspend.writeAndResume(null);
-          } catch (IOException e) {
-            if (logger.isLoggable(Level.WARNING)) {
-              logger.log(Level.WARNING, "IOException while asynchronous undoing " + action.getClass().getName() + ": " + e.getMessage(), e);
-            }
-          }
-        }
-      });
+      dispatch.undo(action, result, suspension);
     } catch (ActionException e) {
-      logger.warning("Action exception while undoing " + action.getClass().getName() + ": " + e.getMessage());
-      throw e;
+      if (suspension.cancel()) {
+        logger.warning("Action exception while undoing " + action.getClass().getName() + ": " + e.getMessage());
+        throw e;
+      }
+      logDropped("undoing " + action.getClass().getName(), e);
     } catch (ServiceException e) {
-      logger.warning("Service exception while undoing " + action.getClass().getName() + ": " + e.getMessage());
-      throw e;
+      if (suspension.cancel()) {
+        logger.warning("Service exception while undoing " + action.getClass().getName() + ": " + e.getMessage());
+        throw e;
+      }
+      logDropped("undoing " + action.getClass().getName(), e);
     } catch (RuntimeException e) {
-      logger.warning("Unexpected exception while undoing " + action.getClass().getName() + ": " + e.getMessage());
-      throw new ServiceException(e);
+      if (suspension.cancel()) {
+        logger.warning("Unexpected exception while undoing " + action.getClass().getName() + ": " + e.getMessage());
+        throw new ServiceException(e);
+      }
+      logDropped("undoing " + action.getClass().getName(), e);
+    }
+  }
+
+  /**
+   * Resumes a suspended connection with a result, or with an exception that is sent as the failure of the RPC.
+   */
+  private void resume(SuspendInfo suspend, Object message, String what) {
+    try {
+      suspend.writeAndResume(message);
+    } catch (IOException e) {
+      if (logger.isLoggable(Level.WARNING)) {
+        logger.log(Level.WARNING, "IOException while asynchronous " + what + ": " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Logs an exception thrown by a handler that had already called back. The suspended request has been resumed with
+   * the outcome reported to the callback, so the exception can't be sent anymore.
+   */
+  private void logDropped(String what, Exception e) {
+    if (logger.isLoggable(Level.WARNING)) {
+      logger.log(Level.WARNING, "Exception thrown after calling back while " + what + ", dropped: " + e.getMessage(), e);
+    }
+  }
+
+  private static boolean cancel(Suspension suspension) {
+    return suspension == null || suspension.cancel();
+  }
+
+  private void resumeIfDone(SuspendInfo suspend, AtomicInteger remaining, DispatchBatchResult batchResult) {
+    if (remaining.decrementAndGet() == 0) {
+      try {
+        suspend.writeAndResume(batchResult);
+      } catch (IOException e) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "IOException while asynchronous executing a batch: " + e.getMessage(), e);
+        }
+      }
     }
   }
 
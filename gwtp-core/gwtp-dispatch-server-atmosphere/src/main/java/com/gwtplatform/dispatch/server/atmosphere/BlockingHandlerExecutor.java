@@ -0,0 +1,599 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import com.gwtplatform.dispatch.server.CancellableContext;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs plain, blocking {@link ActionHandler}s for the poll dispatch, so that they don't have to be rewritten as
+ * {@link com.gwtplatform.dispatch.server.atmosphere.actionhandler.PollActionHandler PollActionHandler}s to benefit
+ * from suspended connections. {@link AbstractPollDispatchImpl} hands every handler that isn't a
+ * {@code PollActionHandler} to this executor, which calls it on a worker thread and completes the {@link PollCallback}
+ * when it returns.
+ * <p />
+ * On JDK 21 and later, each handler runs on its own virtual thread, so thousands of handlers waiting on I/O cost
+ * little more than their stacks. The JDK is detected by reflection; on older JDKs the handlers run on a fixed pool of
+ * {@link #DEFAULT_POOL_SIZE} platform threads. Virtual threads are pinned to their carrier while they block inside
+ * {@code synchronized} code, so handlers that wait while holding a monitor should prefer {@code java.util.concurrent}
+ * locks.
+ * <p />
+ * The number of handlers running at once can be bounded per action class with
+ * {@link #setMaxConcurrency(Class, int)}, for instance to protect a connection pool. Handlers over the limit wait in a
+ * queue without holding a thread. Sub-actions executed through the {@link ExecutionContext} of a handler run on the
+ * thread of their parent, which blocks until their class is under its limit, for at most the sub-action timeout. A
+ * sub-action of a class its thread is already running never waits, so a parent never waits for a slot it holds itself.
+ * <p />
+ * A handler waits for a sub-action no longer than what is left of the
+ * {@link com.gwtplatform.dispatch.shared.TimeBudget TimeBudget} of its action, nor than
+ * {@link #setSubActionTimeoutMs(long) the sub-action timeout}, after which the sub-action fails with a
+ * {@link ServiceException}. The {@link ExecutionContext} of the handler is a {@link CancellableContext} that reports
+ * the budget and the cancellation of the poll dispatch.
+ */
+@Singleton
+public class BlockingHandlerExecutor {
+
+  /**
+   * The number of platform threads used when virtual threads aren't available.
+   */
+  public static final int DEFAULT_POOL_SIZE = Math.max(16, 8 * Runtime.getRuntime().availableProcessors());
+
+  /**
+   * A handler call, waiting for a slot or running.
+   */
+  private interface Job extends Runnable {
+    void reject(Throwable caught);
+  }
+
+  /**
+   * A sub-action waiting on the thread of its parent for a slot of its lane.
+   */
+  private static final class InlineSlot implements Job {
+    private final CountDownLatch granted = new CountDownLatch(1);
+
+    @Override
+    public void run() {
+      granted.countDown();
+    }
+
+    @Override
+    public void reject(Throwable caught) {
+    }
+
+    private boolean await(long timeoutMs) {
+      try {
+        if (timeoutMs == Long.MAX_VALUE) {
+          granted.await();
+          return true;
+        }
+        return granted.await(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * The queue of the handlers of an action class whose concurrency is bounded.
+   */
+  private final class Lane {
+    private final Class<?> actionClass;
+    private final Queue<Job> waiting = new ArrayDeque<Job>();
+    private int running;
+
+    private Lane(Class<?> actionClass) {
+      this.actionClass = actionClass;
+    }
+
+    private void submit(Job job) {
+      synchronized (this) {
+        int max = getMaxConcurrency(actionClass);
+        if (max > 0 && running >= max) {
+          waiting.add(job);
+          waitingCount.incrementAndGet();
+          return;
+        }
+        running++;
+      }
+
+      if (!start(job, this)) {
+        done();
+      }
+    }
+
+    /**
+     * Takes a slot for a sub-action running on the thread of its parent, which must call {@link #done()} once the
+     * sub-action returns.
+     *
+     * @return {@code false} if no slot was free before {@code timeoutMs}.
+     */
+    private boolean acquire(long timeoutMs) {
+      InlineSlot slot = new InlineSlot();
+      synchronized (this) {
+        int max = getMaxConcurrency(actionClass);
+        if (max <= 0 || running < max) {
+          running++;
+          return true;
+        }
+        waiting.add(slot);
+        waitingCount.incrementAndGet();
+      }
+
+      if (slot.await(timeoutMs)) {
+        return true;
+      }
+      synchronized (this) {
+        if (waiting.remove(slot)) {
+          waitingCount.decrementAndGet();
+          return false;
+        }
+      }
+      // The slot was granted while giving up, it must be used or released.
+      return true;
+    }
+
+    private void done() {
+      while (true) {
+        Job next;
+        synchronized (this) {
+          next = waiting.poll();
+          if (next == null) {
+            running--;
+            return;
+          }
+        }
+
+        waitingCount.decrementAndGet();
+        if (next instanceof InlineSlot) {
+          next.run();
+          return;
+        }
+        if (start(next, this)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * The {@link ExecutionContext} of a blocking handler, which waits for the sub-actions it executes.
+   */
+  private static class BlockingExecutionContext implements ExecutionContext, CancellableContext {
+    private final PollExecutionContext context;
+    private final long subActionTimeoutMs;
+
+    private BlockingExecutionContext(PollExecutionContext context, long subActionTimeoutMs) {
+      this.context = context;
+      this.subActionTimeoutMs = subActionTimeoutMs;
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> R execute(A action) throws ActionException, ServiceException {
+      Outcome<A, R> outcome = new Outcome<A, R>();
+      context.execute(action, outcome);
+      return await(outcome, "executing", action);
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void undo(A action, R result) throws ActionException,
+        ServiceException {
+      Outcome<A, R> outcome = new Outcome<A, R>();
+      context.undo(action, result, outcome);
+      await(outcome, "undoing", action);
+    }
+
+    @Override
+    public long getRemainingTimeMs() {
+      return context instanceof CancellableContext ? ((CancellableContext) context).getRemainingTimeMs()
+          : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return context instanceof CancellableContext && ((CancellableContext) context).isCancelled();
+    }
+
+    private <R extends Result> R await(Outcome<?, R> outcome, String what, Action<?> action) throws ActionException,
+        ServiceException {
+      long remainingMs = getRemainingTimeMs();
+      long timeoutMs = subActionTimeoutMs > 0 ? Math.min(remainingMs, subActionTimeoutMs) : remainingMs;
+      if (outcome.await(timeoutMs)) {
+        return outcome.get();
+      }
+
+      if (timeoutMs == remainingMs) {
+        throw new DeadlineExceededException("The time budget was spent while " + what + " "
+            + action.getClass().getName());
+      }
+      throw new ServiceException("Gave up " + what + " " + action.getClass().getName() + " after " + timeoutMs
+          + " ms");
+    }
+  }
+
+  /**
+   * The outcome of a sub-action, which a blocking handler waits for.
+   */
+  private static class Outcome<A extends Action<R>, R extends Result> implements PollCallback<A, R> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile R result;
+    private volatile Throwable caught;
+
+    @Override
+    public void onSuccess(R result) {
+      this.result = result;
+      done.countDown();
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      this.caught = caught;
+      done.countDown();
+    }
+
+    /**
+     * @param timeoutMs The maximum time to wait, or {@link Long#MAX_VALUE} to wait for as long as it takes.
+     * @return {@code false} if the sub-action didn't complete in time.
+     */
+    private boolean await(long timeoutMs) throws ServiceException {
+      try {
+        if (timeoutMs == Long.MAX_VALUE) {
+          done.await();
+          return true;
+        }
+        return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ServiceException(e);
+      }
+    }
+
+    private R get() throws ActionException, ServiceException {
+      if (caught == null) {
+        return result;
+      }
+      if (caught instanceof ActionException) {
+        throw (ActionException) caught;
+      }
+      if (caught instanceof ServiceException) {
+        throw (ServiceException) caught;
+      }
+      throw new ServiceException(caught);
+    }
+  }
+
+  private static final Logger logger = Logger.getLogger(BlockingHandlerExecutor.class.getName());
+
+  /**
+   * The action classes whose slots the current worker holds, {@code null} outside of the workers.
+   */
+  private static final ThreadLocal<Set<Class<?>>> onWorker = new ThreadLocal<Set<Class<?>>>();
+
+  private final ExecutorService executor;
+  private final boolean virtualThreads;
+  private final ConcurrentMap<Class<?>, Integer> maxConcurrencies = new ConcurrentHashMap<Class<?>, Integer>();
+  private final ConcurrentMap<Class<?>, Lane> lanes = new ConcurrentHashMap<Class<?>, Lane>();
+  private final AtomicInteger runningCount = new AtomicInteger();
+  private final AtomicInteger waitingCount = new AtomicInteger();
+  private volatile int defaultMaxConcurrency;
+  private volatile long subActionTimeoutMs = AbstractPollDispatchServiceImpl.DEFAULT_SUSPEND_TIMEOUT_MS;
+
+  @Inject
+  public BlockingHandlerExecutor() {
+    ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+    if (virtualThreadExecutor != null) {
+      this.executor = virtualThreadExecutor;
+      this.virtualThreads = true;
+    } else {
+      logger.info("Virtual threads aren't available, blocking action handlers run on " + DEFAULT_POOL_SIZE
+          + " platform threads");
+      this.executor = newPlatformThreadExecutor(DEFAULT_POOL_SIZE);
+      this.virtualThreads = false;
+    }
+  }
+
+  /**
+   * @param executor The {@link ExecutorService} that runs the handlers.
+   */
+  public BlockingHandlerExecutor(ExecutorService executor) {
+    this.executor = executor;
+    this.virtualThreads = false;
+  }
+
+  /**
+   * Bounds the number of handlers of an action class running at once. It applies to sub-actions too, unless the
+   * thread executing them already holds a slot of the same class.
+   *
+   * @param actionClass The {@link Action} class.
+   * @param maxConcurrency The maximum number of handlers running at once, or {@code 0} for no limit.
+   */
+  public void setMaxConcurrency(Class<? extends Action<?>> actionClass, int maxConcurrency) {
+    maxConcurrencies.put(actionClass, maxConcurrency);
+  }
+
+  /**
+   * Bounds the number of handlers running at once for each action class that has no limit of its own. Unbounded by
+   * default.
+   *
+   * @param maxConcurrency The maximum number of handlers of an action class running at once, or {@code 0} for no
+   *          limit.
+   */
+  public void setDefaultMaxConcurrency(int maxConcurrency) {
+    this.defaultMaxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Bounds how long a handler waits for a sub-action, even if its action has no time budget. It defaults to
+   * {@link AbstractPollDispatchServiceImpl#DEFAULT_SUSPEND_TIMEOUT_MS}, as the client has usually given up by then.
+   *
+   * @param subActionTimeoutMs The timeout in milliseconds, or {@code 0} to only wait for the time budget.
+   */
+  public void setSubActionTimeoutMs(long subActionTimeoutMs) {
+    if (subActionTimeoutMs < 0) {
+      throw new IllegalArgumentException("subActionTimeoutMs must be positive or 0");
+    }
+    this.subActionTimeoutMs = subActionTimeoutMs;
+  }
+
+  /**
+   * @return {@code true} if the handlers run on virtual threads.
+   */
+  public boolean isUsingVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * @return The number of handlers running.
+   */
+  public int getRunningCount() {
+    return runningCount.get();
+  }
+
+  /**
+   * @return The number of handlers waiting for their action class to be under its concurrency limit.
+   */
+  public int getWaitingCount() {
+    return waitingCount.get();
+  }
+
+  /**
+   * Stops the workers. Handlers submitted afterwards fail with a {@link ServiceException}.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Executes an action with a blocking handler.
+   *
+   * @param handler The {@link ActionHandler}.
+   * @param action The {@link Action}.
+   * @param context The {@link PollExecutionContext} of the action.
+   * @param callback Called with the {@link Result} once the handler returns.
+   */
+  public <A extends Action<R>, R extends Result> void execute(final ActionHandler<A, R> handler, final A action,
+      PollExecutionContext context, final PollCallback<A, R> callback) {
+    final ExecutionContext blockingContext = new BlockingExecutionContext(context, subActionTimeoutMs);
+    submit(action.getClass(), context, new Job() {
+      @Override
+      public void run() {
+        R result;
+        try {
+          result = handler.execute(action, blockingContext);
+        } catch (Exception e) {
+          callback.onFailure(e);
+          return;
+        }
+        callback.onSuccess(result);
+      }
+
+      @Override
+      public void reject(Throwable caught) {
+        callback.onFailure(caught);
+      }
+    });
+  }
+
+  /**
+   * Undoes an action with a blocking handler.
+   *
+   * @param handler The {@link ActionHandler}.
+   * @param action The {@link Action}.
+   * @param result The {@link Result} of the action.
+   * @param context The {@link PollExecutionContext} of the undo.
+   * @param callback Called once the handler returns.
+   */
+  public <A extends Action<R>, R extends Result> void undo(final ActionHandler<A, R> handler, final A action,
+      final R result, PollExecutionContext context, final PollCallback<A, R> callback) {
+    final ExecutionContext blockingContext = new BlockingExecutionContext(context, subActionTimeoutMs);
+    submit(action.getClass(), context, new Job() {
+      @Override
+      public void run() {
+        try {
+          handler.undo(action, result, blockingContext);
+        } catch (Exception e) {
+          callback.onFailure(e);
+          return;
+        }
+        callback.onSuccess(null);
+      }
+
+      @Override
+      public void reject(Throwable caught) {
+        callback.onFailure(caught);
+      }
+    });
+  }
+
+  private int getMaxConcurrency(Class<?> actionClass) {
+    Integer maxConcurrency = maxConcurrencies.get(actionClass);
+    return maxConcurrency == null ? defaultMaxConcurrency : maxConcurrency;
+  }
+
+  private void submit(Class<?> actionClass, PollExecutionContext context, Job job) {
+    // Sub-actions of a blocking handler run inline: the parent is already on a worker and waits for them anyway.
+    Set<Class<?>> heldClasses = onWorker.get();
+    if (heldClasses != null) {
+      runInline(actionClass, context, job, heldClasses);
+      return;
+    }
+
+    if (getMaxConcurrency(actionClass) <= 0) {
+      start(job, null);
+      return;
+    }
+
+    laneFor(actionClass).submit(job);
+  }
+
+  private void runInline(Class<?> actionClass, PollExecutionContext context, Job job, Set<Class<?>> heldClasses) {
+    if (getMaxConcurrency(actionClass) <= 0 || heldClasses.contains(actionClass)) {
+      job.run();
+      return;
+    }
+
+    long remainingMs = context instanceof CancellableContext ? ((CancellableContext) context).getRemainingTimeMs()
+        : Long.MAX_VALUE;
+    long timeoutMs = subActionTimeoutMs > 0 ? Math.min(remainingMs, subActionTimeoutMs) : remainingMs;
+    Lane lane = laneFor(actionClass);
+    if (!lane.acquire(timeoutMs)) {
+      if (timeoutMs == remainingMs) {
+        job.reject(new DeadlineExceededException("The time budget was spent while waiting for a slot to execute "
+            + actionClass.getName()));
+      } else {
+        job.reject(new ServiceException("Gave up waiting for a slot to execute " + actionClass.getName() + " after "
+            + timeoutMs + " ms"));
+      }
+      return;
+    }
+
+    heldClasses.add(actionClass);
+    try {
+      job.run();
+    } finally {
+      heldClasses.remove(actionClass);
+      lane.done();
+    }
+  }
+
+  private Lane laneFor(Class<?> actionClass) {
+    Lane lane = lanes.get(actionClass);
+    if (lane == null) {
+      Lane newLane = new Lane(actionClass);
+      lane = lanes.putIfAbsent(actionClass, newLane);
+      if (lane == null) {
+        lane = newLane;
+      }
+    }
+    return lane;
+  }
+
+  /**
+   * @return {@code false} if the executor rejected the job, which has been failed.
+   */
+  private boolean start(final Job job, final Lane lane) {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          Set<Class<?>> heldClasses = new HashSet<Class<?>>();
+          if (lane != null) {
+            heldClasses.add(lane.actionClass);
+          }
+          onWorker.set(heldClasses);
+          runningCount.incrementAndGet();
+          try {
+            job.run();
+          } finally {
+            runningCount.decrementAndGet();
+            onWorker.remove();
+            if (lane != null) {
+              lane.done();
+            }
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      job.reject(new ServiceException("The blocking action handler executor is shut down"));
+      return false;
+    }
+  }
+
+  /**
+   * Calls {@code Executors.newVirtualThreadPerTaskExecutor()}, which exists from JDK 21, or from JDK 19 with preview
+   * features enabled.
+   *
+   * @return The executor, or {@code null} if virtual threads aren't available.
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      return null;
+    } catch (InvocationTargetException e) {
+      // Preview features are disabled.
+      return null;
+    }
+  }
+
+  private static ExecutorService newPlatformThreadExecutor(int poolSize) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    // The queue is unbounded: the handlers over their concurrency limit wait in their lane, not here.
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gwtp-blocking-handler-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import com.gwtplatform.dispatch.shared.CacheInvalidation;
+import com.gwtplatform.dispatch.shared.CacheInvalidationBatch;
+import com.gwtplatform.dispatch.shared.WatchCacheInvalidationsAction;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes {@link CacheInvalidation}s to the browsers, so that they stop serving stale cached {@link
+ * com.gwtplatform.dispatch.shared.Result}s. Each browser keeps a {@link WatchCacheInvalidationsAction} suspended on the
+ * Atmosphere poll dispatch service, see
+ * {@link com.gwtplatform.dispatch.server.atmosphere.actionhandler.WatchCacheInvalidationsHandler}, and this class
+ * resumes all of them at once with the next {@link CacheInvalidationBatch}.
+ * <p />
+ * Invalidations published within the coalescing window are sent as a single batch, and duplicates are dropped: an
+ * invalidation of a whole action class absorbs the key and tag invalidations of the same class. A batch with more than
+ * {@code maxBatchSize} invalidations is replaced by an order to clear the caches, so a burst of writes costs every
+ * browser one small message.
+ * <p />
+ * Each batch has a sequence number, and the last {@code historySize} batches are kept so that a browser that was
+ * between two polls when a batch was published gets it on its next poll. A browser that fell further behind is told to
+ * clear its caches. So is a browser that polls another instance, for instance a server that was restarted: the batches
+ * carry a random epoch drawn by each instance, and the sequences of two epochs can't be compared. Browsers that have
+ * been waiting for {@code heartbeatMs} are resumed with an empty batch, so that the requests of closed browsers don't
+ * pile up.
+ */
+@Singleton
+public class CacheInvalidationPublisher {
+
+  /**
+   * The default coalescing window.
+   */
+  public static final long DEFAULT_WINDOW_MS = 100;
+  /**
+   * The default number of invalidations above which a batch is replaced by an order to clear the caches.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+  /**
+   * The default number of batches kept for the browsers between two polls.
+   */
+  public static final int DEFAULT_HISTORY_SIZE = 64;
+  /**
+   * The default time after which a waiting browser is resumed with an empty batch.
+   */
+  public static final long DEFAULT_HEARTBEAT_MS = 30000;
+
+  private static class Waiter {
+    private final PollCallback<WatchCacheInvalidationsAction, CacheInvalidationBatch> callback;
+    private final long since;
+
+    private Waiter(PollCallback<WatchCacheInvalidationsAction, CacheInvalidationBatch> callback, long since) {
+      this.callback = callback;
+      this.since = since;
+    }
+  }
+
+  private static final Logger logger = Logger.getLogger(CacheInvalidationPublisher.class.getName());
+
+  private final long windowMs;
+  private final int maxBatchSize;
+  private final int historySize;
+  private final long heartbeatMs;
+  private final ScheduledExecutorService executor;
+  private final long epoch = new Random().nextLong();
+
+  private final Object lock = new Object();
+  private final Set<CacheInvalidation> pending = new LinkedHashSet<CacheInvalidation>();
+  private final Set<String> pendingClasses = new HashSet<String>();
+  private final LinkedList<CacheInvalidationBatch> history = new LinkedList<CacheInvalidationBatch>();
+  private final List<Waiter> waiters = new ArrayList<Waiter>();
+  private boolean pendingClearAll;
+  private ScheduledFuture<?> flush;
+  private ScheduledFuture<?> heartbeat;
+  private long sequence;
+
+  @Inject
+  public CacheInvalidationPublisher() {
+    this(DEFAULT_WINDOW_MS, DEFAULT_MAX_BATCH_SIZE, DEFAULT_HISTORY_SIZE, DEFAULT_HEARTBEAT_MS,
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gwtp-cache-invalidation-publisher");
+            thread.setDaemon(true);
+            return thread;
+          }
+        }));
+  }
+
+  /**
+   * @param windowMs The coalescing window, in milliseconds.
+   * @param maxBatchSize The number of invalidations above which a batch is replaced by an order to clear the caches.
+   * @param historySize The number of batches kept for the browsers between two polls.
+   * @param heartbeatMs The time after which a waiting browser is resumed with an empty batch, or {@code 0} to never
+   *          resume it.
+   * @param executor The executor that publishes the batches.
+   */
+  public CacheInvalidationPublisher(long windowMs, int maxBatchSize, int historySize, long heartbeatMs,
+      ScheduledExecutorService executor) {
+    this.windowMs = windowMs;
+    this.maxBatchSize = maxBatchSize;
+    this.historySize = historySize;
+    this.heartbeatMs = heartbeatMs;
+    this.executor = executor;
+  }
+
+  /**
+   * Publishes an invalidation. It reaches the browsers at the end of the current coalescing window.
+   *
+   * @param invalidation The {@link CacheInvalidation}.
+   */
+  public void publish(CacheInvalidation invalidation) {
+    synchronized (lock) {
+      if (pendingClearAll || pendingClasses.contains(invalidation.getActionClassName())) {
+        return;
+      }
+
+      if (invalidation.isClassWide()) {
+        for (Iterator<CacheInvalidation> it = pending.iterator(); it.hasNext(); ) {
+          if (it.next().getActionClassName().equals(invalidation.getActionClassName())) {
+            it.remove();
+          }
+        }
+        pendingClasses.add(invalidation.getActionClassName());
+      }
+
+      pending.add(invalidation);
+      if (pending.size() > maxBatchSize) {
+        clearPending();
+        pendingClearAll = true;
+      }
+      scheduleFlush();
+    }
+  }
+
+  /**
+   * Tells the browsers to clear their caches entirely, at the end of the current coalescing window.
+   */
+  public void publishClearAll() {
+    synchronized (lock) {
+      clearPending();
+      pendingClearAll = true;
+      scheduleFlush();
+    }
+  }
+
+  /**
+   * Replies with the batches published after {@code lastSequence}, or waits for the next one.
+   *
+   * @param lastEpoch The epoch of the last batch received by the browser.
+   * @param lastSequence The sequence of the last batch received by the browser, or a negative value to start
+   *          watching.
+   * @param callback Called with the batch.
+   */
+  public void watch(long lastEpoch, long lastSequence,
+      PollCallback<WatchCacheInvalidationsAction, CacheInvalidationBatch> callback) {
+    CacheInvalidationBatch missed;
+    synchronized (lock) {
+      if (lastSequence >= 0 && lastEpoch != epoch) {
+        missed = clearAllBatch();
+      } else if (lastSequence < 0 || lastSequence == sequence) {
+        waiters.add(new Waiter(callback, currentTimeMillis()));
+        scheduleHeartbeat();
+        return;
+      } else {
+        missed = missedSince(lastSequence);
+      }
+    }
+
+    deliver(Collections.singletonList(new Waiter(callback, 0)), missed);
+  }
+
+  /**
+   * @return The epoch of this instance, sent with every batch.
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * @return The number of browsers waiting for the next batch.
+   */
+  public int getWaitingCount() {
+    synchronized (lock) {
+      return waiters.size();
+    }
+  }
+
+  /**
+   * Stops publishing. The waiting browsers are not resumed.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return The current time in milliseconds. Tests may override it.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private void scheduleFlush() {
+    if (flush == null) {
+      flush = executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      }, windowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void scheduleHeartbeat() {
+    if (heartbeat == null && heartbeatMs > 0) {
+      heartbeat = executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          resumeIdleWaiters();
+        }
+      }, heartbeatMs, heartbeatMs / 2, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush() {
+    CacheInvalidationBatch batch;
+    List<Waiter> resumed;
+    synchronized (lock) {
+      flush = null;
+      if (!pendingClearAll && pending.isEmpty()) {
+        return;
+      }
+
+      sequence++;
+      batch = new CacheInvalidationBatch(epoch, sequence, pendingClearAll, new ArrayList<CacheInvalidation>(pending));
+      clearPending();
+      pendingClearAll = false;
+
+      history.addLast(batch);
+      if (history.size() > historySize) {
+        history.removeFirst();
+      }
+
+      resumed = new ArrayList<Waiter>(waiters);
+      waiters.clear();
+    }
+
+    deliver(resumed, batch);
+  }
+
+  private void resumeIdleWaiters() {
+    CacheInvalidationBatch empty;
+    List<Waiter> resumed = new ArrayList<Waiter>();
+    synchronized (lock) {
+      long idleSince = currentTimeMillis() - heartbeatMs;
+      for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+        Waiter waiter = it.next();
+        if (waiter.since <= idleSince) {
+          resumed.add(waiter);
+          it.remove();
+        }
+      }
+      empty = new CacheInvalidationBatch(epoch, sequence, false, Collections.<CacheInvalidation>emptyList());
+    }
+
+    deliver(resumed, empty);
+  }
+
+  /**
+   * Merges the batches published after {@code lastSequence}. Must be called with the lock held.
+   */
+  private CacheInvalidationBatch missedSince(long lastSequence) {
+    if (lastSequence > sequence || history.isEmpty() || history.getFirst().getSequence() > lastSequence + 1) {
+      return clearAllBatch();
+    }
+
+    Set<CacheInvalidation> merged = new LinkedHashSet<CacheInvalidation>();
+    for (CacheInvalidationBatch batch : history) {
+      if (batch.getSequence() > lastSequence) {
+        if (batch.isClearAll()) {
+          return clearAllBatch();
+        }
+        merged.addAll(batch.getInvalidations());
+      }
+    }
+    return new CacheInvalidationBatch(epoch, sequence, false, new ArrayList<CacheInvalidation>(merged));
+  }
+
+  /**
+   * @return An order to clear the caches, after which the browser is up to date. Must be called with the lock held.
+   */
+  private CacheInvalidationBatch clearAllBatch() {
+    return new CacheInvalidationBatch(epoch, sequence, true, Collections.<CacheInvalidation>emptyList());
+  }
+
+  private void clearPending() {
+    pending.clear();
+    pendingClasses.clear();
+  }
+
+  private void deliver(List<Waiter> resumed, CacheInvalidationBatch batch) {
+    for (Waiter waiter : resumed) {
+      try {
+        waiter.callback.onSuccess(batch);
+      } catch (RuntimeException e) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "Unexpected exception while pushing cache invalidations: " + e.getMessage(), e);
+        }
+      }
+    }
+  }
+}
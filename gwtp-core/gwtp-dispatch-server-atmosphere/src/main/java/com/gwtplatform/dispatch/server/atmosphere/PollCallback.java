@@ -19,7 +19,21 @@ package com.gwtplatform.dispatch.server.atmosphere;
 import com.gwtplatform.dispatch.shared.Action;
 import com.gwtplatform.dispatch.shared.Result;
 
+/**
+ * Receives the outcome of an asynchronous {@link com.gwtplatform.dispatch.server.atmosphere.actionhandler.PollActionHandler}.
+ * Exactly one of the methods must be called, once.
+ */
 public interface PollCallback<A extends Action<R>, R extends Result> {
 
     void onSuccess(R result);
+
+    /**
+     * Called when the action fails after its handler has returned. The actions executed in the same context are
+     * rolled back.
+     *
+     * @param caught An {@link com.gwtplatform.dispatch.shared.ActionException}, a
+     *          {@link com.gwtplatform.dispatch.shared.ServiceException}, or any unexpected exception, which is
+     *          reported to the client as a {@code ServiceException}.
+     */
+    void onFailure(Throwable caught);
 }
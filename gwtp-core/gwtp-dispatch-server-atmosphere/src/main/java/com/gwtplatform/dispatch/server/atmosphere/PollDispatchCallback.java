@@ -18,7 +18,18 @@ package com.gwtplatform.dispatch.server.atmosphere;
 
 import com.gwtplatform.dispatch.shared.Result;
 
+/**
+ * Receives the outcome of an action executed through {@link PollDispatch}.
+ */
 public interface PollDispatchCallback {
 
     void onSuccess(Result result);
+
+    /**
+     * Called when the action fails after {@link PollDispatch} has returned, once the actions it executed have been
+     * rolled back.
+     *
+     * @param caught The exception.
+     */
+    void onFailure(Throwable caught);
 }
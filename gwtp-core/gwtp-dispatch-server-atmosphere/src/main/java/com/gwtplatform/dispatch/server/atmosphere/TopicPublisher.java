@@ -0,0 +1,376 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SubscribeTopicsAction;
+import com.gwtplatform.dispatch.shared.TopicMessage;
+import com.gwtplatform.dispatch.shared.TopicMessages;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes {@link Result}s to the connections subscribed to a topic. Connections subscribe with a
+ * {@link SubscribeTopicsAction} that stays suspended on the Atmosphere poll dispatch service, see
+ * {@link com.gwtplatform.dispatch.server.atmosphere.actionhandler.SubscribeTopicsHandler}.
+ * <p />
+ * Results published to the same topic within the coalescing window replace each other, so only the latest one is
+ * delivered. At the end of the window, the results are dispatched through a topic to subscribers index into a mailbox
+ * per connection, and each waiting connection is resumed once with everything in its mailbox: with 10k subscribers,
+ * a flush costs 10k writes whatever the number of events. A connection that is between two polls finds its mailbox
+ * on its next poll.
+ * <p />
+ * Each delivery has a sequence number that the next poll acknowledges. The messages of a delivery that wasn't
+ * acknowledged, because the response was lost, are delivered again unless a newer result was published to their
+ * topic. Connections that have been waiting for {@code heartbeatMs} are resumed with an empty delivery, and the
+ * connections that haven't polled for {@code expiryMs} are forgotten.
+ */
+@Singleton
+public class TopicPublisher {
+
+  /**
+   * The default coalescing window.
+   */
+  public static final long DEFAULT_WINDOW_MS = 100;
+  /**
+   * The default time after which a waiting connection is resumed with an empty delivery.
+   */
+  public static final long DEFAULT_HEARTBEAT_MS = 30000;
+  /**
+   * The default time after which a connection that doesn't poll is forgotten.
+   */
+  public static final long DEFAULT_EXPIRY_MS = 120000;
+
+  private static class Subscriber {
+    private final String id;
+    private final Map<String, Result> mailbox = new LinkedHashMap<String, Result>();
+    private Set<String> topics = Collections.emptySet();
+    private PollCallback<SubscribeTopicsAction, TopicMessages> waiting;
+    private TopicMessages unacknowledged;
+    private long sequence;
+    private long lastSeen;
+
+    private Subscriber(String id) {
+      this.id = id;
+    }
+  }
+
+  private static class Delivery {
+    private final PollCallback<SubscribeTopicsAction, TopicMessages> callback;
+    private final TopicMessages messages;
+
+    private Delivery(PollCallback<SubscribeTopicsAction, TopicMessages> callback, TopicMessages messages) {
+      this.callback = callback;
+      this.messages = messages;
+    }
+  }
+
+  private static final Logger logger = Logger.getLogger(TopicPublisher.class.getName());
+
+  private final long windowMs;
+  private final long heartbeatMs;
+  private final long expiryMs;
+  private final ScheduledExecutorService executor;
+  private final SecureRandom random = new SecureRandom();
+
+  private final Object lock = new Object();
+  private final Map<String, Result> pending = new LinkedHashMap<String, Result>();
+  private final Map<String, Subscriber> subscribers = new HashMap<String, Subscriber>();
+  private final Map<String, Set<Subscriber>> subscribersByTopic = new HashMap<String, Set<Subscriber>>();
+  private ScheduledFuture<?> flush;
+  private ScheduledFuture<?> housekeeping;
+
+  @Inject
+  public TopicPublisher() {
+    this(DEFAULT_WINDOW_MS, DEFAULT_HEARTBEAT_MS, DEFAULT_EXPIRY_MS,
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gwtp-topic-publisher");
+            thread.setDaemon(true);
+            return thread;
+          }
+        }));
+  }
+
+  /**
+   * @param windowMs The coalescing window, in milliseconds.
+   * @param heartbeatMs The time after which a waiting connection is resumed with an empty delivery. It must be shorter
+   *          than the suspend timeout of {@link SubscribeTopicsAction}.
+   * @param expiryMs The time after which a connection that doesn't poll is forgotten.
+   * @param executor The executor that delivers the messages.
+   */
+  public TopicPublisher(long windowMs, long heartbeatMs, long expiryMs, ScheduledExecutorService executor) {
+    this.windowMs = windowMs;
+    this.heartbeatMs = heartbeatMs;
+    this.expiryMs = expiryMs;
+    this.executor = executor;
+  }
+
+  /**
+   * Publishes a result to the subscribers of a topic, at the end of the current coalescing window. A result published
+   * to the same topic before then replaces this one.
+   *
+   * @param topic The topic.
+   * @param result The {@link Result}.
+   */
+  public void publish(String topic, Result result) {
+    synchronized (lock) {
+      if (!subscribersByTopic.containsKey(topic)) {
+        return;
+      }
+
+      pending.put(topic, result);
+      if (flush == null) {
+        flush = executor.schedule(new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        }, windowMs, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Updates the subscriptions of a connection, then replies with its mailbox or waits for the next flush.
+   *
+   * @param action The {@link SubscribeTopicsAction}.
+   * @param callback Called with the delivery.
+   */
+  public void subscribe(SubscribeTopicsAction action, PollCallback<SubscribeTopicsAction, TopicMessages> callback) {
+    List<Delivery> deliveries = new ArrayList<Delivery>(2);
+    synchronized (lock) {
+      long now = System.currentTimeMillis();
+      Subscriber subscriber = action.getSubscriberId() == null ? null : subscribers.get(action.getSubscriberId());
+      boolean created = subscriber == null;
+      if (created) {
+        subscriber = new Subscriber(newSubscriberId());
+        subscribers.put(subscriber.id, subscriber);
+      }
+      subscriber.lastSeen = now;
+
+      setTopics(subscriber, new HashSet<String>(action.getTopics()));
+      acknowledge(subscriber, action.getLastSequence());
+
+      // A connection only keeps one poll waiting. The previous one may have been abandoned by the browser.
+      if (subscriber.waiting != null) {
+        deliveries.add(new Delivery(subscriber.waiting, new TopicMessages(subscriber.id, subscriber.sequence,
+            Collections.<TopicMessage>emptyList())));
+        subscriber.waiting = null;
+      }
+
+      subscriber.waiting = callback;
+      if (created || !subscriber.mailbox.isEmpty()) {
+        deliveries.add(drain(subscriber));
+      } else {
+        scheduleHousekeeping();
+      }
+    }
+
+    deliver(deliveries);
+  }
+
+  /**
+   * @return The number of connections known to the publisher.
+   */
+  public int getSubscriberCount() {
+    synchronized (lock) {
+      return subscribers.size();
+    }
+  }
+
+  /**
+   * Stops publishing. The waiting connections are not resumed.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void flush() {
+    List<Delivery> deliveries = new ArrayList<Delivery>();
+    synchronized (lock) {
+      flush = null;
+      Set<Subscriber> touched = new LinkedHashSet<Subscriber>();
+      for (Map.Entry<String, Result> entry : pending.entrySet()) {
+        Set<Subscriber> topicSubscribers = subscribersByTopic.get(entry.getKey());
+        if (topicSubscribers == null) {
+          continue;
+        }
+
+        for (Subscriber subscriber : topicSubscribers) {
+          subscriber.mailbox.put(entry.getKey(), entry.getValue());
+          touched.add(subscriber);
+        }
+      }
+      pending.clear();
+
+      for (Subscriber subscriber : touched) {
+        if (subscriber.waiting != null) {
+          deliveries.add(drain(subscriber));
+        }
+      }
+    }
+
+    deliver(deliveries);
+  }
+
+  private void housekeeping() {
+    List<Delivery> deliveries = new ArrayList<Delivery>();
+    synchronized (lock) {
+      long now = System.currentTimeMillis();
+      for (Iterator<Subscriber> it = subscribers.values().iterator(); it.hasNext(); ) {
+        Subscriber subscriber = it.next();
+        if (subscriber.waiting != null) {
+          if (subscriber.lastSeen <= now - heartbeatMs) {
+            deliveries.add(drain(subscriber));
+          }
+        } else if (subscriber.lastSeen <= now - expiryMs) {
+          setTopics(subscriber, Collections.<String>emptySet());
+          it.remove();
+        }
+      }
+    }
+
+    deliver(deliveries);
+  }
+
+  /**
+   * Must be called with the lock held.
+   */
+  private void scheduleHousekeeping() {
+    if (housekeeping == null) {
+      long period = Math.max(1, heartbeatMs / 2);
+      housekeeping = executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          housekeeping();
+        }
+      }, period, period, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Resumes the waiting poll of a subscriber with its mailbox. Must be called with the lock held.
+   */
+  private Delivery drain(Subscriber subscriber) {
+    List<TopicMessage> messages = new ArrayList<TopicMessage>(subscriber.mailbox.size());
+    for (Map.Entry<String, Result> entry : subscriber.mailbox.entrySet()) {
+      messages.add(new TopicMessage(entry.getKey(), entry.getValue()));
+    }
+    subscriber.mailbox.clear();
+
+    subscriber.sequence++;
+    TopicMessages delivered = new TopicMessages(subscriber.id, subscriber.sequence, messages);
+    subscriber.unacknowledged = messages.isEmpty() ? null : delivered;
+    subscriber.lastSeen = System.currentTimeMillis();
+
+    Delivery delivery = new Delivery(subscriber.waiting, delivered);
+    subscriber.waiting = null;
+    return delivery;
+  }
+
+  /**
+   * Puts the messages of a lost delivery back in the mailbox, behind the newer results of the same topics. Must be
+   * called with the lock held.
+   */
+  private void acknowledge(Subscriber subscriber, long lastSequence) {
+    TopicMessages unacknowledged = subscriber.unacknowledged;
+    subscriber.unacknowledged = null;
+    if (unacknowledged == null || lastSequence >= unacknowledged.getSequence()) {
+      return;
+    }
+
+    Map<String, Result> newer = new LinkedHashMap<String, Result>(subscriber.mailbox);
+    subscriber.mailbox.clear();
+    for (TopicMessage message : unacknowledged.getMessages()) {
+      if (subscriber.topics.contains(message.getTopic())) {
+        subscriber.mailbox.put(message.getTopic(), message.getResult());
+      }
+    }
+    subscriber.mailbox.putAll(newer);
+  }
+
+  /**
+   * Must be called with the lock held.
+   */
+  private void setTopics(Subscriber subscriber, Set<String> topics) {
+    for (String topic : subscriber.topics) {
+      if (!topics.contains(topic)) {
+        Set<Subscriber> topicSubscribers = subscribersByTopic.get(topic);
+        topicSubscribers.remove(subscriber);
+        if (topicSubscribers.isEmpty()) {
+          subscribersByTopic.remove(topic);
+          pending.remove(topic);
+        }
+        subscriber.mailbox.remove(topic);
+      }
+    }
+
+    for (String topic : topics) {
+      if (!subscriber.topics.contains(topic)) {
+        Set<Subscriber> topicSubscribers = subscribersByTopic.get(topic);
+        if (topicSubscribers == null) {
+          topicSubscribers = new HashSet<Subscriber>();
+          subscribersByTopic.put(topic, topicSubscribers);
+        }
+        topicSubscribers.add(subscriber);
+      }
+    }
+
+    subscriber.topics = topics;
+  }
+
+  private String newSubscriberId() {
+    String id;
+    do {
+      id = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+    } while (subscribers.containsKey(id));
+    return id;
+  }
+
+  private void deliver(List<Delivery> deliveries) {
+    for (Delivery delivery : deliveries) {
+      try {
+        delivery.callback.onSuccess(delivery.messages);
+      } catch (RuntimeException e) {
+        if (logger.isLoggable(Level.WARNING)) {
+          logger.log(Level.WARNING, "Unexpected exception while delivering topic messages: " + e.getMessage(), e);
+        }
+      }
+    }
+  }
+}
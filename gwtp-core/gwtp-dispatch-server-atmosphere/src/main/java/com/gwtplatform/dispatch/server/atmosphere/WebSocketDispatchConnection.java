@@ -0,0 +1,322 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.gwt.user.server.rpc.SerializationPolicyProvider;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The dispatch side of one WebSocket, independent of the container. Every text frame carries one request, tagged with
+ * an id chosen by the client, and the {@link PollDispatch} answers each of them with a frame tagged with the same id as
+ * soon as its handler calls back, whatever the order the requests came in.
+ * <p />
+ * Client frames are {@code id:E:payload} to execute an action, {@code id:U:payload} to undo one and {@code id:C:} to
+ * cancel a request. The payload is a GWT-RPC client stream holding the security cookie, the {@link Action} and, for
+ * undo, its {@link Result}; it names the serialization policy of the client, which is resolved through the
+ * {@link SerializationPolicyProvider}. Server frames are {@code id:R:payload} with the serialized {@link Result}, empty
+ * for undo, or {@code id:F:payload} with the serialized {@link ActionException} or {@link ServiceException}. See
+ * {@code com.gwtplatform.dispatch.client.WebSocketDispatchAsync} for the client side.
+ * <p />
+ * Cancelling a request, or closing the connection, doesn't stop its handler; its outcome is dropped instead.
+ */
+public class WebSocketDispatchConnection {
+
+  /**
+   * Writes frames to the WebSocket. Calls are never concurrent.
+   */
+  public interface Sender {
+    void send(String frame) throws IOException;
+  }
+
+  /**
+   * What a request frame holds, once deserialized.
+   */
+  static class Request {
+    final String cookie;
+    final Action<?> action;
+    final Result result;
+    final SerializationPolicy policy;
+
+    Request(String cookie, Action<?> action, Result result, SerializationPolicy policy) {
+      this.cookie = cookie;
+      this.action = action;
+      this.result = result;
+      this.policy = policy;
+    }
+  }
+
+  private static final String xsrfAttackMessage = "Cookie provided by the WebSocket frame doesn't match the handshake cookie, aborting action, possible XSRF attack. (Maybe you forgot to set the security cookie?)";
+
+  private static final Logger logger = Logger.getLogger(WebSocketDispatchConnection.class.getName());
+
+  private final PollDispatch dispatch;
+  private final SerializationPolicyProvider policyProvider;
+  private final String securityCookie;
+  private final Sender sender;
+  private final ConcurrentMap<Integer, Request> pending = new ConcurrentHashMap<Integer, Request>();
+  private volatile boolean closed;
+
+  /**
+   * @param dispatch The {@link PollDispatch} that executes the actions.
+   * @param policyProvider Resolves the serialization policy named by each request, usually the
+   *          {@link AbstractPollDispatchServiceImpl}.
+   * @param securityCookie The security cookie sent with the WebSocket handshake, or {@code null} if there is none. If
+   *          {@code null}, secured actions are rejected.
+   * @param sender Writes the replies.
+   */
+  public WebSocketDispatchConnection(PollDispatch dispatch, SerializationPolicyProvider policyProvider,
+      String securityCookie, Sender sender) {
+    this.dispatch = dispatch;
+    this.policyProvider = policyProvider;
+    this.securityCookie = securityCookie;
+    this.sender = sender;
+  }
+
+  /**
+   * Handles a text frame received from the client.
+   *
+   * @param frame The frame.
+   */
+  public void onMessage(String frame) {
+    int idEnd = frame.indexOf(':');
+    int opEnd = frame.indexOf(':', idEnd + 1);
+    if (idEnd <= 0 || opEnd != idEnd + 2) {
+      logger.warning("Ignoring malformed WebSocket dispatch frame");
+      return;
+    }
+
+    final int id;
+    try {
+      id = Integer.parseInt(frame.substring(0, idEnd));
+    } catch (NumberFormatException e) {
+      logger.warning("Ignoring WebSocket dispatch frame with an invalid request id");
+      return;
+    }
+
+    char op = frame.charAt(idEnd + 1);
+    if (op == 'C') {
+      pending.remove(id);
+      return;
+    }
+    if (op != 'E' && op != 'U') {
+      logger.warning("Ignoring WebSocket dispatch frame with unknown operation " + op);
+      return;
+    }
+
+    Request request;
+    try {
+      request = decode(frame.substring(opEnd + 1), op == 'U');
+    } catch (SerializationException e) {
+      rejectUndecodable(id, e);
+      return;
+    } catch (RuntimeException e) {
+      rejectUndecodable(id, e);
+      return;
+    }
+
+    if (closed) {
+      return;
+    }
+    if (pending.putIfAbsent(id, request) != null) {
+      reply(id, 'F', new ServiceException("Request id " + id + " is already in use"), request.policy);
+      return;
+    }
+
+    if (op == 'E') {
+      execute(id, request);
+    } else {
+      undo(id, request);
+    }
+  }
+
+  /**
+   * Drops the outcome of every request still running. Call when the WebSocket is closed.
+   */
+  public void close() {
+    closed = true;
+    pending.clear();
+  }
+
+  /**
+   * @return The number of requests whose handler hasn't called back yet.
+   */
+  public int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Deserializes the payload of a request frame.
+   */
+  Request decode(String payload, boolean undo) throws SerializationException {
+    ServerSerializationStreamReader reader = new ServerSerializationStreamReader(
+        Thread.currentThread().getContextClassLoader(), policyProvider);
+    reader.prepareToRead(payload);
+
+    String cookie = reader.readString();
+    Action<?> action = (Action<?>) reader.readObject();
+    Result result = undo ? (Result) reader.readObject() : null;
+    return new Request(cookie, action, result, reader.getSerializationPolicy());
+  }
+
+  /**
+   * Serializes the payload of a reply frame.
+   */
+  String encode(Object value, SerializationPolicy policy) throws SerializationException {
+    ServerSerializationStreamWriter writer = new ServerSerializationStreamWriter(policy);
+    writer.prepareToWrite();
+    writer.writeObject(value);
+    return writer.toString();
+  }
+
+  private void execute(final int id, final Request request) {
+    if (isForged(id, request)) {
+      return;
+    }
+
+    final String what = "executing " + request.action.getClass().getName();
+    try {
+      dispatch.execute(request.action, new PollDispatchCallback() {
+        @Override
+        public void onSuccess(Result result) {
+          complete(id, request, 'R', result);
+        }
+
+        @Override
+        public void onFailure(Throwable caught) {
+          fail(id, request, caught, what);
+        }
+      });
+    } catch (ActionException e) {
+      fail(id, request, e, what);
+    } catch (ServiceException e) {
+      fail(id, request, e, what);
+    } catch (RuntimeException e) {
+      fail(id, request, e, what);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void undo(final int id, final Request request) {
+    if (isForged(id, request)) {
+      return;
+    }
+
+    final String what = "undoing " + request.action.getClass().getName();
+    try {
+      dispatch.undo((Action<Result>) request.action, request.result, new PollDispatchCallback() {
+        @Override
+        public void onSuccess(Result result) {
+          complete(id, request, 'R', null);
+        }
+
+        @Override
+        public void onFailure(Throwable caught) {
+          fail(id, request, caught, what);
+        }
+      });
+    } catch (ActionException e) {
+      fail(id, request, e, what);
+    } catch (ServiceException e) {
+      fail(id, request, e, what);
+    } catch (RuntimeException e) {
+      fail(id, request, e, what);
+    }
+  }
+
+  /**
+   * Like GWT-RPC, answers a request that can't be deserialized, usually because the client is out of date, with an
+   * {@link IncompatibleRemoteServiceException} that any client can read.
+   */
+  private void rejectUndecodable(int id, Exception e) {
+    logger.log(Level.WARNING, "Unable to deserialize WebSocket dispatch request " + id + ": " + e.getMessage(), e);
+    reply(id, 'F', new IncompatibleRemoteServiceException(e.getMessage(), e), RPC.getDefaultSerializationPolicy());
+  }
+
+  /**
+   * Rejects a secured action whose cookie doesn't match the one of the handshake.
+   */
+  private boolean isForged(int id, Request request) {
+    if (!request.action.isSecured() || (securityCookie != null && securityCookie.equals(request.cookie))) {
+      return false;
+    }
+
+    String message = xsrfAttackMessage + " While executing action: " + request.action.getClass().getName();
+
+    logger.severe(message);
+    complete(id, request, 'F', new ServiceException(message));
+    return true;
+  }
+
+  private void fail(int id, Request request, Throwable caught, String what) {
+    if (logger.isLoggable(Level.WARNING)) {
+      logger.log(Level.WARNING, "Exception while " + what + ": " + caught.getMessage(), caught);
+    }
+    complete(id, request, 'F', caught instanceof ActionException || caught instanceof ServiceException ? caught
+        : new ServiceException(caught));
+  }
+
+  private void complete(int id, Request request, char status, Object value) {
+    // Cancelled, closed, or already answered.
+    if (!pending.remove(id, request)) {
+      return;
+    }
+
+    reply(id, status, value, request.policy);
+  }
+
+  private void reply(int id, char status, Object value, SerializationPolicy policy) {
+    String payload;
+    try {
+      payload = value == null ? "" : encode(value, policy);
+    } catch (SerializationException e) {
+      logger.log(Level.WARNING, "Unable to serialize the reply to WebSocket dispatch request " + id + ": "
+          + e.getMessage(), e);
+      // Falls back once to a plain ServiceException, so that the client isn't left waiting.
+      if (value.getClass() != ServiceException.class) {
+        reply(id, 'F', new ServiceException(e.getMessage()), policy);
+      }
+      return;
+    }
+
+    String frame = id + ":" + status + ":" + payload;
+    try {
+      synchronized (sender) {
+        sender.send(frame);
+      }
+    } catch (IOException e) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "IOException while replying to WebSocket dispatch request " + id + ": "
+            + e.getMessage(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import org.atmosphere.websocket.WebSocket;
+import org.atmosphere.websocket.WebSocketHandler;
+import org.atmosphere.websocket.WebSocketProcessor;
+import org.atmosphere.websocket.WebSocketProcessor.WebSocketException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * The Atmosphere WebSocket endpoint of {@code com.gwtplatform.dispatch.client.WebSocketDispatchAsync}. Each WebSocket
+ * multiplexes the actions of one client, see {@link WebSocketDispatchConnection} for the protocol, and they are executed
+ * by the same {@link PollDispatch} and {@link com.gwtplatform.dispatch.server.atmosphere.actionhandler.PollActionHandler
+ * PollActionHandler}s as the poll dispatch service.
+ * <p />
+ * Register the handler with the Atmosphere {@link WebSocketProcessor} for the path of the socket with
+ * {@link #registerWith(WebSocketProcessor, String)}, for instance
+ * {@code handler.registerWith(WebSocketProcessorFactory.getDefault().getWebSocketProcessor(framework), path)}.
+ * Serialization policies are loaded by the {@link AbstractPollDispatchServiceImpl}, which must have been initialized by
+ * its {@link AtmospherePollDispatchHandler}. Any container Atmosphere supports WebSockets on works, embedded Jetty
+ * included.
+ */
+@Singleton
+public class WebSocketDispatchHandler implements WebSocketHandler {
+
+  private static final Logger logger = Logger.getLogger(WebSocketDispatchHandler.class.getName());
+
+  private final PollDispatch dispatch;
+  private final AbstractPollDispatchServiceImpl service;
+  private final ConcurrentMap<WebSocket, WebSocketDispatchConnection> connections = new ConcurrentHashMap<WebSocket, WebSocketDispatchConnection>();
+
+  @Inject
+  public WebSocketDispatchHandler(PollDispatch dispatch, AbstractPollDispatchServiceImpl service) {
+    this.dispatch = dispatch;
+    this.service = service;
+  }
+
+  @Override
+  public void onOpen(final WebSocket webSocket) throws IOException {
+    connections.put(webSocket, new WebSocketDispatchConnection(dispatch, service, findSecurityCookie(webSocket),
+        new WebSocketDispatchConnection.Sender() {
+          @Override
+          public void send(String frame) throws IOException {
+            webSocket.write(frame);
+          }
+        }));
+  }
+
+  @Override
+  public void onTextMessage(WebSocket webSocket, String data) throws IOException {
+    WebSocketDispatchConnection connection = connections.get(webSocket);
+    if (connection == null) {
+      logger.warning("Ignoring a frame received on a WebSocket that isn't open");
+      return;
+    }
+
+    connection.onMessage(data);
+  }
+
+  @Override
+  public void onByteMessage(WebSocket webSocket, byte[] data, int offset, int length) throws IOException {
+    logger.warning("Ignoring a binary frame, the WebSocket dispatch only uses text frames");
+  }
+
+  @Override
+  public void onClose(WebSocket webSocket) {
+    WebSocketDispatchConnection connection = connections.remove(webSocket);
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+  @Override
+  public void onError(WebSocket webSocket, WebSocketException t) {
+    logger.warning("WebSocket dispatch error: " + t.getMessage());
+    onClose(webSocket);
+  }
+
+  /**
+   * Makes the {@link WebSocketProcessor} of an Atmosphere servlet send the WebSockets opened on {@code path} to this
+   * handler.
+   *
+   * @param processor The {@link WebSocketProcessor}.
+   * @param path The path of the socket, relative to the servlet and starting with {@code /}.
+   * @return This handler.
+   */
+  public WebSocketDispatchHandler registerWith(WebSocketProcessor processor, String path) {
+    if (path == null || !path.startsWith("/")) {
+      throw new IllegalArgumentException("The path of the socket must start with /, got " + path);
+    }
+    processor.registerWebSocketHandler(path, this);
+    return this;
+  }
+
+  /**
+   * @return The number of open WebSockets.
+   */
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  private String findSecurityCookie(WebSocket webSocket) {
+    String cookieName = service.getSecurityCookieName();
+    HttpServletRequest request = webSocket.resource() == null ? null : webSocket.resource().getRequest();
+    if (cookieName == null || request == null || request.getCookies() == null) {
+      return null;
+    }
+
+    for (Cookie cookie : request.getCookies()) {
+      if (cookie.getName().equals(cookieName)) {
+        return cookie.getValue();
+      }
+    }
+    return null;
+  }
+}
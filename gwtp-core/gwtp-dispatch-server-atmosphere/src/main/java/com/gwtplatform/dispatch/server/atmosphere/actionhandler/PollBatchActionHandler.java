@@ -27,40 +27,115 @@ import com.gwtplatform.dispatch.shared.BatchResult;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This handles {@link com.gwtplatform.dispatch.shared.BatchAction} requests, which are a set of multiple
  * actions that need to all be executed successfully in sequence for the whole
  * action to succeed.
+ * <p />
+ * The sub-actions may complete in any order and on any thread. Each completion writes the slot of its action and
+ * decrements a counter, and the thread that brings the counter to zero sends the {@link BatchResult}, so it is sent
+ * exactly once, with the results in the order of the actions. With {@link OnException#ROLLBACK}, the first failure
+ * of a sub-action fails the whole batch instead, whether it's thrown or reported to the callback. The batch then
+ * never succeeds nor fails again, and the remaining sub-actions aren't started.
  *
  * @author David Peterson
  */
 public class PollBatchActionHandler extends
         AbstractPollActionHandler<BatchAction, BatchResult> {
 
+  /**
+   * Collects the results of the sub-actions of one batch.
+   */
+  private static class Aggregator {
+    private final Result[] slots;
+    // Starts one above the number of actions, so the batch can't complete before all the actions have been started.
+    private final AtomicInteger remaining;
+    private final PollCallback<BatchAction, BatchResult> callback;
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private Aggregator(int size, PollCallback<BatchAction, BatchResult> callback) {
+      this.slots = new Result[size];
+      this.remaining = new AtomicInteger(size + 1);
+      this.callback = callback;
+    }
+
+    private void complete(int index, Result result) {
+      // The write is published to the last thread by the atomic decrement that follows it.
+      slots[index] = result;
+      countDown();
+    }
+
+    private void countDown() {
+      if (remaining.decrementAndGet() == 0) {
+        callback.onSuccess(new BatchResult(new ArrayList<Result>(Arrays.asList(slots))));
+      }
+    }
+
+    /**
+     * Fails the batch. As the failed action never counts down, the batch can't succeed afterwards.
+     */
+    private void fail(Throwable caught) {
+      if (markFailed()) {
+        callback.onFailure(caught);
+      }
+    }
+
+    /**
+     * @return {@code true} if the batch hadn't failed yet, in which case the caller must report the failure.
+     */
+    private boolean markFailed() {
+      return failed.compareAndSet(false, true);
+    }
+
+    private boolean hasFailed() {
+      return failed.get();
+    }
+  }
+
   public PollBatchActionHandler() {
     super(BatchAction.class);
   }
 
+  @SuppressWarnings({"unchecked", "rawtypes"})
   @Override
   public void execute(final BatchAction action, PollExecutionContext context, final PollCallback<BatchAction, BatchResult> callback)
       throws ActionException {
-    OnException onException = action.getOnException();
-    final List<Action<?>> actions = Arrays.asList(action.getActions());
-    final List<Result> results = Collections.synchronizedList(new ArrayList<Result>(actions.size()));
-    for (final Action<?> a : actions) {
+    final OnException onException = action.getOnException();
+    Action<?>[] actions = action.getActions();
+    final Aggregator aggregator = new Aggregator(actions.length, callback);
+    for (int i = 0; i < actions.length; i++) {
+      if (aggregator.hasFailed()) {
+        // A sub-action already failed the batch, possibly from another thread.
+        return;
+      }
+
+      final int index = i;
       try {
-        context.execute(a, new PollCallback() {
+        context.execute((Action) actions[i], new PollCallback() {
           @Override
           public void onSuccess(Result result) {
-            results.add(actions.indexOf(a), result);
-            checkIfReady(results, callback);
+            aggregator.complete(index, result);
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            if (onException == OnException.ROLLBACK) {
+              aggregator.fail(caught);
+            } else {
+              // The failed action keeps a null result.
+              aggregator.countDown();
+            }
           }
         });
       } catch (Exception e) {
         if (onException == OnException.ROLLBACK) {
+          if (!aggregator.markFailed()) {
+            // The batch failed already and mustn't be failed twice.
+            return;
+          }
           if (e instanceof ActionException) {
             throw (ActionException) e;
           }
@@ -70,17 +145,11 @@ public class PollBatchActionHandler extends
             throw new ActionException(e);
           }
         }
+        // The failed action keeps a null result.
+        aggregator.countDown();
       }
     }
-  }
-
-  private void checkIfReady(List<Result> results, PollCallback<BatchAction, BatchResult> callback) {
-    for (Result r : results) {
-      if (r == null) {
-        return;
-      }
-    }
-    callback.onSuccess(new BatchResult(results));
+    aggregator.countDown();
   }
 
   @Override
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere.actionhandler;
+
+import com.gwtplatform.dispatch.server.atmosphere.PollCallback;
+import com.gwtplatform.dispatch.server.atmosphere.PollExecutionContext;
+import com.gwtplatform.dispatch.server.atmosphere.TopicPublisher;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.SubscribeTopicsAction;
+import com.gwtplatform.dispatch.shared.TopicMessages;
+
+import javax.inject.Inject;
+
+/**
+ * Keeps {@link SubscribeTopicsAction}s suspended until the {@link TopicPublisher} has messages for their connection.
+ * Bind it with {@code bindPollHandler(SubscribeTopicsAction.class, SubscribeTopicsHandler.class)}.
+ */
+public class SubscribeTopicsHandler extends AbstractPollActionHandler<SubscribeTopicsAction, TopicMessages> {
+
+  private final TopicPublisher publisher;
+
+  @Inject
+  public SubscribeTopicsHandler(TopicPublisher publisher) {
+    super(SubscribeTopicsAction.class);
+    this.publisher = publisher;
+  }
+
+  @Override
+  public void execute(SubscribeTopicsAction action, PollExecutionContext context,
+      PollCallback<SubscribeTopicsAction, TopicMessages> callback) throws ActionException {
+    publisher.subscribe(action, callback);
+  }
+
+  @Override
+  public void undo(SubscribeTopicsAction action, TopicMessages result, PollExecutionContext context,
+      PollCallback<SubscribeTopicsAction, TopicMessages> callback) throws ActionException {
+    callback.onSuccess(null);
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere.actionhandler;
+
+import com.gwtplatform.dispatch.server.atmosphere.CacheInvalidationPublisher;
+import com.gwtplatform.dispatch.server.atmosphere.PollCallback;
+import com.gwtplatform.dispatch.server.atmosphere.PollExecutionContext;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.CacheInvalidationBatch;
+import com.gwtplatform.dispatch.shared.WatchCacheInvalidationsAction;
+
+import javax.inject.Inject;
+
+/**
+ * Keeps {@link WatchCacheInvalidationsAction}s suspended until the {@link CacheInvalidationPublisher} publishes the
+ * next batch. Bind it with
+ * {@code bindPollHandler(WatchCacheInvalidationsAction.class, WatchCacheInvalidationsHandler.class)}.
+ */
+public class WatchCacheInvalidationsHandler extends
+    AbstractPollActionHandler<WatchCacheInvalidationsAction, CacheInvalidationBatch> {
+
+  private final CacheInvalidationPublisher publisher;
+
+  @Inject
+  public WatchCacheInvalidationsHandler(CacheInvalidationPublisher publisher) {
+    super(WatchCacheInvalidationsAction.class);
+    this.publisher = publisher;
+  }
+
+  @Override
+  public void execute(WatchCacheInvalidationsAction action, PollExecutionContext context,
+      PollCallback<WatchCacheInvalidationsAction, CacheInvalidationBatch> callback) throws ActionException {
+    publisher.watch(action.getLastEpoch(), action.getLastSequence(), callback);
+  }
+
+  @Override
+  public void undo(WatchCacheInvalidationsAction action, CacheInvalidationBatch result, PollExecutionContext context,
+      PollCallback<WatchCacheInvalidationsAction, CacheInvalidationBatch> callback) throws ActionException {
+    callback.onSuccess(null);
+  }
+}
@@ -20,6 +20,8 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
 import com.gwtplatform.dispatch.server.atmosphere.AbstractPollDispatchImpl;
+import com.gwtplatform.dispatch.server.atmosphere.BlockingHandlerExecutor;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
 
 /**
  * @author Philippe Beaudoin
@@ -31,4 +33,25 @@ public class PollDispatchImpl extends AbstractPollDispatchImpl {
   public PollDispatchImpl(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry) {
     super(actionHandlerValidatorRegistry);
   }
+
+  /**
+   * Receives the metrics bound with {@link com.gwtplatform.dispatch.server.guice.DispatchModule.Builder#metrics()},
+   * if any.
+   *
+   * @param dispatchMetrics The {@link DispatchMetrics}.
+   */
+  @Inject(optional = true)
+  void injectDispatchMetrics(DispatchMetrics dispatchMetrics) {
+    setDispatchMetrics(dispatchMetrics);
+  }
+
+  /**
+   * Receives the {@link BlockingHandlerExecutor} singleton, so that it can be configured where it's injected.
+   *
+   * @param blockingHandlerExecutor The {@link BlockingHandlerExecutor}.
+   */
+  @Inject
+  void injectBlockingHandlerExecutor(BlockingHandlerExecutor blockingHandlerExecutor) {
+    setBlockingHandlerExecutor(blockingHandlerExecutor);
+  }
 }
\ No newline at end of file
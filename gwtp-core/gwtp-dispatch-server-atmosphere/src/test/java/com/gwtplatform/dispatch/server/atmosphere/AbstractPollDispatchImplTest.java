@@ -0,0 +1,293 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.server.atmosphere.actionhandler.AbstractPollActionHandler;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for the asynchronous failure path of {@link AbstractPollDispatchImpl}.
+ */
+public class AbstractPollDispatchImplTest {
+
+  static class StepResult implements Result {
+  }
+
+  static class StepAction extends UnsecuredActionImpl<StepResult> {
+    final String name;
+    final boolean failingUndo;
+
+    StepAction(String name, boolean failingUndo) {
+      this.name = name;
+      this.failingUndo = failingUndo;
+    }
+  }
+
+  static class CompoundAction extends UnsecuredActionImpl<StepResult> {
+    final StepAction[] steps;
+
+    CompoundAction(StepAction... steps) {
+      this.steps = steps;
+    }
+  }
+
+  class StepHandler extends AbstractPollActionHandler<StepAction, StepResult> {
+    StepHandler() {
+      super(StepAction.class);
+    }
+
+    @Override
+    public void execute(StepAction action, PollExecutionContext context, PollCallback<StepAction, StepResult> callback) {
+      log.add("execute " + action.name);
+      callback.onSuccess(new StepResult());
+    }
+
+    @Override
+    public void undo(StepAction action, StepResult result, PollExecutionContext context,
+        PollCallback<StepAction, StepResult> callback) {
+      log.add("undo " + action.name);
+      if (action.failingUndo) {
+        callback.onFailure(new ActionException("Undo " + action.name + " failed"));
+      } else {
+        callback.onSuccess(null);
+      }
+    }
+  }
+
+  /**
+   * Executes its steps, then keeps its callback for the test to complete.
+   */
+  class CompoundHandler extends AbstractPollActionHandler<CompoundAction, StepResult> {
+    CompoundHandler() {
+      super(CompoundAction.class);
+    }
+
+    @Override
+    public void execute(CompoundAction action, PollExecutionContext context,
+        PollCallback<CompoundAction, StepResult> callback) throws ActionException {
+      for (StepAction step : action.steps) {
+        try {
+          context.execute(step, new PollCallback<StepAction, StepResult>() {
+            @Override
+            public void onSuccess(StepResult result) {
+            }
+
+            @Override
+            public void onFailure(Throwable caught) {
+            }
+          });
+        } catch (ServiceException e) {
+          throw new ActionException(e);
+        }
+      }
+      pending = callback;
+    }
+
+    @Override
+    public void undo(CompoundAction action, StepResult result, PollExecutionContext context,
+        PollCallback<CompoundAction, StepResult> callback) {
+      callback.onSuccess(null);
+    }
+  }
+
+  /**
+   * Executes its step, calls back and throws anyway.
+   */
+  static class CallbackThenThrowAction extends UnsecuredActionImpl<StepResult> {
+    final StepAction step;
+    final boolean succeed;
+
+    CallbackThenThrowAction(StepAction step, boolean succeed) {
+      this.step = step;
+      this.succeed = succeed;
+    }
+  }
+
+  class CallbackThenThrowHandler extends AbstractPollActionHandler<CallbackThenThrowAction, StepResult> {
+    CallbackThenThrowHandler() {
+      super(CallbackThenThrowAction.class);
+    }
+
+    @Override
+    public void execute(CallbackThenThrowAction action, PollExecutionContext context,
+        PollCallback<CallbackThenThrowAction, StepResult> callback) throws ActionException {
+      try {
+        context.execute(action.step, new PollCallback<StepAction, StepResult>() {
+          @Override
+          public void onSuccess(StepResult result) {
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+          }
+        });
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      if (action.succeed) {
+        callback.onSuccess(new StepResult());
+      } else {
+        callback.onFailure(new ActionException("Called back"));
+      }
+      throw new ActionException("Thrown after calling back");
+    }
+
+    @Override
+    public void undo(CallbackThenThrowAction action, StepResult result, PollExecutionContext context,
+        PollCallback<CallbackThenThrowAction, StepResult> callback) throws ActionException {
+      log.add("undo");
+      callback.onSuccess(null);
+      throw new ActionException("Thrown after calling back");
+    }
+  }
+
+  static class Registry extends AbstractEagerActionHandlerValidatorRegistryImpl {
+  }
+
+  private final List<String> log = new CopyOnWriteArrayList<String>();
+  private final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+  private PollCallback<CompoundAction, StepResult> pending;
+  private AbstractPollDispatchImpl dispatch;
+
+  private final PollDispatchCallback dispatchCallback = new PollDispatchCallback() {
+    @Override
+    public void onSuccess(Result result) {
+      log.add("success");
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      log.add("failure");
+      failures.add(caught);
+    }
+  };
+
+  @Before
+  public void setUp() {
+    Registry registry = new Registry();
+    registry.addActionHandlerValidator(StepAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new StepHandler()));
+    registry.addActionHandlerValidator(CompoundAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new CompoundHandler()));
+    registry.addActionHandlerValidator(CallbackThenThrowAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new CallbackThenThrowHandler()));
+    dispatch = new AbstractPollDispatchImpl(registry) {
+    };
+  }
+
+  @Test
+  public void asynchronousFailureShouldRollBackBeforeReportingTheFailure() throws Exception {
+    // Given
+    dispatch.execute(new CompoundAction(new StepAction("a", false), new StepAction("b", false)), dispatchCallback);
+    ActionException failure = new ActionException("Compound failed");
+
+    // When
+    pending.onFailure(failure);
+
+    // Then
+    assertEquals(Arrays.asList("execute a", "execute b", "undo b", "undo a", "failure"), log);
+    assertSame(failure, failures.get(0));
+  }
+
+  @Test
+  public void failedUndoShouldNotStopTheRollback() throws Exception {
+    // Given
+    dispatch.execute(new CompoundAction(new StepAction("a", false), new StepAction("b", true)), dispatchCallback);
+
+    // When
+    pending.onFailure(new ActionException("Compound failed"));
+
+    // Then
+    assertEquals(Arrays.asList("execute a", "execute b", "undo b", "undo a", "failure"), log);
+    assertEquals(1, failures.size());
+  }
+
+  @Test
+  public void successShouldNotRollBack() throws Exception {
+    // Given
+    dispatch.execute(new CompoundAction(new StepAction("a", false)), dispatchCallback);
+
+    // When
+    pending.onSuccess(new StepResult());
+
+    // Then
+    assertEquals(Arrays.asList("execute a", "success"), log);
+  }
+
+  @Test
+  public void exceptionThrownAfterSuccessShouldNotRollBack() throws ServiceException {
+    // Given
+    CallbackThenThrowAction action = new CallbackThenThrowAction(new StepAction("a", false), true);
+
+    // When
+    try {
+      dispatch.execute(action, dispatchCallback);
+      fail("Expected an ActionException");
+    } catch (ActionException e) {
+      // Then
+      assertEquals(Arrays.asList("execute a", "success"), log);
+    }
+  }
+
+  @Test
+  public void exceptionThrownAfterFailureShouldRollBackOnce() throws ServiceException {
+    // Given
+    CallbackThenThrowAction action = new CallbackThenThrowAction(new StepAction("a", false), false);
+
+    // When
+    try {
+      dispatch.execute(action, dispatchCallback);
+      fail("Expected an ActionException");
+    } catch (ActionException e) {
+      // Then
+      assertEquals(Arrays.asList("execute a", "undo a", "failure"), log);
+      assertEquals("Called back", failures.get(0).getMessage());
+    }
+  }
+
+  @Test
+  public void exceptionThrownAfterUndoShouldBeIgnoredByTheCallback() throws ServiceException {
+    // Given
+    CallbackThenThrowAction action = new CallbackThenThrowAction(new StepAction("a", false), true);
+
+    // When
+    try {
+      dispatch.undo(action, new StepResult(), dispatchCallback);
+      fail("Expected an ActionException");
+    } catch (ActionException e) {
+      // Then
+      assertEquals(Arrays.asList("undo", "success"), log);
+    }
+  }
+}
@@ -0,0 +1,516 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.CancellableContext;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.server.atmosphere.actionhandler.AbstractPollActionHandler;
+import com.gwtplatform.dispatch.shared.ActionCancelledException;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.TimeBudget;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link BlockingHandlerExecutor}, through {@link AbstractPollDispatchImpl}.
+ */
+public class BlockingHandlerExecutorTest {
+
+  static class ThreadResult implements Result {
+    final Thread thread;
+
+    ThreadResult(Thread thread) {
+      this.thread = thread;
+    }
+  }
+
+  static class BlockingAction extends UnsecuredActionImpl<ThreadResult> {
+    final boolean failing;
+
+    BlockingAction(boolean failing) {
+      this.failing = failing;
+    }
+  }
+
+  static class CompoundAction extends UnsecuredActionImpl<ThreadResult> {
+  }
+
+  /**
+   * Handled by a poll handler that never calls back.
+   */
+  static class PendingAction extends UnsecuredActionImpl<ThreadResult> {
+  }
+
+  @TimeBudget(BUDGET_MS)
+  static class BudgetedWaitingAction extends UnsecuredActionImpl<ThreadResult> {
+  }
+
+  static class WaitingAction extends UnsecuredActionImpl<ThreadResult> {
+  }
+
+  static class ParentAction extends UnsecuredActionImpl<ThreadResult> {
+  }
+
+  static class LoopingAction extends UnsecuredActionImpl<ThreadResult> {
+  }
+
+  /**
+   * Waits for the gate, like a handler waiting on I/O.
+   */
+  class BlockingHandler extends AbstractActionHandler<BlockingAction, ThreadResult> {
+    BlockingHandler() {
+      super(BlockingAction.class);
+    }
+
+    @Override
+    public ThreadResult execute(BlockingAction action, ExecutionContext context) throws ActionException {
+      recordRunning(runningHandlers.incrementAndGet());
+      try {
+        gate.await();
+      } catch (InterruptedException e) {
+        throw new ActionException(e);
+      } finally {
+        runningHandlers.decrementAndGet();
+      }
+
+      if (action.failing) {
+        throw new ActionException("Blocking action failed");
+      }
+      return new ThreadResult(Thread.currentThread());
+    }
+
+    @Override
+    public void undo(BlockingAction action, ThreadResult result, ExecutionContext context) {
+    }
+  }
+
+  /**
+   * Executes two blocking sub-actions.
+   */
+  static class CompoundHandler extends AbstractActionHandler<CompoundAction, ThreadResult> {
+    CompoundHandler() {
+      super(CompoundAction.class);
+    }
+
+    @Override
+    public ThreadResult execute(CompoundAction action, ExecutionContext context) throws ActionException {
+      try {
+        context.execute(new BlockingAction(false));
+        return context.execute(new BlockingAction(false));
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+    }
+
+    @Override
+    public void undo(CompoundAction action, ThreadResult result, ExecutionContext context) {
+    }
+  }
+
+  static class PendingHandler extends AbstractPollActionHandler<PendingAction, ThreadResult> {
+    PendingHandler() {
+      super(PendingAction.class);
+    }
+
+    @Override
+    public void execute(PendingAction action, PollExecutionContext context,
+        PollCallback<PendingAction, ThreadResult> callback) {
+    }
+
+    @Override
+    public void undo(PendingAction action, ThreadResult result, PollExecutionContext context,
+        PollCallback<PendingAction, ThreadResult> callback) {
+    }
+  }
+
+  /**
+   * Records the budget it's given, then waits for a {@link PendingAction} and records how that fails.
+   */
+  class WaitingHandler<A extends UnsecuredActionImpl<ThreadResult>> extends AbstractActionHandler<A, ThreadResult> {
+    WaitingHandler(Class<A> actionType) {
+      super(actionType);
+    }
+
+    @Override
+    public ThreadResult execute(A action, ExecutionContext context) throws ActionException {
+      remainingTimeMs = ((CancellableContext) context).getRemainingTimeMs();
+      try {
+        return context.execute(new PendingAction());
+      } catch (ServiceException e) {
+        subActionFailure = e;
+        throw new ActionException(e);
+      }
+    }
+
+    @Override
+    public void undo(A action, ThreadResult result, ExecutionContext context) {
+    }
+  }
+
+  /**
+   * Starts a {@link LoopingAction}, then fails.
+   */
+  static class ParentHandler extends AbstractPollActionHandler<ParentAction, ThreadResult> {
+    ParentHandler() {
+      super(ParentAction.class);
+    }
+
+    @Override
+    public void execute(ParentAction action, PollExecutionContext context,
+        PollCallback<ParentAction, ThreadResult> callback) throws ActionException {
+      try {
+        context.execute(new LoopingAction(), new PollCallback<LoopingAction, ThreadResult>() {
+          @Override
+          public void onSuccess(ThreadResult result) {
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+          }
+        });
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      callback.onFailure(new ActionException("Parent action failed"));
+    }
+
+    @Override
+    public void undo(ParentAction action, ThreadResult result, PollExecutionContext context,
+        PollCallback<ParentAction, ThreadResult> callback) {
+    }
+  }
+
+  /**
+   * Works until its context is cancelled, then tries to execute a sub-action.
+   */
+  class LoopingHandler extends AbstractActionHandler<LoopingAction, ThreadResult> {
+    LoopingHandler() {
+      super(LoopingAction.class);
+    }
+
+    @Override
+    public ThreadResult execute(LoopingAction action, ExecutionContext context) throws ActionException {
+      CancellableContext cancellable = (CancellableContext) context;
+      long giveUp = System.currentTimeMillis() + 5000;
+      while (!cancellable.isCancelled() && System.currentTimeMillis() < giveUp) {
+        Thread.yield();
+      }
+
+      try {
+        context.execute(new BlockingAction(false));
+      } catch (ServiceException e) {
+        subActionFailure = e;
+      }
+      cancellationSeen.countDown();
+      return new ThreadResult(Thread.currentThread());
+    }
+
+    @Override
+    public void undo(LoopingAction action, ThreadResult result, ExecutionContext context) {
+    }
+  }
+
+  static class Registry extends AbstractEagerActionHandlerValidatorRegistryImpl {
+  }
+
+  /**
+   * Records the outcome of an action and counts down when it's known.
+   */
+  class Outcome implements PollDispatchCallback {
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Result result;
+    volatile Throwable caught;
+
+    @Override
+    public void onSuccess(Result result) {
+      this.result = result;
+      done.countDown();
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      this.caught = caught;
+      done.countDown();
+    }
+
+    void await() throws InterruptedException {
+      assertTrue("Timed out", done.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  private static final long BUDGET_MS = 100;
+
+  private final AtomicInteger runningHandlers = new AtomicInteger();
+  private final CountDownLatch cancellationSeen = new CountDownLatch(1);
+  private volatile long remainingTimeMs;
+  private volatile ServiceException subActionFailure;
+  private int maxRunningHandlers;
+  private CountDownLatch gate;
+  private BlockingHandlerExecutor executor;
+  private AbstractPollDispatchImpl dispatch;
+
+  @Before
+  public void setUp() {
+    gate = new CountDownLatch(0);
+    Registry registry = new Registry();
+    registry.addActionHandlerValidator(BlockingAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new BlockingHandler()));
+    registry.addActionHandlerValidator(CompoundAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new CompoundHandler()));
+    registry.addActionHandlerValidator(PendingAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new PendingHandler()));
+    registry.addActionHandlerValidator(BudgetedWaitingAction.class, new ActionHandlerValidatorInstance(
+        new AbstractDefaultActionValidator(), new WaitingHandler<BudgetedWaitingAction>(BudgetedWaitingAction.class)));
+    registry.addActionHandlerValidator(WaitingAction.class, new ActionHandlerValidatorInstance(
+        new AbstractDefaultActionValidator(), new WaitingHandler<WaitingAction>(WaitingAction.class)));
+    registry.addActionHandlerValidator(ParentAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new ParentHandler()));
+    registry.addActionHandlerValidator(LoopingAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new LoopingHandler()));
+    executor = new BlockingHandlerExecutor();
+    dispatch = new AbstractPollDispatchImpl(registry) {
+    };
+    dispatch.setBlockingHandlerExecutor(executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void virtualThreadsShouldBeUsedWhenTheJdkHasThem() {
+    boolean available;
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      available = true;
+    } catch (NoSuchMethodException e) {
+      available = false;
+    }
+
+    assertEquals(available, executor.isUsingVirtualThreads());
+  }
+
+  @Test
+  public void blockingHandlerShouldCompleteTheCallbackFromAWorker() throws Exception {
+    // Given
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new BlockingAction(false), outcome);
+    outcome.await();
+
+    // Then
+    assertNotSame(Thread.currentThread(), ((ThreadResult) outcome.result).thread);
+  }
+
+  @Test
+  public void handlerFailureShouldBeReportedToTheCallback() throws Exception {
+    // Given
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new BlockingAction(true), outcome);
+    outcome.await();
+
+    // Then
+    assertSame(ActionException.class, outcome.caught.getClass());
+  }
+
+  @Test
+  public void maxConcurrencyShouldBoundTheRunningHandlers() throws Exception {
+    // Given
+    gate = new CountDownLatch(1);
+    executor.setMaxConcurrency(BlockingAction.class, 2);
+    Outcome[] outcomes = new Outcome[10];
+    for (int i = 0; i < outcomes.length; i++) {
+      outcomes[i] = new Outcome();
+      dispatch.execute(new BlockingAction(false), outcomes[i]);
+    }
+
+    // When
+    while (runningHandlers.get() < 2) {
+      Thread.sleep(1);
+    }
+    int waiting = executor.getWaitingCount();
+    gate.countDown();
+    for (Outcome outcome : outcomes) {
+      outcome.await();
+    }
+
+    // Then
+    assertEquals(8, waiting);
+    assertEquals(2, getMaxRunningHandlers());
+    assertEquals(0, executor.getWaitingCount());
+  }
+
+  @Test
+  public void subActionsShouldNotWaitForASlotOfTheirParent() throws Exception {
+    // Given
+    executor.setDefaultMaxConcurrency(1);
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new CompoundAction(), outcome);
+    outcome.await();
+
+    // Then
+    assertTrue(outcome.result instanceof ThreadResult);
+  }
+
+  @Test
+  public void subActionsShouldWaitForASlotOfTheirOwnClass() throws Exception {
+    // Given
+    gate = new CountDownLatch(1);
+    executor.setMaxConcurrency(BlockingAction.class, 1);
+    Outcome busy = new Outcome();
+    dispatch.execute(new BlockingAction(false), busy);
+    while (runningHandlers.get() < 1) {
+      Thread.sleep(1);
+    }
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new CompoundAction(), outcome);
+    while (executor.getWaitingCount() < 1) {
+      Thread.sleep(1);
+    }
+    gate.countDown();
+    busy.await();
+    outcome.await();
+
+    // Then
+    assertTrue(outcome.result instanceof ThreadResult);
+    assertEquals(1, getMaxRunningHandlers());
+    assertEquals(0, executor.getWaitingCount());
+  }
+
+  @Test
+  public void subActionShouldGiveUpWaitingForASlotAfterTheSubActionTimeout() throws Exception {
+    // Given
+    gate = new CountDownLatch(1);
+    executor.setMaxConcurrency(BlockingAction.class, 1);
+    executor.setSubActionTimeoutMs(50);
+    Outcome busy = new Outcome();
+    dispatch.execute(new BlockingAction(false), busy);
+    while (runningHandlers.get() < 1) {
+      Thread.sleep(1);
+    }
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new CompoundAction(), outcome);
+    outcome.await();
+    gate.countDown();
+    busy.await();
+
+    // Then
+    assertTrue(outcome.caught instanceof ActionException);
+    assertTrue(outcome.caught.getMessage().contains("Gave up waiting for a slot"));
+    assertEquals(1, getMaxRunningHandlers());
+    assertEquals(0, executor.getWaitingCount());
+  }
+
+  @Test
+  public void rejectedHandlerShouldFailWithoutBlocking() throws Exception {
+    // Given
+    executor.shutdown();
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new BlockingAction(false), outcome);
+    outcome.await();
+
+    // Then
+    assertTrue(outcome.caught instanceof ServiceException);
+  }
+
+  @Test
+  public void subActionShouldFailOnceTheTimeBudgetIsSpent() throws Exception {
+    // Given
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new BudgetedWaitingAction(), outcome);
+    outcome.await();
+
+    // Then
+    assertTrue(outcome.caught instanceof ActionException);
+    assertTrue(remainingTimeMs <= BUDGET_MS);
+    assertTrue(subActionFailure instanceof DeadlineExceededException);
+  }
+
+  @Test
+  public void subActionShouldFailAfterTheSubActionTimeout() throws Exception {
+    // Given
+    executor.setSubActionTimeoutMs(50);
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new WaitingAction(), outcome);
+    outcome.await();
+
+    // Then
+    assertTrue(outcome.caught instanceof ActionException);
+    assertEquals(Long.MAX_VALUE, remainingTimeMs);
+    assertSame(ServiceException.class, subActionFailure.getClass());
+  }
+
+  @Test
+  public void handlerShouldSeeTheCancellationOfItsParent() throws Exception {
+    // Given
+    Outcome outcome = new Outcome();
+
+    // When
+    dispatch.execute(new ParentAction(), outcome);
+    outcome.await();
+
+    // Then
+    assertTrue(cancellationSeen.await(5, TimeUnit.SECONDS));
+    assertTrue(subActionFailure instanceof ActionCancelledException);
+    assertFalse(subActionFailure instanceof DeadlineExceededException);
+  }
+
+  private synchronized void recordRunning(int running) {
+    maxRunningHandlers = Math.max(maxRunningHandlers, running);
+  }
+
+  private synchronized int getMaxRunningHandlers() {
+    return maxRunningHandlers;
+  }
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.shared.CacheInvalidation;
+import com.gwtplatform.dispatch.shared.CacheInvalidationBatch;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+import com.gwtplatform.dispatch.shared.WatchCacheInvalidationsAction;
+
+/**
+ * Unit tests for {@link CacheInvalidationPublisher}.
+ */
+public class CacheInvalidationPublisherTest {
+
+  private static final long WINDOW_MS = 100;
+  private static final int MAX_BATCH_SIZE = 3;
+  private static final int HISTORY_SIZE = 2;
+  private static final long HEARTBEAT_MS = 1000;
+
+  static class FooResult implements Result {
+  }
+
+  static class GetFooAction extends UnsecuredActionImpl<FooResult> {
+    private final int id;
+
+    GetFooAction(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof GetFooAction && ((GetFooAction) obj).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+  }
+
+  static class GetBarAction extends UnsecuredActionImpl<FooResult> {
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof GetBarAction;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+  }
+
+  /**
+   * One browser, watching with the epoch and sequence of the last batch it received.
+   */
+  class Browser implements PollCallback<WatchCacheInvalidationsAction, CacheInvalidationBatch> {
+    final List<CacheInvalidationBatch> batches = new ArrayList<CacheInvalidationBatch>();
+    long lastEpoch;
+    long lastSequence = -1;
+
+    void watch() {
+      publisher.watch(lastEpoch, lastSequence, this);
+    }
+
+    CacheInvalidationBatch lastBatch() {
+      return batches.get(batches.size() - 1);
+    }
+
+    @Override
+    public void onSuccess(CacheInvalidationBatch batch) {
+      batches.add(batch);
+      lastEpoch = batch.getEpoch();
+      lastSequence = batch.getSequence();
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      throw new AssertionError(caught);
+    }
+  }
+
+  private ManualScheduledExecutor executor;
+  private CacheInvalidationPublisher publisher;
+
+  @Before
+  public void setUp() {
+    executor = new ManualScheduledExecutor();
+    publisher = createPublisher();
+  }
+
+  @Test
+  public void invalidationsOfOneWindowShouldBeSentAsOneBatch() throws Exception {
+    // Given
+    Browser browser = new Browser();
+    browser.watch();
+
+    // When
+    publisher.publish(CacheInvalidation.forKey(new GetFooAction(1)));
+    publisher.publish(CacheInvalidation.forKey(new GetFooAction(2)));
+    publisher.publish(CacheInvalidation.forKey(new GetFooAction(1)));
+    executor.advance(WINDOW_MS - 1);
+
+    // Then
+    assertTrue(browser.batches.isEmpty());
+
+    // When
+    executor.advance(1);
+
+    // Then
+    assertEquals(1, browser.batches.size());
+    CacheInvalidationBatch batch = browser.lastBatch();
+    assertEquals(1, batch.getSequence());
+    assertEquals(publisher.getEpoch(), batch.getEpoch());
+    assertFalse(batch.isClearAll());
+    assertEquals(Arrays.asList(CacheInvalidation.forKey(new GetFooAction(1)),
+        CacheInvalidation.forKey(new GetFooAction(2))), batch.getInvalidations());
+    assertEquals(0, publisher.getWaitingCount());
+  }
+
+  @Test
+  public void classWideInvalidationShouldAbsorbTheOnesOfItsClass() throws Exception {
+    // Given
+    Browser browser = new Browser();
+    browser.watch();
+
+    // When
+    publisher.publish(CacheInvalidation.forKey(new GetFooAction(1)));
+    publisher.publish(CacheInvalidation.forTag(GetFooAction.class, "user"));
+    publisher.publish(CacheInvalidation.forKey(new GetBarAction()));
+    publisher.publish(CacheInvalidation.forActionClass(GetFooAction.class));
+    publisher.publish(CacheInvalidation.forKey(new GetFooAction(2)));
+    executor.advance(WINDOW_MS);
+
+    // Then
+    assertEquals(Arrays.asList(CacheInvalidation.forKey(new GetBarAction()),
+        CacheInvalidation.forActionClass(GetFooAction.class)), browser.lastBatch().getInvalidations());
+  }
+
+  @Test
+  public void oversizedBatchShouldBecomeAnOrderToClearTheCaches() throws Exception {
+    // Given
+    Browser browser = new Browser();
+    browser.watch();
+
+    // When
+    for (int i = 0; i <= MAX_BATCH_SIZE; i++) {
+      publisher.publish(CacheInvalidation.forKey(new GetFooAction(i)));
+    }
+    publisher.publish(CacheInvalidation.forKey(new GetBarAction()));
+    executor.advance(WINDOW_MS);
+
+    // Then
+    assertEquals(1, browser.batches.size());
+    assertTrue(browser.lastBatch().isClearAll());
+    assertTrue(browser.lastBatch().getInvalidations().isEmpty());
+  }
+
+  @Test
+  public void batchesMissedBetweenTwoPollsShouldBeReplayed() throws Exception {
+    // Given
+    Browser browser = new Browser();
+    browser.watch();
+    publishAndFlush(CacheInvalidation.forKey(new GetFooAction(1)));
+    publishAndFlush(CacheInvalidation.forKey(new GetFooAction(2)));
+    publishAndFlush(CacheInvalidation.forKey(new GetFooAction(3)));
+
+    // When
+    browser.watch();
+
+    // Then
+    assertEquals(2, browser.batches.size());
+    CacheInvalidationBatch batch = browser.lastBatch();
+    assertEquals(3, batch.getSequence());
+    assertFalse(batch.isClearAll());
+    assertEquals(Arrays.asList(CacheInvalidation.forKey(new GetFooAction(2)),
+        CacheInvalidation.forKey(new GetFooAction(3))), batch.getInvalidations());
+  }
+
+  @Test
+  public void browserBehindTheHistoryShouldClearItsCaches() throws Exception {
+    // Given
+    Browser browser = new Browser();
+    browser.watch();
+    publishAndFlush(CacheInvalidation.forKey(new GetFooAction(1)));
+    for (int i = 0; i <= HISTORY_SIZE; i++) {
+      publishAndFlush(CacheInvalidation.forKey(new GetFooAction(2)));
+    }
+
+    // When
+    browser.watch();
+
+    // Then
+    assertTrue(browser.lastBatch().isClearAll());
+    assertEquals(HISTORY_SIZE + 2, browser.lastSequence);
+  }
+
+  @Test
+  public void browserOfAnotherEpochShouldClearItsCaches() throws Exception {
+    // Given
+    Browser browser = new Browser();
+    browser.watch();
+    publishAndFlush(CacheInvalidation.forKey(new GetFooAction(1)));
+    long oldEpoch = browser.lastEpoch;
+
+    // When
+    publisher = createPublisher();
+    publishAndFlush(CacheInvalidation.forKey(new GetFooAction(2)));
+    browser.watch();
+
+    // Then
+    assertFalse(oldEpoch == publisher.getEpoch());
+    assertEquals(2, browser.batches.size());
+    assertTrue(browser.lastBatch().isClearAll());
+    assertEquals(publisher.getEpoch(), browser.lastEpoch);
+    assertEquals(1, browser.lastSequence);
+
+    // When
+    browser.watch();
+
+    // Then
+    assertEquals(2, browser.batches.size());
+    assertEquals(1, publisher.getWaitingCount());
+  }
+
+  @Test
+  public void heartbeatShouldResumeIdleBrowsersWithAnEmptyBatch() throws Exception {
+    // Given
+    Browser idle = new Browser();
+    idle.watch();
+    executor.advance(HEARTBEAT_MS / 2);
+    Browser recent = new Browser();
+    recent.watch();
+
+    // When
+    executor.advance(HEARTBEAT_MS / 2);
+
+    // Then
+    assertEquals(1, idle.batches.size());
+    assertFalse(idle.lastBatch().isClearAll());
+    assertTrue(idle.lastBatch().getInvalidations().isEmpty());
+    assertEquals(0, idle.lastSequence);
+    assertTrue(recent.batches.isEmpty());
+
+    // When
+    executor.advance(HEARTBEAT_MS / 2);
+
+    // Then
+    assertEquals(1, recent.batches.size());
+    assertEquals(0, publisher.getWaitingCount());
+  }
+
+  private CacheInvalidationPublisher createPublisher() {
+    return new CacheInvalidationPublisher(WINDOW_MS, MAX_BATCH_SIZE, HISTORY_SIZE, HEARTBEAT_MS, executor) {
+      @Override
+      protected long currentTimeMillis() {
+        return executor.now();
+      }
+    };
+  }
+
+  private void publishAndFlush(CacheInvalidation invalidation) throws Exception {
+    publisher.publish(invalidation);
+    executor.advance(WINDOW_MS);
+  }
+}
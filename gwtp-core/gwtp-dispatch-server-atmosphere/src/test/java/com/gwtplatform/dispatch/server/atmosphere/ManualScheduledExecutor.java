@@ -0,0 +1,217 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} driven by the tests. Nothing runs until {@link #advance(long)} moves its clock,
+ * and the tasks then run on the calling thread, in the order they are due.
+ */
+class ManualScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+  private class Task implements ScheduledFuture<Object> {
+    private final Callable<?> callable;
+    private final long periodMs;
+    private final boolean fixedRate;
+    private long dueTime;
+    private boolean cancelled;
+    private boolean done;
+
+    Task(Callable<?> callable, long dueTime, long periodMs, boolean fixedRate) {
+      this.callable = callable;
+      this.dueTime = dueTime;
+      this.periodMs = periodMs;
+      this.fixedRate = fixedRate;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueTime - now, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+      return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (done) {
+        return false;
+      }
+      cancelled = true;
+      done = true;
+      tasks.remove(this);
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return done;
+    }
+
+    @Override
+    public Object get() {
+      return null;
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) {
+      return null;
+    }
+
+    void run() throws Exception {
+      tasks.remove(this);
+      callable.call();
+      if (periodMs > 0 && !cancelled) {
+        dueTime = fixedRate ? dueTime + periodMs : now + periodMs;
+        tasks.add(this);
+      } else {
+        done = true;
+      }
+    }
+  }
+
+  private final List<Task> tasks = new ArrayList<Task>();
+  private long now;
+  private boolean shutdown;
+
+  /**
+   * @return The time of the clock, in milliseconds.
+   */
+  long now() {
+    return now;
+  }
+
+  /**
+   * Moves the clock forward, running the tasks that fall due on the way.
+   *
+   * @param ms The number of milliseconds to move forward.
+   */
+  void advance(long ms) throws Exception {
+    long target = now + ms;
+    Task next = nextTaskDueBy(target);
+    while (next != null) {
+      now = Math.max(now, next.dueTime);
+      next.run();
+      next = nextTaskDueBy(target);
+    }
+    now = target;
+  }
+
+  /**
+   * Runs the tasks that are already due.
+   */
+  void runDueTasks() throws Exception {
+    advance(0);
+  }
+
+  /**
+   * @return The number of tasks waiting to run, periodic ones included.
+   */
+  int getScheduledCount() {
+    return tasks.size();
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return schedule(Executors.callable(command), delay, unit);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return (ScheduledFuture<V>) add(new Task(callable, now + unit.toMillis(delay), 0, false));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    return add(new Task(Executors.callable(command), now + unit.toMillis(initialDelay), unit.toMillis(period), true));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    return add(new Task(Executors.callable(command), now + unit.toMillis(initialDelay), unit.toMillis(delay), false));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown = true;
+    tasks.clear();
+    return Collections.emptyList();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return shutdown;
+  }
+
+  private Task add(Task task) {
+    if (shutdown) {
+      throw new RejectedExecutionException("The executor is shut down");
+    }
+    tasks.add(task);
+    return task;
+  }
+
+  private Task nextTaskDueBy(long time) {
+    Task next = null;
+    for (Task task : tasks) {
+      if (task.dueTime <= time && (next == null || task.dueTime < next.dueTime)) {
+        next = task;
+      }
+    }
+    return next;
+  }
+}
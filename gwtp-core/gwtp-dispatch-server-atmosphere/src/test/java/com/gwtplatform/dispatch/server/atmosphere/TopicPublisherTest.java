@@ -0,0 +1,224 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.SubscribeTopicsAction;
+import com.gwtplatform.dispatch.shared.TopicMessage;
+import com.gwtplatform.dispatch.shared.TopicMessages;
+
+/**
+ * Unit tests for {@link TopicPublisher}.
+ */
+public class TopicPublisherTest {
+
+  static class CountResult implements Result {
+    final int count;
+
+    CountResult(int count) {
+      this.count = count;
+    }
+  }
+
+  /**
+   * One browser connection, polling with the sequence and id of its last delivery.
+   */
+  class Connection implements PollCallback<SubscribeTopicsAction, TopicMessages> {
+    final LinkedList<TopicMessages> deliveries = new LinkedList<TopicMessages>();
+    String subscriberId;
+    long lastSequence = -1;
+
+    void poll(String... topics) {
+      publisher.subscribe(new SubscribeTopicsAction("dispatch/", subscriberId, lastSequence, Arrays.asList(topics)),
+          this);
+    }
+
+    TopicMessages take() {
+      TopicMessages messages = deliveries.poll();
+      assertNotNull(messages);
+      subscriberId = messages.getSubscriberId();
+      lastSequence = messages.getSequence();
+      return messages;
+    }
+
+    @Override
+    public void onSuccess(TopicMessages result) {
+      deliveries.add(result);
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      throw new AssertionError(caught);
+    }
+  }
+
+  private static final long WINDOW_MS = 50;
+  private static final int CONNECTIONS = 10000;
+
+  private ManualScheduledExecutor executor;
+  private TopicPublisher publisher;
+
+  @Before
+  public void setUp() {
+    executor = new ManualScheduledExecutor();
+    publisher = new TopicPublisher(WINDOW_MS, 60000, 60000, executor);
+  }
+
+  @After
+  public void tearDown() {
+    publisher.shutdown();
+  }
+
+  @Test
+  public void updatesWithinTheWindowShouldBeCoalescedIntoOneDeliveryPerConnection() throws Exception {
+    // Given
+    Connection[] connections = new Connection[CONNECTIONS];
+    for (int i = 0; i < CONNECTIONS; i++) {
+      connections[i] = new Connection();
+      connections[i].poll("prices", "news");
+      connections[i].take();
+      connections[i].poll("prices", "news");
+    }
+
+    // When
+    for (int i = 1; i <= 100; i++) {
+      publisher.publish("prices", new CountResult(i));
+    }
+    publisher.publish("news", new CountResult(-1));
+    executor.advance(WINDOW_MS - 1);
+
+    // Then
+    for (Connection connection : connections) {
+      assertNull(connection.deliveries.peek());
+    }
+
+    // When
+    executor.advance(1);
+
+    // Then
+    for (Connection connection : connections) {
+      List<TopicMessage> messages = connection.take().getMessages();
+      assertEquals(2, messages.size());
+      assertEquals("prices", messages.get(0).getTopic());
+      assertEquals(100, ((CountResult) messages.get(0).getResult()).count);
+      assertEquals("news", messages.get(1).getTopic());
+    }
+    executor.advance(WINDOW_MS * 3);
+    for (Connection connection : connections) {
+      assertNull(connection.deliveries.poll());
+    }
+  }
+
+  @Test
+  public void connectionBetweenTwoPollsShouldFindItsMailbox() throws Exception {
+    // Given
+    Connection connection = new Connection();
+    connection.poll("prices");
+    connection.take();
+
+    // When
+    publisher.publish("prices", new CountResult(1));
+    executor.advance(WINDOW_MS);
+    publisher.publish("prices", new CountResult(2));
+    executor.advance(WINDOW_MS);
+    connection.poll("prices");
+
+    // Then
+    List<TopicMessage> messages = connection.take().getMessages();
+    assertEquals(1, messages.size());
+    assertEquals(2, ((CountResult) messages.get(0).getResult()).count);
+  }
+
+  @Test
+  public void unacknowledgedDeliveryShouldBeDeliveredAgain() throws Exception {
+    // Given
+    Connection connection = new Connection();
+    connection.poll("prices", "news");
+    connection.take();
+    connection.poll("prices", "news");
+    long acknowledged = connection.lastSequence;
+    publisher.publish("prices", new CountResult(1));
+    publisher.publish("news", new CountResult(1));
+    executor.advance(WINDOW_MS);
+    connection.take();
+
+    // When
+    publisher.publish("prices", new CountResult(2));
+    executor.advance(WINDOW_MS);
+    connection.lastSequence = acknowledged;
+    connection.poll("prices", "news");
+
+    // Then
+    Map<String, Result> messages = new HashMap<String, Result>();
+    for (TopicMessage message : connection.take().getMessages()) {
+      messages.put(message.getTopic(), message.getResult());
+    }
+    assertEquals(2, messages.size());
+    assertEquals(1, ((CountResult) messages.get("news")).count);
+    assertEquals(2, ((CountResult) messages.get("prices")).count);
+  }
+
+  @Test
+  public void unsubscribedTopicShouldNotBeDelivered() throws Exception {
+    // Given
+    Connection connection = new Connection();
+    connection.poll("prices", "news");
+    connection.take();
+    connection.poll("news");
+
+    // When
+    publisher.publish("prices", new CountResult(1));
+    publisher.publish("news", new CountResult(1));
+    executor.advance(WINDOW_MS);
+
+    // Then
+    List<TopicMessage> messages = connection.take().getMessages();
+    assertEquals(1, messages.size());
+    assertEquals("news", messages.get(0).getTopic());
+  }
+
+  @Test
+  public void newPollShouldReleaseTheWaitingOne() {
+    // Given
+    Connection connection = new Connection();
+    connection.poll("prices");
+    connection.take();
+    connection.poll("prices");
+
+    // When
+    connection.poll("prices", "news");
+
+    // Then
+    assertTrue(connection.take().getMessages().isEmpty());
+    assertEquals(1, publisher.getSubscriberCount());
+  }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link WebSocketDispatchConnection}. Payloads are action names instead of GWT-RPC streams.
+ */
+public class WebSocketDispatchConnectionTest {
+
+  static class ValueResult implements Result {
+    final int value;
+
+    ValueResult(int value) {
+      this.value = value;
+    }
+  }
+
+  static class ValueAction extends UnsecuredActionImpl<ValueResult> {
+    final int value;
+
+    ValueAction(int value) {
+      this.value = value;
+    }
+  }
+
+  static class SecuredValueAction extends ValueAction {
+    SecuredValueAction(int value) {
+      super(value);
+    }
+
+    @Override
+    public boolean isSecured() {
+      return true;
+    }
+  }
+
+  /**
+   * Holds the callbacks until the test completes them, or fails synchronously for negative values.
+   */
+  static class HeldDispatch implements PollDispatch {
+    final Map<Integer, PollDispatchCallback> held = new HashMap<Integer, PollDispatchCallback>();
+    final List<Integer> undone = new ArrayList<Integer>();
+
+    @Override
+    public <A extends Action<R>, R extends Result> void execute(A action, PollDispatchCallback callback)
+        throws ActionException {
+      int value = ((ValueAction) action).value;
+      if (value < 0) {
+        throw new ActionException("Action " + value + " failed");
+      }
+      held.put(value, callback);
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void undo(A action, R result, PollDispatchCallback callback) {
+      undone.add(((ValueAction) action).value);
+      callback.onSuccess(null);
+    }
+
+    void complete(int value) {
+      held.remove(value).onSuccess(new ValueResult(value));
+    }
+  }
+
+  private final List<String> frames = new ArrayList<String>();
+  private final Map<String, Action<?>> actions = new HashMap<String, Action<?>>();
+  private HeldDispatch dispatch;
+  private WebSocketDispatchConnection connection;
+
+  @Before
+  public void setUp() {
+    for (int i = -1; i < 4; i++) {
+      actions.put("value" + i, new ValueAction(i));
+    }
+    actions.put("secured", new SecuredValueAction(9));
+    dispatch = new HeldDispatch();
+    connection = new WebSocketDispatchConnection(dispatch, null, "token", new WebSocketDispatchConnection.Sender() {
+      @Override
+      public void send(String frame) {
+        frames.add(frame);
+      }
+    }) {
+      @Override
+      Request decode(String payload, boolean undo) throws SerializationException {
+        String[] parts = payload.split("/");
+        Action<?> action = actions.get(parts[1]);
+        if (action == null) {
+          throw new SerializationException("Unknown action " + parts[1]);
+        }
+        return new Request(parts[0], action, undo ? new ValueResult(0) : null, null);
+      }
+
+      @Override
+      String encode(Object value, SerializationPolicy policy) {
+        if (value instanceof ValueResult) {
+          return String.valueOf(((ValueResult) value).value);
+        }
+        return value.getClass().getSimpleName();
+      }
+    };
+  }
+
+  @Test
+  public void repliesShouldBeSentAsHandlersComplete() {
+    // Given
+    connection.onMessage("10:E:token/value1");
+    connection.onMessage("11:E:token/value2");
+    connection.onMessage("12:E:token/value3");
+
+    // When
+    dispatch.complete(3);
+    dispatch.complete(1);
+    dispatch.complete(2);
+
+    // Then
+    assertEquals(Arrays.asList("12:R:3", "10:R:1", "11:R:2"), frames);
+    assertEquals(0, connection.getPendingCount());
+  }
+
+  @Test
+  public void cancelledRequestShouldNotBeAnswered() {
+    // Given
+    connection.onMessage("1:E:token/value1");
+    connection.onMessage("2:E:token/value2");
+
+    // When
+    connection.onMessage("1:C:");
+    dispatch.complete(1);
+    dispatch.complete(2);
+
+    // Then
+    assertEquals(Arrays.asList("2:R:2"), frames);
+  }
+
+  @Test
+  public void closedConnectionShouldDropLateOutcomes() {
+    // Given
+    connection.onMessage("1:E:token/value1");
+
+    // When
+    connection.close();
+    dispatch.complete(1);
+    connection.onMessage("2:E:token/value2");
+
+    // Then
+    assertTrue(frames.isEmpty());
+    assertTrue(dispatch.held.isEmpty());
+  }
+
+  @Test
+  public void failuresShouldBeSentAsFailureFrames() {
+    // When
+    connection.onMessage("1:E:token/value-1");
+    connection.onMessage("2:E:token/unknown");
+
+    // Then
+    assertEquals(Arrays.asList("1:F:ActionException", "2:F:IncompatibleRemoteServiceException"), frames);
+  }
+
+  @Test
+  public void securedActionShouldRequireTheHandshakeCookie() {
+    // When
+    connection.onMessage("1:E:forged/secured");
+    connection.onMessage("2:E:token/secured");
+
+    // Then
+    assertEquals(Arrays.asList("1:F:ServiceException"), frames);
+    assertTrue(dispatch.held.containsKey(9));
+  }
+
+  @Test
+  public void requestIdInUseShouldBeRejected() {
+    // Given
+    connection.onMessage("1:E:token/value1");
+
+    // When
+    connection.onMessage("1:E:token/value2");
+    dispatch.complete(1);
+
+    // Then
+    assertEquals(Arrays.asList("1:F:ServiceException", "1:R:1"), frames);
+    assertFalse(dispatch.held.containsKey(2));
+  }
+
+  @Test
+  public void undoShouldBeAnsweredWithAnEmptyResult() {
+    // When
+    connection.onMessage("4:U:token/value3");
+
+    // Then
+    assertEquals(Arrays.asList(3), dispatch.undone);
+    assertEquals(Arrays.asList("4:R:"), frames);
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.gwtplatform.dispatch.server.atmosphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.atmosphere.websocket.WebSocketProcessor;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the registration of {@link WebSocketDispatchHandler}.
+ */
+public class WebSocketDispatchHandlerTest {
+
+  /**
+   * Records the calls made to the {@link WebSocketProcessor}, which has more methods than the handler needs.
+   */
+  class RecordingProcessor implements InvocationHandler {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      calls.add(method.getName());
+      if (method.getName().equals("registerWebSocketHandler")) {
+        registeredPath = (String) args[0];
+        registeredHandler = args[1];
+      }
+      return method.getReturnType().isInstance(proxy) ? proxy : null;
+    }
+  }
+
+  private final List<String> calls = new ArrayList<String>();
+  private String registeredPath;
+  private Object registeredHandler;
+  private WebSocketProcessor processor;
+  private WebSocketDispatchHandler handler;
+
+  @Before
+  public void setUp() {
+    processor = (WebSocketProcessor) Proxy.newProxyInstance(WebSocketProcessor.class.getClassLoader(),
+        new Class<?>[] {WebSocketProcessor.class}, new RecordingProcessor());
+    handler = new WebSocketDispatchHandler(new WebSocketDispatchConnectionTest.HeldDispatch(), null);
+  }
+
+  @Test
+  public void handlerShouldBeRegisteredForThePathOfTheSocket() {
+    // When
+    WebSocketDispatchHandler registered = handler.registerWith(processor, "/dispatch/ws");
+
+    // Then
+    assertSame(handler, registered);
+    assertEquals(1, calls.size());
+    assertEquals("/dispatch/ws", registeredPath);
+    assertSame(handler, registeredHandler);
+    assertEquals(0, handler.getConnectionCount());
+  }
+
+  @Test
+  public void relativePathShouldBeRejected() {
+    // When
+    try {
+      handler.registerWith(processor, "dispatch/ws");
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Then
+      assertTrue(calls.isEmpty());
+    }
+  }
+}
@@ -0,0 +1,458 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.atmosphere.actionhandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.atmosphere.PollCallback;
+import com.gwtplatform.dispatch.server.atmosphere.PollExecutionContext;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchAction;
+import com.gwtplatform.dispatch.shared.BatchAction.OnException;
+import com.gwtplatform.dispatch.shared.BatchResult;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link PollBatchActionHandler}.
+ */
+public class PollBatchActionHandlerTest {
+
+  static class ValueResult implements Result {
+    final int value;
+
+    ValueResult(int value) {
+      this.value = value;
+    }
+  }
+
+  static class ValueAction extends UnsecuredActionImpl<ValueResult> {
+    final int value;
+    final boolean failing;
+
+    ValueAction(int value, boolean failing) {
+      this.value = value;
+      this.failing = failing;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof ValueAction && ((ValueAction) obj).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+      return value;
+    }
+  }
+
+  static class TestBatchAction extends BatchAction {
+    TestBatchAction(OnException onException, Action<?>... actions) {
+      super(onException, actions);
+    }
+
+    @Override
+    public String getServiceName() {
+      return "dispatch/";
+    }
+
+    @Override
+    public boolean isSecured() {
+      return false;
+    }
+  }
+
+  /**
+   * Completes every action on the pool, or synchronously if there is none. Each completion gets a fresh result
+   * carrying the value of its action.
+   */
+  static class PooledContext implements PollExecutionContext {
+    private final ExecutorService pool;
+
+    PooledContext(ExecutorService pool) {
+      this.pool = pool;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A extends Action<R>, R extends Result> void execute(final A action, final PollCallback<A, R> callback)
+        throws ActionException, ServiceException {
+      final ValueAction valueAction = (ValueAction) action;
+      if (valueAction.failing) {
+        throw new ActionException("Action " + valueAction.value + " failed");
+      }
+
+      Runnable completion = new Runnable() {
+        @Override
+        public void run() {
+          callback.onSuccess((R) new ValueResult(valueAction.value));
+        }
+      };
+      if (pool == null) {
+        completion.run();
+      } else {
+        pool.execute(completion);
+      }
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void undo(A action, R result, PollCallback<A, R> callback) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Records every batch result and failure it receives.
+   */
+  static class RecordingCallback implements PollCallback<BatchAction, BatchResult> {
+    final List<BatchResult> results = new CopyOnWriteArrayList<BatchResult>();
+    final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    @Override
+    public void onSuccess(BatchResult result) {
+      results.add(result);
+      done.countDown();
+    }
+
+    @Override
+    public void onFailure(Throwable caught) {
+      failures.add(caught);
+      done.countDown();
+    }
+  }
+
+  /**
+   * Completes the actions with the callbacks it is given, when the test decides.
+   */
+  static class DeferredContext implements PollExecutionContext {
+    final List<PollCallback<ValueAction, ValueResult>> callbacks =
+        new CopyOnWriteArrayList<PollCallback<ValueAction, ValueResult>>();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A extends Action<R>, R extends Result> void execute(A action, PollCallback<A, R> callback) {
+      callbacks.add((PollCallback<ValueAction, ValueResult>) (PollCallback<?, ?>) callback);
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void undo(A action, R result, PollCallback<A, R> callback) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final int THREADS = 32;
+  private static final int ACTIONS = 5000;
+  private static final int ROUNDS = 20;
+
+  private final PollBatchActionHandler handler = new PollBatchActionHandler();
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    pool = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void thousandsOfActionsCompletingFromManyThreadsShouldFireOnceInOrder() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      // Given
+      ValueAction[] actions = new ValueAction[ACTIONS];
+      for (int i = 0; i < ACTIONS; i++) {
+        actions[i] = new ValueAction(i, false);
+      }
+      RecordingCallback callback = new RecordingCallback();
+
+      // When
+      handler.execute(new TestBatchAction(OnException.ROLLBACK, actions), new PooledContext(pool), callback);
+
+      // Then
+      assertTrue(callback.done.await(10, TimeUnit.SECONDS));
+      awaitQuiescence();
+      assertEquals(1, callback.results.size());
+      List<Result> results = callback.results.get(0).getResults();
+      assertEquals(ACTIONS, results.size());
+      for (int i = 0; i < ACTIONS; i++) {
+        assertEquals(i, ((ValueResult) results.get(i)).value);
+      }
+    }
+  }
+
+  @Test
+  public void equalActionsShouldKeepTheirOwnSlots() throws ActionException {
+    // Given
+    final AtomicInteger calls = new AtomicInteger();
+    PollExecutionContext context = new PollExecutionContext() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <A extends Action<R>, R extends Result> void execute(A action, PollCallback<A, R> callback) {
+        callback.onSuccess((R) new ValueResult(calls.getAndIncrement()));
+      }
+
+      @Override
+      public <A extends Action<R>, R extends Result> void undo(A action, R result, PollCallback<A, R> callback) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    ValueAction action = new ValueAction(7, false);
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    handler.execute(new TestBatchAction(OnException.ROLLBACK, action, action, new ValueAction(7, false)), context,
+        callback);
+
+    // Then
+    assertEquals(1, callback.results.size());
+    List<Result> results = callback.results.get(0).getResults();
+    assertEquals(0, ((ValueResult) results.get(0)).value);
+    assertEquals(1, ((ValueResult) results.get(1)).value);
+    assertEquals(2, ((ValueResult) results.get(2)).value);
+  }
+
+  @Test
+  public void failedActionShouldLeaveNullResultWhenContinuing() throws ActionException {
+    // Given
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    handler.execute(new TestBatchAction(OnException.CONTINUE, new ValueAction(1, false), new ValueAction(2, true),
+        new ValueAction(3, false)), new PooledContext(null), callback);
+
+    // Then
+    assertEquals(1, callback.results.size());
+    List<Result> results = callback.results.get(0).getResults();
+    assertEquals(1, ((ValueResult) results.get(0)).value);
+    assertNull(results.get(1));
+    assertEquals(3, ((ValueResult) results.get(2)).value);
+  }
+
+  @Test
+  public void failedActionShouldThrowAndNeverFireWhenRollingBack() {
+    // Given
+    RecordingCallback callback = new RecordingCallback();
+    ActionException thrown = null;
+
+    // When
+    try {
+      handler.execute(new TestBatchAction(OnException.ROLLBACK, new ValueAction(1, false), new ValueAction(2, true)),
+          new PooledContext(null), callback);
+    } catch (ActionException e) {
+      thrown = e;
+    }
+
+    // Then
+    assertEquals("Action 2 failed", thrown.getMessage());
+    assertTrue(callback.results.isEmpty());
+  }
+
+  @Test
+  public void asynchronousFailureShouldFailBatchOnceWhenRollingBack() throws ActionException {
+    // Given
+    DeferredContext context = new DeferredContext();
+    RecordingCallback callback = new RecordingCallback();
+    handler.execute(new TestBatchAction(OnException.ROLLBACK, new ValueAction(1, false), new ValueAction(2, false),
+        new ValueAction(3, false)), context, callback);
+    ActionException failure = new ActionException("Action 2 failed");
+
+    // When
+    context.callbacks.get(0).onSuccess(new ValueResult(1));
+    context.callbacks.get(1).onFailure(failure);
+    context.callbacks.get(2).onFailure(new ActionException("Action 3 failed"));
+
+    // Then
+    assertTrue(callback.results.isEmpty());
+    assertEquals(1, callback.failures.size());
+    assertSame(failure, callback.failures.get(0));
+  }
+
+  @Test
+  public void synchronousFailureShouldStopTheBatchWhenRollingBack() throws ActionException {
+    // Given
+    final List<ValueAction> started = new CopyOnWriteArrayList<ValueAction>();
+    PollExecutionContext context = new PollExecutionContext() {
+      @Override
+      public <A extends Action<R>, R extends Result> void execute(A action, PollCallback<A, R> callback) {
+        started.add((ValueAction) action);
+        callback.onFailure(new ActionException("Action " + ((ValueAction) action).value + " failed"));
+      }
+
+      @Override
+      public <A extends Action<R>, R extends Result> void undo(A action, R result, PollCallback<A, R> callback) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    handler.execute(new TestBatchAction(OnException.ROLLBACK, new ValueAction(1, false), new ValueAction(2, false)),
+        context, callback);
+
+    // Then
+    assertEquals(1, started.size());
+    assertEquals(1, callback.failures.size());
+    assertEquals("Action 1 failed", callback.failures.get(0).getMessage());
+  }
+
+  @Test
+  public void actionThrowingAfterAFailureShouldNotFailTheBatchAgainWhenRollingBack() throws ActionException {
+    // Given
+    final DeferredContext deferred = new DeferredContext();
+    final List<ValueAction> started = new CopyOnWriteArrayList<ValueAction>();
+    final RecordingCallback callback = new RecordingCallback();
+    PollExecutionContext context = new PollExecutionContext() {
+      @Override
+      public <A extends Action<R>, R extends Result> void execute(A action, PollCallback<A, R> subCallback)
+          throws ActionException {
+        ValueAction valueAction = (ValueAction) action;
+        started.add(valueAction);
+        if (valueAction.failing) {
+          // The first sub-action fails on another thread while this one is being started.
+          deferred.callbacks.get(0).onFailure(new ActionException("Action 1 failed"));
+          throw new ActionException("Action " + valueAction.value + " failed");
+        }
+        deferred.execute(action, subCallback);
+      }
+
+      @Override
+      public <A extends Action<R>, R extends Result> void undo(A action, R result, PollCallback<A, R> callback) {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    // When
+    handler.execute(new TestBatchAction(OnException.ROLLBACK, new ValueAction(1, false), new ValueAction(2, true),
+        new ValueAction(3, false)), context, callback);
+
+    // Then
+    assertEquals(2, started.size());
+    assertEquals(1, callback.failures.size());
+    assertEquals("Action 1 failed", callback.failures.get(0).getMessage());
+    assertTrue(callback.results.isEmpty());
+  }
+
+  @Test
+  public void asynchronousFailureAfterAThrownOneShouldNotFailTheBatchAgainWhenRollingBack() {
+    // Given
+    final DeferredContext deferred = new DeferredContext();
+    PollExecutionContext context = new PollExecutionContext() {
+      @Override
+      public <A extends Action<R>, R extends Result> void execute(A action, PollCallback<A, R> callback)
+          throws ActionException {
+        if (((ValueAction) action).failing) {
+          throw new ActionException("Action " + ((ValueAction) action).value + " failed");
+        }
+        deferred.execute(action, callback);
+      }
+
+      @Override
+      public <A extends Action<R>, R extends Result> void undo(A action, R result, PollCallback<A, R> callback) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    RecordingCallback callback = new RecordingCallback();
+    ActionException thrown = null;
+    try {
+      handler.execute(new TestBatchAction(OnException.ROLLBACK, new ValueAction(1, false), new ValueAction(2, true)),
+          context, callback);
+    } catch (ActionException e) {
+      thrown = e;
+    }
+
+    // When
+    deferred.callbacks.get(0).onFailure(new ActionException("Action 1 failed"));
+
+    // Then
+    assertEquals("Action 2 failed", thrown.getMessage());
+    assertTrue(callback.failures.isEmpty());
+    assertTrue(callback.results.isEmpty());
+  }
+
+  @Test
+  public void asynchronousFailureShouldLeaveNullResultWhenContinuing() throws ActionException {
+    // Given
+    DeferredContext context = new DeferredContext();
+    RecordingCallback callback = new RecordingCallback();
+    handler.execute(new TestBatchAction(OnException.CONTINUE, new ValueAction(1, false), new ValueAction(2, false)),
+        context, callback);
+
+    // When
+    context.callbacks.get(1).onFailure(new ActionException("Action 2 failed"));
+    context.callbacks.get(0).onSuccess(new ValueResult(1));
+
+    // Then
+    assertTrue(callback.failures.isEmpty());
+    assertEquals(1, callback.results.size());
+    assertEquals(1, ((ValueResult) callback.results.get(0).getResults().get(0)).value);
+    assertNull(callback.results.get(0).getResults().get(1));
+  }
+
+  @Test
+  public void emptyBatchShouldFireImmediately() throws ActionException {
+    // Given
+    RecordingCallback callback = new RecordingCallback();
+
+    // When
+    handler.execute(new TestBatchAction(OnException.ROLLBACK), new PooledContext(pool), callback);
+
+    // Then
+    assertEquals(1, callback.results.size());
+    assertEquals(0, callback.results.get(0).getResults().size());
+  }
+
+  /**
+   * Waits for the completions still queued on the pool, so that a second firing would be seen.
+   */
+  private void awaitQuiescence() throws InterruptedException {
+    final CountDownLatch drained = new CountDownLatch(THREADS);
+    for (int i = 0; i < THREADS; i++) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          drained.countDown();
+          try {
+            drained.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+    assertTrue(drained.await(10, TimeUnit.SECONDS));
+  }
+}
@@ -18,6 +18,10 @@ package com.gwtplatform.dispatch.server.guice;
 
 import com.gwtplatform.dispatch.server.AbstractDispatchImpl;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionInterceptor;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
+
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -32,4 +36,35 @@ public class DispatchImpl extends AbstractDispatchImpl {
   public DispatchImpl(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry) {
     super(actionHandlerValidatorRegistry);
   }
-}
\ No newline at end of file
+
+  /**
+   * Receives the interceptors configured with {@link DispatchModule.Builder#interceptor}, if any.
+   *
+   * @param interceptors The {@link ActionInterceptor}s.
+   */
+  @com.google.inject.Inject(optional = true)
+  void injectActionInterceptors(List<ActionInterceptor> interceptors) {
+    setActionInterceptors(interceptors);
+  }
+
+  /**
+   * Receives the metrics bound with {@link DispatchModule.Builder#metrics()}, if any.
+   *
+   * @param dispatchMetrics The {@link DispatchMetrics}.
+   */
+  @com.google.inject.Inject(optional = true)
+  void injectDispatchMetrics(DispatchMetrics dispatchMetrics) {
+    setDispatchMetrics(dispatchMetrics);
+  }
+
+  /**
+   * Receives the time budget bound with {@link DispatchModule.Builder#defaultTimeBudgetMs(long)}, if any.
+   *
+   * @param defaultTimeBudgetMs The budget of the actions that have no
+   *          {@link com.gwtplatform.dispatch.shared.TimeBudget TimeBudget}, in milliseconds.
+   */
+  @com.google.inject.Inject(optional = true)
+  void injectDefaultTimeBudget(@DefaultTimeBudgetMs long defaultTimeBudgetMs) {
+    setDefaultTimeBudgetMs(defaultTimeBudgetMs);
+  }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.guice;
+
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.gwtplatform.dispatch.server.metrics.AbstractDispatchMetricsServlet;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
+
+/**
+ * Serves the metrics enabled with {@link DispatchModule.Builder#metrics()} and registers them as a JMX MBean. Map it
+ * in your {@code ServletModule}, behind some access control:
+ * <pre>
+ * serve("/admin/dispatch-metrics").with(DispatchMetricsServlet.class);
+ * </pre>
+ */
+@Singleton
+public class DispatchMetricsServlet extends AbstractDispatchMetricsServlet {
+
+  private static final long serialVersionUID = 4207427366398327761L;
+
+  @Inject
+  public DispatchMetricsServlet(Logger logger, DispatchMetrics dispatchMetrics) {
+    super(logger, dispatchMetrics);
+  }
+}
@@ -16,16 +16,28 @@
 
 package com.gwtplatform.dispatch.server.guice;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
 
 import com.gwtplatform.dispatch.server.Dispatch;
 import com.gwtplatform.dispatch.server.RequestProvider;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.LazyActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionInterceptor;
+import com.gwtplatform.dispatch.server.coalescing.CoalescingInterceptor;
 import com.gwtplatform.dispatch.server.guice.actionhandlervalidator.ActionHandlerValidatorLinker;
 import com.gwtplatform.dispatch.server.guice.actionhandlervalidator.LazyActionHandlerValidatorRegistryImpl;
 import com.gwtplatform.dispatch.server.guice.request.DefaultRequestProvider;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
+import com.gwtplatform.dispatch.server.resultcache.ResultCache;
+import com.gwtplatform.dispatch.server.resultcache.ResultCacheInterceptor;
 
 /**
  * This module will configure the implementation for the {@link Dispatch} and
@@ -38,6 +50,12 @@ import com.gwtplatform.dispatch.server.guice.request.DefaultRequestProvider;
  * {@link LazyActionHandlerValidatorRegistryImpl} pass the override values into
  * the constructor for this module and ensure it is installed <b>before</b> any
  * {@link HandlerModule} instances.
+ * <p />
+ * {@link ActionInterceptor}s can be added to the dispatch pipeline with the {@link Builder}, for instance the
+ * server-side result cache:
+ * <pre>
+ * install(new DispatchModule.Builder().resultCache(1000, 30000).build());
+ * </pre>
  *
  * @author Christian Goudreau
  * @author David Peterson
@@ -46,6 +64,12 @@ public class DispatchModule extends AbstractModule {
   private Class<? extends Dispatch> dispatchClass;
   private Class<? extends ActionHandlerValidatorRegistry> actionHandlerValidatorRegistryClass;
   private Class<? extends RequestProvider> requestProviderClass;
+  private List<Class<? extends ActionInterceptor>> interceptorClasses;
+  private ResultCache resultCache;
+  private DispatchMetrics dispatchMetrics;
+  private Long defaultTimeBudgetMs;
+  private Long asyncTimeoutMs;
+  private boolean asyncDispatch;
 
   /**
    * A DispatchModule builder.
@@ -57,6 +81,12 @@ public class DispatchModule extends AbstractModule {
     private Class<? extends Dispatch> dispatchClass = DispatchImpl.class;
     private Class<? extends ActionHandlerValidatorRegistry> actionHandlerValidatorRegistryClass = LazyActionHandlerValidatorRegistryImpl.class;
     private Class<? extends RequestProvider> requestProviderClass = DefaultRequestProvider.class;
+    private List<Class<? extends ActionInterceptor>> interceptorClasses = new ArrayList<Class<? extends ActionInterceptor>>();
+    private ResultCache resultCache;
+    private DispatchMetrics dispatchMetrics;
+    private Long defaultTimeBudgetMs;
+    private Long asyncTimeoutMs;
+    private boolean asyncDispatch;
 
     public Builder() {
     }
@@ -78,6 +108,114 @@ public class DispatchModule extends AbstractModule {
       return this;
     }
 
+    /**
+     * Adds an {@link ActionInterceptor} to the dispatch pipeline. Interceptors wrap each other in the order they are
+     * added, the first one being the outermost.
+     *
+     * @param interceptorClass The class of the interceptor, bound as a singleton.
+     * @return This builder.
+     */
+    public Builder interceptor(Class<? extends ActionInterceptor> interceptorClass) {
+      interceptorClasses.add(interceptorClass);
+      return this;
+    }
+
+    /**
+     * Adds a {@link CoalescingInterceptor}, so that concurrent executions of equal
+     * {@link com.gwtplatform.dispatch.shared.Coalesced Coalesced} actions share a single run of their handler. Add
+     * it after {@link #resultCache} so that cache hits don't wait on executions in flight.
+     *
+     * @return This builder.
+     */
+    public Builder coalescing() {
+      return interceptor(CoalescingInterceptor.class);
+    }
+
+    /**
+     * Adds a {@link ResultCacheInterceptor} with the default cache size and time to live.
+     *
+     * @return This builder.
+     */
+    public Builder resultCache() {
+      return resultCache(ResultCache.DEFAULT_MAX_ENTRIES, ResultCache.DEFAULT_TIME_TO_LIVE_MS);
+    }
+
+    /**
+     * Adds a {@link ResultCacheInterceptor} serving the results of
+     * {@link com.gwtplatform.dispatch.shared.ServerCacheable ServerCacheable} actions. The {@link ResultCache} is
+     * bound so that handlers can inject it to invalidate stale results.
+     *
+     * @param maxEntries The maximum number of cached results.
+     * @param defaultTimeToLiveMs How long results are cached when their action doesn't say otherwise.
+     * @return This builder.
+     */
+    public Builder resultCache(int maxEntries, long defaultTimeToLiveMs) {
+      if (resultCache == null) {
+        interceptorClasses.add(ResultCacheInterceptor.class);
+      }
+      resultCache = new ResultCache(maxEntries, defaultTimeToLiveMs);
+      return this;
+    }
+
+    /**
+     * Records per action class metrics in a {@link DispatchMetrics} named {@code "dispatch"}. Serve
+     * {@link DispatchMetricsServlet} to read them over HTTP and through JMX.
+     *
+     * @return This builder.
+     */
+    public Builder metrics() {
+      return metrics("dispatch");
+    }
+
+    /**
+     * Records per action class metrics in a {@link DispatchMetrics}.
+     *
+     * @param name The name of the metrics MBean, to tell several applications apart.
+     * @return This builder.
+     */
+    public Builder metrics(String name) {
+      dispatchMetrics = new DispatchMetrics(name);
+      return this;
+    }
+
+    /**
+     * Limits the time spent executing the actions that have no {@link com.gwtplatform.dispatch.shared.TimeBudget
+     * TimeBudget} annotation. Once it is spent, their sub-actions fail and they are rolled back.
+     *
+     * @param defaultTimeBudgetMs The budget in milliseconds, {@code 0} for unlimited.
+     * @return This builder.
+     */
+    public Builder defaultTimeBudgetMs(long defaultTimeBudgetMs) {
+      this.defaultTimeBudgetMs = defaultTimeBudgetMs;
+      return this;
+    }
+
+    /**
+     * Sets how long an asynchronous action may hold its suspended request before the RPC fails with a
+     * {@link com.gwtplatform.dispatch.shared.ServiceException ServiceException}. Defaults to
+     * {@link com.gwtplatform.dispatch.server.AbstractDispatchServiceImpl#DEFAULT_ASYNC_TIMEOUT_MS}.
+     *
+     * @param asyncTimeoutMs The timeout in milliseconds, {@code 0} to wait forever.
+     * @return This builder.
+     */
+    public Builder asyncTimeoutMs(long asyncTimeoutMs) {
+      this.asyncTimeoutMs = asyncTimeoutMs;
+      return this;
+    }
+
+    /**
+     * Suspends the requests of actions that complete asynchronously instead of blocking a container thread, when the
+     * container supports Servlet 3.0 asynchronous requests. Overrides of
+     * {@link com.gwtplatform.dispatch.server.AbstractDispatchServiceImpl#execute(String,
+     * com.gwtplatform.dispatch.shared.Action) AbstractDispatchServiceImpl.execute} are no longer called then.
+     *
+     * @return This builder.
+     */
+    public Builder asyncDispatch() {
+      this.asyncDispatch = true;
+      return this;
+    }
+
     public DispatchModule build() {
       return new DispatchModule(this);
     }
@@ -91,6 +229,12 @@ public class DispatchModule extends AbstractModule {
     this.dispatchClass = builder.dispatchClass;
     this.actionHandlerValidatorRegistryClass = builder.actionHandlerValidatorRegistryClass;
     this.requestProviderClass = builder.requestProviderClass;
+    this.interceptorClasses = new ArrayList<Class<? extends ActionInterceptor>>(builder.interceptorClasses);
+    this.resultCache = builder.resultCache;
+    this.dispatchMetrics = builder.dispatchMetrics;
+    this.defaultTimeBudgetMs = builder.defaultTimeBudgetMs;
+    this.asyncTimeoutMs = builder.asyncTimeoutMs;
+    this.asyncDispatch = builder.asyncDispatch;
   }
 
   @Deprecated
@@ -138,6 +282,60 @@ public class DispatchModule extends AbstractModule {
     if (LazyActionHandlerValidatorRegistry.class.isAssignableFrom(actionHandlerValidatorRegistryClass)) {
       requestStaticInjection(ActionHandlerValidatorLinker.class);
     }
+
+    if (dispatchMetrics != null) {
+      bind(DispatchMetrics.class).toInstance(dispatchMetrics);
+    }
+
+    if (defaultTimeBudgetMs != null) {
+      bindConstant().annotatedWith(DefaultTimeBudgetMs.class).to(defaultTimeBudgetMs);
+    }
+
+    if (asyncTimeoutMs != null) {
+      bindConstant().annotatedWith(AsyncTimeoutMs.class).to(asyncTimeoutMs);
+    }
+
+    if (asyncDispatch) {
+      bindConstant().annotatedWith(AsyncDispatch.class).to(true);
+    }
+
+    if (resultCache != null) {
+      bind(ResultCache.class).toInstance(resultCache);
+      bind(ResultCacheInterceptor.class).toInstance(new ResultCacheInterceptor(resultCache));
+    }
+
+    if (!interceptorClasses.isEmpty()) {
+      for (Class<? extends ActionInterceptor> interceptorClass : interceptorClasses) {
+        if (interceptorClass != ResultCacheInterceptor.class) {
+          bind(interceptorClass).in(Singleton.class);
+        }
+      }
+      bind(new TypeLiteral<List<ActionInterceptor>>() { }).toProvider(
+          new ActionInterceptorsProvider(interceptorClasses)).in(Singleton.class);
+    }
+  }
+
+  /**
+   * Provides the interceptors injected in {@link DispatchImpl}, in the order they were added to the {@link Builder}.
+   */
+  private static class ActionInterceptorsProvider implements Provider<List<ActionInterceptor>> {
+    private final List<Class<? extends ActionInterceptor>> interceptorClasses;
+
+    @Inject
+    private Injector injector;
+
+    ActionInterceptorsProvider(List<Class<? extends ActionInterceptor>> interceptorClasses) {
+      this.interceptorClasses = interceptorClasses;
+    }
+
+    @Override
+    public List<ActionInterceptor> get() {
+      List<ActionInterceptor> interceptors = new ArrayList<ActionInterceptor>();
+      for (Class<? extends ActionInterceptor> interceptorClass : interceptorClasses) {
+        interceptors.add(injector.getInstance(interceptorClass));
+      }
+      return interceptors;
+    }
   }
 
 }
@@ -20,6 +20,7 @@ import com.google.inject.Inject;
 import com.gwtplatform.dispatch.server.AbstractDispatchServiceImpl;
 import com.gwtplatform.dispatch.server.Dispatch;
 import com.gwtplatform.dispatch.server.RequestProvider;
+import com.gwtplatform.dispatch.server.SignedSecurityTokens;
 import com.gwtplatform.dispatch.shared.SecurityCookie;
 
 import javax.inject.Singleton;
@@ -62,4 +63,34 @@ public class DispatchServiceImpl extends AbstractDispatchServiceImpl {
   public String getSecurityCookieName() {
     return securityCookieName;
   }
+
+  /**
+   * Receives the {@link SignedSecurityTokens} used by {@link SignedSecurityCookieFilter}, if they are bound.
+   *
+   * @param securityTokens The {@link SignedSecurityTokens}.
+   */
+  @Inject(optional = true)
+  void injectSignedSecurityTokens(SignedSecurityTokens securityTokens) {
+    setSignedSecurityTokens(securityTokens);
+  }
+
+  /**
+   * Receives the timeout bound with {@link DispatchModule.Builder#asyncTimeoutMs(long)}, if any.
+   *
+   * @param asyncTimeoutMs The timeout of asynchronous actions, in milliseconds.
+   */
+  @Inject(optional = true)
+  void injectAsyncTimeout(@AsyncTimeoutMs long asyncTimeoutMs) {
+    setAsyncTimeoutMs(asyncTimeoutMs);
+  }
+
+  /**
+   * Receives the flag bound with {@link DispatchModule.Builder#asyncDispatch()}, if any.
+   *
+   * @param asyncDispatch {@code true} to suspend the requests of actions that complete asynchronously.
+   */
+  @Inject(optional = true)
+  void injectAsyncDispatch(@AsyncDispatch boolean asyncDispatch) {
+    setAsyncDispatchEnabled(asyncDispatch);
+  }
 }
\ No newline at end of file
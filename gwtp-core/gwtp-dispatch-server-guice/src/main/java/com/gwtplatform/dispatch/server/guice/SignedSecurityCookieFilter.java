@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.guice;
+
+import com.gwtplatform.dispatch.server.AbstractSignedSecurityCookieFilter;
+import com.gwtplatform.dispatch.server.SignedSecurityTokens;
+import com.gwtplatform.dispatch.shared.SecurityCookie;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Issues stateless security cookies signed by {@link SignedSecurityTokens}. Bind the tokens with the secret shared by
+ * all your nodes, then filter your host page through this class:
+ *
+ * <pre>
+ * bind(SignedSecurityTokens.class).toInstance(new SignedSecurityTokens(secret, new SecureRandom()));
+ * filter(&quot;*.jsp&quot;).through(SignedSecurityCookieFilter.class);
+ * </pre>
+ *
+ * {@link DispatchServiceImpl} picks up the same binding to check the signature of the cookies.
+ */
+@Singleton
+public class SignedSecurityCookieFilter extends AbstractSignedSecurityCookieFilter {
+
+  @Inject
+  SignedSecurityCookieFilter(@SecurityCookie String securityCookieName, SignedSecurityTokens securityTokens) {
+    super(securityCookieName, securityTokens);
+  }
+}
@@ -16,10 +16,15 @@
 
 package com.gwtplatform.dispatch.server.spring;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 import com.gwtplatform.dispatch.server.AbstractDispatchImpl;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionInterceptor;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
 
 /**
  * @author Peter Simun
@@ -30,4 +35,37 @@ public class DispatchImpl extends AbstractDispatchImpl {
   public DispatchImpl(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry) {
     super(actionHandlerValidatorRegistry);
   }
-}
\ No newline at end of file
+
+  /**
+   * Receives every {@link ActionInterceptor} bean of the application context, if any. See
+   * {@link com.gwtplatform.dispatch.server.spring.configuration.ResultCacheModule ResultCacheModule}.
+   *
+   * @param interceptors The {@link ActionInterceptor}s, outermost first.
+   */
+  @Autowired(required = false)
+  public void injectActionInterceptors(List<ActionInterceptor> interceptors) {
+    setActionInterceptors(interceptors);
+  }
+
+  /**
+   * Receives the {@link DispatchMetrics} bean, if any. See
+   * {@link com.gwtplatform.dispatch.server.spring.configuration.MetricsModule MetricsModule}.
+   *
+   * @param dispatchMetrics The {@link DispatchMetrics}.
+   */
+  @Autowired(required = false)
+  public void injectDispatchMetrics(DispatchMetrics dispatchMetrics) {
+    setDispatchMetrics(dispatchMetrics);
+  }
+
+  /**
+   * Receives the {@code Long} bean named {@code "defaultTimeBudgetMs"}, if any, as the time budget in milliseconds of
+   * the actions that have no {@link com.gwtplatform.dispatch.shared.TimeBudget TimeBudget} annotation.
+   *
+   * @param defaultTimeBudgetMs The budget in milliseconds, {@code 0} for unlimited.
+   */
+  @Autowired(required = false)
+  public void injectDefaultTimeBudget(@Qualifier("defaultTimeBudgetMs") Long defaultTimeBudgetMs) {
+    setDefaultTimeBudgetMs(defaultTimeBudgetMs);
+  }
+}
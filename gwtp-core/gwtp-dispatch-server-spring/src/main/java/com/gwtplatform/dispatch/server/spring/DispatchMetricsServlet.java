@@ -0,0 +1,50 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.spring;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.HttpRequestHandler;
+
+import com.gwtplatform.dispatch.server.metrics.AbstractDispatchMetricsServlet;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
+
+/**
+ * Serves the metrics enabled with {@link com.gwtplatform.dispatch.server.spring.configuration.MetricsModule
+ * MetricsModule}, which declares it as the {@code dispatchMetrics} bean. Expose it with an
+ * {@code HttpRequestHandlerServlet} of the same name, behind some access control. The JMX MBean is registered by the
+ * {@code MetricsModule} itself.
+ */
+public class DispatchMetricsServlet extends AbstractDispatchMetricsServlet implements HttpRequestHandler {
+
+  private static final long serialVersionUID = -2851049227013358217L;
+
+  public DispatchMetricsServlet(Logger logger, DispatchMetrics dispatchMetrics) {
+    super(logger, dispatchMetrics);
+  }
+
+  @Override
+  public void handleRequest(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    doGet(request, response);
+  }
+}
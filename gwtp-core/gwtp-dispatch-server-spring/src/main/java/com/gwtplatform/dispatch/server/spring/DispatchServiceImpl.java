@@ -19,6 +19,7 @@ package com.gwtplatform.dispatch.server.spring;
 import com.gwtplatform.dispatch.server.AbstractDispatchServiceImpl;
 import com.gwtplatform.dispatch.server.Dispatch;
 import com.gwtplatform.dispatch.server.RequestProvider;
+import com.gwtplatform.dispatch.server.SignedSecurityTokens;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -60,6 +61,38 @@ public class DispatchServiceImpl extends AbstractDispatchServiceImpl implements
     this.securityCookieName = securityCookieName;
   }
 
+  /**
+   * Receives the {@link SignedSecurityTokens} bean used by {@link SignedSecurityCookieFilter}, if any.
+   *
+   * @param securityTokens The {@link SignedSecurityTokens}.
+   */
+  @Autowired(required = false)
+  public void injectSignedSecurityTokens(SignedSecurityTokens securityTokens) {
+    setSignedSecurityTokens(securityTokens);
+  }
+
+  /**
+   * Sets how long an asynchronous action may hold its suspended request, see
+   * {@link AbstractDispatchServiceImpl#DEFAULT_ASYNC_TIMEOUT_MS}.
+   *
+   * @param asyncTimeoutMs The timeout in milliseconds, {@code 0} to wait forever.
+   */
+  @Override
+  public void setAsyncTimeoutMs(long asyncTimeoutMs) {
+    super.setAsyncTimeoutMs(asyncTimeoutMs);
+  }
+
+  /**
+   * Suspends the requests of actions that complete asynchronously instead of blocking a container thread, see
+   * {@link AbstractDispatchServiceImpl#setAsyncDispatchEnabled(boolean)}.
+   *
+   * @param asyncDispatchEnabled {@code true} to enable it.
+   */
+  @Override
+  public void setAsyncDispatchEnabled(boolean asyncDispatchEnabled) {
+    super.setAsyncDispatchEnabled(asyncDispatchEnabled);
+  }
+
   @Override
   public void handleRequest(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.spring;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import com.gwtplatform.dispatch.server.AbstractSignedSecurityCookieFilter;
+import com.gwtplatform.dispatch.server.SignedSecurityTokens;
+
+/**
+ * Issues stateless security cookies signed by the {@link SignedSecurityTokens} bean, which must be built with the
+ * secret shared by all your nodes. {@link DispatchServiceImpl} picks up the same bean to check the signature of the
+ * cookies.
+ */
+public class SignedSecurityCookieFilter extends AbstractSignedSecurityCookieFilter {
+
+  @Autowired
+  SignedSecurityCookieFilter(@Qualifier("SecurityCookie") String securityCookieName,
+      SignedSecurityTokens securityTokens) {
+    super(securityCookieName, securityTokens);
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.spring.configuration;
+
+import org.springframework.context.annotation.Bean;
+
+import com.gwtplatform.dispatch.server.coalescing.CoalescingInterceptor;
+
+/**
+ * Coalesces the concurrent executions of equal actions annotated with
+ * {@link com.gwtplatform.dispatch.shared.Coalesced Coalesced}. Import it next to {@link DefaultModule}.
+ */
+public class CoalescingModule {
+
+  @Bean
+  CoalescingInterceptor getCoalescingInterceptor() {
+    return new CoalescingInterceptor();
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.spring.configuration;
+
+import java.util.logging.Logger;
+
+import org.springframework.context.annotation.Bean;
+
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
+import com.gwtplatform.dispatch.server.spring.DispatchMetricsServlet;
+
+/**
+ * Records per action class metrics and registers them as a JMX MBean for the lifetime of the application context.
+ * Import it next to {@link DefaultModule}, and expose
+ * {@link DispatchMetricsServlet} to read them over HTTP.
+ */
+public class MetricsModule {
+
+  @Bean(initMethod = "registerMBean", destroyMethod = "unregisterMBean")
+  DispatchMetrics getDispatchMetrics() {
+    return new DispatchMetrics("dispatch");
+  }
+
+  @Bean(name = "dispatchMetrics")
+  DispatchMetricsServlet getDispatchMetricsServlet() {
+    return new DispatchMetricsServlet(Logger.getLogger(DispatchMetricsServlet.class.getName()), getDispatchMetrics());
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.spring.configuration;
+
+import org.springframework.context.annotation.Bean;
+
+import com.gwtplatform.dispatch.server.resultcache.ResultCache;
+import com.gwtplatform.dispatch.server.resultcache.ResultCacheInterceptor;
+
+/**
+ * Enables the server-side result cache for actions annotated with
+ * {@link com.gwtplatform.dispatch.shared.ServerCacheable ServerCacheable}. Import it next to {@link DefaultModule}.
+ * The {@link ResultCache} bean can be autowired in handlers that need to invalidate stale results.
+ */
+public class ResultCacheModule {
+
+  @Bean
+  ResultCache getResultCache() {
+    return new ResultCache(ResultCache.DEFAULT_MAX_ENTRIES, ResultCache.DEFAULT_TIME_TO_LIVE_MS);
+  }
+
+  @Bean
+  ResultCacheInterceptor getResultCacheInterceptor() {
+    return new ResultCacheInterceptor(getResultCache());
+  }
+}
@@ -16,18 +16,26 @@
 
 package com.gwtplatform.dispatch.server;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
-import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
 import com.gwtplatform.dispatch.server.actionhandler.ActionResult;
-import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionhandler.NonUndoableActionHandler;
 import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
-import com.gwtplatform.dispatch.server.actionvalidator.ActionValidator;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionInterceptor;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionPipeline;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionPipelineCache;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
 import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionCancelledException;
 import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
 import com.gwtplatform.dispatch.shared.Result;
 import com.gwtplatform.dispatch.shared.ServiceException;
-import com.gwtplatform.dispatch.shared.UnsupportedActionException;
+import com.gwtplatform.dispatch.shared.TimeBudget;
 
 /**
  * This is the server-side implementation of the {@link Dispatch} service with an arbitrary action type, for which the
@@ -49,156 +57,320 @@ import com.gwtplatform.dispatch.shared.UnsupportedActionException;
  */
 public abstract class AbstractDispatchImpl implements Dispatch {
 
-  private static class DefaultExecutionContext implements ExecutionContext {
+  /**
+   * Records the sub-actions executed or undone through the context so that they can be rolled back if the action
+   * fails. The journal is only allocated when a sub-action that can be undone runs, so actions that don't use the
+   * context, or only run {@link NonUndoableActionHandler non-undoable} sub-actions, cost a single small object.
+   * <p />
+   * The context also tracks the deadline of the top-level action. Sub-actions fail fast once it has passed or once the
+   * context was cancelled, which rolls the top-level action back like any other failure.
+   */
+  private static class DefaultExecutionContext implements ExecutionContext, CancellableContext {
+
+    private static final int INITIAL_JOURNAL_CAPACITY = 4;
 
-    private final List<ActionResult<?, ?>> actionResults;
     private final AbstractDispatchImpl dispatch;
+    private final long timeBudgetMs;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+    // Guarded by this, asynchronous handlers may run nested actions from other threads.
+    private List<ActionResult<?, ?>> journal;
 
     private DefaultExecutionContext(AbstractDispatchImpl dispatch) {
+      this(dispatch, 0);
+    }
+
+    /**
+     * @param timeBudgetMs The time budget starting now, in milliseconds, or {@code 0} for no deadline.
+     */
+    private DefaultExecutionContext(AbstractDispatchImpl dispatch, long timeBudgetMs) {
       this.dispatch = dispatch;
-      this.actionResults = new java.util.ArrayList<ActionResult<?, ?>>();
+      this.timeBudgetMs = timeBudgetMs;
+      this.deadlineNanos = timeBudgetMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMs) : 0;
     }
 
     @Override
     public <A extends Action<R>, R extends Result> R execute(A action) throws ActionException, ServiceException {
-      R result = dispatch.doExecute(action, this);
-      actionResults.add(new ActionResult<A, R>(action, result, true));
+      checkNotCancelled(action);
+      ActionPipeline<A, R> pipeline = dispatch.actionPipelineCache.findPipeline(action);
+      R result = pipeline.execute(action, this);
+      if (pipeline.isUndoable()) {
+        record(new ActionResult<A, R>(action, result, true));
+      }
       return result;
     }
 
     @Override
     public <A extends Action<R>, R extends Result> void undo(A action, R result) throws ActionException, ServiceException {
-      dispatch.doExecute(action, this);
-      actionResults.add(new ActionResult<A, R>(action, result, false));
+      ActionPipeline<A, R> pipeline = dispatch.actionPipelineCache.findPipeline(action);
+      pipeline.undo(action, result, this);
+      if (pipeline.isUndoable()) {
+        record(new ActionResult<A, R>(action, result, false));
+      }
+    }
+
+    @Override
+    public long getRemainingTimeMs() {
+      if (timeBudgetMs <= 0) {
+        return Long.MAX_VALUE;
+      }
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      return remainingNanos > 0 ? TimeUnit.NANOSECONDS.toMillis(remainingNanos) : 0;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      if (cancelled) {
+        return true;
+      }
+      if (timeBudgetMs > 0 && deadlineNanos - System.nanoTime() <= 0) {
+        cancelled = true;
+      }
+      return cancelled;
+    }
+
+    private void cancel() {
+      cancelled = true;
+    }
+
+    private void checkNotCancelled(Action<?> action) throws ActionCancelledException {
+      if (!isCancelled()) {
+        return;
+      }
+      if (timeBudgetMs > 0 && deadlineNanos - System.nanoTime() <= 0) {
+        throw new DeadlineExceededException("The time budget of " + timeBudgetMs + " ms was spent before executing "
+            + action.getClass().getName());
+      }
+      throw new ActionCancelledException("The execution was cancelled before executing " + action.getClass().getName());
+    }
+
+    private void record(ActionResult<?, ?> actionResult) {
+      if (!dispatch.undoJournalEnabled) {
+        return;
+      }
+
+      synchronized (this) {
+        if (journal == null) {
+          journal = new ArrayList<ActionResult<?, ?>>(INITIAL_JOURNAL_CAPACITY);
+        }
+        journal.add(actionResult);
+      }
     }
 
     /**
      * Rolls back all logged executed actions.
      *
+     * @return {@code true} if there was anything to roll back.
      * @throws ActionException If there is an action exception while rolling back.
      * @throws ServiceException If there is a low level problem while rolling back.
      */
-    private void rollback() throws ActionException, ServiceException {
+    private boolean rollback() throws ActionException, ServiceException {
+      List<ActionResult<?, ?>> toRollback;
+      synchronized (this) {
+        if (journal == null) {
+          return false;
+        }
+        toRollback = new ArrayList<ActionResult<?, ?>>(journal);
+      }
+
       DefaultExecutionContext ctx = new DefaultExecutionContext(dispatch);
-      for (int i = actionResults.size() - 1; i >= 0; i--) {
-        ActionResult<?, ?> actionResult = actionResults.get(i);
+      for (int i = toRollback.size() - 1; i >= 0; i--) {
+        ActionResult<?, ?> actionResult = toRollback.get(i);
         rollback(actionResult, ctx);
       }
+      return true;
     }
 
     private <A extends Action<R>, R extends Result> void rollback(ActionResult<A, R> actionResult, ExecutionContext ctx) throws ActionException,
     ServiceException {
+      ActionPipeline<A, R> pipeline = dispatch.actionPipelineCache.findPipeline(actionResult.getAction());
+      if (!pipeline.isUndoable()) {
+        // The handler was replaced by one that can't undo since the action ran.
+        return;
+      }
+
       if (actionResult.isExecuted()) {
-        dispatch.doUndo(actionResult.getAction(), actionResult.getResult(), ctx);
+        pipeline.undo(actionResult.getAction(), actionResult.getResult(), ctx);
       } else {
-        dispatch.doExecute(actionResult.getAction(), ctx);
+        pipeline.execute(actionResult.getAction(), ctx);
       }
     }
   }
 
-  private static final String actionValidatorMessage = " couldn't allow access to action : ";;
-
-  private final ActionHandlerValidatorRegistry actionHandlerValidatorRegistry;
+  private final ActionPipelineCache actionPipelineCache;
+  private volatile boolean undoJournalEnabled = true;
+  private volatile long defaultTimeBudgetMs;
 
   protected AbstractDispatchImpl(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry) {
-    this.actionHandlerValidatorRegistry = actionHandlerValidatorRegistry;
+    this(actionHandlerValidatorRegistry, Collections.<ActionInterceptor>emptyList());
+  }
+
+  /**
+   * @param actionHandlerValidatorRegistry The registry of handlers and validators.
+   * @param interceptors The {@link ActionInterceptor}s wrapping every execution, outermost first.
+   */
+  protected AbstractDispatchImpl(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry,
+      List<? extends ActionInterceptor> interceptors) {
+    this.actionPipelineCache = new ActionPipelineCache(actionHandlerValidatorRegistry, interceptors);
+  }
+
+  /**
+   * Replaces the {@link ActionInterceptor}s wrapping every execution. Meant to be called by dependency injection
+   * containers, before the first action is dispatched.
+   *
+   * @param interceptors The {@link ActionInterceptor}s, outermost first.
+   */
+  protected void setActionInterceptors(List<? extends ActionInterceptor> interceptors) {
+    actionPipelineCache.setInterceptors(interceptors);
+  }
+
+  /**
+   * Starts recording per action class metrics, or stops if {@code dispatchMetrics} is {@code null}. Meant to be called
+   * by dependency injection containers, before the first action is dispatched.
+   *
+   * @param dispatchMetrics The {@link DispatchMetrics}.
+   */
+  protected void setDispatchMetrics(DispatchMetrics dispatchMetrics) {
+    actionPipelineCache.setDispatchMetrics(dispatchMetrics);
+  }
+
+  /**
+   * Enables or disables the undo journal. When it is disabled, the sub-actions run through the
+   * {@link ExecutionContext} are never recorded, so a failing compound action doesn't roll them back. Only disable it
+   * if none of your handlers rely on automatic rollback. It is enabled by default.
+   *
+   * @param undoJournalEnabled {@code false} to disable the undo journal.
+   */
+  protected void setUndoJournalEnabled(boolean undoJournalEnabled) {
+    this.undoJournalEnabled = undoJournalEnabled;
+  }
+
+  /**
+   * Sets the time budget of the actions that have no {@link TimeBudget} annotation. Once it is spent, their
+   * sub-actions fail with a {@link DeadlineExceededException} and they are rolled back. It is unlimited by default.
+   *
+   * @param defaultTimeBudgetMs The budget in milliseconds, {@code 0} for unlimited.
+   */
+  protected void setDefaultTimeBudgetMs(long defaultTimeBudgetMs) {
+    if (defaultTimeBudgetMs < 0) {
+      throw new IllegalArgumentException("defaultTimeBudgetMs must be positive or 0");
+    }
+    this.defaultTimeBudgetMs = defaultTimeBudgetMs;
   }
 
   @Override
   public <A extends Action<R>, R extends Result> R execute(A action) throws ActionException, ServiceException {
-    DefaultExecutionContext ctx = new DefaultExecutionContext(this);
+    ActionPipeline<A, R> pipeline = actionPipelineCache.findPipeline(action);
+    DefaultExecutionContext ctx = new DefaultExecutionContext(this, timeBudgetOf(pipeline));
     try {
-      return doExecute(action, ctx);
+      return pipeline.execute(action, ctx);
     } catch (ActionException e) {
-      ctx.rollback();
+      rollback(ctx, action);
       throw e;
     } catch (ServiceException e) {
-      ctx.rollback();
+      rollback(ctx, action);
       throw e;
     }
   }
 
   @Override
-  public <A extends Action<R>, R extends Result> void undo(A action, R result) throws ActionException, ServiceException {
-    DefaultExecutionContext ctx = new DefaultExecutionContext(this);
+  public <A extends Action<R>, R extends Result> DispatchFuture<R> executeAsync(final A action) {
+    final DefaultExecutionContext ctx;
+    final DispatchFuture<R> pending;
     try {
-      doUndo(action, result, ctx);
-    } catch (ActionException e) {
-      ctx.rollback();
-      throw e;
+      ActionPipeline<A, R> pipeline = actionPipelineCache.findPipeline(action);
+      ctx = new DefaultExecutionContext(this, timeBudgetOf(pipeline));
+      pending = pipeline.executeAsync(action, ctx);
     } catch (ServiceException e) {
-      ctx.rollback();
-      throw e;
+      return DispatchFuture.failed(e);
     }
-  }
 
-  /**
-   * Every single action will be executed by this function and validated by the {@link ActionValidator}.
-   *
-   * @param <A> Type of associated {@link Action} type.
-   * @param <R> Type of associated {@link Result} type.
-   * @param action The {@link Action} to execute
-   * @param ctx The {@link ExecutionContext} associated with the {@link Action}
-   * @return The {@link Result} to the client
-   * @throws ActionException
-   * @throws ServiceException
-   */
-  private <A extends Action<R>, R extends Result> R doExecute(A action, ExecutionContext ctx) throws ActionException, ServiceException {
-    ActionHandler<A, R> handler = findHandler(action);
+    if (pending.isDone() && !pending.isCancelled()) {
+      try {
+        return DispatchFuture.succeeded(pending.getResult());
+      } catch (ActionException e) {
+        return failAfterRollback(ctx, action, e);
+      } catch (ServiceException e) {
+        return failAfterRollback(ctx, action, e);
+      }
+    }
 
-    ActionValidator actionValidator = findActionValidator(action);
+    final DispatchFuture<R> future = new DispatchFuture<R>();
+    pending.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        future.set(result);
+      }
 
-    try {
-      if (actionValidator.isValid(action)) {
-        return handler.execute(action, ctx);
-      } else {
-        throw new ServiceException(actionValidator.getClass().getName() + actionValidatorMessage + action.getClass().getName());
+      @Override
+      public void onFailure(Throwable caught) {
+        try {
+          rollback(ctx, action);
+          future.setException(caught);
+        } catch (Exception e) {
+          future.setException(e);
+        }
+      }
+    });
+    future.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
       }
-    } catch (ActionException e) {
-      throw e;
-    } catch (Exception e) {
-      String newMessage = "Service exception executing action \"" + action.getClass().getSimpleName() + "\", " + e.toString();
-      ServiceException rethrown = new ServiceException(newMessage);
-      rethrown.initCause(e);
-      throw rethrown;
-    }
-  }
 
-  private <A extends Action<R>, R extends Result> void doUndo(A action, R result, ExecutionContext ctx) throws ActionException, ServiceException {
+      @Override
+      public void onFailure(Throwable caught) {
+        if (caught instanceof CancellationException) {
+          ctx.cancel();
+          pending.cancel(true);
+        }
+      }
+    });
 
-    ActionValidator actionValidator = findActionValidator(action);
+    return future;
+  }
 
-    ActionHandler<A, R> handler = findHandler(action);
+  @Override
+  public <A extends Action<R>, R extends Result> void undo(A action, R result) throws ActionException, ServiceException {
+    DefaultExecutionContext ctx = new DefaultExecutionContext(this);
     try {
-      if (actionValidator.isValid(action)) {
-        handler.undo(action, result, ctx);
-      } else {
-        throw new ServiceException(actionValidator.getClass().getName() + actionValidatorMessage + action.getClass().getName());
-      }
+      doUndo(action, result, ctx);
     } catch (ActionException e) {
+      rollback(ctx, action);
+      throw e;
+    } catch (ServiceException e) {
+      rollback(ctx, action);
       throw e;
-    } catch (Exception cause) {
-      throw new ServiceException(cause);
     }
   }
 
-  private <A extends Action<R>, R extends Result> ActionValidator findActionValidator(A action) throws UnsupportedActionException {
-    ActionHandlerValidatorInstance handlerValidator = actionHandlerValidatorRegistry.findActionHandlerValidator(action);
-    if (handlerValidator == null) {
-      throw new UnsupportedActionException(action);
+  private <R> DispatchFuture<R> failAfterRollback(DefaultExecutionContext ctx, Action<?> action, Exception caught) {
+    try {
+      rollback(ctx, action);
+    } catch (ActionException e) {
+      return DispatchFuture.failed(e);
+    } catch (ServiceException e) {
+      return DispatchFuture.failed(e);
     }
-
-    return handlerValidator.getActionValidator();
+    return DispatchFuture.failed(caught);
   }
 
-  @SuppressWarnings("unchecked")
-  private <A extends Action<R>, R extends Result> ActionHandler<A, R> findHandler(A action) throws UnsupportedActionException {
-    ActionHandlerValidatorInstance handlerValidator = actionHandlerValidatorRegistry.findActionHandlerValidator(action);
+  private long timeBudgetOf(ActionPipeline<?, ?> pipeline) {
+    long timeBudgetMs = pipeline.getTimeBudgetMs();
+    return timeBudgetMs == ActionPipeline.NO_TIME_BUDGET ? defaultTimeBudgetMs : timeBudgetMs;
+  }
 
-    if (handlerValidator == null) {
-      throw new UnsupportedActionException(action);
+  private void rollback(DefaultExecutionContext ctx, Action<?> action) throws ActionException, ServiceException {
+    if (ctx.rollback()) {
+      DispatchMetrics dispatchMetrics = actionPipelineCache.getDispatchMetrics();
+      if (dispatchMetrics != null) {
+        dispatchMetrics.forAction(action.getClass()).rolledBack();
+      }
     }
+  }
+
+  private <A extends Action<R>, R extends Result> void doUndo(A action, R result, ExecutionContext ctx) throws ActionException, ServiceException {
+    ActionPipeline<A, R> pipeline = actionPipelineCache.findPipeline(action);
 
-    return (ActionHandler<A, R>) handlerValidator.getActionHandler();
+    pipeline.undo(action, result, ctx);
   }
-}
\ No newline at end of file
+}
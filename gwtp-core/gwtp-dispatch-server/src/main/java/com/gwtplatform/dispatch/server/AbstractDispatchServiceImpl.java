@@ -16,15 +16,29 @@
 
 package com.gwtplatform.dispatch.server;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.RpcTokenException;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.RPCRequest;
+import com.google.gwt.user.server.rpc.RPCServletUtils;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 import com.gwtplatform.dispatch.shared.Action;
 import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchDispatchService;
+import com.gwtplatform.dispatch.shared.DispatchBatchResult;
 import com.gwtplatform.dispatch.shared.DispatchService;
 import com.gwtplatform.dispatch.shared.Result;
 import com.gwtplatform.dispatch.shared.ServiceException;
@@ -35,6 +49,10 @@ import com.gwtplatform.dispatch.shared.ServiceException;
  * <p />
  * This class is closely related to {@link AbstractDispatchImpl}, in theory the latter wouldn't be needed, but we use it
  * to workaround a GWT limitation described in {@link com.gwtplatform.dispatch.shared.DispatchAsync}.
+ * <p />
+ * Once enabled with {@link #setAsyncDispatchEnabled(boolean)}, actions that complete asynchronously hold a suspended
+ * request for at most {@link #DEFAULT_ASYNC_TIMEOUT_MS}, see {@link #setAsyncTimeoutMs(long)}. Once it expires, the RPC
+ * fails with a {@link ServiceException} and the action is cancelled.
  *
  * @see com.gwtplatform.dispatch.shared.DispatchAsync
  * @see com.gwtplatform.dispatch.server.Dispatch
@@ -45,7 +63,27 @@ import com.gwtplatform.dispatch.shared.ServiceException;
  * @author Christian Goudreau
  * @author David Peterson
  */
-public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet implements DispatchService {
+public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet implements BatchDispatchService {
+
+  /**
+   * Thrown out of {@link #processCall} once the request has been suspended, so that {@link RemoteServiceServlet}
+   * doesn't write a response of its own. It's caught again in {@link #doUnexpectedFailure}.
+   */
+  private static final class ResponsePendingException extends RuntimeException {
+    private static final long serialVersionUID = 6387461027938374113L;
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final ResponsePendingException responsePending = new ResponsePendingException();
+
+  /**
+   * The default time an asynchronous action may hold its suspended request, in milliseconds.
+   */
+  public static final long DEFAULT_ASYNC_TIMEOUT_MS = 60000;
 
   private static final String noSecurityCookieMessage = "You have to define a security cookie in order to use secured actions. See com.gwtplatform.dispatch.shared.SecurityCookie for details.";
 
@@ -57,6 +95,10 @@ public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet i
 
   protected RequestProvider requestProvider;
 
+  private volatile SignedSecurityTokens securityTokens;
+  private volatile long asyncTimeoutMs = DEFAULT_ASYNC_TIMEOUT_MS;
+  private volatile boolean asyncDispatchEnabled;
+
   protected AbstractDispatchServiceImpl(final Logger logger, final Dispatch dispatch, RequestProvider requestProvider) {
     this.logger = logger;
     this.dispatch = dispatch;
@@ -67,6 +109,46 @@ public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet i
     return null;
   }
 
+  /**
+   * Makes the service only accept security cookies that were signed by {@code securityTokens}, as issued by an
+   * {@link AbstractSignedSecurityCookieFilter}. Without it, any cookie matching the one sent by RPC is accepted.
+   *
+   * @param securityTokens The {@link SignedSecurityTokens}, or {@code null} to accept any cookie.
+   */
+  protected void setSignedSecurityTokens(SignedSecurityTokens securityTokens) {
+    this.securityTokens = securityTokens;
+  }
+
+  /**
+   * Sets how long an asynchronous action may hold its suspended request. It replaces the default timeout of the
+   * container, which would otherwise end slow actions without telling why.
+   *
+   * @param asyncTimeoutMs The timeout in milliseconds, or {@code 0} to wait for the action forever.
+   */
+  protected void setAsyncTimeoutMs(long asyncTimeoutMs) {
+    if (asyncTimeoutMs < 0) {
+      throw new IllegalArgumentException("asyncTimeoutMs must be positive or 0");
+    }
+    this.asyncTimeoutMs = asyncTimeoutMs;
+  }
+
+  /**
+   * Makes {@link #processCall} dispatch {@link DispatchService#execute} calls through
+   * {@link #executeAsync(String, Action)} when the container supports asynchronous requests. It is disabled by default
+   * because {@link #execute(String, Action)} is no longer called then, subclasses overriding it should override
+   * {@link #executeAsync(String, Action)} too before enabling it.
+   *
+   * @param asyncDispatchEnabled {@code true} to suspend the requests of actions that complete asynchronously.
+   */
+  protected void setAsyncDispatchEnabled(boolean asyncDispatchEnabled) {
+    this.asyncDispatchEnabled = asyncDispatchEnabled;
+  }
+
+  /**
+   * Executes the action and blocks until it completes. This is the entry point of every
+   * {@link DispatchService#execute} call, unless {@link #setAsyncDispatchEnabled(boolean)} was called, in which case
+   * {@link #executeAsync(String, Action)} is.
+   */
   @Override
   public Result execute(String cookieSentByRPC, Action<?> action) throws ActionException, ServiceException {
 
@@ -97,6 +179,116 @@ public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet i
     }
   }
 
+  /**
+   * Executes the actions one after the other through {@link #execute}, so every one of them goes through the same
+   * security check and logging as if it had been sent on its own.
+   */
+  @Override
+  public DispatchBatchResult executeBatch(String cookieSentByRPC, Action<?>[] actions) throws ServiceException {
+    DispatchBatchResult batchResult = new DispatchBatchResult(actions.length);
+    for (int i = 0; i < actions.length; i++) {
+      try {
+        batchResult.setResult(i, execute(cookieSentByRPC, actions[i]));
+      } catch (ActionException e) {
+        batchResult.setFailure(i, e);
+      } catch (ServiceException e) {
+        batchResult.setFailure(i, e);
+      }
+    }
+    return batchResult;
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #execute}. The returned future completes when the
+   * {@link com.gwtplatform.dispatch.server.actionhandler.AsyncActionHandler AsyncActionHandler} does, and fails in
+   * all the cases where {@link #execute} would throw.
+   *
+   * @param cookieSentByRPC The content of the security cookie sent by RPC.
+   * @param action The {@link Action} to execute.
+   * @return The future {@link Result}.
+   */
+  public DispatchFuture<Result> executeAsync(String cookieSentByRPC, final Action<?> action) {
+    try {
+      if (action.isSecured() && !cookieMatch(cookieSentByRPC)) {
+        String message = xsrfAttackMessage + " While executing action: " + action.getClass().getName();
+
+        logger.severe(message);
+        return DispatchFuture.failed(new ServiceException(message));
+      }
+    } catch (ServiceException e) {
+      return DispatchFuture.failed(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    DispatchFuture<Result> future = dispatch.executeAsync((Action<Result>) action);
+    future.addCallback(new DispatchFutureCallback<Result>() {
+      @Override
+      public void onSuccess(Result result) {
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        if (logger.isLoggable(Level.WARNING)) {
+          String kind = caught instanceof ActionException ? "Action" : caught instanceof ServiceException ? "Service"
+              : "Unexpected";
+          logger.log(Level.WARNING, kind + " exception while executing " + action.getClass().getName() + ": "
+              + caught.getMessage(), caught);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * When {@link #setAsyncDispatchEnabled(boolean) enabled} and the container supports it, {@link DispatchService#execute}
+   * calls are dispatched through {@link #executeAsync(String, Action)}. If the result isn't ready by the time it
+   * returns, the request is suspended with an {@link AsyncContext} and the container thread is released until the
+   * future completes. Everything else goes through {@link RemoteServiceServlet#processCall} as usual.
+   */
+  @Override
+  public String processCall(String payload) throws SerializationException {
+    HttpServletRequest request = getThreadLocalRequest();
+    if (!asyncDispatchEnabled || !isAsyncSupported(request)) {
+      return super.processCall(payload);
+    }
+
+    checkPermutationStrongName();
+
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, getClass(), this);
+      onAfterRequestDeserialized(rpcRequest);
+    } catch (IncompatibleRemoteServiceException e) {
+      log("An IncompatibleRemoteServiceException was thrown while processing this call.", e);
+      return RPC.encodeResponseForFailure(null, e);
+    } catch (RpcTokenException e) {
+      log("An RpcTokenException was thrown while processing this call.", e);
+      return RPC.encodeResponseForFailure(null, e);
+    }
+
+    Method method = rpcRequest.getMethod();
+    if (!"execute".equals(method.getName()) || method.getDeclaringClass() != DispatchService.class) {
+      return RPC.invokeAndEncodeResponse(this, method, rpcRequest.getParameters(),
+          rpcRequest.getSerializationPolicy(), rpcRequest.getFlags());
+    }
+
+    Object[] parameters = rpcRequest.getParameters();
+    DispatchFuture<Result> future = executeAsync((String) parameters[0], (Action<?>) parameters[1]);
+    if (future.isDone()) {
+      return encodeResponse(rpcRequest, future);
+    }
+
+    suspend(request, rpcRequest, future);
+    throw responsePending;
+  }
+
+  @Override
+  protected void doUnexpectedFailure(Throwable e) {
+    if (e != responsePending) {
+      super.doUnexpectedFailure(e);
+    }
+  }
+
   @Override
   public void undo(String cookieSentByRPC, Action<Result> action, Result result) throws ActionException, ServiceException {
 
@@ -121,6 +313,104 @@ public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet i
     }
   }
 
+  private boolean isAsyncSupported(HttpServletRequest request) {
+    // isAsyncSupported() doesn't exist before Servlet 3.0, check the version first.
+    return request != null && getServletContext().getMajorVersion() >= 3 && request.isAsyncSupported();
+  }
+
+  private void suspend(final HttpServletRequest request, final RPCRequest rpcRequest,
+      final DispatchFuture<Result> future) {
+    final AsyncContext asyncContext = request.startAsync();
+    final long timeoutMs = asyncTimeoutMs;
+    asyncContext.setTimeout(timeoutMs);
+
+    // The response is written once, by the future or by the timeout, whichever comes first.
+    final AtomicBoolean responded = new AtomicBoolean();
+    asyncContext.addListener(new AsyncListener() {
+      @Override
+      public void onComplete(AsyncEvent event) {
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        if (responded.compareAndSet(false, true)) {
+          String message = "Action " + rpcRequest.getParameters()[1].getClass().getName() + " timed out after "
+              + timeoutMs + " ms";
+          logger.warning(message);
+          writeResponse(asyncContext, request, rpcRequest, future, new ServiceException(message));
+        }
+        future.cancel(true);
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        future.cancel(true);
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+      }
+    });
+
+    future.addCallback(new DispatchFutureCallback<Result>() {
+      @Override
+      public void onSuccess(Result result) {
+        if (responded.compareAndSet(false, true)) {
+          writeResponse(asyncContext, request, rpcRequest, future, null);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        if (responded.compareAndSet(false, true)) {
+          writeResponse(asyncContext, request, rpcRequest, future, null);
+        }
+      }
+    });
+  }
+
+  /**
+   * @param timeout The failure to answer with instead of the outcome of {@code future}, or {@code null}.
+   */
+  private void writeResponse(AsyncContext asyncContext, HttpServletRequest request, RPCRequest rpcRequest,
+      DispatchFuture<Result> future, ServiceException timeout) {
+    HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+    try {
+      String payload = timeout == null ? encodeResponse(rpcRequest, future) : encodeFailure(rpcRequest, timeout);
+      onAfterResponseSerialized(payload);
+
+      boolean gzipEncode = RPCServletUtils.acceptsGzipEncoding(request)
+          && shouldCompressResponse(request, response, payload);
+      RPCServletUtils.writeResponse(getServletContext(), response, payload, gzipEncode);
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Unable to write the response of an asynchronous action", e);
+      RPCServletUtils.writeResponseForUnexpectedFailure(getServletContext(), response, e);
+    } finally {
+      asyncContext.complete();
+    }
+  }
+
+  private String encodeResponse(RPCRequest rpcRequest, DispatchFuture<Result> future) throws SerializationException {
+    Throwable failure;
+    try {
+      return RPC.encodeResponseForSuccess(rpcRequest.getMethod(), future.getResult(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags());
+    } catch (ActionException e) {
+      failure = e;
+    } catch (ServiceException e) {
+      failure = e;
+    } catch (RuntimeException e) {
+      failure = new ServiceException(e);
+    }
+
+    return encodeFailure(rpcRequest, failure);
+  }
+
+  private String encodeFailure(RPCRequest rpcRequest, Throwable failure) throws SerializationException {
+    return RPC.encodeResponseForFailure(rpcRequest.getMethod(), failure, rpcRequest.getSerializationPolicy(),
+        rpcRequest.getFlags());
+  }
+
   /**
    * Checks that the cookie in the RPC matches the one in the http request header.
    *
@@ -160,6 +450,31 @@ public abstract class AbstractDispatchServiceImpl extends RemoteServiceServlet i
       return false;
     }
 
-    return cookieInRequest.equals(cookieSentByRPC);
+    if (!constantTimeEquals(cookieInRequest, cookieSentByRPC)) {
+      return false;
+    }
+
+    SignedSecurityTokens tokens = securityTokens;
+    if (tokens != null && !tokens.isValid(cookieInRequest)) {
+      logger.info("Cookie \"" + getSecurityCookieName() + "\" is not a valid signed token, or it expired.");
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Compares the cookies without leaking, through the time it takes, how many leading characters match.
+   */
+  private static boolean constantTimeEquals(String expected, String actual) {
+    if (expected.length() != actual.length()) {
+      return false;
+    }
+
+    int difference = 0;
+    for (int i = 0; i < expected.length(); i++) {
+      difference |= expected.charAt(i) ^ actual.charAt(i);
+    }
+    return difference == 0;
   }
 }
\ No newline at end of file
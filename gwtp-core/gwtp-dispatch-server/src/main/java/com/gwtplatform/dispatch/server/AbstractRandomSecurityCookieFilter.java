@@ -26,15 +26,20 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.security.SecureRandom;
 
 /**
  * This filter will automatically inject a security cookie inside the request the first time the page is loaded. This
  * security cookie is a simple randomly generated number, and might be slightly less secure than
  * {@link HttpSessionSecurityCookieFilter}, although it will work even if you don't have access to an
- * {@link javax.servlet.http.HttpSession}. To setup this filter, add the following line at before any other
- * {@code serve} call in your own {@link com.google.inject.servlet.ServletModule#configureServlets}:
+ * {@link javax.servlet.http.HttpSession}.
+ * <p />
+ * A cookie is only sent when the request has none, or when its token is close to the end of its lifetime, so that
+ * static resources and dispatch calls going through the filter don't get a new one every time. The random part of
+ * the tokens comes from a {@link SecureRandomTokenPool} refilled in the background.
+ * <p />
+ * To setup this filter, add the following line at before any other {@code serve} call in your own
+ * {@link com.google.inject.servlet.ServletModule#configureServlets}:
  *
  * <pre>
  * filter(&quot;*.jsp&quot;).through(HttpSessionSecurityCookieFilter.class);
@@ -46,22 +51,45 @@ import java.security.SecureRandom;
  */
 public abstract class AbstractRandomSecurityCookieFilter implements Filter {
 
+  public static final long DEFAULT_TOKEN_LIFETIME_MS = 24 * 60 * 60 * 1000L;
+
+  private static final char ISSUE_TIME_SEPARATOR = '-';
+  private static final int ISSUE_TIME_RADIX = 32;
+  // Tokens are renewed during the last quarter of their lifetime.
+  private static final int RENEWAL_FRACTION = 4;
+
   protected final SecureRandom random;
   protected final String securityCookieName;
 
+  private final long tokenLifetimeMs;
+  private final SecureRandomTokenPool tokenPool;
+
   protected AbstractRandomSecurityCookieFilter(String securityCookieName, SecureRandom random) {
+    this(securityCookieName, random, DEFAULT_TOKEN_LIFETIME_MS);
+  }
+
+  /**
+   * @param securityCookieName The name of the security cookie.
+   * @param random The source of the tokens.
+   * @param tokenLifetimeMs How long a token is kept before the filter issues a new one, in milliseconds.
+   */
+  protected AbstractRandomSecurityCookieFilter(String securityCookieName, SecureRandom random, long tokenLifetimeMs) {
     this.securityCookieName = securityCookieName;
     this.random = random;
+    this.tokenLifetimeMs = tokenLifetimeMs;
+    this.tokenPool = new SecureRandomTokenPool(random);
   }
 
   public void destroy() {
+    tokenPool.shutdown();
   }
 
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 
-    if (request instanceof HttpServletRequest) {
+    if (request instanceof HttpServletRequest
+        && needsNewToken(findSecurityCookie((HttpServletRequest) request), System.currentTimeMillis())) {
       HttpServletResponse httpResponse = (HttpServletResponse) response;
-      Cookie securityCookie = new Cookie(securityCookieName, new BigInteger(130, random).toString(32));
+      Cookie securityCookie = new Cookie(securityCookieName, newToken(System.currentTimeMillis()));
       securityCookie.setMaxAge(-1);
       securityCookie.setPath("/");
       httpResponse.addCookie(securityCookie);
@@ -72,4 +100,51 @@ public abstract class AbstractRandomSecurityCookieFilter implements Filter {
   public void init(FilterConfig filterConfig) throws ServletException {
   }
 
+  /**
+   * Tells whether the client should be sent a new token: when it has none, when its token wasn't issued by this
+   * filter or when it is in the last quarter of its lifetime.
+   *
+   * @param token The token sent by the client, or {@code null}.
+   * @param now The current time in milliseconds.
+   * @return {@code true} if a new token should be issued.
+   */
+  boolean needsNewToken(String token, long now) {
+    if (token == null) {
+      return true;
+    }
+
+    int separator = token.indexOf(ISSUE_TIME_SEPARATOR);
+    if (separator <= 0) {
+      return true;
+    }
+
+    long issuedAtMs;
+    try {
+      issuedAtMs = Long.parseLong(token.substring(0, separator), ISSUE_TIME_RADIX) * 1000;
+    } catch (NumberFormatException e) {
+      return true;
+    }
+
+    long age = now - issuedAtMs;
+    return age < 0 || age >= tokenLifetimeMs - tokenLifetimeMs / RENEWAL_FRACTION;
+  }
+
+  /**
+   * Builds a token out of its issue time, to the second, and a random value taken from the pool.
+   */
+  String newToken(long now) {
+    return Long.toString(now / 1000, ISSUE_TIME_RADIX) + ISSUE_TIME_SEPARATOR + tokenPool.take();
+  }
+
+  private String findSecurityCookie(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies != null) {
+      for (Cookie cookie : cookies) {
+        if (securityCookieName.equals(cookie.getName())) {
+          return cookie.getValue();
+        }
+      }
+    }
+    return null;
+  }
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * This filter will automatically inject a security cookie inside the request the first time the page is loaded. The
+ * security cookie is a token signed by {@link SignedSecurityTokens}: unlike {@link AbstractHttpSessionSecurityCookieFilter}
+ * it never creates an {@link javax.servlet.http.HttpSession}, and unlike {@link AbstractRandomSecurityCookieFilter} the
+ * dispatch service can tell the tokens it issued from forged ones. Since the tokens are stateless, any node sharing
+ * the secret accepts them, so no sticky sessions are needed.
+ * <p />
+ * A new cookie is only sent when the request has no valid one or when its signing key is about to be retired. To setup
+ * this filter, add the following line at before any other {@code serve} call in your own
+ * {@link com.google.inject.servlet.ServletModule#configureServlets}:
+ *
+ * <pre>
+ * filter(&quot;*.jsp&quot;).through(SignedSecurityCookieFilter.class);
+ * </pre>
+ *
+ * You also have to bind the same {@link SignedSecurityTokens} instance for the dispatch service, so that it checks
+ * the signature of the cookies.
+ */
+public abstract class AbstractSignedSecurityCookieFilter implements Filter {
+
+  private final String securityCookieName;
+  private final SignedSecurityTokens securityTokens;
+
+  protected AbstractSignedSecurityCookieFilter(String securityCookieName, SignedSecurityTokens securityTokens) {
+    this.securityCookieName = securityCookieName;
+    this.securityTokens = securityTokens;
+  }
+
+  public void destroy() {
+  }
+
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+      ServletException {
+
+    if (request instanceof HttpServletRequest) {
+      String token = findSecurityCookie((HttpServletRequest) request);
+      if (securityTokens.needsRenewal(token)) {
+        Cookie securityCookie = new Cookie(securityCookieName, securityTokens.newToken());
+        securityCookie.setMaxAge(-1);
+        securityCookie.setPath("/");
+        ((HttpServletResponse) response).addCookie(securityCookie);
+      }
+    }
+    chain.doFilter(request, response);
+  }
+
+  public void init(FilterConfig filterConfig) throws ServletException {
+  }
+
+  private String findSecurityCookie(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies != null) {
+      for (Cookie cookie : cookies) {
+        if (securityCookieName.equals(cookie.getName())) {
+          return cookie.getValue();
+        }
+      }
+    }
+    return null;
+  }
+}
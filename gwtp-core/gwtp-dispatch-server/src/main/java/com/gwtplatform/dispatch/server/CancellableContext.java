@@ -0,0 +1,50 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+/**
+ * Implemented by the execution contexts that the dispatch passes to handlers, so that long running handlers can honour
+ * the {@link com.gwtplatform.dispatch.shared.TimeBudget TimeBudget} of their action and stop once nobody is waiting for
+ * their result anymore. It is kept apart from {@link ExecutionContext}, so that existing implementations of that
+ * interface keep compiling. Handlers check for it before using it:
+ * <pre>
+ * if (context instanceof CancellableContext &amp;&amp; ((CancellableContext) context).isCancelled()) {
+ *   throw new ActionCancelledException("Gave up on " + action);
+ * }
+ * </pre>
+ */
+public interface CancellableContext {
+
+  /**
+   * Returns how much of the {@link com.gwtplatform.dispatch.shared.TimeBudget TimeBudget} of the action is left.
+   * Handlers can use it to bound their own calls, for instance as a JDBC query timeout.
+   *
+   * @return The remaining time in milliseconds, {@code 0} once the budget is spent, or {@link Long#MAX_VALUE} if the
+   *         action has no budget.
+   */
+  long getRemainingTimeMs();
+
+  /**
+   * Tells whether the action is cancelled, either because its time budget is spent or because its caller gave up on
+   * the result. Once it returns {@code true}, executing sub-actions fails with an
+   * {@link com.gwtplatform.dispatch.shared.ActionCancelledException ActionCancelledException}. It is cheap enough to
+   * be checked in the loops of long running handlers.
+   *
+   * @return {@code true} if the handler should stop working.
+   */
+  boolean isCancelled();
+}
@@ -50,6 +50,19 @@ public interface Dispatch {
   <A extends Action<R>, R extends Result> R execute(A action)
       throws ActionException, ServiceException;
 
+  /**
+   * Starts executing the specified action and returns without waiting for
+   * {@link com.gwtplatform.dispatch.server.actionhandler.AsyncActionHandler AsyncActionHandler}s to complete.
+   * Actions handled by regular handlers are executed synchronously and the returned future is already done.
+   *
+   * @param <A> The {@link Action} type.
+   * @param <R> The {@link Result} type.
+   * @param action The {@link Action}.
+   * @return The action's future result. It fails with an {@link ActionException} or a {@link ServiceException} in
+   *         the cases where {@link #execute} would throw them.
+   */
+  <A extends Action<R>, R extends Result> DispatchFuture<R> executeAsync(A action);
+
   /**
    * Undoes a previously executed action.
    *
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * The pending result of an asynchronous action execution. It is completed exactly once, by {@link #set},
+ * {@link #setException} or {@link #cancel}, and runs its {@link DispatchFutureCallback}s in the thread that completes
+ * it, or right away in the thread adding them if it is already done.
+ *
+ * @param <R> The type of the value the future completes with.
+ */
+public class DispatchFuture<R> implements Future<R> {
+
+  private static final int PENDING = 0;
+  private static final int SUCCEEDED = 1;
+  private static final int FAILED = 2;
+  private static final int CANCELLED = 3;
+
+  private int state;
+  private R value;
+  private Throwable failure;
+  private List<DispatchFutureCallback<? super R>> callbacks;
+
+  /**
+   * @param <R> The type of the value.
+   * @param value The value.
+   * @return A future that already succeeded with {@code value}.
+   */
+  public static <R> DispatchFuture<R> succeeded(R value) {
+    DispatchFuture<R> future = new DispatchFuture<R>();
+    future.set(value);
+    return future;
+  }
+
+  /**
+   * @param <R> The type of the value.
+   * @param caught The cause of the failure.
+   * @return A future that already failed with {@code caught}.
+   */
+  public static <R> DispatchFuture<R> failed(Throwable caught) {
+    DispatchFuture<R> future = new DispatchFuture<R>();
+    future.setException(caught);
+    return future;
+  }
+
+  /**
+   * Completes this future successfully.
+   *
+   * @param result The value of the future.
+   * @return {@code true} if this call completed the future, {@code false} if it was already done.
+   */
+  public boolean set(R result) {
+    List<DispatchFutureCallback<? super R>> toNotify;
+    synchronized (this) {
+      if (state != PENDING) {
+        return false;
+      }
+      value = result;
+      state = SUCCEEDED;
+      toNotify = release();
+    }
+
+    for (DispatchFutureCallback<? super R> callback : toNotify) {
+      callback.onSuccess(result);
+    }
+    return true;
+  }
+
+  /**
+   * Completes this future with a failure.
+   *
+   * @param caught The cause of the failure, usually an {@link ActionException} or a {@link ServiceException}.
+   * @return {@code true} if this call completed the future, {@code false} if it was already done.
+   */
+  public boolean setException(Throwable caught) {
+    return fail(FAILED, caught);
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return fail(CANCELLED, new CancellationException("Action execution was cancelled"));
+  }
+
+  /**
+   * Registers a callback to run when this future completes. If it's already done, the callback runs immediately.
+   *
+   * @param callback The {@link DispatchFutureCallback}.
+   */
+  public void addCallback(DispatchFutureCallback<? super R> callback) {
+    synchronized (this) {
+      if (state == PENDING) {
+        if (callbacks == null) {
+          callbacks = new ArrayList<DispatchFutureCallback<? super R>>(2);
+        }
+        callbacks.add(callback);
+        return;
+      }
+    }
+
+    runCallback(callback);
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return state == CANCELLED;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return state != PENDING;
+  }
+
+  @Override
+  public synchronized R get() throws InterruptedException, ExecutionException {
+    while (state == PENDING) {
+      wait();
+    }
+    return report();
+  }
+
+  @Override
+  public synchronized R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+      TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (state == PENDING) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return report();
+  }
+
+  /**
+   * Waits for this future and returns its value, rethrowing its failure the way a synchronous
+   * {@link Dispatch#execute} would.
+   *
+   * @return The value of the future.
+   * @throws ActionException If the future failed with an {@link ActionException}.
+   * @throws ServiceException If it failed with anything else, was cancelled or the waiting thread was interrupted.
+   */
+  public R getResult() throws ActionException, ServiceException {
+    try {
+      return get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException("Interrupted while waiting for the result of an action", e);
+    } catch (CancellationException e) {
+      throw new ServiceException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ActionException) {
+        throw (ActionException) cause;
+      } else if (cause instanceof ServiceException) {
+        throw (ServiceException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ServiceException(cause);
+    }
+  }
+
+  private boolean fail(int newState, Throwable caught) {
+    if (caught == null) {
+      throw new IllegalArgumentException("A failed future needs a cause");
+    }
+
+    List<DispatchFutureCallback<? super R>> toNotify;
+    synchronized (this) {
+      if (state != PENDING) {
+        return false;
+      }
+      failure = caught;
+      state = newState;
+      toNotify = release();
+    }
+
+    for (DispatchFutureCallback<? super R> callback : toNotify) {
+      callback.onFailure(caught);
+    }
+    return true;
+  }
+
+  private List<DispatchFutureCallback<? super R>> release() {
+    notifyAll();
+
+    List<DispatchFutureCallback<? super R>> released = callbacks;
+    callbacks = null;
+    if (released == null) {
+      return Collections.emptyList();
+    }
+    return released;
+  }
+
+  private void runCallback(DispatchFutureCallback<? super R> callback) {
+    R result;
+    Throwable caught;
+    synchronized (this) {
+      result = value;
+      caught = failure;
+    }
+
+    if (caught == null) {
+      callback.onSuccess(result);
+    } else {
+      callback.onFailure(caught);
+    }
+  }
+
+  private R report() throws ExecutionException {
+    if (state == CANCELLED) {
+      throw (CancellationException) failure;
+    } else if (state == FAILED) {
+      throw new ExecutionException(failure);
+    }
+    return value;
+  }
+}
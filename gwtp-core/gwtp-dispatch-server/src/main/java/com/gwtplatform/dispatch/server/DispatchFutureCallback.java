@@ -0,0 +1,39 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+/**
+ * Gets notified when a {@link DispatchFuture} completes.
+ *
+ * @param <R> The type of the value the future completes with.
+ */
+public interface DispatchFutureCallback<R> {
+  /**
+   * Called when the future completed successfully.
+   *
+   * @param result The value of the future.
+   */
+  void onSuccess(R result);
+
+  /**
+   * Called when the future failed or was cancelled, in which case {@code caught} is a
+   * {@link java.util.concurrent.CancellationException}.
+   *
+   * @param caught The cause of the failure.
+   */
+  void onFailure(Throwable caught);
+}
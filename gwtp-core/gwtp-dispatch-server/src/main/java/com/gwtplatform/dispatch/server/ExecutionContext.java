@@ -26,6 +26,9 @@ import com.gwtplatform.dispatch.shared.ServiceException;
  * {@link com.gwtplatform.dispatch.server.actionhandler.ActionHandler ActionHandler}s,
  * and allows them to execute sub-actions. These actions can be automatically rolled back
  * if any part of the action handler fails.
+ * <p />
+ * The contexts created by the dispatch also implement {@link CancellableContext}, which carries the deadline of the
+ * action so that handlers can stop early once nobody is waiting for their result anymore.
  *
  * @author David Peterson
  */
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of random tokens generated ahead of time by a background thread, so that the threads serving requests don't
+ * contend on the shared {@link SecureRandom} nor wait for it to gather entropy.
+ * <p />
+ * {@link #take()} refills the pool in the background once it is half empty. If requests drain it faster than it is
+ * refilled, {@link #take()} falls back to generating the token on the calling thread and counts a miss; a pool that
+ * misses regularly should be made bigger.
+ */
+public class SecureRandomTokenPool {
+
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private static final int TOKEN_BITS = 130;
+  private static final int TOKEN_RADIX = 32;
+
+  private final SecureRandom random;
+  private final BlockingQueue<String> tokens;
+  private final int lowWatermark;
+  private final Executor executor;
+  private final ThreadPoolExecutor ownExecutor;
+  private final AtomicBoolean refillScheduled = new AtomicBoolean();
+  private final AtomicLong misses = new AtomicLong();
+  private final Runnable refill = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        while (tokens.remainingCapacity() > 0) {
+          if (!tokens.offer(generate())) {
+            break;
+          }
+        }
+      } finally {
+        refillScheduled.set(false);
+      }
+    }
+  };
+
+  /**
+   * Creates a pool of {@link #DEFAULT_CAPACITY} tokens, refilled by its own daemon thread. Call {@link #shutdown()}
+   * when it is no longer needed.
+   *
+   * @param random The source of the tokens.
+   */
+  public SecureRandomTokenPool(SecureRandom random) {
+    this(random, DEFAULT_CAPACITY, null);
+  }
+
+  /**
+   * @param random The source of the tokens.
+   * @param capacity The number of tokens generated ahead of time.
+   * @param executor The {@link Executor} refilling the pool, or {@code null} to use a daemon thread of its own.
+   */
+  public SecureRandomTokenPool(SecureRandom random, int capacity, Executor executor) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("capacity must be at least 2");
+    }
+    this.random = random;
+    this.tokens = new ArrayBlockingQueue<String>(capacity);
+    this.lowWatermark = capacity / 2;
+    this.ownExecutor = executor == null ? createExecutor() : null;
+    this.executor = executor == null ? ownExecutor : executor;
+
+    scheduleRefill();
+  }
+
+  /**
+   * Returns a token that was never returned before. It is 130 random bits written in base 32.
+   *
+   * @return The token.
+   */
+  public String take() {
+    String token = tokens.poll();
+    if (tokens.size() < lowWatermark) {
+      scheduleRefill();
+    }
+
+    if (token == null) {
+      misses.incrementAndGet();
+      token = generate();
+    }
+    return token;
+  }
+
+  /**
+   * @return How many times {@link #take()} found the pool empty and generated a token on the calling thread.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of tokens ready to be taken.
+   */
+  public int size() {
+    return tokens.size();
+  }
+
+  /**
+   * Stops the thread refilling the pool, if the pool created its own.
+   */
+  public void shutdown() {
+    if (ownExecutor != null) {
+      ownExecutor.shutdown();
+    }
+  }
+
+  private void scheduleRefill() {
+    if (refillScheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(refill);
+      } catch (RejectedExecutionException e) {
+        // Shut down, take() keeps working by generating the tokens itself.
+        refillScheduled.set(false);
+      }
+    }
+  }
+
+  private String generate() {
+    return new BigInteger(TOKEN_BITS, random).toString(TOKEN_RADIX);
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gwtp-security-token-pool");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies stateless security tokens, to be used as the value of the security cookie instead of a session
+ * id. A token is a random nonce signed with HMAC-SHA256, so the server only has to check the signature and never stores
+ * anything, neither in memory nor in the {@link javax.servlet.http.HttpSession}.
+ * <p />
+ * The signing key rotates every {@code rotationPeriodMs}. Each key is derived from a master secret and the index of
+ * its period, so every node configured with the same secret computes the same keys without any coordination. A token
+ * is accepted while the key that signed it is the current or the previous one, that is for one to two rotation
+ * periods. Signatures are compared in constant time.
+ * <p />
+ * This class is thread-safe.
+ */
+public class SignedSecurityTokens {
+
+  public static final long DEFAULT_ROTATION_PERIOD_MS = 12 * 60 * 60 * 1000L;
+
+  private static final int MIN_SECRET_LENGTH = 16;
+  private static final int NONCE_LENGTH = 16;
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final String KEY_PREFIX = "gwtp-security-token:";
+  private static final char SEPARATOR = '.';
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * The key of one rotation period.
+   */
+  private static final class PeriodKey {
+    private final long period;
+    private final SecretKeySpec key;
+
+    private PeriodKey(long period, SecretKeySpec key) {
+      this.period = period;
+      this.key = key;
+    }
+  }
+
+  private final SecretKeySpec masterKey;
+  private final long rotationPeriodMs;
+  private final SecureRandom random;
+  private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+    @Override
+    protected Mac initialValue() {
+      try {
+        return Mac.getInstance(ALGORITHM);
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(ALGORITHM + " is not available", e);
+      }
+    }
+  };
+
+  // The keys of the current and previous periods, replaced together when the period changes.
+  private volatile PeriodKey[] periodKeys = new PeriodKey[0];
+
+  /**
+   * @param secret The master secret, shared by all the nodes of the cluster. At least 16 bytes.
+   * @param random The source of the nonces.
+   */
+  public SignedSecurityTokens(byte[] secret, SecureRandom random) {
+    this(secret, DEFAULT_ROTATION_PERIOD_MS, random);
+  }
+
+  /**
+   * @param secret The master secret, shared by all the nodes of the cluster. At least 16 bytes.
+   * @param rotationPeriodMs How often the signing key changes, in milliseconds.
+   * @param random The source of the nonces.
+   */
+  public SignedSecurityTokens(byte[] secret, long rotationPeriodMs, SecureRandom random) {
+    if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+      throw new IllegalArgumentException("The secret must be at least " + MIN_SECRET_LENGTH + " bytes long");
+    }
+    if (rotationPeriodMs <= 0) {
+      throw new IllegalArgumentException("rotationPeriodMs must be positive");
+    }
+    this.masterKey = new SecretKeySpec(secret.clone(), ALGORITHM);
+    this.rotationPeriodMs = rotationPeriodMs;
+    this.random = random;
+  }
+
+  public long getRotationPeriodMs() {
+    return rotationPeriodMs;
+  }
+
+  /**
+   * @return A new token signed with the current key.
+   */
+  public String newToken() {
+    long period = currentPeriod();
+    byte[] nonce = new byte[NONCE_LENGTH];
+    random.nextBytes(nonce);
+
+    String payload = Long.toString(period, Character.MAX_RADIX) + SEPARATOR + toHex(nonce);
+    return payload + SEPARATOR + toHex(sign(keyFor(period), payload));
+  }
+
+  /**
+   * @param token The token to check, may be {@code null}.
+   * @return {@code true} if the token was issued by a node sharing our secret and its key is not retired yet.
+   */
+  public boolean isValid(String token) {
+    return verify(token, 1);
+  }
+
+  /**
+   * Tells whether a token should be replaced by a new one. This is the case of invalid tokens, and of tokens signed
+   * with the previous key, which will be retired at the next rotation.
+   *
+   * @param token The token to check, may be {@code null}.
+   * @return {@code true} if a new token should be issued.
+   */
+  public boolean needsRenewal(String token) {
+    return !verify(token, 0);
+  }
+
+  /**
+   * Returns the current time. Override it to control time in tests.
+   *
+   * @return The current time in milliseconds.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private boolean verify(String token, int acceptedAge) {
+    if (token == null) {
+      return false;
+    }
+
+    int macStart = token.lastIndexOf(SEPARATOR);
+    int nonceStart = token.indexOf(SEPARATOR);
+    if (nonceStart <= 0 || macStart <= nonceStart) {
+      return false;
+    }
+
+    long period;
+    try {
+      period = Long.parseLong(token.substring(0, nonceStart), Character.MAX_RADIX);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+
+    long age = currentPeriod() - period;
+    if (age < 0 || age > acceptedAge) {
+      return false;
+    }
+
+    byte[] mac = fromHex(token.substring(macStart + 1));
+    if (mac == null) {
+      return false;
+    }
+
+    byte[] expected = sign(keyFor(period), token.substring(0, macStart));
+    return MessageDigest.isEqual(expected, mac);
+  }
+
+  private long currentPeriod() {
+    return currentTimeMillis() / rotationPeriodMs;
+  }
+
+  private SecretKeySpec keyFor(long period) {
+    PeriodKey[] keys = periodKeys;
+    for (PeriodKey periodKey : keys) {
+      if (periodKey.period == period) {
+        return periodKey.key;
+      }
+    }
+
+    SecretKeySpec key = new SecretKeySpec(sign(masterKey, KEY_PREFIX + period), ALGORITHM);
+    // Keeps the keys of the two most recent periods, which are the only ones we ever accept.
+    PeriodKey newest = new PeriodKey(period, key);
+    PeriodKey other = null;
+    for (PeriodKey periodKey : keys) {
+      if (Math.abs(periodKey.period - period) == 1) {
+        other = periodKey;
+      }
+    }
+    periodKeys = other == null ? new PeriodKey[] {newest} : new PeriodKey[] {newest, other};
+    return key;
+  }
+
+  private byte[] sign(SecretKeySpec key, String data) {
+    Mac mac = macs.get();
+    try {
+      mac.init(key);
+      return mac.doFinal(data.getBytes("UTF-8"));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+  private static byte[] fromHex(String hex) {
+    if (hex.length() % 2 != 0) {
+      return null;
+    }
+
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+    return bytes;
+  }
+}
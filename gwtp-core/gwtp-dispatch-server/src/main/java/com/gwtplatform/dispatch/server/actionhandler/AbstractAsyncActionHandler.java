@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandler;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * Base class for {@link AsyncActionHandler}s. The blocking {@link #execute} simply waits for {@link #executeAsync}.
+ *
+ * @param <A> The {@link Action} type.
+ * @param <R> The {@link Result} type.
+ */
+public abstract class AbstractAsyncActionHandler<A extends Action<R>, R extends Result> extends
+    AbstractActionHandler<A, R> implements AsyncActionHandler<A, R> {
+
+  public AbstractAsyncActionHandler(Class<A> actionType) {
+    super(actionType);
+  }
+
+  @Override
+  public R execute(A action, ExecutionContext context) throws ActionException {
+    try {
+      return executeAsync(action, context).getResult();
+    } catch (ServiceException e) {
+      throw new ActionException(e);
+    }
+  }
+}
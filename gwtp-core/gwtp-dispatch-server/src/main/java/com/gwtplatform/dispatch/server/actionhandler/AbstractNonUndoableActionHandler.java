@@ -0,0 +1,40 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandler;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Simple abstract super-class for {@link NonUndoableActionHandler} implementations, which only have to implement
+ * {@link #execute}.
+ *
+ * @param <A> The {@link Action} type.
+ * @param <R> The {@link Result} type.
+ */
+public abstract class AbstractNonUndoableActionHandler<A extends Action<R>, R extends Result>
+    extends AbstractActionHandler<A, R> implements NonUndoableActionHandler<A, R> {
+
+  public AbstractNonUndoableActionHandler(Class<A> actionType) {
+    super(actionType);
+  }
+
+  @Override
+  public final void undo(A action, R result, ExecutionContext context) {
+  }
+}
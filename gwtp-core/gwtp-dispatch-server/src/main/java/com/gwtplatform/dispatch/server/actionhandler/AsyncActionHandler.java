@@ -0,0 +1,52 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandler;
+
+import com.gwtplatform.dispatch.server.DispatchFuture;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * An {@link ActionHandler} that doesn't need to hold on to the calling thread while it waits for slow backends.
+ * {@link com.gwtplatform.dispatch.server.Dispatch#executeAsync Dispatch.executeAsync} calls
+ * {@link #executeAsync} and lets the request go until the returned future completes, while
+ * {@link com.gwtplatform.dispatch.server.Dispatch#execute Dispatch.execute} keeps using the blocking
+ * {@link #execute}.
+ * <p />
+ * Handlers are registered exactly like any other {@link ActionHandler}. Extend {@link AbstractAsyncActionHandler} to
+ * get the blocking {@link #execute} for free.
+ *
+ * @param <A> The {@link Action} type.
+ * @param <R> The {@link Result} type.
+ */
+public interface AsyncActionHandler<A extends Action<R>, R extends Result> extends ActionHandler<A, R> {
+  /**
+   * Starts handling the specified action and returns without waiting for it to finish.
+   * <p />
+   * The future may be completed from any thread. Keep in mind that request scoped objects are usually not available
+   * from other threads than the one that called this method.
+   *
+   * @param action The action.
+   * @param context The {@link ExecutionContext}.
+   * @return The future {@link Result}, failed with an {@link ActionException} or a
+   *         {@link com.gwtplatform.dispatch.shared.ServiceException ServiceException} if the action fails.
+   * @throws ActionException if there is a problem performing the specified action.
+   */
+  DispatchFuture<R> executeAsync(A action, ExecutionContext context) throws ActionException;
+}
@@ -20,28 +20,91 @@ import com.gwtplatform.dispatch.server.ExecutionContext;
 import com.gwtplatform.dispatch.shared.Action;
 import com.gwtplatform.dispatch.shared.ActionException;
 import com.gwtplatform.dispatch.shared.BatchAction;
+import com.gwtplatform.dispatch.shared.BatchAction.ExecutionStrategy;
 import com.gwtplatform.dispatch.shared.BatchAction.OnException;
 import com.gwtplatform.dispatch.shared.BatchResult;
 import com.gwtplatform.dispatch.shared.Result;
 
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This handles {@link BatchAction} requests, which are a set of multiple
  * actions that need to all be executed successfully in sequence for the whole
  * action to succeed.
+ * <p />
+ * Batches using {@link ExecutionStrategy#PARALLEL} are fanned out on a bounded
+ * {@link Executor}. The calling thread runs every sub-action that no worker has
+ * picked up yet, so a saturated executor slows a batch down but never blocks
+ * it. Keep in mind that the handlers and validators of parallel sub-actions
+ * may run outside of the request thread, where request scoped objects are not
+ * available.
  *
  * @author David Peterson
  */
 public class BatchActionHandler extends
     AbstractActionHandler<BatchAction, BatchResult> {
 
+  /**
+   * Lazily creates the executor shared by all the handlers that weren't given
+   * one.
+   */
+  private static class DefaultExecutorHolder {
+    private static final int POOL_SIZE = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_SIZE = 256;
+
+    private static final Executor EXECUTOR = createExecutor();
+
+    private static Executor createExecutor() {
+      final AtomicInteger threadCount = new AtomicInteger();
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "gwtp-batch-action-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          }, new ThreadPoolExecutor.DiscardPolicy());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  private final Executor executor;
+
   public BatchActionHandler() {
+    this(null);
+  }
+
+  /**
+   * @param executor The {@link Executor} running parallel sub-actions, or
+   *          {@code null} to use a shared bounded pool. Tasks it rejects are
+   *          run by the calling thread.
+   */
+  public BatchActionHandler(Executor executor) {
     super(BatchAction.class);
+    this.executor = executor;
   }
 
   public BatchResult execute(BatchAction action, ExecutionContext context)
       throws ActionException {
+    if (action.getExecutionStrategy() == ExecutionStrategy.PARALLEL
+        && action.getActions().length > 1) {
+      return executeInParallel(action, context);
+    }
+
     OnException onException = action.getOnException();
     List<Result> results = new java.util.ArrayList<Result>();
     for (Action<?> a : action.getActions()) {
@@ -50,14 +113,7 @@ public class BatchActionHandler extends
         result = context.execute(a);
       } catch (Exception e) {
         if (onException == OnException.ROLLBACK) {
-          if (e instanceof ActionException) {
-            throw (ActionException) e;
-          }
-          if (e instanceof RuntimeException) {
-            throw (RuntimeException) e;
-          } else {
-            throw new ActionException(e);
-          }
+          throw rethrow(e);
         }
       }
       results.add(result);
@@ -71,4 +127,97 @@ public class BatchActionHandler extends
     // No action necessary - the sub actions should automatically rollback
   }
 
+  private BatchResult executeInParallel(BatchAction action,
+      final ExecutionContext context) throws ActionException {
+    final boolean rollback = action.getOnException() == OnException.ROLLBACK;
+    final AtomicBoolean aborted = new AtomicBoolean();
+
+    Action<?>[] actions = action.getActions();
+    List<FutureTask<Result>> tasks = new java.util.ArrayList<FutureTask<Result>>(actions.length);
+    for (final Action<?> a : actions) {
+      FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+        @Override
+        public Result call() throws Exception {
+          if (aborted.get()) {
+            throw new CancellationException();
+          }
+          try {
+            return context.execute(a);
+          } catch (Exception e) {
+            if (rollback) {
+              aborted.set(true);
+            }
+            throw e;
+          }
+        }
+      });
+      tasks.add(task);
+    }
+
+    // The first action is kept for the calling thread.
+    Executor taskExecutor = executor == null ? DefaultExecutorHolder.EXECUTOR : executor;
+    for (int i = 1; i < tasks.size(); i++) {
+      try {
+        taskExecutor.execute(tasks.get(i));
+      } catch (RejectedExecutionException e) {
+        // Will be run by the calling thread.
+      }
+    }
+
+    // Every sub-action has to be finished before we return or throw, so that
+    // the context knows about all of them when it rolls back.
+    List<Result> results = new java.util.ArrayList<Result>(actions.length);
+    Exception failure = null;
+    for (FutureTask<Result> task : tasks) {
+      task.run();
+      try {
+        results.add(await(task));
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof CancellationException) {
+          results.add(null);
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        } else if (rollback && failure == null) {
+          failure = (Exception) cause;
+        } else {
+          results.add(null);
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw rethrow(failure);
+    }
+
+    return new BatchResult(results);
+  }
+
+  private static Result await(FutureTask<Result> task) throws ExecutionException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static ActionException rethrow(Exception e) throws ActionException {
+    if (e instanceof ActionException) {
+      throw (ActionException) e;
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else {
+      throw new ActionException(e);
+    }
+  }
 }
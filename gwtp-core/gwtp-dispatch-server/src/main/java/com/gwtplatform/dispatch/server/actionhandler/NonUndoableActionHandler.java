@@ -0,0 +1,34 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandler;
+
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Marks an {@link ActionHandler} whose {@link #undo} does nothing, typically because its action only reads data.
+ * The dispatch doesn't record executions of such actions in the undo journal of the
+ * {@link com.gwtplatform.dispatch.server.ExecutionContext ExecutionContext}, and skips them when rolling back a
+ * compound action.
+ *
+ * @param <A> The type of the action extending {@link Action}.
+ * @param <R> The type of the result extending {@link Result}.
+ *
+ * @see AbstractNonUndoableActionHandler
+ */
+public interface NonUndoableActionHandler<A extends Action<R>, R extends Result> extends ActionHandler<A, R> {
+}
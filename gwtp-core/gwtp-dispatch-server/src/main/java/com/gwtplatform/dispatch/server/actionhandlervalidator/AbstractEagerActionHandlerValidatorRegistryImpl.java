@@ -17,7 +17,9 @@
 package com.gwtplatform.dispatch.server.actionhandlervalidator;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.gwtplatform.dispatch.server.actionvalidator.ActionValidator;
 import com.gwtplatform.dispatch.shared.Action;
@@ -30,14 +32,17 @@ import com.gwtplatform.dispatch.shared.Result;
  *
  * @author Christian Goudreau
  */
-public abstract class AbstractEagerActionHandlerValidatorRegistryImpl implements EagerActionHandlerValidatorRegistry {
+public abstract class AbstractEagerActionHandlerValidatorRegistryImpl implements EagerActionHandlerValidatorRegistry,
+    ObservableActionHandlerValidatorRegistry {
 
   private final Map<Class<? extends Action<? extends Result>>, ActionHandlerValidatorInstance> actionHandlerValidatorInstances;
   private final Map<Class<? extends ActionValidator>, ActionValidator> validators;
+  private final List<ActionHandlerValidatorRegistryListener> registryListeners;
 
   protected AbstractEagerActionHandlerValidatorRegistryImpl() {
     actionHandlerValidatorInstances = new HashMap<Class<? extends Action<? extends Result>>, ActionHandlerValidatorInstance>();
     validators = new HashMap<Class<? extends ActionValidator>, ActionValidator>();
+    registryListeners = new CopyOnWriteArrayList<ActionHandlerValidatorRegistryListener>();
   }
 
   @Override
@@ -45,12 +50,27 @@ public abstract class AbstractEagerActionHandlerValidatorRegistryImpl implements
       ActionHandlerValidatorInstance actionHandlerValidatorInstance) {
     actionHandlerValidatorInstances.put(actionClass, actionHandlerValidatorInstance);
     validators.put(actionHandlerValidatorInstance.getActionValidator().getClass(), actionHandlerValidatorInstance.getActionValidator());
+    fireChanged(actionClass);
+  }
+
+  @Override
+  public void addRegistryListener(ActionHandlerValidatorRegistryListener listener) {
+    registryListeners.add(listener);
+  }
+
+  @Override
+  public void removeRegistryListener(ActionHandlerValidatorRegistryListener listener) {
+    registryListeners.remove(listener);
   }
 
   @Override
   public void clearActionHandlerValidators() {
     actionHandlerValidatorInstances.clear();
     validators.clear();
+
+    for (ActionHandlerValidatorRegistryListener listener : registryListeners) {
+      listener.onActionHandlerValidatorsCleared();
+    }
   }
 
   @Override
@@ -68,6 +88,8 @@ public abstract class AbstractEagerActionHandlerValidatorRegistryImpl implements
     ActionHandlerValidatorInstance instance = actionHandlerValidatorInstances.remove(actionClass);
 
     if (instance != null) {
+      fireChanged(actionClass);
+
       if (!containValidator(instance.getActionValidator())) {
         return validators.remove(instance.getActionValidator().getClass()) != null;
       }
@@ -78,6 +100,12 @@ public abstract class AbstractEagerActionHandlerValidatorRegistryImpl implements
     return actionHandlerValidatorInstances.remove(actionClass) != null;
   }
 
+  private void fireChanged(Class<? extends Action<?>> actionClass) {
+    for (ActionHandlerValidatorRegistryListener listener : registryListeners) {
+      listener.onActionHandlerValidatorChanged(actionClass);
+    }
+  }
+
   private boolean containValidator(ActionValidator actionValidator) {
     for (ActionHandlerValidatorInstance validator : actionHandlerValidatorInstances.values()) {
       if (validator.getActionValidator().getClass().equals(actionValidator.getClass())) {
@@ -0,0 +1,266 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandlervalidator;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.server.actionvalidator.ActionValidator;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * Thread-safe base class for lazy-loading registries. Action handlers and validators are only created when they are
+ * first used, and each of them is created exactly once even when many threads race on the first request for the same
+ * {@link Action} class.
+ * <p />
+ * Lookups of already created {@link ActionHandlerValidatorInstance}s are a single lock-free read on a
+ * {@link ConcurrentHashMap}. Creation goes through a {@link FutureTask} that is published with
+ * {@link ConcurrentMap#putIfAbsent}, so the threads that lose the race wait on the winner instead of instantiating
+ * their own copy.
+ * <p />
+ * Subclasses only have to provide the dependency injection specific {@link #getInstance(Class)}.
+ */
+public abstract class AbstractLazyActionHandlerValidatorRegistryImpl implements LazyActionHandlerValidatorRegistry,
+    ObservableActionHandlerValidatorRegistry {
+
+  private final ConcurrentMap<Class<? extends Action<?>>, ActionHandlerValidatorClass<? extends Action<?>, ? extends Result>> actionHandlerValidatorClasses;
+  private final ConcurrentMap<Class<? extends Action<?>>, ActionHandlerValidatorInstance> actionHandlerValidatorInstances;
+  private final ConcurrentMap<Class<? extends Action<?>>, FutureTask<ActionHandlerValidatorInstance>> pendingInstances;
+  private final ConcurrentMap<Class<? extends ActionValidator>, ActionValidator> validators;
+  private final ConcurrentMap<Class<? extends ActionValidator>, FutureTask<ActionValidator>> pendingValidators;
+  private final List<ActionHandlerValidatorRegistryListener> registryListeners;
+
+  protected AbstractLazyActionHandlerValidatorRegistryImpl() {
+    actionHandlerValidatorClasses = new ConcurrentHashMap<Class<? extends Action<?>>, ActionHandlerValidatorClass<? extends Action<?>, ? extends Result>>();
+    actionHandlerValidatorInstances = new ConcurrentHashMap<Class<? extends Action<?>>, ActionHandlerValidatorInstance>();
+    pendingInstances = new ConcurrentHashMap<Class<? extends Action<?>>, FutureTask<ActionHandlerValidatorInstance>>();
+    validators = new ConcurrentHashMap<Class<? extends ActionValidator>, ActionValidator>();
+    pendingValidators = new ConcurrentHashMap<Class<? extends ActionValidator>, FutureTask<ActionValidator>>();
+    registryListeners = new CopyOnWriteArrayList<ActionHandlerValidatorRegistryListener>();
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> void addActionHandlerValidatorClass(Class<A> actionClass,
+      ActionHandlerValidatorClass<A, R> actionHandlerValidatorClass) {
+    actionHandlerValidatorClasses.put(actionClass, actionHandlerValidatorClass);
+    fireChanged(actionClass);
+  }
+
+  @Override
+  public void addRegistryListener(ActionHandlerValidatorRegistryListener listener) {
+    registryListeners.add(listener);
+  }
+
+  @Override
+  public void removeRegistryListener(ActionHandlerValidatorRegistryListener listener) {
+    registryListeners.remove(listener);
+  }
+
+  @Override
+  public void clearActionHandlerValidators() {
+    actionHandlerValidatorInstances.clear();
+    validators.clear();
+
+    for (ActionHandlerValidatorRegistryListener listener : registryListeners) {
+      listener.onActionHandlerValidatorsCleared();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <A extends Action<R>, R extends Result> ActionHandlerValidatorInstance findActionHandlerValidator(A action) {
+    ActionHandlerValidatorInstance actionHandlerValidatorInstance = actionHandlerValidatorInstances.get(action.getClass());
+
+    if (actionHandlerValidatorInstance == null) {
+      actionHandlerValidatorInstance = createOnce((Class<? extends Action<?>>) action.getClass());
+    }
+
+    return actionHandlerValidatorInstance;
+  }
+
+  @Override
+  public ActionValidator findActionValidator(Class<? extends ActionValidator> actionValidatorClass) {
+    return validators.get(actionValidatorClass);
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> void removeActionHandlerValidatorClass(Class<A> actionClass,
+      ActionHandlerValidatorClass<A, R> actionHandlerValidatorClass) {
+
+    if (actionHandlerValidatorClasses.remove(actionClass, actionHandlerValidatorClass)) {
+      ActionHandlerValidatorInstance instance = actionHandlerValidatorInstances.remove(actionClass);
+
+      if (instance != null && !containValidator(instance.getActionValidator())) {
+        validators.remove(actionHandlerValidatorClass.getActionValidatorClass(), instance.getActionValidator());
+      }
+
+      fireChanged(actionClass);
+    }
+  }
+
+  /**
+   * Obtains an instance of the specified class from the underlying dependency injection container.
+   *
+   * @param <B> The type of the bean.
+   * @param clazz The class of the bean.
+   * @return The bean, or {@code null} if the container can't provide it.
+   */
+  protected abstract <B> B getInstance(Class<B> clazz);
+
+  private void fireChanged(Class<? extends Action<?>> actionClass) {
+    for (ActionHandlerValidatorRegistryListener listener : registryListeners) {
+      listener.onActionHandlerValidatorChanged(actionClass);
+    }
+  }
+
+  private boolean containValidator(ActionValidator actionValidator) {
+    for (ActionHandlerValidatorInstance validator : actionHandlerValidatorInstances.values()) {
+      if (validator.getActionValidator() == actionValidator) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private ActionHandlerValidatorInstance createOnce(final Class<? extends Action<?>> actionClass) {
+    final ActionHandlerValidatorClass<? extends Action<?>, ? extends Result> actionHandlerValidatorClass = actionHandlerValidatorClasses.get(actionClass);
+    if (actionHandlerValidatorClass == null) {
+      return null;
+    }
+
+    FutureTask<ActionHandlerValidatorInstance> future = pendingInstances.get(actionClass);
+    if (future == null) {
+      FutureTask<ActionHandlerValidatorInstance> newFuture = new FutureTask<ActionHandlerValidatorInstance>(
+          new Callable<ActionHandlerValidatorInstance>() {
+            @Override
+            public ActionHandlerValidatorInstance call() {
+              return createInstance(actionClass, actionHandlerValidatorClass);
+            }
+          });
+
+      future = pendingInstances.putIfAbsent(actionClass, newFuture);
+      if (future == null) {
+        future = newFuture;
+        try {
+          newFuture.run();
+        } finally {
+          pendingInstances.remove(actionClass, newFuture);
+        }
+      }
+    }
+
+    return await(future);
+  }
+
+  private ActionHandlerValidatorInstance createInstance(Class<? extends Action<?>> actionClass,
+      ActionHandlerValidatorClass<? extends Action<?>, ? extends Result> actionHandlerValidatorClass) {
+    // Another thread may have published the instance between our lock-free read and the creation of the future.
+    ActionHandlerValidatorInstance actionHandlerValidatorInstance = actionHandlerValidatorInstances.get(actionClass);
+    if (actionHandlerValidatorInstance != null) {
+      return actionHandlerValidatorInstance;
+    }
+
+    ActionValidator actionValidator = findOrCreateValidator(actionHandlerValidatorClass.getActionValidatorClass());
+    ActionHandler<?, ?> actionHandler = getInstance(actionHandlerValidatorClass.getActionHandlerClass());
+
+    if (actionHandler == null || actionValidator == null) {
+      return null;
+    }
+
+    actionHandlerValidatorInstance = new ActionHandlerValidatorInstance(actionValidator, actionHandler);
+    actionHandlerValidatorInstances.put(actionClass, actionHandlerValidatorInstance);
+
+    // Don't keep the instance around if its registration was removed while we were creating it.
+    if (actionHandlerValidatorClasses.get(actionClass) != actionHandlerValidatorClass) {
+      actionHandlerValidatorInstances.remove(actionClass, actionHandlerValidatorInstance);
+    }
+
+    return actionHandlerValidatorInstance;
+  }
+
+  private ActionValidator findOrCreateValidator(final Class<? extends ActionValidator> actionValidatorClass) {
+    ActionValidator actionValidator = validators.get(actionValidatorClass);
+    if (actionValidator != null) {
+      return actionValidator;
+    }
+
+    FutureTask<ActionValidator> future = pendingValidators.get(actionValidatorClass);
+    if (future == null) {
+      FutureTask<ActionValidator> newFuture = new FutureTask<ActionValidator>(new Callable<ActionValidator>() {
+        @Override
+        public ActionValidator call() {
+          ActionValidator existing = validators.get(actionValidatorClass);
+          if (existing != null) {
+            return existing;
+          }
+
+          ActionValidator created = getInstance(actionValidatorClass);
+          if (created != null) {
+            validators.put(actionValidatorClass, created);
+          }
+          return created;
+        }
+      });
+
+      future = pendingValidators.putIfAbsent(actionValidatorClass, newFuture);
+      if (future == null) {
+        future = newFuture;
+        try {
+          newFuture.run();
+        } finally {
+          pendingValidators.remove(actionValidatorClass, newFuture);
+        }
+      }
+    }
+
+    return await(future);
+  }
+
+  private static <T> T await(FutureTask<T> future) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandlervalidator;
+
+import com.gwtplatform.dispatch.shared.Action;
+
+/**
+ * Gets notified when the content of an {@link ObservableActionHandlerValidatorRegistry} changes, so that anything
+ * derived from the registered handlers and validators can be discarded.
+ */
+public interface ActionHandlerValidatorRegistryListener {
+  /**
+   * Called after the handler or validator registered for an {@link Action} class was added, replaced or removed.
+   *
+   * @param actionClass The {@link Action} class whose registration changed.
+   */
+  void onActionHandlerValidatorChanged(Class<? extends Action<?>> actionClass);
+
+  /**
+   * Called after all handlers and validators were cleared from the registry.
+   */
+  void onActionHandlerValidatorsCleared();
+}
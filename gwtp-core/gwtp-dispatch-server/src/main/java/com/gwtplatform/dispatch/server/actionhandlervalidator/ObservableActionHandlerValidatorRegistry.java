@@ -0,0 +1,37 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandlervalidator;
+
+/**
+ * An {@link ActionHandlerValidatorRegistry} that tells its {@link ActionHandlerValidatorRegistryListener}s when
+ * registrations change. Dispatchers use it to cache what they resolve from the registry.
+ */
+public interface ObservableActionHandlerValidatorRegistry extends ActionHandlerValidatorRegistry {
+  /**
+   * Registers a listener to be notified of every subsequent change.
+   *
+   * @param listener The {@link ActionHandlerValidatorRegistryListener}.
+   */
+  void addRegistryListener(ActionHandlerValidatorRegistryListener listener);
+
+  /**
+   * Unregisters a listener previously added with {@link #addRegistryListener}.
+   *
+   * @param listener The {@link ActionHandlerValidatorRegistryListener}.
+   */
+  void removeRegistryListener(ActionHandlerValidatorRegistryListener listener);
+}
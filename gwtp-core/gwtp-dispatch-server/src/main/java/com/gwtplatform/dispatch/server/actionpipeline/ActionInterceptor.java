@@ -0,0 +1,59 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionpipeline;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * Wraps the execution of actions, after they have been accepted by their
+ * {@link com.gwtplatform.dispatch.server.actionvalidator.ActionValidator ActionValidator} and before they reach their
+ * {@link ActionHandler}.
+ * <p />
+ * Interceptors are selected once per {@link Action} class, when its {@link ActionPipeline} is built, so
+ * {@link #appliesTo} can afford to inspect annotations. Undo never goes through interceptors.
+ */
+public interface ActionInterceptor {
+  /**
+   * Decides whether this interceptor takes part in the pipeline of an {@link Action} class.
+   *
+   * @param actionClass The {@link Action} class.
+   * @param actionHandler The {@link ActionHandler} registered for that class.
+   * @return {@code true} to be added to the pipeline, {@code false} to be left out.
+   */
+  boolean appliesTo(Class<? extends Action<?>> actionClass, ActionHandler<?, ?> actionHandler);
+
+  /**
+   * Intercepts the execution of an action. Call {@link ActionInterceptorChain#proceed} to let it continue to the
+   * next interceptor and eventually to the handler, or return a {@link Result} to short-circuit it.
+   *
+   * @param <A> Type of associated {@link Action}
+   * @param <R> Type of associated {@link Result}
+   * @param action The {@link Action} being executed.
+   * @param context The {@link ExecutionContext} of the execution.
+   * @param chain The rest of the pipeline.
+   * @return The {@link Result} of the action.
+   * @throws ActionException
+   * @throws ServiceException
+   */
+  <A extends Action<R>, R extends Result> R intercept(A action, ExecutionContext context,
+      ActionInterceptorChain<A, R> chain) throws ActionException, ServiceException;
+}
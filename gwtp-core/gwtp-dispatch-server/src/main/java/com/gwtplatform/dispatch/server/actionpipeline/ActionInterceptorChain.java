@@ -0,0 +1,43 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionpipeline;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * The part of an {@link ActionPipeline} that follows an {@link ActionInterceptor}.
+ *
+ * @param <A> Type of associated {@link Action}
+ * @param <R> Type of associated {@link Result}
+ */
+public interface ActionInterceptorChain<A extends Action<R>, R extends Result> {
+  /**
+   * Passes the action on to the next interceptor, or to the
+   * {@link com.gwtplatform.dispatch.server.actionhandler.ActionHandler ActionHandler} if this was the last one.
+   *
+   * @param action The {@link Action} being executed.
+   * @param context The {@link ExecutionContext} of the execution.
+   * @return The {@link Result} of the action.
+   * @throws ActionException
+   * @throws ServiceException
+   */
+  R proceed(A action, ExecutionContext context) throws ActionException, ServiceException;
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionpipeline;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import com.gwtplatform.dispatch.server.DispatchFuture;
+import com.gwtplatform.dispatch.server.DispatchFutureCallback;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.AsyncActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.NonUndoableActionHandler;
+import com.gwtplatform.dispatch.server.actionvalidator.ActionValidator;
+import com.gwtplatform.dispatch.server.metrics.ActionMetrics;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.TimeBudget;
+
+/**
+ * Everything needed to execute or undo one {@link Action} class: its {@link ActionValidator}, its
+ * {@link ActionHandler} and the {@link ActionInterceptor}s that apply to it, resolved once and linked together so
+ * that running an action doesn't touch the registry nor allocate.
+ *
+ * @param <A> Type of associated {@link Action}
+ * @param <R> Type of associated {@link Result}
+ */
+public class ActionPipeline<A extends Action<R>, R extends Result> {
+
+  private static class HandlerChain<A extends Action<R>, R extends Result> implements
+      AsyncActionInterceptorChain<A, R> {
+    private final ActionHandler<A, R> actionHandler;
+    private final AsyncActionHandler<A, R> asyncActionHandler;
+
+    @SuppressWarnings("unchecked")
+    private HandlerChain(ActionHandler<A, R> actionHandler) {
+      this.actionHandler = actionHandler;
+      if (actionHandler instanceof AsyncActionHandler) {
+        this.asyncActionHandler = (AsyncActionHandler<A, R>) actionHandler;
+      } else {
+        this.asyncActionHandler = null;
+      }
+    }
+
+    @Override
+    public R proceed(A action, ExecutionContext context) throws ActionException {
+      return actionHandler.execute(action, context);
+    }
+
+    @Override
+    public DispatchFuture<R> proceedAsync(A action, ExecutionContext context) throws ActionException {
+      if (asyncActionHandler != null) {
+        return asyncActionHandler.executeAsync(action, context);
+      }
+      return DispatchFuture.succeeded(actionHandler.execute(action, context));
+    }
+  }
+
+  private static class InterceptorChain<A extends Action<R>, R extends Result> implements
+      AsyncActionInterceptorChain<A, R> {
+    private final ActionInterceptor interceptor;
+    private final AsyncActionInterceptor asyncInterceptor;
+    private final AsyncActionInterceptorChain<A, R> next;
+
+    private InterceptorChain(ActionInterceptor interceptor, AsyncActionInterceptorChain<A, R> next) {
+      this.interceptor = interceptor;
+      this.next = next;
+      if (interceptor instanceof AsyncActionInterceptor) {
+        this.asyncInterceptor = (AsyncActionInterceptor) interceptor;
+      } else {
+        this.asyncInterceptor = null;
+      }
+    }
+
+    @Override
+    public R proceed(A action, ExecutionContext context) throws ActionException, ServiceException {
+      return interceptor.intercept(action, context, next);
+    }
+
+    @Override
+    public DispatchFuture<R> proceedAsync(A action, ExecutionContext context) throws ActionException,
+        ServiceException {
+      if (asyncInterceptor != null) {
+        return asyncInterceptor.interceptAsync(action, context, next);
+      }
+      return DispatchFuture.succeeded(interceptor.intercept(action, context, next));
+    }
+  }
+
+  /**
+   * Returned by {@link #getTimeBudgetMs()} when the action class has no {@link TimeBudget}.
+   */
+  public static final long NO_TIME_BUDGET = -1;
+
+  private static final String actionValidatorMessage = " couldn't allow access to action : ";
+
+  private final ActionHandler<A, R> actionHandler;
+  private final ActionValidator actionValidator;
+  private final AsyncActionInterceptorChain<A, R> chain;
+  private final boolean undoable;
+  private final long timeBudgetMs;
+  private final ActionMetrics metrics;
+
+  ActionPipeline(Class<? extends Action<?>> actionClass, ActionHandler<A, R> actionHandler,
+      ActionValidator actionValidator, List<ActionInterceptor> interceptors, ActionMetrics metrics) {
+    this.actionHandler = actionHandler;
+    this.actionValidator = actionValidator;
+    this.metrics = metrics;
+    this.undoable = !(actionHandler instanceof NonUndoableActionHandler);
+
+    TimeBudget timeBudget = actionClass.getAnnotation(TimeBudget.class);
+    this.timeBudgetMs = timeBudget == null ? NO_TIME_BUDGET : timeBudget.value();
+
+    AsyncActionInterceptorChain<A, R> head = new HandlerChain<A, R>(actionHandler);
+    for (int i = interceptors.size() - 1; i >= 0; i--) {
+      ActionInterceptor interceptor = interceptors.get(i);
+      if (interceptor.appliesTo(actionClass, actionHandler)) {
+        head = new InterceptorChain<A, R>(interceptor, head);
+      }
+    }
+    this.chain = head;
+  }
+
+  public ActionHandler<A, R> getActionHandler() {
+    return actionHandler;
+  }
+
+  public ActionValidator getActionValidator() {
+    return actionValidator;
+  }
+
+  /**
+   * @return The {@link ActionMetrics} recording the executions of this pipeline, or {@code null} if metrics are
+   *         disabled.
+   */
+  public ActionMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return {@code false} if the handler is a {@link NonUndoableActionHandler}, in which case executions don't need to
+   *         be recorded for rollback.
+   */
+  public boolean isUndoable() {
+    return undoable;
+  }
+
+  /**
+   * @return The {@link TimeBudget} of the action class in milliseconds, {@code 0} if it is explicitly unlimited, or
+   *         {@link #NO_TIME_BUDGET} if the action class isn't annotated.
+   */
+  public long getTimeBudgetMs() {
+    return timeBudgetMs;
+  }
+
+  /**
+   * Validates the action and runs it through the interceptors and the handler.
+   *
+   * @param action The {@link Action} to execute.
+   * @param context The {@link ExecutionContext} associated with the {@link Action}.
+   * @return The {@link Result} to the client.
+   * @throws ActionException
+   * @throws ServiceException
+   */
+  public R execute(A action, ExecutionContext context) throws ActionException, ServiceException {
+    if (metrics == null) {
+      return doExecute(action, context);
+    }
+
+    long start = metrics.begin();
+    try {
+      R result = doExecute(action, context);
+      metrics.succeeded(start);
+      return result;
+    } catch (ActionException e) {
+      metrics.failed(start, e);
+      throw e;
+    } catch (ServiceException e) {
+      metrics.failed(start, e);
+      throw e;
+    } catch (Error e) {
+      metrics.failed(start, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Validates the action and starts running it through the interceptors and the handler, without waiting for an
+   * {@link AsyncActionHandler} to complete. Failures are reported through the returned future, wrapped the same way
+   * {@link #execute} would throw them.
+   *
+   * @param action The {@link Action} to execute.
+   * @param context The {@link ExecutionContext} associated with the {@link Action}.
+   * @return The future {@link Result}.
+   */
+  public DispatchFuture<R> executeAsync(A action, ExecutionContext context) {
+    if (metrics == null) {
+      return doExecuteAsync(action, context);
+    }
+
+    final long start = metrics.begin();
+    DispatchFuture<R> future = doExecuteAsync(action, context);
+    future.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        metrics.succeeded(start);
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        metrics.failed(start, caught);
+      }
+    });
+    return future;
+  }
+
+  private R doExecute(A action, ExecutionContext context) throws ActionException, ServiceException {
+    try {
+      if (actionValidator.isValid(action)) {
+        return chain.proceed(action, context);
+      } else {
+        throw rejected(action);
+      }
+    } catch (ActionException e) {
+      throw e;
+    } catch (Exception e) {
+      throw toServiceException(action, e);
+    }
+  }
+
+  private DispatchFuture<R> doExecuteAsync(final A action, ExecutionContext context) {
+    final DispatchFuture<R> pending;
+    try {
+      if (actionValidator.isValid(action)) {
+        pending = chain.proceedAsync(action, context);
+      } else {
+        throw rejected(action);
+      }
+    } catch (ActionException e) {
+      return DispatchFuture.failed(e);
+    } catch (Exception e) {
+      return DispatchFuture.failed(toServiceException(action, e));
+    }
+
+    final DispatchFuture<R> future = new DispatchFuture<R>();
+    pending.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        future.set(result);
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        if (caught instanceof CancellationException) {
+          future.cancel(false);
+        } else if (caught instanceof Exception && !(caught instanceof ActionException)) {
+          future.setException(toServiceException(action, (Exception) caught));
+        } else {
+          future.setException(caught);
+        }
+      }
+    });
+    future.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        if (caught instanceof CancellationException) {
+          pending.cancel(true);
+        }
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * Validates the action and asks the handler to undo it.
+   *
+   * @param action The {@link Action} to undo.
+   * @param result The {@link Result} it produced.
+   * @param context The {@link ExecutionContext} associated with the {@link Action}.
+   * @throws ActionException
+   * @throws ServiceException
+   */
+  public void undo(A action, R result, ExecutionContext context) throws ActionException, ServiceException {
+    try {
+      if (actionValidator.isValid(action)) {
+        actionHandler.undo(action, result, context);
+      } else {
+        throw rejected(action);
+      }
+    } catch (ActionException e) {
+      throw e;
+    } catch (Exception cause) {
+      throw new ServiceException(cause);
+    }
+  }
+
+  private ServiceException rejected(A action) {
+    if (metrics != null) {
+      metrics.validatorRejected();
+    }
+    return new ServiceException(actionValidator.getClass().getName() + actionValidatorMessage
+        + action.getClass().getName());
+  }
+
+  private static ServiceException toServiceException(Action<?> action, Exception e) {
+    String newMessage = "Service exception executing action \"" + action.getClass().getSimpleName() + "\", "
+        + e.toString();
+    ServiceException rethrown = new ServiceException(newMessage);
+    rethrown.initCause(e);
+    return rethrown;
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionpipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistryListener;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ObservableActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.metrics.DispatchMetrics;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.UnsupportedActionException;
+
+/**
+ * Builds and caches one {@link ActionPipeline} per {@link Action} class.
+ * <p />
+ * When the registry is an {@link ObservableActionHandlerValidatorRegistry}, a cached pipeline costs a single lock-free
+ * map read per action and is dropped as soon as the registration of its action class changes. Other registries can't
+ * tell when they change, so their pipelines are resolved again on every call, which still takes one registry lookup
+ * where the handler and the validator used to take one each.
+ */
+public class ActionPipelineCache implements ActionHandlerValidatorRegistryListener {
+
+  private final ActionHandlerValidatorRegistry actionHandlerValidatorRegistry;
+  private volatile List<ActionInterceptor> interceptors;
+  private volatile DispatchMetrics dispatchMetrics;
+  private final ConcurrentMap<Class<?>, ActionPipeline<?, ?>> pipelines;
+  private final AtomicLong generation;
+  private final boolean cacheable;
+
+  public ActionPipelineCache(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry) {
+    this(actionHandlerValidatorRegistry, Collections.<ActionInterceptor>emptyList());
+  }
+
+  public ActionPipelineCache(ActionHandlerValidatorRegistry actionHandlerValidatorRegistry,
+      List<? extends ActionInterceptor> interceptors) {
+    this.actionHandlerValidatorRegistry = actionHandlerValidatorRegistry;
+    this.interceptors = Collections.unmodifiableList(new ArrayList<ActionInterceptor>(interceptors));
+    this.pipelines = new ConcurrentHashMap<Class<?>, ActionPipeline<?, ?>>();
+    this.generation = new AtomicLong();
+    this.cacheable = actionHandlerValidatorRegistry instanceof ObservableActionHandlerValidatorRegistry;
+
+    if (cacheable) {
+      ((ObservableActionHandlerValidatorRegistry) actionHandlerValidatorRegistry).addRegistryListener(this);
+    }
+  }
+
+  /**
+   * Returns the pipeline for the class of the specified action, building it if needed.
+   *
+   * @param <A> Type of associated {@link Action}
+   * @param <R> Type of associated {@link Result}
+   * @param action The {@link Action}.
+   * @return The {@link ActionPipeline}, never {@code null}.
+   * @throws UnsupportedActionException If no handler is registered for the action.
+   */
+  @SuppressWarnings("unchecked")
+  public <A extends Action<R>, R extends Result> ActionPipeline<A, R> findPipeline(A action)
+      throws UnsupportedActionException {
+    ActionPipeline<?, ?> pipeline = pipelines.get(action.getClass());
+
+    if (pipeline == null) {
+      pipeline = createPipeline(action);
+    }
+
+    return (ActionPipeline<A, R>) pipeline;
+  }
+
+  public List<ActionInterceptor> getInterceptors() {
+    return interceptors;
+  }
+
+  /**
+   * Replaces the interceptors and drops every cached pipeline.
+   *
+   * @param interceptors The {@link ActionInterceptor}s wrapping every execution, outermost first.
+   */
+  public void setInterceptors(List<? extends ActionInterceptor> interceptors) {
+    this.interceptors = Collections.unmodifiableList(new ArrayList<ActionInterceptor>(interceptors));
+    invalidateAll();
+  }
+
+  public DispatchMetrics getDispatchMetrics() {
+    return dispatchMetrics;
+  }
+
+  /**
+   * Starts or stops recording metrics, and drops every cached pipeline.
+   *
+   * @param dispatchMetrics The {@link DispatchMetrics} to record executions in, {@code null} to disable metrics.
+   */
+  public void setDispatchMetrics(DispatchMetrics dispatchMetrics) {
+    this.dispatchMetrics = dispatchMetrics;
+    invalidateAll();
+  }
+
+  /**
+   * Drops every cached pipeline, for instance after an interceptor changed its mind about the actions it applies to.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    pipelines.clear();
+  }
+
+  @Override
+  public void onActionHandlerValidatorChanged(Class<? extends Action<?>> actionClass) {
+    generation.incrementAndGet();
+    pipelines.remove(actionClass);
+  }
+
+  @Override
+  public void onActionHandlerValidatorsCleared() {
+    invalidateAll();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <A extends Action<R>, R extends Result> ActionPipeline<A, R> createPipeline(A action)
+      throws UnsupportedActionException {
+    long expectedGeneration = generation.get();
+
+    ActionHandlerValidatorInstance handlerValidator = actionHandlerValidatorRegistry.findActionHandlerValidator(action);
+    if (handlerValidator == null) {
+      throw new UnsupportedActionException(action);
+    }
+
+    Class<? extends Action<?>> actionClass = (Class<? extends Action<?>>) action.getClass();
+    DispatchMetrics metrics = dispatchMetrics;
+    ActionPipeline<A, R> pipeline = new ActionPipeline<A, R>(actionClass,
+        (ActionHandler<A, R>) handlerValidator.getActionHandler(), handlerValidator.getActionValidator(), interceptors,
+        metrics == null ? null : metrics.forAction(actionClass));
+
+    if (cacheable) {
+      ActionPipeline<?, ?> existing = pipelines.putIfAbsent(actionClass, pipeline);
+      if (existing != null) {
+        return (ActionPipeline<A, R>) existing;
+      }
+
+      // The registry changed while we were resolving: what we built may already be stale.
+      if (generation.get() != expectedGeneration) {
+        pipelines.remove(actionClass, pipeline);
+      }
+    }
+
+    return pipeline;
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionpipeline;
+
+import com.gwtplatform.dispatch.server.DispatchFuture;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * An {@link ActionInterceptor} that can also wrap asynchronous executions without blocking. Plain
+ * {@link ActionInterceptor}s still work in asynchronous pipelines, but the rest of the pipeline then runs
+ * synchronously in the calling thread.
+ */
+public interface AsyncActionInterceptor extends ActionInterceptor {
+  /**
+   * Intercepts the asynchronous execution of an action. Call {@link AsyncActionInterceptorChain#proceedAsync} to let
+   * it continue, or return a future of your own to short-circuit it.
+   *
+   * @param <A> Type of associated {@link Action}
+   * @param <R> Type of associated {@link Result}
+   * @param action The {@link Action} being executed.
+   * @param context The {@link ExecutionContext} of the execution.
+   * @param chain The rest of the pipeline.
+   * @return The future {@link Result} of the action.
+   * @throws ActionException
+   * @throws ServiceException
+   */
+  <A extends Action<R>, R extends Result> DispatchFuture<R> interceptAsync(A action, ExecutionContext context,
+      AsyncActionInterceptorChain<A, R> chain) throws ActionException, ServiceException;
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.coalescing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gwtplatform.dispatch.server.CancellableContext;
+import com.gwtplatform.dispatch.server.DispatchFuture;
+import com.gwtplatform.dispatch.server.DispatchFutureCallback;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionInterceptorChain;
+import com.gwtplatform.dispatch.server.actionpipeline.AsyncActionInterceptor;
+import com.gwtplatform.dispatch.server.actionpipeline.AsyncActionInterceptorChain;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Coalesced;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * Coalesces concurrent executions of equal actions. The first caller runs the rest of the pipeline, and callers
+ * sending an equal action while it is in flight wait for its outcome instead of running the handler again. Failures
+ * are shared the same way as results. Once the execution completes, the next equal action runs the handler again:
+ * combine this interceptor with a {@link com.gwtplatform.dispatch.server.resultcache.ResultCacheInterceptor
+ * ResultCacheInterceptor} to also reuse results over time.
+ * <p />
+ * Only action classes annotated with {@link Coalesced} or registered with {@link #addCoalescedAction} are coalesced,
+ * since this is only correct for side-effect free actions.
+ * <p />
+ * Cancelling an asynchronous execution only detaches the caller that cancelled it, the shared execution keeps running
+ * for the others. Likewise, a synchronous caller stops waiting for the shared execution once its
+ * {@link com.gwtplatform.dispatch.shared.TimeBudget TimeBudget} is spent or after
+ * {@link #setFollowerTimeoutMs(long)}, whichever comes first.
+ */
+public class CoalescingInterceptor implements AsyncActionInterceptor {
+
+  /**
+   * The default time a synchronous caller waits for an equal action in flight, in milliseconds.
+   */
+  public static final long DEFAULT_FOLLOWER_TIMEOUT_MS = 60000;
+
+  private final ConcurrentMap<Class<?>, Boolean> coalescedActions = new ConcurrentHashMap<Class<?>, Boolean>();
+  private final ConcurrentMap<Action<?>, DispatchFuture<?>> inFlight =
+      new ConcurrentHashMap<Action<?>, DispatchFuture<?>>();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  private volatile long followerTimeoutMs = DEFAULT_FOLLOWER_TIMEOUT_MS;
+
+  public CoalescingInterceptor() {
+  }
+
+  /**
+   * Sets how long a synchronous caller waits for an equal action in flight before failing with a
+   * {@link ServiceException}. The time budget of the caller still applies.
+   *
+   * @param followerTimeoutMs The timeout in milliseconds, or {@code 0} to only wait for the time budget.
+   */
+  public void setFollowerTimeoutMs(long followerTimeoutMs) {
+    if (followerTimeoutMs < 0) {
+      throw new IllegalArgumentException("followerTimeoutMs must be positive or 0");
+    }
+    this.followerTimeoutMs = followerTimeoutMs;
+  }
+
+  /**
+   * Coalesces the executions of an action class without annotating it. Must be called before the dispatch executes
+   * any action of that class, since the interceptors of a class are chosen once.
+   *
+   * @param actionClass The {@link Action} class.
+   */
+  public void addCoalescedAction(Class<? extends Action<?>> actionClass) {
+    coalescedActions.put(actionClass, Boolean.TRUE);
+  }
+
+  /**
+   * @return The number of executions that were served by an equal action already in flight.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @return The number of executions currently in flight.
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  @Override
+  public boolean appliesTo(Class<? extends Action<?>> actionClass, ActionHandler<?, ?> actionHandler) {
+    return coalescedActions.containsKey(actionClass) || actionClass.isAnnotationPresent(Coalesced.class);
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> R intercept(A action, ExecutionContext context,
+      ActionInterceptorChain<A, R> chain) throws ActionException, ServiceException {
+    DispatchFuture<R> shared = new DispatchFuture<R>();
+    DispatchFuture<R> existing = join(action, shared);
+    if (existing != null) {
+      return await(existing, action, context);
+    }
+
+    try {
+      R result = chain.proceed(action, context);
+      complete(action, shared).set(result);
+      return result;
+    } catch (ActionException e) {
+      complete(action, shared).setException(e);
+      throw e;
+    } catch (ServiceException e) {
+      complete(action, shared).setException(e);
+      throw e;
+    } catch (RuntimeException e) {
+      complete(action, shared).setException(e);
+      throw e;
+    } catch (Error e) {
+      complete(action, shared).setException(e);
+      throw e;
+    }
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> DispatchFuture<R> interceptAsync(final A action,
+      ExecutionContext context, AsyncActionInterceptorChain<A, R> chain) throws ActionException, ServiceException {
+    final DispatchFuture<R> shared = new DispatchFuture<R>();
+    DispatchFuture<R> existing = join(action, shared);
+    if (existing != null) {
+      return follow(existing);
+    }
+
+    DispatchFuture<R> pending;
+    try {
+      pending = chain.proceedAsync(action, context);
+    } catch (ActionException e) {
+      complete(action, shared).setException(e);
+      throw e;
+    } catch (ServiceException e) {
+      complete(action, shared).setException(e);
+      throw e;
+    } catch (RuntimeException e) {
+      complete(action, shared).setException(e);
+      throw e;
+    }
+
+    pending.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        complete(action, shared).set(result);
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        complete(action, shared).setException(caught);
+      }
+    });
+    return follow(shared);
+  }
+
+  /**
+   * Publishes {@code shared} as the in-flight execution of {@code action}.
+   *
+   * @return The execution already in flight for an equal action, or {@code null} if the caller must run it.
+   */
+  @SuppressWarnings("unchecked")
+  private <R extends Result> DispatchFuture<R> join(Action<R> action, DispatchFuture<R> shared) {
+    DispatchFuture<R> existing = (DispatchFuture<R>) inFlight.putIfAbsent(action, shared);
+    if (existing != null) {
+      coalescedCount.incrementAndGet();
+    }
+    return existing;
+  }
+
+  /**
+   * Waits for the execution in flight on behalf of a synchronous caller, for at most the remaining time budget of
+   * {@code context} and {@link #followerTimeoutMs}.
+   */
+  private <R extends Result> R await(DispatchFuture<R> shared, Action<R> action, ExecutionContext context)
+      throws ActionException, ServiceException {
+    long remainingMs = context instanceof CancellableContext ? ((CancellableContext) context).getRemainingTimeMs()
+        : Long.MAX_VALUE;
+    long timeoutMs = followerTimeoutMs > 0 ? Math.min(remainingMs, followerTimeoutMs) : remainingMs;
+    if (timeoutMs == Long.MAX_VALUE) {
+      return shared.getResult();
+    }
+
+    try {
+      shared.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      if (timeoutMs == remainingMs) {
+        throw new DeadlineExceededException("The time budget was spent while waiting for an equal "
+            + action.getClass().getName() + " in flight");
+      }
+      throw new ServiceException("Gave up waiting for an equal " + action.getClass().getName() + " in flight after "
+          + timeoutMs + " ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceException("Interrupted while waiting for the result of an action", e);
+    } catch (ExecutionException e) {
+      // The execution is done, getResult() rethrows its failure below.
+    } catch (CancellationException e) {
+      // Same as above.
+    }
+    return shared.getResult();
+  }
+
+  private <R extends Result> DispatchFuture<R> complete(Action<R> action, DispatchFuture<R> shared) {
+    // Unpublish first so that actions arriving from now on see the effects of this execution.
+    inFlight.remove(action, shared);
+    return shared;
+  }
+
+  private static <R> DispatchFuture<R> follow(DispatchFuture<R> shared) {
+    final DispatchFuture<R> follower = new DispatchFuture<R>();
+    shared.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        follower.set(result);
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+        follower.setException(caught);
+      }
+    });
+    return follower;
+  }
+}
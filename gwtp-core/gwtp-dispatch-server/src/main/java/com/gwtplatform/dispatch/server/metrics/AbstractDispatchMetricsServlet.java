@@ -0,0 +1,111 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Renders {@link DispatchMetrics} as a tab separated plain text table, one line per action class, the most time
+ * consuming first. Durations are in microseconds. When deployed as a servlet, it also registers the metrics as a JMX
+ * MBean for the lifetime of the web application.
+ * <p />
+ * Don't expose it publicly: it reveals the action classes of the application.
+ */
+public abstract class AbstractDispatchMetricsServlet extends HttpServlet {
+
+  private static final long serialVersionUID = -6318032498839371164L;
+
+  private static final String HEADER = "action\tcount\tinFlight\tsuccesses\tactionExceptions\tserviceExceptions"
+      + "\tvalidatorRejections\trollbacks\ttotal\tmean\tp50\tp99\tmax";
+
+  private final transient Logger logger;
+  private final transient DispatchMetrics dispatchMetrics;
+
+  protected AbstractDispatchMetricsServlet(Logger logger, DispatchMetrics dispatchMetrics) {
+    this.logger = logger;
+    this.dispatchMetrics = dispatchMetrics;
+  }
+
+  @Override
+  public void init() throws ServletException {
+    try {
+      dispatchMetrics.registerMBean();
+    } catch (JMException e) {
+      logger.log(Level.WARNING, "Unable to register the dispatch metrics MBean", e);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    try {
+      dispatchMetrics.unregisterMBean();
+    } catch (JMException e) {
+      logger.log(Level.WARNING, "Unable to unregister the dispatch metrics MBean", e);
+    }
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    resp.setContentType("text/plain");
+    resp.setCharacterEncoding("UTF-8");
+    resp.setHeader("Cache-Control", "no-cache");
+
+    PrintWriter writer = resp.getWriter();
+    writer.println(HEADER);
+    for (ActionMetricsSnapshot action : dispatchMetrics.getActions()) {
+      writer.print(action.getActionClass());
+      writer.print('\t');
+      writer.print(action.getCount());
+      writer.print('\t');
+      writer.print(action.getInFlight());
+      writer.print('\t');
+      writer.print(action.getSuccesses());
+      writer.print('\t');
+      writer.print(action.getActionExceptions());
+      writer.print('\t');
+      writer.print(action.getServiceExceptions());
+      writer.print('\t');
+      writer.print(action.getValidatorRejections());
+      writer.print('\t');
+      writer.print(action.getRollbacks());
+      writer.print('\t');
+      writer.print(action.getTotalMicros());
+      writer.print('\t');
+      writer.print(action.getMeanMicros());
+      writer.print('\t');
+      writer.print(action.getP50Micros());
+      writer.print('\t');
+      writer.print(action.getP99Micros());
+      writer.print('\t');
+      writer.println(action.getMaxMicros());
+    }
+    writer.flush();
+  }
+
+  protected DispatchMetrics getDispatchMetrics() {
+    return dispatchMetrics;
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+
+/**
+ * The counters of one {@link Action} class. A dispatch calls {@link #begin()} when an action starts and exactly one of
+ * {@link #succeeded} or {@link #failed} when it ends. None of the recording methods allocate.
+ */
+public class ActionMetrics {
+
+  private final Class<?> actionClass;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong successes = new AtomicLong();
+  private final AtomicLong actionExceptions = new AtomicLong();
+  private final AtomicLong serviceExceptions = new AtomicLong();
+  private final AtomicLong validatorRejections = new AtomicLong();
+  private final AtomicLong rollbacks = new AtomicLong();
+
+  ActionMetrics(Class<?> actionClass) {
+    this.actionClass = actionClass;
+  }
+
+  /**
+   * Records the start of an execution.
+   *
+   * @return The start time, to pass to {@link #succeeded} or {@link #failed}.
+   */
+  public long begin() {
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the successful end of an execution.
+   *
+   * @param startNanos The value returned by {@link #begin()}.
+   */
+  public void succeeded(long startNanos) {
+    end(startNanos);
+    successes.incrementAndGet();
+  }
+
+  /**
+   * Records the failed end of an execution, counted as an {@link ActionException} or as a service exception for
+   * anything else.
+   *
+   * @param startNanos The value returned by {@link #begin()}.
+   * @param caught The cause of the failure.
+   */
+  public void failed(long startNanos, Throwable caught) {
+    end(startNanos);
+    if (caught instanceof ActionException) {
+      actionExceptions.incrementAndGet();
+    } else {
+      serviceExceptions.incrementAndGet();
+    }
+  }
+
+  /**
+   * Records that the action validator refused an action. The execution still ends with {@link #failed}.
+   */
+  public void validatorRejected() {
+    validatorRejections.incrementAndGet();
+  }
+
+  /**
+   * Records that a failed execution rolled back the sub-actions it ran.
+   */
+  public void rolledBack() {
+    rollbacks.incrementAndGet();
+  }
+
+  public Class<?> getActionClass() {
+    return actionClass;
+  }
+
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getSuccesses() {
+    return successes.get();
+  }
+
+  public long getActionExceptions() {
+    return actionExceptions.get();
+  }
+
+  public long getServiceExceptions() {
+    return serviceExceptions.get();
+  }
+
+  public long getValidatorRejections() {
+    return validatorRejections.get();
+  }
+
+  public long getRollbacks() {
+    return rollbacks.get();
+  }
+
+  /**
+   * @return A consistent enough copy of the counters, for reporting.
+   */
+  public ActionMetricsSnapshot snapshot() {
+    return new ActionMetricsSnapshot(actionClass.getName(), latencies.getCount(), inFlight.get(), successes.get(),
+        actionExceptions.get(), serviceExceptions.get(), validatorRejections.get(), rollbacks.get(),
+        latencies.getTotalNanos() / 1000, latencies.getMeanMicros(), latencies.getPercentileMicros(50),
+        latencies.getPercentileMicros(99), latencies.getMaxNanos() / 1000);
+  }
+
+  void reset() {
+    latencies.reset();
+    successes.set(0);
+    actionExceptions.set(0);
+    serviceExceptions.set(0);
+    validatorRejections.set(0);
+    rollbacks.set(0);
+  }
+
+  private void end(long startNanos) {
+    latencies.record(System.nanoTime() - startNanos);
+    inFlight.decrementAndGet();
+  }
+}
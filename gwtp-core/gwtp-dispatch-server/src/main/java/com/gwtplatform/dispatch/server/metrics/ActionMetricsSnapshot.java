@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable copy of the {@link ActionMetrics} of one action class, as exposed through JMX and the metrics servlet.
+ * Durations are in microseconds.
+ */
+public class ActionMetricsSnapshot {
+
+  private final String actionClass;
+  private final long count;
+  private final int inFlight;
+  private final long successes;
+  private final long actionExceptions;
+  private final long serviceExceptions;
+  private final long validatorRejections;
+  private final long rollbacks;
+  private final long totalMicros;
+  private final long meanMicros;
+  private final long p50Micros;
+  private final long p99Micros;
+  private final long maxMicros;
+
+  @ConstructorProperties({"actionClass", "count", "inFlight", "successes", "actionExceptions", "serviceExceptions",
+      "validatorRejections", "rollbacks", "totalMicros", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+  public ActionMetricsSnapshot(String actionClass, long count, int inFlight, long successes, long actionExceptions,
+      long serviceExceptions, long validatorRejections, long rollbacks, long totalMicros, long meanMicros,
+      long p50Micros, long p99Micros, long maxMicros) {
+    this.actionClass = actionClass;
+    this.count = count;
+    this.inFlight = inFlight;
+    this.successes = successes;
+    this.actionExceptions = actionExceptions;
+    this.serviceExceptions = serviceExceptions;
+    this.validatorRejections = validatorRejections;
+    this.rollbacks = rollbacks;
+    this.totalMicros = totalMicros;
+    this.meanMicros = meanMicros;
+    this.p50Micros = p50Micros;
+    this.p99Micros = p99Micros;
+    this.maxMicros = maxMicros;
+  }
+
+  public String getActionClass() {
+    return actionClass;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  public long getSuccesses() {
+    return successes;
+  }
+
+  public long getActionExceptions() {
+    return actionExceptions;
+  }
+
+  public long getServiceExceptions() {
+    return serviceExceptions;
+  }
+
+  public long getValidatorRejections() {
+    return validatorRejections;
+  }
+
+  public long getRollbacks() {
+    return rollbacks;
+  }
+
+  public long getTotalMicros() {
+    return totalMicros;
+  }
+
+  public long getMeanMicros() {
+    return meanMicros;
+  }
+
+  public long getP50Micros() {
+    return p50Micros;
+  }
+
+  public long getP99Micros() {
+    return p99Micros;
+  }
+
+  public long getMaxMicros() {
+    return maxMicros;
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.gwtplatform.dispatch.shared.Action;
+
+/**
+ * Per {@link Action} class metrics of a dispatch: latency histogram, executions in flight, validator rejections,
+ * {@link com.gwtplatform.dispatch.shared.ActionException ActionException}s,
+ * {@link com.gwtplatform.dispatch.shared.ServiceException ServiceException}s and rollbacks.
+ * <p />
+ * Give an instance to {@link com.gwtplatform.dispatch.server.AbstractDispatchImpl#setDispatchMetrics
+ * AbstractDispatchImpl} or {@code AbstractPollDispatchImpl} to start recording. The counters of an action class are
+ * created on its first execution, after which recording doesn't allocate. Read them through JMX with
+ * {@link #registerMBean()} or over HTTP with {@link AbstractDispatchMetricsServlet}.
+ */
+public class DispatchMetrics implements DispatchMetricsMXBean {
+
+  private static final String OBJECT_NAME_PREFIX = "com.gwtplatform.dispatch:type=DispatchMetrics,name=";
+
+  private static final Comparator<ActionMetricsSnapshot> byTotalTime = new Comparator<ActionMetricsSnapshot>() {
+    @Override
+    public int compare(ActionMetricsSnapshot o1, ActionMetricsSnapshot o2) {
+      long t1 = o1.getTotalMicros();
+      long t2 = o2.getTotalMicros();
+      return t1 > t2 ? -1 : (t1 == t2 ? o1.getActionClass().compareTo(o2.getActionClass()) : 1);
+    }
+  };
+
+  private final String name;
+  private final ConcurrentMap<Class<?>, ActionMetrics> actionMetrics =
+      new ConcurrentHashMap<Class<?>, ActionMetrics>();
+
+  /**
+   * @param name The name of these metrics, used in the JMX {@link ObjectName} to tell several dispatches apart.
+   */
+  public DispatchMetrics(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the counters of an action class, creating them on first use.
+   *
+   * @param actionClass The {@link Action} class.
+   * @return The {@link ActionMetrics}, never {@code null}.
+   */
+  public ActionMetrics forAction(Class<?> actionClass) {
+    ActionMetrics metrics = actionMetrics.get(actionClass);
+    if (metrics == null) {
+      ActionMetrics newMetrics = new ActionMetrics(actionClass);
+      metrics = actionMetrics.putIfAbsent(actionClass, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  @Override
+  public List<ActionMetricsSnapshot> getActions() {
+    List<ActionMetricsSnapshot> snapshots = new ArrayList<ActionMetricsSnapshot>(actionMetrics.size());
+    for (ActionMetrics metrics : actionMetrics.values()) {
+      snapshots.add(metrics.snapshot());
+    }
+    Collections.sort(snapshots, byTotalTime);
+    return snapshots;
+  }
+
+  @Override
+  public long getTotalCount() {
+    long total = 0;
+    for (ActionMetrics metrics : actionMetrics.values()) {
+      total += metrics.getLatencies().getCount();
+    }
+    return total;
+  }
+
+  @Override
+  public int getTotalInFlight() {
+    int total = 0;
+    for (ActionMetrics metrics : actionMetrics.values()) {
+      total += metrics.getInFlight();
+    }
+    return total;
+  }
+
+  @Override
+  public void reset() {
+    for (ActionMetrics metrics : actionMetrics.values()) {
+      metrics.reset();
+    }
+  }
+
+  /**
+   * Registers these metrics in the platform {@link MBeanServer}, replacing metrics registered under the same name.
+   *
+   * @throws JMException If the registration fails.
+   */
+  public void registerMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = getObjectName();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+    server.registerMBean(this, objectName);
+  }
+
+  /**
+   * Removes these metrics from the platform {@link MBeanServer}, if they are registered.
+   *
+   * @throws JMException If the removal fails.
+   */
+  public void unregisterMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = getObjectName();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+  }
+
+  public ObjectName getObjectName() throws JMException {
+    return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+  }
+}
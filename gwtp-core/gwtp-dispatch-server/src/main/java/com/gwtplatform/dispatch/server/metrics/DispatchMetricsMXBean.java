@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import java.util.List;
+
+/**
+ * The JMX view of {@link DispatchMetrics}.
+ */
+public interface DispatchMetricsMXBean {
+  /**
+   * @return The metrics of every action class executed so far, the most time consuming first.
+   */
+  List<ActionMetricsSnapshot> getActions();
+
+  /**
+   * @return The number of executions of any action class.
+   */
+  long getTotalCount();
+
+  /**
+   * @return The number of executions in flight, of any action class.
+   */
+  int getTotalInFlight();
+
+  /**
+   * Resets every counter but the in-flight counts.
+   */
+  void reset();
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with power-of-two microsecond buckets: bucket {@code 0} counts latencies under
+ * one microsecond and bucket {@code i} those in {@code [2^(i-1), 2^i)} microseconds. Recording is a handful of atomic
+ * increments and never allocates, so it can run on every request. Percentiles are approximated by the upper bound of
+ * the bucket they fall in, which is within a factor of two of the real value.
+ */
+public class LatencyHistogram {
+
+  static final int BUCKET_COUNT = 32;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records one latency.
+   *
+   * @param nanos The latency, in nanoseconds.
+   */
+  public void record(long nanos) {
+    // System.nanoTime() is not guaranteed to be monotonic on every platform.
+    long latency = Math.max(0, nanos);
+
+    buckets.incrementAndGet(bucketOf(latency));
+    count.incrementAndGet();
+    totalNanos.addAndGet(latency);
+
+    long max = maxNanos.get();
+    while (latency > max && !maxNanos.compareAndSet(max, latency)) {
+      max = maxNanos.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return The mean latency in microseconds, {@code 0} if nothing was recorded.
+   */
+  public long getMeanMicros() {
+    long n = count.get();
+    return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / n);
+  }
+
+  /**
+   * @param percentile The percentile, between {@code 0} and {@code 100}.
+   * @return An upper bound of the latency at the specified percentile, in microseconds, {@code 0} if nothing was
+   *         recorded.
+   */
+  public long getPercentileMicros(double percentile) {
+    long[] snapshot = getBucketCounts();
+    long total = 0;
+    for (long bucket : snapshot) {
+      total += bucket;
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank && snapshot[i] > 0) {
+        return 1L << i;
+      }
+    }
+    return 1L << (BUCKET_COUNT - 1);
+  }
+
+  /**
+   * @return A copy of the bucket counts. See the class documentation for the bucket bounds.
+   */
+  public long[] getBucketCounts() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Forgets every recorded latency. Latencies recorded concurrently may be partially kept.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+
+  static int bucketOf(long nanos) {
+    long micros = nanos / 1000;
+    return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+  }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.resultcache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Result;
+
+/**
+ * A bounded, thread-safe store of {@link Result}s keyed by the {@link Action} that produced them, relying on the
+ * action's {@code equals} and {@code hashCode}. Entries expire after their time to live and the least recently used
+ * ones are evicted when the cache is full.
+ * <p />
+ * The cache is split in independently locked segments so that concurrent requests rarely contend. Inject it in your
+ * handlers to invalidate results that a write makes stale.
+ */
+public class ResultCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+  public static final long DEFAULT_TIME_TO_LIVE_MS = 60000;
+
+  private static final int SEGMENT_COUNT = 16;
+
+  private static class CachedResult {
+    private final Result result;
+    private final long expiresAt;
+
+    CachedResult(Result result, long expiresAt) {
+      this.result = result;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private static class Segment extends LinkedHashMap<Action<?>, CachedResult> {
+    private static final long serialVersionUID = 2411934283587413395L;
+
+    private final int maxEntries;
+    private final AtomicLong evictions;
+
+    Segment(int maxEntries, AtomicLong evictions) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+      this.evictions = evictions;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Action<?>, CachedResult> eldest) {
+      if (size() > maxEntries) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private final Segment[] segments;
+  private final long defaultTimeToLiveMs;
+  private final AtomicLong generation = new AtomicLong();
+  private final ConcurrentMap<Class<?>, AtomicLong> classGenerations = new ConcurrentHashMap<Class<?>, AtomicLong>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public ResultCache() {
+    this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MS);
+  }
+
+  /**
+   * @param maxEntries The maximum number of results kept in the cache.
+   * @param defaultTimeToLiveMs How long results stay in the cache when their action doesn't say otherwise.
+   */
+  public ResultCache(int maxEntries, long defaultTimeToLiveMs) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("maxEntries must be positive");
+    }
+
+    this.defaultTimeToLiveMs = defaultTimeToLiveMs;
+    this.segments = new Segment[SEGMENT_COUNT];
+    int segmentMaxEntries = Math.max(1, (maxEntries + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments[i] = new Segment(segmentMaxEntries, evictions);
+    }
+  }
+
+  /**
+   * Looks up the cached result of an equal action.
+   *
+   * @param <R> The {@link Result} type.
+   * @param action The {@link Action}.
+   * @return The cached {@link Result}, or {@code null} if there is none or it has expired.
+   */
+  @SuppressWarnings("unchecked")
+  public <R extends Result> R get(Action<R> action) {
+    Segment segment = segmentFor(action);
+    CachedResult entry;
+    synchronized (segment) {
+      entry = segment.get(action);
+      if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+        segment.remove(action);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+    }
+
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return (R) entry.result;
+  }
+
+  /**
+   * Caches the result of an action for the default time to live.
+   *
+   * @param <R> The {@link Result} type.
+   * @param action The {@link Action}.
+   * @param result The {@link Result} of the action.
+   */
+  public <R extends Result> void put(Action<R> action, R result) {
+    put(action, result, defaultTimeToLiveMs, getGeneration(action));
+  }
+
+  /**
+   * Caches the result of an action, unless actions of its class were invalidated since {@code generation} was read
+   * with {@link #getGeneration(Action)}. Reading the generation before executing the action ensures that a result
+   * computed before a concurrent invalidation never makes it into the cache.
+   *
+   * @param <R> The {@link Result} type.
+   * @param action The {@link Action}.
+   * @param result The {@link Result} of the action.
+   * @param timeToLiveMs How long the result stays in the cache.
+   * @param generation The generation read before the action was executed.
+   * @return {@code true} if the result was cached.
+   */
+  public <R extends Result> boolean put(Action<R> action, R result, long timeToLiveMs, long generation) {
+    long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToLiveMs);
+    Segment segment = segmentFor(action);
+    synchronized (segment) {
+      if (getGeneration(action) != generation) {
+        return false;
+      }
+      segment.put(action, new CachedResult(result, expiresAt));
+    }
+    return true;
+  }
+
+  /**
+   * Removes the result cached for actions equal to the specified one.
+   *
+   * @param action The {@link Action}.
+   */
+  public void invalidate(Action<?> action) {
+    classGeneration(action.getClass()).incrementAndGet();
+    Segment segment = segmentFor(action);
+    synchronized (segment) {
+      segment.remove(action);
+    }
+  }
+
+  /**
+   * Removes every result cached for actions of the specified class.
+   *
+   * @param actionClass The {@link Action} class.
+   */
+  public void invalidate(Class<? extends Action<?>> actionClass) {
+    classGeneration(actionClass).incrementAndGet();
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        Iterator<Action<?>> iterator = segment.keySet().iterator();
+        while (iterator.hasNext()) {
+          if (iterator.next().getClass() == actionClass) {
+            iterator.remove();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes every cached result.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * @param action The {@link Action}.
+   * @return A value that changes every time actions of the same class are invalidated. See
+   *     {@link #put(Action, Result, long, long)}.
+   */
+  public long getGeneration(Action<?> action) {
+    // Both counters only grow, so their sum changes whenever either of them does.
+    return generation.get() + classGeneration(action.getClass()).get();
+  }
+
+  public long getDefaultTimeToLiveMs() {
+    return defaultTimeToLiveMs;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of results dropped because the cache was full or they expired.
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  private AtomicLong classGeneration(Class<?> actionClass) {
+    AtomicLong classGeneration = classGenerations.get(actionClass);
+    if (classGeneration == null) {
+      AtomicLong created = new AtomicLong();
+      classGeneration = classGenerations.putIfAbsent(actionClass, created);
+      if (classGeneration == null) {
+        classGeneration = created;
+      }
+    }
+    return classGeneration;
+  }
+
+  private Segment segmentFor(Action<?> action) {
+    int hash = action.hashCode();
+    hash ^= (hash >>> 16);
+    return segments[hash & (SEGMENT_COUNT - 1)];
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.resultcache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.gwtplatform.dispatch.server.DispatchFuture;
+import com.gwtplatform.dispatch.server.DispatchFutureCallback;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionInterceptorChain;
+import com.gwtplatform.dispatch.server.actionpipeline.AsyncActionInterceptor;
+import com.gwtplatform.dispatch.server.actionpipeline.AsyncActionInterceptorChain;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServerCacheable;
+import com.gwtplatform.dispatch.shared.ServiceException;
+
+/**
+ * Serves the results of cacheable actions from a {@link ResultCache} instead of running their handler. An action
+ * class is cacheable when it is annotated with {@link ServerCacheable} or was registered with
+ * {@link #addCacheableAction}. Everything else goes straight through.
+ * <p />
+ * Since interceptors run after validation, every caller is still checked by the action's validator.
+ */
+public class ResultCacheInterceptor implements AsyncActionInterceptor {
+
+  private final ResultCache resultCache;
+  private final ConcurrentMap<Class<?>, Long> timeToLives = new ConcurrentHashMap<Class<?>, Long>();
+
+  public ResultCacheInterceptor(ResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Makes an action class cacheable without annotating it. Must be called before the dispatch executes any action of
+   * that class, since the interceptors of a class are chosen once.
+   *
+   * @param actionClass The {@link Action} class.
+   * @param timeToLiveMs How long its results stay in the cache, {@code 0} for the default of the cache.
+   */
+  public void addCacheableAction(Class<? extends Action<?>> actionClass, long timeToLiveMs) {
+    timeToLives.put(actionClass, timeToLiveMs);
+  }
+
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  @Override
+  public boolean appliesTo(Class<? extends Action<?>> actionClass, ActionHandler<?, ?> actionHandler) {
+    if (timeToLives.containsKey(actionClass)) {
+      return true;
+    }
+
+    ServerCacheable cacheable = actionClass.getAnnotation(ServerCacheable.class);
+    if (cacheable != null) {
+      timeToLives.putIfAbsent(actionClass, cacheable.timeToLiveMs());
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> R intercept(A action, ExecutionContext context,
+      ActionInterceptorChain<A, R> chain) throws ActionException, ServiceException {
+    R result = resultCache.get(action);
+    if (result != null) {
+      return result;
+    }
+
+    long generation = resultCache.getGeneration(action);
+    result = chain.proceed(action, context);
+    if (result != null) {
+      resultCache.put(action, result, getTimeToLive(action), generation);
+    }
+    return result;
+  }
+
+  @Override
+  public <A extends Action<R>, R extends Result> DispatchFuture<R> interceptAsync(final A action,
+      ExecutionContext context, AsyncActionInterceptorChain<A, R> chain) throws ActionException, ServiceException {
+    R cached = resultCache.get(action);
+    if (cached != null) {
+      return DispatchFuture.succeeded(cached);
+    }
+
+    final long generation = resultCache.getGeneration(action);
+    DispatchFuture<R> future = chain.proceedAsync(action, context);
+    future.addCallback(new DispatchFutureCallback<R>() {
+      @Override
+      public void onSuccess(R result) {
+        if (result != null) {
+          resultCache.put(action, result, getTimeToLive(action), generation);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable caught) {
+      }
+    });
+    return future;
+  }
+
+  private long getTimeToLive(Action<?> action) {
+    Long timeToLive = timeToLives.get(action.getClass());
+    if (timeToLive == null || timeToLive <= 0) {
+      return resultCache.getDefaultTimeToLiveMs();
+    }
+    return timeToLive;
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractAsyncActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+import com.gwtplatform.dispatch.shared.UnsupportedActionException;
+
+/**
+ * Tests for {@link AbstractDispatchImpl#executeAsync}.
+ */
+public class AsyncDispatchTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class SyncAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class AsyncAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class UnknownAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  class SyncHandler extends AbstractActionHandler<SyncAction, FooResult> {
+    SyncHandler() {
+      super(SyncAction.class);
+    }
+
+    @Override
+    public FooResult execute(SyncAction action, ExecutionContext context) {
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(SyncAction action, FooResult result, ExecutionContext context) {
+      undone.add(action);
+    }
+  }
+
+  class AsyncHandler extends AbstractAsyncActionHandler<AsyncAction, FooResult> {
+    AsyncHandler() {
+      super(AsyncAction.class);
+    }
+
+    @Override
+    public DispatchFuture<FooResult> executeAsync(AsyncAction action, ExecutionContext context)
+        throws ActionException {
+      try {
+        context.execute(nestedAction);
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      return pending;
+    }
+
+    @Override
+    public void undo(AsyncAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  static class Registry extends AbstractEagerActionHandlerValidatorRegistryImpl {
+  }
+
+  private final List<SyncAction> undone = new ArrayList<SyncAction>();
+  private final SyncAction nestedAction = new SyncAction();
+  private DispatchFuture<FooResult> pending;
+  private AbstractDispatchImpl dispatch;
+
+  @Before
+  public void setUp() {
+    pending = new DispatchFuture<FooResult>();
+
+    Registry registry = new Registry();
+    registry.addActionHandlerValidator(SyncAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new SyncHandler()));
+    registry.addActionHandlerValidator(AsyncAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new AsyncHandler()));
+
+    dispatch = new AbstractDispatchImpl(registry) {
+    };
+  }
+
+  @Test
+  public void syncHandlerShouldCompleteImmediately() throws ActionException, ServiceException {
+    // When
+    DispatchFuture<FooResult> future = dispatch.executeAsync(new SyncAction());
+
+    // Then
+    assertTrue(future.isDone());
+    future.getResult();
+  }
+
+  @Test
+  public void asyncHandlerShouldCompleteLater() throws ActionException, ServiceException {
+    // Given
+    FooResult result = new FooResult();
+
+    // When
+    DispatchFuture<FooResult> future = dispatch.executeAsync(new AsyncAction());
+    boolean doneBefore = future.isDone();
+    pending.set(result);
+
+    // Then
+    assertFalse(doneBefore);
+    assertSame(result, future.getResult());
+    assertTrue(undone.isEmpty());
+  }
+
+  @Test
+  public void asyncFailureShouldRollBackNestedActions() throws InterruptedException {
+    // Given
+    ActionException failure = new ActionException("failed");
+    DispatchFuture<FooResult> future = dispatch.executeAsync(new AsyncAction());
+
+    // When
+    pending.setException(failure);
+
+    // Then
+    try {
+      future.get();
+      fail("Expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+    assertEquals(1, undone.size());
+    assertSame(nestedAction, undone.get(0));
+  }
+
+  @Test
+  public void cancellingShouldReachHandlerFutureAndRollBack() {
+    // Given
+    DispatchFuture<FooResult> future = dispatch.executeAsync(new AsyncAction());
+
+    // When
+    future.cancel(true);
+
+    // Then
+    assertTrue(pending.isCancelled());
+    assertEquals(1, undone.size());
+  }
+
+  @Test
+  public void blockingExecuteShouldWaitForAsyncHandler() throws ActionException, ServiceException {
+    // Given
+    FooResult result = new FooResult();
+    pending.set(result);
+
+    // When, Then
+    assertSame(result, dispatch.execute(new AsyncAction()));
+  }
+
+  @Test
+  public void unknownActionShouldFail() throws InterruptedException {
+    // When
+    DispatchFuture<FooResult> future = dispatch.executeAsync(new UnknownAction());
+
+    // Then
+    try {
+      future.get();
+      fail("Expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof UnsupportedActionException);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.ActionImpl;
+import com.gwtplatform.dispatch.shared.DispatchBatchResult;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for {@link AbstractDispatchServiceImpl#executeBatch}.
+ */
+public class ExecuteBatchTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class FailingAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class BrokenAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class SecuredAction extends ActionImpl<FooResult> {
+  }
+
+  class FakeDispatch implements Dispatch {
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A extends Action<R>, R extends Result> R execute(A action) throws ActionException, ServiceException {
+      executed.add(action);
+      if (action instanceof FailingAction) {
+        throw actionException;
+      }
+      if (action instanceof BrokenAction) {
+        throw serviceException;
+      }
+      return (R) result;
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> DispatchFuture<R> executeAsync(A action) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void undo(A action, R result) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final List<Action<?>> executed = new ArrayList<Action<?>>();
+  private final FooResult result = new FooResult();
+  private final ActionException actionException = new ActionException("failed");
+  private final ServiceException serviceException = new ServiceException("broken");
+  private AbstractDispatchServiceImpl service;
+
+  @Before
+  public void setUp() {
+    Logger logger = Logger.getLogger(ExecuteBatchTest.class.getName());
+    logger.setLevel(Level.OFF);
+    service = new AbstractDispatchServiceImpl(logger, new FakeDispatch(), new RequestProvider() {
+      @Override
+      public HttpServletRequest getServletRequest() {
+        return null;
+      }
+    }) {
+      private static final long serialVersionUID = 1L;
+    };
+  }
+
+  @Test
+  public void everyActionShouldGetItsResultAtItsIndex() throws ServiceException {
+    // Given
+    FooAction first = new FooAction();
+    FooAction second = new FooAction();
+
+    // When
+    DispatchBatchResult batchResult = service.executeBatch("cookie", new Action<?>[] {first, second});
+
+    // Then
+    assertEquals(2, batchResult.size());
+    assertSame(result, batchResult.getResult(0));
+    assertSame(result, batchResult.getResult(1));
+    assertNull(batchResult.getFailure(0));
+    assertNull(batchResult.getFailure(1));
+    assertEquals(Arrays.<Action<?>>asList(first, second), executed);
+  }
+
+  @Test
+  public void failingActionsShouldNotFailTheOthers() throws ServiceException {
+    // When
+    DispatchBatchResult batchResult = service.executeBatch("cookie", new Action<?>[] {
+        new FailingAction(), new FooAction(), new BrokenAction(), new FooAction()});
+
+    // Then
+    assertEquals(4, executed.size());
+    assertNull(batchResult.getResult(0));
+    assertSame(actionException, batchResult.getFailure(0));
+    assertSame(result, batchResult.getResult(1));
+    assertNull(batchResult.getResult(2));
+    assertSame(serviceException, batchResult.getFailure(2));
+    assertSame(result, batchResult.getResult(3));
+  }
+
+  @Test
+  public void securedActionShouldFailOnItsOwnWithoutMatchingCookie() throws ServiceException {
+    // When
+    DispatchBatchResult batchResult = service.executeBatch("cookie", new Action<?>[] {
+        new SecuredAction(), new FooAction()});
+
+    // Then
+    assertEquals(1, executed.size());
+    assertTrue(batchResult.getFailure(0) instanceof ServiceException);
+    assertSame(result, batchResult.getResult(1));
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SecureRandomTokenPool} and the token renewal of {@link AbstractRandomSecurityCookieFilter}.
+ */
+public class SecureRandomTokenPoolTest {
+
+  /**
+   * Runs the refills only when the test says so.
+   */
+  static class ManualExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      List<Runnable> toRun = new ArrayList<Runnable>(tasks);
+      tasks.clear();
+      for (Runnable task : toRun) {
+        task.run();
+      }
+    }
+  }
+
+  private static final int CAPACITY = 8;
+  private static final long LIFETIME_MS = 4000;
+
+  @Test
+  public void poolShouldBeFilledOffTheCallingThread() {
+    // Given
+    ManualExecutor executor = new ManualExecutor();
+    SecureRandomTokenPool pool = new SecureRandomTokenPool(new SecureRandom(), CAPACITY, executor);
+    assertEquals(0, pool.size());
+
+    // When
+    executor.runAll();
+
+    // Then
+    assertEquals(CAPACITY, pool.size());
+  }
+
+  @Test
+  public void drainingHalfThePoolShouldScheduleASingleRefill() {
+    // Given
+    ManualExecutor executor = new ManualExecutor();
+    SecureRandomTokenPool pool = new SecureRandomTokenPool(new SecureRandom(), CAPACITY, executor);
+    executor.runAll();
+
+    // When
+    for (int i = 0; i < CAPACITY - 1; i++) {
+      pool.take();
+    }
+
+    // Then
+    assertEquals(1, executor.tasks.size());
+    assertEquals(0, pool.getMissCount());
+    executor.runAll();
+    assertEquals(CAPACITY, pool.size());
+  }
+
+  @Test
+  public void emptyPoolShouldStillReturnUniqueTokensAndCountMisses() {
+    // Given
+    SecureRandomTokenPool pool = new SecureRandomTokenPool(new SecureRandom(), CAPACITY, new ManualExecutor());
+    Set<String> tokens = new HashSet<String>();
+
+    // When
+    for (int i = 0; i < CAPACITY; i++) {
+      tokens.add(pool.take());
+    }
+
+    // Then
+    assertEquals(CAPACITY, tokens.size());
+    assertEquals(CAPACITY, pool.getMissCount());
+  }
+
+  @Test
+  public void filterShouldOnlyRenewMissingForeignOrAgingTokens() {
+    // Given
+    AbstractRandomSecurityCookieFilter filter = new AbstractRandomSecurityCookieFilter("cookie", new SecureRandom(),
+        LIFETIME_MS) {
+    };
+    long now = 1000000000L;
+    String token = filter.newToken(now);
+
+    try {
+      // When, Then
+      assertTrue(filter.needsNewToken(null, now));
+      assertTrue(filter.needsNewToken("123456789", now));
+      assertTrue(filter.needsNewToken("zz!-123", now));
+      assertFalse(filter.needsNewToken(token, now));
+      assertFalse(filter.needsNewToken(token, now + LIFETIME_MS / 2));
+      assertTrue(filter.needsNewToken(token, now + LIFETIME_MS * 3 / 4));
+      assertTrue(filter.needsNewToken(token, now - 2000));
+    } finally {
+      filter.destroy();
+    }
+  }
+}
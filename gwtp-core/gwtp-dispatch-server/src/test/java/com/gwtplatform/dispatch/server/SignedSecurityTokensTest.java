@@ -0,0 +1,145 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SecureRandom;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SignedSecurityTokens}.
+ */
+public class SignedSecurityTokensTest {
+
+  /**
+   * Tokens with a clock controlled by the test.
+   */
+  static class TestTokens extends SignedSecurityTokens {
+    long now = 1000000;
+
+    TestTokens(String secret) {
+      super(secret.getBytes(), ROTATION_PERIOD_MS, new SecureRandom());
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  private static final long ROTATION_PERIOD_MS = 1000;
+  private static final String SECRET = "0123456789abcdef";
+
+  @Test
+  public void tokenShouldBeAcceptedByAnyNodeSharingTheSecret() {
+    // Given
+    TestTokens node1 = new TestTokens(SECRET);
+    TestTokens node2 = new TestTokens(SECRET);
+
+    // When
+    String token = node1.newToken();
+
+    // Then
+    assertTrue(node1.isValid(token));
+    assertTrue(node2.isValid(token));
+    assertFalse(node2.needsRenewal(token));
+    assertFalse(token.equals(node1.newToken()));
+  }
+
+  @Test
+  public void tokenShouldBeRejectedWithAnotherSecret() {
+    // Given
+    String token = new TestTokens(SECRET).newToken();
+
+    // When, Then
+    assertFalse(new TestTokens("fedcba9876543210").isValid(token));
+  }
+
+  @Test
+  public void tamperedTokenShouldBeRejected() {
+    // Given
+    TestTokens tokens = new TestTokens(SECRET);
+    String token = tokens.newToken();
+    char last = token.charAt(token.length() - 1);
+    char first = token.charAt(token.indexOf('.') + 1);
+
+    // When
+    String tamperedMac = token.substring(0, token.length() - 1) + (last == '0' ? '1' : '0');
+    String tamperedNonce = token.replaceFirst("\\." + first, "." + (first == '0' ? '1' : '0'));
+
+    // Then
+    assertFalse(tokens.isValid(tamperedMac));
+    assertFalse(tokens.isValid(tamperedNonce));
+  }
+
+  @Test
+  public void malformedTokensShouldBeRejected() {
+    // Given
+    TestTokens tokens = new TestTokens(SECRET);
+
+    // When, Then
+    assertFalse(tokens.isValid(null));
+    assertFalse(tokens.isValid(""));
+    assertFalse(tokens.isValid("abc"));
+    assertFalse(tokens.isValid(".."));
+    assertFalse(tokens.isValid("zzzzzzzzzzzzzzzzzzzz.00.00"));
+    assertFalse(tokens.isValid(tokens.newToken() + "0"));
+    assertTrue(tokens.needsRenewal(null));
+  }
+
+  @Test
+  public void tokenShouldBeRenewedAfterOneRotationAndRejectedAfterTwo() {
+    // Given
+    TestTokens tokens = new TestTokens(SECRET);
+    String token = tokens.newToken();
+
+    // When
+    tokens.now += ROTATION_PERIOD_MS;
+
+    // Then
+    assertTrue(tokens.isValid(token));
+    assertTrue(tokens.needsRenewal(token));
+
+    // When
+    tokens.now += ROTATION_PERIOD_MS;
+
+    // Then
+    assertFalse(tokens.isValid(token));
+  }
+
+  @Test
+  public void tokenFromTheFutureShouldBeRejected() {
+    // Given
+    TestTokens tokens = new TestTokens(SECRET);
+    tokens.now += ROTATION_PERIOD_MS;
+    String token = tokens.newToken();
+
+    // When
+    tokens.now -= ROTATION_PERIOD_MS;
+
+    // Then
+    assertFalse(tokens.isValid(token));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shortSecretShouldBeRefused() {
+    new TestTokens("short");
+  }
+}
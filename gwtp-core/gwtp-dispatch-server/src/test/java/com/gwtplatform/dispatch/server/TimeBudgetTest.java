@@ -0,0 +1,253 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractAsyncActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionCancelledException;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.TimeBudget;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for the {@link TimeBudget} of actions and the cancellation of their {@link ExecutionContext}.
+ */
+public class TimeBudgetTest {
+
+  private static final long WAIT_LIMIT_MS = 5000;
+
+  static class FooResult implements Result {
+  }
+
+  static class WriteAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  /**
+   * Writes, waits for its budget to be spent, then writes again.
+   */
+  @TimeBudget(20)
+  static class SlowAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class UnannotatedSlowAction extends SlowAction {
+  }
+
+  @TimeBudget(0)
+  static class UnlimitedAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class AsyncAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  class WriteHandler extends AbstractActionHandler<WriteAction, FooResult> {
+    WriteHandler() {
+      super(WriteAction.class);
+    }
+
+    @Override
+    public FooResult execute(WriteAction action, ExecutionContext context) {
+      calls.add("execute write");
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(WriteAction action, FooResult result, ExecutionContext context) {
+      calls.add("undo write");
+    }
+  }
+
+  class SlowHandler<A extends UnsecuredActionImpl<FooResult>> extends AbstractActionHandler<A, FooResult> {
+    SlowHandler(Class<A> actionClass) {
+      super(actionClass);
+    }
+
+    @Override
+    public FooResult execute(A action, ExecutionContext context) throws ActionException {
+      try {
+        context.execute(new WriteAction());
+        waitForCancellation((CancellableContext) context);
+        context.execute(new WriteAction());
+      } catch (ServiceException e) {
+        caught = e;
+        throw new ActionException(e);
+      }
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(A action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  class UnlimitedHandler extends AbstractActionHandler<UnlimitedAction, FooResult> {
+    UnlimitedHandler() {
+      super(UnlimitedAction.class);
+    }
+
+    @Override
+    public FooResult execute(UnlimitedAction action, ExecutionContext context) {
+      remainingTimeMs = ((CancellableContext) context).getRemainingTimeMs();
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(UnlimitedAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  class AsyncHandler extends AbstractAsyncActionHandler<AsyncAction, FooResult> {
+    AsyncHandler() {
+      super(AsyncAction.class);
+    }
+
+    @Override
+    public DispatchFuture<FooResult> executeAsync(AsyncAction action, ExecutionContext context) {
+      asyncContext = context;
+      return new DispatchFuture<FooResult>();
+    }
+
+    @Override
+    public void undo(AsyncAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  private final List<String> calls = new ArrayList<String>();
+  private ServiceException caught;
+  private long remainingTimeMs;
+  private ExecutionContext asyncContext;
+  private AbstractDispatchImpl dispatch;
+
+  @Before
+  public void setUp() {
+    AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+    };
+    registry.addActionHandlerValidator(WriteAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new WriteHandler()));
+    registry.addActionHandlerValidator(SlowAction.class, new ActionHandlerValidatorInstance(
+        new AbstractDefaultActionValidator(), new SlowHandler<SlowAction>(SlowAction.class)));
+    registry.addActionHandlerValidator(UnannotatedSlowAction.class, new ActionHandlerValidatorInstance(
+        new AbstractDefaultActionValidator(), new SlowHandler<UnannotatedSlowAction>(UnannotatedSlowAction.class)));
+    registry.addActionHandlerValidator(UnlimitedAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new UnlimitedHandler()));
+    registry.addActionHandlerValidator(AsyncAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new AsyncHandler()));
+
+    dispatch = new AbstractDispatchImpl(registry) {
+    };
+  }
+
+  @Test
+  public void spentBudgetShouldFailNestedExecutionAndRollBack() throws ServiceException {
+    // When
+    executeExpectingFailure(new SlowAction());
+
+    // Then
+    assertTrue(caught instanceof DeadlineExceededException);
+    assertEquals(Arrays.asList("execute write", "undo write"), calls);
+  }
+
+  @Test
+  public void defaultBudgetShouldApplyToUnannotatedActions() throws ServiceException {
+    // Given
+    dispatch.setDefaultTimeBudgetMs(20);
+
+    // When
+    executeExpectingFailure(new UnannotatedSlowAction());
+
+    // Then
+    assertTrue(caught instanceof DeadlineExceededException);
+    assertEquals(Arrays.asList("execute write", "undo write"), calls);
+  }
+
+  @Test
+  public void zeroBudgetShouldOverrideDefaultBudget() throws ActionException, ServiceException {
+    // Given
+    dispatch.setDefaultTimeBudgetMs(20);
+
+    // When
+    dispatch.execute(new UnlimitedAction());
+
+    // Then
+    assertEquals(Long.MAX_VALUE, remainingTimeMs);
+  }
+
+  @Test
+  public void cancellingAsyncExecutionShouldCancelContext() throws ServiceException {
+    // Given
+    DispatchFuture<FooResult> future = dispatch.executeAsync(new AsyncAction());
+    assertFalse(((CancellableContext) asyncContext).isCancelled());
+
+    // When
+    future.cancel(true);
+
+    // Then
+    assertTrue(((CancellableContext) asyncContext).isCancelled());
+    try {
+      asyncContext.execute(new WriteAction());
+      fail("Expected ActionCancelledException");
+    } catch (ActionCancelledException e) {
+      assertFalse(e instanceof DeadlineExceededException);
+    } catch (ActionException e) {
+      fail("Expected ActionCancelledException");
+    }
+    assertTrue(calls.isEmpty());
+  }
+
+  private void waitForCancellation(CancellableContext context) {
+    long start = System.currentTimeMillis();
+    while (!context.isCancelled()) {
+      assertTrue(context.getRemainingTimeMs() <= 20);
+      if (System.currentTimeMillis() - start > WAIT_LIMIT_MS) {
+        fail("The context was never cancelled");
+      }
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    assertEquals(0, context.getRemainingTimeMs());
+  }
+
+  private void executeExpectingFailure(UnsecuredActionImpl<FooResult> action) throws ServiceException {
+    try {
+      dispatch.execute(action);
+      fail("Expected ActionException");
+    } catch (ActionException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import java.lang.management.ManagementFactory;
+
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractNonUndoableActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Compares the bytes allocated per {@link AbstractDispatchImpl#execute} call, depending on whether the sub-actions
+ * run through the {@link ExecutionContext} can be undone and on whether the undo journal is enabled. Relies on the
+ * per-thread allocation counter of HotSpot. It is not picked up by surefire; run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.gwtplatform.dispatch.server.UndoJournalAllocationBenchmark
+ * </pre>
+ */
+public class UndoJournalAllocationBenchmark {
+
+  private static final int SUB_ACTIONS = 4;
+  private static final int WARMUP_CALLS = 200000;
+  private static final int MEASURED_CALLS = 1000000;
+
+  static class FooResult implements Result {
+  }
+
+  static class UndoableAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class NonUndoableAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class CompoundAction extends UnsecuredActionImpl<FooResult> {
+    private final UnsecuredActionImpl<FooResult> subAction;
+
+    CompoundAction(UnsecuredActionImpl<FooResult> subAction) {
+      this.subAction = subAction;
+    }
+  }
+
+  static final FooResult RESULT = new FooResult();
+
+  static class UndoableHandler extends AbstractActionHandler<UndoableAction, FooResult> {
+    UndoableHandler() {
+      super(UndoableAction.class);
+    }
+
+    @Override
+    public FooResult execute(UndoableAction action, ExecutionContext context) {
+      return RESULT;
+    }
+
+    @Override
+    public void undo(UndoableAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  static class NonUndoableHandler extends AbstractNonUndoableActionHandler<NonUndoableAction, FooResult> {
+    NonUndoableHandler() {
+      super(NonUndoableAction.class);
+    }
+
+    @Override
+    public FooResult execute(NonUndoableAction action, ExecutionContext context) {
+      return RESULT;
+    }
+  }
+
+  static class CompoundHandler extends AbstractNonUndoableActionHandler<CompoundAction, FooResult> {
+    CompoundHandler() {
+      super(CompoundAction.class);
+    }
+
+    @Override
+    public FooResult execute(CompoundAction action, ExecutionContext context) throws ActionException {
+      try {
+        for (int i = 0; i < SUB_ACTIONS; i++) {
+          context.execute(action.subAction);
+        }
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      return RESULT;
+    }
+  }
+
+  static class BenchmarkDispatch extends AbstractDispatchImpl {
+    BenchmarkDispatch(boolean undoJournalEnabled) {
+      super(createRegistry());
+      setUndoJournalEnabled(undoJournalEnabled);
+    }
+  }
+
+  public static void main(String[] args) throws ActionException, ServiceException {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    System.out.println("sub-actions\tjournal\tbytes/call");
+    print(threads, "none", true, new NonUndoableAction());
+    print(threads, "non-undoable", true, new CompoundAction(new NonUndoableAction()));
+    print(threads, "undoable", true, new CompoundAction(new UndoableAction()));
+    print(threads, "undoable", false, new CompoundAction(new UndoableAction()));
+  }
+
+  private static void print(com.sun.management.ThreadMXBean threads, String subActions, boolean journal,
+      UnsecuredActionImpl<FooResult> action) throws ActionException, ServiceException {
+    BenchmarkDispatch dispatch = new BenchmarkDispatch(journal);
+    run(dispatch, action, WARMUP_CALLS);
+
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    run(dispatch, action, MEASURED_CALLS);
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    System.out.println(subActions + "\t" + (journal ? "enabled" : "disabled") + "\t"
+        + (allocated / MEASURED_CALLS));
+  }
+
+  private static void run(AbstractDispatchImpl dispatch, UnsecuredActionImpl<FooResult> action, int calls)
+      throws ActionException, ServiceException {
+    for (int i = 0; i < calls; i++) {
+      dispatch.execute(action);
+    }
+  }
+
+  private static AbstractEagerActionHandlerValidatorRegistryImpl createRegistry() {
+    AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+    };
+    AbstractDefaultActionValidator validator = new AbstractDefaultActionValidator();
+    registry.addActionHandlerValidator(UndoableAction.class,
+        new ActionHandlerValidatorInstance(validator, new UndoableHandler()));
+    registry.addActionHandlerValidator(NonUndoableAction.class,
+        new ActionHandlerValidatorInstance(validator, new NonUndoableHandler()));
+    registry.addActionHandlerValidator(CompoundAction.class,
+        new ActionHandlerValidatorInstance(validator, new CompoundHandler()));
+    return registry;
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractNonUndoableActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for the undo journal of {@link AbstractDispatchImpl}'s execution context.
+ */
+public class UndoJournalTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class WriteAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class ReadAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class CompoundAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class UndoAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  class WriteHandler extends AbstractActionHandler<WriteAction, FooResult> {
+    WriteHandler() {
+      super(WriteAction.class);
+    }
+
+    @Override
+    public FooResult execute(WriteAction action, ExecutionContext context) {
+      calls.add("execute write");
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(WriteAction action, FooResult result, ExecutionContext context) {
+      calls.add("undo write");
+    }
+  }
+
+  class ReadHandler extends AbstractNonUndoableActionHandler<ReadAction, FooResult> {
+    ReadHandler() {
+      super(ReadAction.class);
+    }
+
+    @Override
+    public FooResult execute(ReadAction action, ExecutionContext context) {
+      calls.add("execute read");
+      return new FooResult();
+    }
+  }
+
+  /**
+   * Reads, writes, reads again, then fails.
+   */
+  class CompoundHandler extends AbstractActionHandler<CompoundAction, FooResult> {
+    CompoundHandler() {
+      super(CompoundAction.class);
+    }
+
+    @Override
+    public FooResult execute(CompoundAction action, ExecutionContext context) throws ActionException {
+      try {
+        context.execute(new ReadAction());
+        context.execute(new WriteAction());
+        context.execute(new ReadAction());
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      throw new ActionException("Failed");
+    }
+
+    @Override
+    public void undo(CompoundAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  /**
+   * Undoes a write through the context, then fails.
+   */
+  class UndoHandler extends AbstractActionHandler<UndoAction, FooResult> {
+    UndoHandler() {
+      super(UndoAction.class);
+    }
+
+    @Override
+    public FooResult execute(UndoAction action, ExecutionContext context) throws ActionException {
+      try {
+        context.undo(new WriteAction(), new FooResult());
+      } catch (ServiceException e) {
+        throw new ActionException(e);
+      }
+      throw new ActionException("Failed");
+    }
+
+    @Override
+    public void undo(UndoAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  private final List<String> calls = new ArrayList<String>();
+  private AbstractDispatchImpl dispatch;
+
+  @Before
+  public void setUp() {
+    AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+    };
+    registry.addActionHandlerValidator(WriteAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new WriteHandler()));
+    registry.addActionHandlerValidator(ReadAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new ReadHandler()));
+    registry.addActionHandlerValidator(CompoundAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new CompoundHandler()));
+    registry.addActionHandlerValidator(UndoAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new UndoHandler()));
+
+    dispatch = new AbstractDispatchImpl(registry) {
+    };
+  }
+
+  @Test
+  public void rollbackShouldOnlyUndoUndoableActions() throws ServiceException {
+    // When
+    executeExpectingFailure(new CompoundAction());
+
+    // Then
+    assertEquals(Arrays.asList("execute read", "execute write", "execute read", "undo write"), calls);
+  }
+
+  @Test
+  public void disabledJournalShouldNotRollBack() throws ServiceException {
+    // Given
+    dispatch.setUndoJournalEnabled(false);
+
+    // When
+    executeExpectingFailure(new CompoundAction());
+
+    // Then
+    assertEquals(Arrays.asList("execute read", "execute write", "execute read"), calls);
+  }
+
+  @Test
+  public void undoThroughContextShouldUndoAndBeReExecutedOnRollback() throws ServiceException {
+    // When
+    executeExpectingFailure(new UndoAction());
+
+    // Then
+    assertEquals(Arrays.asList("undo write", "execute write"), calls);
+  }
+
+  private void executeExpectingFailure(UnsecuredActionImpl<FooResult> action) throws ServiceException {
+    try {
+      dispatch.execute(action);
+      fail("Expected ActionException");
+    } catch (ActionException e) {
+      // Expected
+    }
+  }
+}
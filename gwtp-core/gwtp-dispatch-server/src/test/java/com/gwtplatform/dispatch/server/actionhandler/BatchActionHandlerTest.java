@@ -0,0 +1,216 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.AbstractDispatchImpl;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchAction;
+import com.gwtplatform.dispatch.shared.BatchAction.ExecutionStrategy;
+import com.gwtplatform.dispatch.shared.BatchAction.OnException;
+import com.gwtplatform.dispatch.shared.BatchResult;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Tests for the parallel execution strategy of {@link BatchActionHandler}.
+ */
+public class BatchActionHandlerTest {
+
+  static class ValueResult implements Result {
+    final int value;
+
+    ValueResult(int value) {
+      this.value = value;
+    }
+  }
+
+  static class ValueAction extends UnsecuredActionImpl<ValueResult> {
+    final int value;
+    final long delayMs;
+    final boolean failing;
+
+    ValueAction(int value, long delayMs, boolean failing) {
+      this.value = value;
+      this.delayMs = delayMs;
+      this.failing = failing;
+    }
+  }
+
+  static class TestBatchAction extends BatchAction {
+    TestBatchAction(OnException onException, ValueAction... actions) {
+      super(onException, ExecutionStrategy.PARALLEL, actions);
+    }
+
+    @Override
+    public String getServiceName() {
+      return "dispatch/";
+    }
+
+    @Override
+    public boolean isSecured() {
+      return false;
+    }
+  }
+
+  class ValueHandler extends AbstractActionHandler<ValueAction, ValueResult> {
+    ValueHandler() {
+      super(ValueAction.class);
+    }
+
+    @Override
+    public ValueResult execute(ValueAction action, ExecutionContext context) throws ActionException {
+      threadNames.add(Thread.currentThread().getName());
+      started.countDown();
+      try {
+        // Waits for all the actions to be running at the same time, when they are expected to.
+        started.await(action.delayMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        throw new ActionException(e);
+      }
+      if (action.failing) {
+        throw new ActionException("Action " + action.value + " failed");
+      }
+      return new ValueResult(action.value);
+    }
+
+    @Override
+    public void undo(ValueAction action, ValueResult result, ExecutionContext context) {
+      undone.add(action.value);
+    }
+  }
+
+  static class Registry extends AbstractEagerActionHandlerValidatorRegistryImpl {
+  }
+
+  private final List<String> threadNames = new CopyOnWriteArrayList<String>();
+  private final List<Integer> undone = new CopyOnWriteArrayList<Integer>();
+  private CountDownLatch started;
+  private Registry registry;
+  private AbstractDispatchImpl dispatch;
+
+  @Before
+  public void setUp() {
+    registry = new Registry();
+    registry.addActionHandlerValidator(ValueAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new ValueHandler()));
+    registry.addActionHandlerValidator(TestBatchAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new BatchActionHandler()));
+    dispatch = new AbstractDispatchImpl(registry) {
+    };
+  }
+
+  @Test
+  public void parallelBatchShouldRunConcurrentlyAndKeepOrder() throws ActionException, ServiceException {
+    // Given
+    started = new CountDownLatch(4);
+    TestBatchAction batch = new TestBatchAction(OnException.ROLLBACK, new ValueAction(0, 5000, false),
+        new ValueAction(1, 5000, false), new ValueAction(2, 5000, false), new ValueAction(3, 5000, false));
+
+    // When
+    long start = System.currentTimeMillis();
+    BatchResult result = dispatch.execute(batch);
+    long elapsed = System.currentTimeMillis() - start;
+
+    // Then
+    assertTrue("Sub-actions didn't run concurrently", elapsed < 4000);
+    assertEquals(4, new HashSet<String>(threadNames).size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i, ((ValueResult) result.getResults().get(i)).value);
+    }
+  }
+
+  @Test
+  public void failureShouldRollBackCompletedSubActions() throws ServiceException {
+    // Given
+    started = new CountDownLatch(3);
+    TestBatchAction batch = new TestBatchAction(OnException.ROLLBACK, new ValueAction(0, 5000, false),
+        new ValueAction(1, 5000, false), new ValueAction(2, 5000, true));
+
+    // When
+    try {
+      dispatch.execute(batch);
+      fail("Expected ActionException");
+    } catch (ActionException e) {
+      // Then
+      assertEquals("Action 2 failed", e.getMessage());
+    }
+    Set<Integer> undoneValues = new HashSet<Integer>(undone);
+    assertEquals(new HashSet<Integer>(Arrays.asList(0, 1)), undoneValues);
+  }
+
+  @Test
+  public void continueShouldLeaveFailedSlotEmpty() throws ActionException, ServiceException {
+    // Given
+    started = new CountDownLatch(3);
+    TestBatchAction batch = new TestBatchAction(OnException.CONTINUE, new ValueAction(0, 5000, false),
+        new ValueAction(1, 5000, true), new ValueAction(2, 5000, false));
+
+    // When
+    BatchResult result = dispatch.execute(batch);
+
+    // Then
+    assertEquals(0, ((ValueResult) result.getResults().get(0)).value);
+    assertNull(result.getResults().get(1));
+    assertEquals(2, ((ValueResult) result.getResults().get(2)).value);
+    assertTrue(undone.isEmpty());
+  }
+
+  @Test
+  public void saturatedExecutorShouldFallBackToCallingThread() throws ActionException, ServiceException {
+    // Given
+    registry.addActionHandlerValidator(TestBatchAction.class, new ActionHandlerValidatorInstance(
+        new AbstractDefaultActionValidator(), new BatchActionHandler(new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+          }
+        })));
+    started = new CountDownLatch(0);
+    TestBatchAction batch = new TestBatchAction(OnException.ROLLBACK, new ValueAction(0, 0, false),
+        new ValueAction(1, 0, false));
+
+    // When
+    BatchResult result = dispatch.execute(batch);
+
+    // Then
+    assertEquals(1, ((ValueResult) result.getResults().get(1)).value);
+    assertEquals(Thread.currentThread().getName(), threadNames.get(1));
+  }
+}
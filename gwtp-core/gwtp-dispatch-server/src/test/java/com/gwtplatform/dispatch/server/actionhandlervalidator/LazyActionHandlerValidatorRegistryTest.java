@@ -0,0 +1,194 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionhandlervalidator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link AbstractLazyActionHandlerValidatorRegistryImpl}.
+ */
+public class LazyActionHandlerValidatorRegistryTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class FooHandler extends AbstractActionHandler<FooAction, FooResult> {
+    FooHandler() {
+      super(FooAction.class);
+    }
+
+    @Override
+    public FooResult execute(FooAction action, ExecutionContext context) throws ActionException {
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(FooAction action, FooResult result, ExecutionContext context) throws ActionException {
+    }
+  }
+
+  static class FooValidator extends AbstractDefaultActionValidator {
+  }
+
+  /**
+   * A registry that counts instantiations and makes them slow, to widen the window in which threads race.
+   */
+  static class CountingRegistry extends AbstractLazyActionHandlerValidatorRegistryImpl {
+    final ConcurrentMap<Class<?>, AtomicInteger> instantiations = new ConcurrentHashMap<Class<?>, AtomicInteger>();
+
+    @Override
+    protected <B> B getInstance(Class<B> clazz) {
+      instantiations.putIfAbsent(clazz, new AtomicInteger());
+      instantiations.get(clazz).incrementAndGet();
+      try {
+        Thread.sleep(20);
+        return clazz.getDeclaredConstructor().newInstance();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    int instantiationsOf(Class<?> clazz) {
+      AtomicInteger count = instantiations.get(clazz);
+      return count == null ? 0 : count.get();
+    }
+  }
+
+  private static final int THREADS = 64;
+
+  @Test
+  public void racingThreadsShouldInstantiateHandlerAndValidatorOnce() throws InterruptedException {
+    // Given
+    final CountingRegistry registry = new CountingRegistry();
+    registry.addActionHandlerValidatorClass(FooAction.class,
+        new ActionHandlerValidatorClass<FooAction, FooResult>(FooHandler.class, FooValidator.class));
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    final AtomicReferenceArray<ActionHandlerValidatorInstance> seen =
+        new AtomicReferenceArray<ActionHandlerValidatorInstance>(THREADS);
+
+    for (int i = 0; i < THREADS; i++) {
+      final int index = i;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            seen.set(index, registry.findActionHandlerValidator(new FooAction()));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+
+    // When
+    start.countDown();
+    done.await();
+
+    // Then
+    assertEquals(1, registry.instantiationsOf(FooHandler.class));
+    assertEquals(1, registry.instantiationsOf(FooValidator.class));
+    assertNotNull(seen.get(0));
+    for (int i = 1; i < THREADS; i++) {
+      assertSame(seen.get(0), seen.get(i));
+    }
+  }
+
+  @Test
+  public void unregisteredActionShouldNotBeFound() {
+    // Given
+    CountingRegistry registry = new CountingRegistry();
+
+    // When, Then
+    assertNull(registry.findActionHandlerValidator(new FooAction()));
+  }
+
+  @Test
+  public void removedActionShouldNotBeFound() {
+    // Given
+    CountingRegistry registry = new CountingRegistry();
+    ActionHandlerValidatorClass<FooAction, FooResult> handlerValidatorClass =
+        new ActionHandlerValidatorClass<FooAction, FooResult>(FooHandler.class, FooValidator.class);
+    registry.addActionHandlerValidatorClass(FooAction.class, handlerValidatorClass);
+    registry.findActionHandlerValidator(new FooAction());
+
+    // When
+    registry.removeActionHandlerValidatorClass(FooAction.class, handlerValidatorClass);
+
+    // Then
+    assertNull(registry.findActionHandlerValidator(new FooAction()));
+    assertNull(registry.findActionValidator(FooValidator.class));
+  }
+
+  @Test
+  public void removingNeverUsedActionShouldNotFail() {
+    // Given
+    CountingRegistry registry = new CountingRegistry();
+    ActionHandlerValidatorClass<FooAction, FooResult> handlerValidatorClass =
+        new ActionHandlerValidatorClass<FooAction, FooResult>(FooHandler.class, FooValidator.class);
+    registry.addActionHandlerValidatorClass(FooAction.class, handlerValidatorClass);
+
+    // When
+    registry.removeActionHandlerValidatorClass(FooAction.class, handlerValidatorClass);
+
+    // Then
+    assertNull(registry.findActionHandlerValidator(new FooAction()));
+  }
+
+  @Test
+  public void clearShouldRecreateInstancesOnNextLookup() {
+    // Given
+    CountingRegistry registry = new CountingRegistry();
+    registry.addActionHandlerValidatorClass(FooAction.class,
+        new ActionHandlerValidatorClass<FooAction, FooResult>(FooHandler.class, FooValidator.class));
+    ActionHandlerValidatorInstance first = registry.findActionHandlerValidator(new FooAction());
+
+    // When
+    registry.clearActionHandlerValidators();
+    ActionHandlerValidatorInstance second = registry.findActionHandlerValidator(new FooAction());
+
+    // Then
+    assertNotSame(first, second);
+    assertEquals(2, registry.instantiationsOf(FooHandler.class));
+  }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.actionpipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandler.ActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorRegistry;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.server.actionvalidator.ActionValidator;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+import com.gwtplatform.dispatch.shared.UnsupportedActionException;
+
+/**
+ * Unit tests for {@link ActionPipelineCache} and {@link ActionPipeline}.
+ */
+public class ActionPipelineCacheTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class FooHandler extends AbstractActionHandler<FooAction, FooResult> {
+    FooHandler() {
+      super(FooAction.class);
+    }
+
+    @Override
+    public FooResult execute(FooAction action, ExecutionContext context) throws ActionException {
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(FooAction action, FooResult result, ExecutionContext context) throws ActionException {
+    }
+  }
+
+  static class CountingRegistry extends AbstractEagerActionHandlerValidatorRegistryImpl {
+    int lookups;
+
+    @Override
+    public <A extends Action<R>, R extends Result> ActionHandlerValidatorInstance findActionHandlerValidator(A action) {
+      lookups++;
+      return super.findActionHandlerValidator(action);
+    }
+  }
+
+  static class RecordingInterceptor implements ActionInterceptor {
+    private final String name;
+    private final List<String> calls;
+    private final boolean applies;
+
+    RecordingInterceptor(String name, List<String> calls, boolean applies) {
+      this.name = name;
+      this.calls = calls;
+      this.applies = applies;
+    }
+
+    @Override
+    public boolean appliesTo(Class<? extends Action<?>> actionClass, ActionHandler<?, ?> actionHandler) {
+      return applies;
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> R intercept(A action, ExecutionContext context,
+        ActionInterceptorChain<A, R> chain) throws ActionException, ServiceException {
+      calls.add(name);
+      return chain.proceed(action, context);
+    }
+  }
+
+  private CountingRegistry registry;
+
+  @Before
+  public void setUp() {
+    registry = new CountingRegistry();
+    registry.addActionHandlerValidator(FooAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new FooHandler()));
+  }
+
+  @Test
+  public void pipelineShouldBeResolvedOnce() throws ServiceException {
+    // Given
+    ActionPipelineCache cache = new ActionPipelineCache(registry);
+
+    // When
+    ActionPipeline<FooAction, FooResult> first = cache.findPipeline(new FooAction());
+    ActionPipeline<FooAction, FooResult> second = cache.findPipeline(new FooAction());
+
+    // Then
+    assertSame(first, second);
+    assertEquals(1, registry.lookups);
+  }
+
+  @Test
+  public void pipelineShouldBeInvalidatedWhenRegistrationChanges() throws ServiceException {
+    // Given
+    ActionPipelineCache cache = new ActionPipelineCache(registry);
+    ActionPipeline<FooAction, FooResult> first = cache.findPipeline(new FooAction());
+    FooHandler newHandler = new FooHandler();
+
+    // When
+    registry.addActionHandlerValidator(FooAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), newHandler));
+    ActionPipeline<FooAction, FooResult> second = cache.findPipeline(new FooAction());
+
+    // Then
+    assertNotSame(first, second);
+    assertSame(newHandler, second.getActionHandler());
+  }
+
+  @Test(expected = UnsupportedActionException.class)
+  public void removedActionShouldBeUnsupported() throws ServiceException {
+    // Given
+    ActionPipelineCache cache = new ActionPipelineCache(registry);
+    cache.findPipeline(new FooAction());
+
+    // When
+    registry.removeActionHandlerValidator(FooAction.class);
+
+    // Then
+    cache.findPipeline(new FooAction());
+  }
+
+  @Test
+  public void pipelineShouldNotBeCachedForUnobservableRegistry() throws ServiceException {
+    // Given
+    final int[] lookups = new int[1];
+    ActionPipelineCache cache = new ActionPipelineCache(new ActionHandlerValidatorRegistry() {
+      @Override
+      public void clearActionHandlerValidators() {
+      }
+
+      @Override
+      public <A extends Action<R>, R extends Result> ActionHandlerValidatorInstance findActionHandlerValidator(A action) {
+        lookups[0]++;
+        return registry.findActionHandlerValidator(action);
+      }
+
+      @Override
+      public ActionValidator findActionValidator(Class<? extends ActionValidator> actionValidatorClass) {
+        return null;
+      }
+    });
+
+    // When
+    cache.findPipeline(new FooAction());
+    cache.findPipeline(new FooAction());
+
+    // Then
+    assertEquals(2, lookups[0]);
+  }
+
+  @Test
+  public void applicableInterceptorsShouldRunInOrder() throws ActionException, ServiceException {
+    // Given
+    List<String> calls = new ArrayList<String>();
+    ActionPipelineCache cache = new ActionPipelineCache(registry, Arrays.asList(
+        new RecordingInterceptor("outer", calls, true),
+        new RecordingInterceptor("skipped", calls, false),
+        new RecordingInterceptor("inner", calls, true)));
+    FooAction action = new FooAction();
+
+    // When
+    cache.findPipeline(action).execute(action, null);
+
+    // Then
+    assertEquals(Arrays.asList("outer", "inner"), calls);
+  }
+
+  @Test
+  public void rejectedActionShouldNotReachInterceptors() throws ActionException {
+    // Given
+    List<String> calls = new ArrayList<String>();
+    registry.addActionHandlerValidator(FooAction.class, new ActionHandlerValidatorInstance(
+        new AbstractDefaultActionValidator() {
+          @Override
+          public boolean isValid(Action<? extends Result> action) {
+            return false;
+          }
+        }, new FooHandler()));
+    ActionPipelineCache cache = new ActionPipelineCache(registry,
+        Arrays.asList(new RecordingInterceptor("interceptor", calls, true)));
+    FooAction action = new FooAction();
+
+    // When
+    try {
+      cache.findPipeline(action).execute(action, null);
+      fail("Expected ServiceException");
+    } catch (ServiceException e) {
+      // Then
+      assertEquals(0, calls.size());
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.coalescing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.CancellableContext;
+import com.gwtplatform.dispatch.server.DispatchFuture;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionPipelineCache;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.Coalesced;
+import com.gwtplatform.dispatch.shared.DeadlineExceededException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link CoalescingInterceptor}.
+ */
+public class CoalescingInterceptorTest {
+
+  static class FooResult implements Result {
+  }
+
+  @Coalesced
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof FooAction;
+    }
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+  }
+
+  static class BarAction extends FooAction {
+  }
+
+  /**
+   * A handler that blocks until released, so that callers pile up while it is in flight.
+   */
+  static class BlockingHandler<A extends FooAction> extends AbstractActionHandler<A, FooResult> {
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile boolean fail;
+
+    BlockingHandler(Class<A> actionClass) {
+      super(actionClass);
+    }
+
+    @Override
+    public FooResult execute(A action, ExecutionContext context) throws ActionException {
+      executions.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (fail) {
+        throw new ActionException("Failed");
+      }
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(A action, FooResult result, ExecutionContext context) throws ActionException {
+    }
+  }
+
+  /**
+   * A context with a fixed remaining time budget.
+   */
+  static class BudgetContext implements ExecutionContext, CancellableContext {
+    private final long remainingTimeMs;
+
+    BudgetContext(long remainingTimeMs) {
+      this.remainingTimeMs = remainingTimeMs;
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> R execute(A action) throws ActionException, ServiceException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A extends Action<R>, R extends Result> void undo(A action, R result) throws ActionException,
+        ServiceException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getRemainingTimeMs() {
+      return remainingTimeMs;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  }
+
+  private static final int THREADS = 16;
+
+  private BlockingHandler<FooAction> fooHandler;
+  private BlockingHandler<BarAction> barHandler;
+  private CoalescingInterceptor interceptor;
+  private ActionPipelineCache pipelines;
+
+  @Before
+  public void setUp() {
+    fooHandler = new BlockingHandler<FooAction>(FooAction.class);
+    barHandler = new BlockingHandler<BarAction>(BarAction.class);
+    interceptor = new CoalescingInterceptor();
+
+    AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+    };
+    registry.addActionHandlerValidator(FooAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), fooHandler));
+    registry.addActionHandlerValidator(BarAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), barHandler));
+    pipelines = new ActionPipelineCache(registry, Arrays.asList(interceptor));
+  }
+
+  @Test
+  public void concurrentEqualActionsShouldShareOneExecution() throws InterruptedException {
+    // Given
+    AtomicReferenceArray<Object> outcomes = executeConcurrently(new FooAction(), fooHandler);
+
+    // Then
+    assertEquals(1, fooHandler.executions.get());
+    assertEquals(THREADS - 1, interceptor.getCoalescedCount());
+    assertEquals(0, interceptor.getInFlightCount());
+    assertTrue(outcomes.get(0) instanceof FooResult);
+    for (int i = 1; i < THREADS; i++) {
+      assertSame(outcomes.get(0), outcomes.get(i));
+    }
+  }
+
+  @Test
+  public void failureShouldBeSharedToo() throws InterruptedException {
+    // Given
+    fooHandler.fail = true;
+
+    // When
+    AtomicReferenceArray<Object> outcomes = executeConcurrently(new FooAction(), fooHandler);
+
+    // Then
+    assertEquals(1, fooHandler.executions.get());
+    assertTrue(outcomes.get(0) instanceof ActionException);
+    for (int i = 1; i < THREADS; i++) {
+      assertSame(outcomes.get(0), outcomes.get(i));
+    }
+  }
+
+  @Test
+  public void actionWithoutSwitchShouldNotBeCoalesced() throws InterruptedException {
+    // Given
+    barHandler.release.countDown();
+
+    // When
+    executeConcurrently(new BarAction(), barHandler);
+
+    // Then
+    assertEquals(THREADS, barHandler.executions.get());
+    assertEquals(0, interceptor.getCoalescedCount());
+  }
+
+  @Test
+  public void cancellingFollowerShouldNotCancelSharedExecution() throws ActionException, ServiceException,
+      InterruptedException {
+    // Given
+    final FooAction action = new FooAction();
+    final DispatchFuture<FooResult> first = new DispatchFuture<FooResult>();
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          first.set(pipelines.findPipeline(action).execute(action, null));
+        } catch (Exception e) {
+          first.setException(e);
+        }
+      }
+    }).start();
+    fooHandler.started.await(5, TimeUnit.SECONDS);
+    DispatchFuture<FooResult> second = pipelines.findPipeline(action).executeAsync(action, null);
+    DispatchFuture<FooResult> third = pipelines.findPipeline(action).executeAsync(action, null);
+
+    // When
+    second.cancel(true);
+    fooHandler.release.countDown();
+
+    // Then
+    assertTrue(second.isCancelled());
+    assertSame(first.getResult(), third.getResult());
+    assertEquals(1, fooHandler.executions.get());
+  }
+
+  @Test
+  public void synchronousFollowerShouldGiveUpAfterTimeout() throws ActionException, ServiceException,
+      InterruptedException {
+    // Given
+    interceptor.setFollowerTimeoutMs(20);
+    FooAction action = new FooAction();
+    DispatchFuture<FooResult> first = executeInBackground(action);
+    fooHandler.started.await(5, TimeUnit.SECONDS);
+
+    // When
+    try {
+      pipelines.findPipeline(action).execute(action, null);
+      fail("Expected a ServiceException");
+    } catch (ServiceException e) {
+      // Then
+      assertTrue(e.getMessage().contains("Gave up"));
+    }
+    fooHandler.release.countDown();
+    first.getResult();
+    assertEquals(1, fooHandler.executions.get());
+  }
+
+  @Test
+  public void synchronousFollowerShouldGiveUpOnceItsBudgetIsSpent() throws ActionException, ServiceException,
+      InterruptedException {
+    // Given
+    FooAction action = new FooAction();
+    DispatchFuture<FooResult> first = executeInBackground(action);
+    fooHandler.started.await(5, TimeUnit.SECONDS);
+
+    // When
+    try {
+      pipelines.findPipeline(action).execute(action, new BudgetContext(20));
+      fail("Expected a ServiceException");
+    } catch (ServiceException e) {
+      // Then
+      assertTrue(e.getCause() instanceof DeadlineExceededException);
+    }
+    fooHandler.release.countDown();
+    first.getResult();
+    assertEquals(1, fooHandler.executions.get());
+  }
+
+  private DispatchFuture<FooResult> executeInBackground(final FooAction action) {
+    final DispatchFuture<FooResult> future = new DispatchFuture<FooResult>();
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.set(pipelines.findPipeline(action).execute(action, null));
+        } catch (Exception e) {
+          future.setException(e);
+        }
+      }
+    }).start();
+    return future;
+  }
+
+  private <A extends FooAction> AtomicReferenceArray<Object> executeConcurrently(final A action,
+      BlockingHandler<A> handler) throws InterruptedException {
+    final AtomicReferenceArray<Object> outcomes = new AtomicReferenceArray<Object>(THREADS);
+    final CountDownLatch done = new CountDownLatch(THREADS);
+
+    for (int i = 0; i < THREADS; i++) {
+      final int index = i;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            outcomes.set(index, pipelines.findPipeline(action).execute(action, null));
+          } catch (Exception e) {
+            outcomes.set(index, e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+      if (i == 0) {
+        handler.started.await(5, TimeUnit.SECONDS);
+      }
+    }
+
+    // Give the followers time to join the execution in flight before releasing it.
+    while (interceptor.getCoalescedCount() < THREADS - 1 && handler.release.getCount() > 0) {
+      Thread.sleep(1);
+    }
+    handler.release.countDown();
+    done.await();
+    return outcomes;
+  }
+}
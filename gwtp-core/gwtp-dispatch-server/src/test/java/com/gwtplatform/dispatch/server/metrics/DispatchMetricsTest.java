@@ -0,0 +1,235 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.AbstractDispatchImpl;
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.Action;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link DispatchMetrics} and {@link LatencyHistogram}.
+ */
+public class DispatchMetricsTest {
+
+  static class FooResult implements Result {
+  }
+
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+    private final String outcome;
+
+    FooAction(String outcome) {
+      this.outcome = outcome;
+    }
+  }
+
+  static class ForbiddenAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class FooHandler extends AbstractActionHandler<FooAction, FooResult> {
+    FooHandler() {
+      super(FooAction.class);
+    }
+
+    @Override
+    public FooResult execute(FooAction action, ExecutionContext context) throws ActionException {
+      if ("nested".equals(action.outcome)) {
+        try {
+          context.execute(new FooAction("success"));
+        } catch (ServiceException e) {
+          throw new ActionException(e);
+        }
+        throw new ActionException("Nested failure");
+      } else if ("actionException".equals(action.outcome)) {
+        throw new ActionException("Failed");
+      } else if ("runtimeException".equals(action.outcome)) {
+        throw new IllegalStateException("Bug");
+      }
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(FooAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  static class ForbiddenHandler extends AbstractActionHandler<ForbiddenAction, FooResult> {
+    ForbiddenHandler() {
+      super(ForbiddenAction.class);
+    }
+
+    @Override
+    public FooResult execute(ForbiddenAction action, ExecutionContext context) {
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(ForbiddenAction action, FooResult result, ExecutionContext context) {
+    }
+  }
+
+  static class MeasuredDispatch extends AbstractDispatchImpl {
+    MeasuredDispatch(DispatchMetrics dispatchMetrics) {
+      super(createRegistry());
+      setDispatchMetrics(dispatchMetrics);
+    }
+  }
+
+  private DispatchMetrics dispatchMetrics;
+  private MeasuredDispatch dispatch;
+
+  @Before
+  public void setUp() {
+    dispatchMetrics = new DispatchMetrics("test");
+    dispatch = new MeasuredDispatch(dispatchMetrics);
+  }
+
+  @Test
+  public void outcomesShouldBeCountedPerActionClass() {
+    // When
+    execute(new FooAction("success"));
+    execute(new FooAction("actionException"));
+    execute(new FooAction("runtimeException"));
+    execute(new FooAction("nested"));
+    execute(new ForbiddenAction());
+
+    // Then
+    ActionMetrics foo = dispatchMetrics.forAction(FooAction.class);
+    assertEquals(5, foo.getLatencies().getCount());
+    assertEquals(2, foo.getSuccesses());
+    assertEquals(2, foo.getActionExceptions());
+    assertEquals(1, foo.getServiceExceptions());
+    assertEquals(1, foo.getRollbacks());
+    assertEquals(0, foo.getInFlight());
+
+    ActionMetrics forbidden = dispatchMetrics.forAction(ForbiddenAction.class);
+    assertEquals(1, forbidden.getValidatorRejections());
+    assertEquals(1, forbidden.getServiceExceptions());
+    assertEquals(6, dispatchMetrics.getTotalCount());
+    assertEquals(2, dispatchMetrics.getActions().size());
+  }
+
+  @Test
+  public void resetShouldClearCounters() {
+    // Given
+    execute(new FooAction("success"));
+
+    // When
+    dispatchMetrics.reset();
+
+    // Then
+    assertEquals(0, dispatchMetrics.getTotalCount());
+    assertEquals(0, dispatchMetrics.forAction(FooAction.class).getSuccesses());
+  }
+
+  @Test
+  public void histogramShouldBucketByPowerOfTwoMicroseconds() {
+    // Given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // When
+    for (int i = 0; i < 99; i++) {
+      histogram.record(3000);
+    }
+    histogram.record(1000000);
+
+    // Then
+    assertEquals(100, histogram.getCount());
+    assertEquals(4, histogram.getPercentileMicros(50));
+    assertEquals(4, histogram.getPercentileMicros(99));
+    assertEquals(1 << 10, histogram.getPercentileMicros(100));
+    assertEquals(1000, histogram.getMaxNanos() / 1000);
+    assertEquals(0, LatencyHistogram.bucketOf(999));
+    assertEquals(1, LatencyHistogram.bucketOf(1000));
+    assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void recordingShouldNotAllocate() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+    long threadId = Thread.currentThread().getId();
+
+    // Given
+    ActionMetrics metrics = dispatchMetrics.forAction(FooAction.class);
+    ServiceException failure = new ServiceException("Failed");
+    record(metrics, failure, 10000);
+
+    // When
+    long before = sunThreads.getThreadAllocatedBytes(threadId);
+    record(metrics, failure, 100000);
+    long allocated = sunThreads.getThreadAllocatedBytes(threadId) - before;
+
+    // Then, leaving some slack for the allocation counter itself
+    assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+  }
+
+  private void record(ActionMetrics metrics, Throwable failure, int times) {
+    for (int i = 0; i < times; i++) {
+      long start = metrics.begin();
+      if ((i & 1) == 0) {
+        metrics.succeeded(start);
+      } else {
+        metrics.failed(start, failure);
+      }
+      dispatchMetrics.forAction(FooAction.class).validatorRejected();
+    }
+  }
+
+  private void execute(Action<FooResult> action) {
+    try {
+      dispatch.execute(action);
+    } catch (ActionException e) {
+      // Counted
+    } catch (ServiceException e) {
+      // Counted
+    }
+  }
+
+  private static AbstractEagerActionHandlerValidatorRegistryImpl createRegistry() {
+    AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+    };
+    registry.addActionHandlerValidator(FooAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), new FooHandler()));
+    registry.addActionHandlerValidator(ForbiddenAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator() {
+          @Override
+          public boolean isValid(Action<? extends Result> action) {
+            return false;
+          }
+        }, new ForbiddenHandler()));
+    return registry;
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.server.resultcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gwtplatform.dispatch.server.ExecutionContext;
+import com.gwtplatform.dispatch.server.actionhandler.AbstractActionHandler;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.AbstractEagerActionHandlerValidatorRegistryImpl;
+import com.gwtplatform.dispatch.server.actionhandlervalidator.ActionHandlerValidatorInstance;
+import com.gwtplatform.dispatch.server.actionpipeline.ActionPipelineCache;
+import com.gwtplatform.dispatch.server.actionvalidator.AbstractDefaultActionValidator;
+import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.Result;
+import com.gwtplatform.dispatch.shared.ServerCacheable;
+import com.gwtplatform.dispatch.shared.ServiceException;
+import com.gwtplatform.dispatch.shared.UnsecuredActionImpl;
+
+/**
+ * Unit tests for {@link ResultCache} and {@link ResultCacheInterceptor}.
+ */
+public class ResultCacheTest {
+
+  static class FooResult implements Result {
+  }
+
+  @ServerCacheable
+  static class FooAction extends UnsecuredActionImpl<FooResult> {
+    private final int id;
+
+    FooAction(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof FooAction && ((FooAction) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+  }
+
+  static class BarAction extends UnsecuredActionImpl<FooResult> {
+  }
+
+  static class CountingHandler<A extends UnsecuredActionImpl<FooResult>> extends AbstractActionHandler<A, FooResult> {
+    int executions;
+
+    CountingHandler(Class<A> actionClass) {
+      super(actionClass);
+    }
+
+    @Override
+    public FooResult execute(A action, ExecutionContext context) throws ActionException {
+      executions++;
+      return new FooResult();
+    }
+
+    @Override
+    public void undo(A action, FooResult result, ExecutionContext context) throws ActionException {
+    }
+  }
+
+  private ResultCache resultCache;
+  private CountingHandler<FooAction> fooHandler;
+  private CountingHandler<BarAction> barHandler;
+  private ActionPipelineCache pipelines;
+
+  @Before
+  public void setUp() {
+    resultCache = new ResultCache(ResultCache.DEFAULT_MAX_ENTRIES, ResultCache.DEFAULT_TIME_TO_LIVE_MS);
+    fooHandler = new CountingHandler<FooAction>(FooAction.class);
+    barHandler = new CountingHandler<BarAction>(BarAction.class);
+
+    AbstractEagerActionHandlerValidatorRegistryImpl registry = new AbstractEagerActionHandlerValidatorRegistryImpl() {
+    };
+    registry.addActionHandlerValidator(FooAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), fooHandler));
+    registry.addActionHandlerValidator(BarAction.class,
+        new ActionHandlerValidatorInstance(new AbstractDefaultActionValidator(), barHandler));
+    pipelines = new ActionPipelineCache(registry, Arrays.asList(new ResultCacheInterceptor(resultCache)));
+  }
+
+  @Test
+  public void equalActionShouldBeServedFromCache() throws ActionException, ServiceException {
+    // When
+    FooResult first = execute(new FooAction(1));
+    FooResult second = execute(new FooAction(1));
+    execute(new FooAction(2));
+
+    // Then
+    assertSame(first, second);
+    assertEquals(2, fooHandler.executions);
+    assertEquals(1, resultCache.getHitCount());
+    assertEquals(2, resultCache.getMissCount());
+  }
+
+  @Test
+  public void actionWithoutAnnotationShouldNotBeCached() throws ActionException, ServiceException {
+    // When
+    BarAction action = new BarAction();
+    execute(action);
+    execute(action);
+
+    // Then
+    assertEquals(2, barHandler.executions);
+    assertEquals(0, resultCache.size());
+  }
+
+  @Test
+  public void registeredActionShouldBeCached() throws ActionException, ServiceException {
+    // Given
+    ResultCacheInterceptor interceptor = new ResultCacheInterceptor(resultCache);
+    interceptor.addCacheableAction(BarAction.class, 0);
+    pipelines.setInterceptors(Arrays.asList(interceptor));
+    BarAction action = new BarAction();
+
+    // When
+    execute(action);
+    execute(action);
+
+    // Then
+    assertEquals(1, barHandler.executions);
+  }
+
+  @Test
+  public void expiredResultShouldBeDropped() throws InterruptedException {
+    // Given
+    FooAction action = new FooAction(1);
+    resultCache.put(action, new FooResult(), 1, resultCache.getGeneration(action));
+
+    // When
+    Thread.sleep(5);
+
+    // Then
+    assertNull(resultCache.get(action));
+    assertEquals(1, resultCache.getEvictionCount());
+  }
+
+  @Test
+  public void leastRecentlyUsedResultShouldBeEvictedWhenFull() {
+    // Given
+    ResultCache smallCache = new ResultCache(1, ResultCache.DEFAULT_TIME_TO_LIVE_MS);
+    // Every hash maps to the same segment, which holds a single entry.
+    FooAction first = new FooAction(0);
+    FooAction second = new FooAction(16);
+    smallCache.put(first, new FooResult());
+
+    // When
+    smallCache.put(second, new FooResult());
+
+    // Then
+    assertNull(smallCache.get(first));
+    assertEquals(1, smallCache.size());
+    assertEquals(1, smallCache.getEvictionCount());
+  }
+
+  @Test
+  public void invalidateShouldDropResults() throws ActionException, ServiceException {
+    // Given
+    FooResult first = execute(new FooAction(1));
+    execute(new FooAction(2));
+
+    // When
+    resultCache.invalidate(new FooAction(2));
+
+    // Then
+    assertEquals(1, resultCache.size());
+    assertSame(first, execute(new FooAction(1)));
+
+    // When
+    resultCache.invalidate(FooAction.class);
+
+    // Then
+    assertEquals(0, resultCache.size());
+    assertNotSame(first, execute(new FooAction(1)));
+  }
+
+  @Test
+  public void resultComputedBeforeInvalidationShouldNotBeCached() {
+    // Given
+    FooAction action = new FooAction(1);
+    long generation = resultCache.getGeneration(action);
+
+    // When
+    resultCache.invalidate(FooAction.class);
+
+    // Then
+    assertFalse(resultCache.put(action, new FooResult(), 1000, generation));
+    assertNull(resultCache.get(action));
+  }
+
+  @Test
+  public void invalidatingAnotherClassShouldNotDiscardResultsInFlight() {
+    // Given
+    FooAction action = new FooAction(1);
+    long generation = resultCache.getGeneration(action);
+
+    // When
+    resultCache.invalidate(BarAction.class);
+
+    // Then
+    assertTrue(resultCache.put(action, new FooResult(), 1000, generation));
+    assertNotNull(resultCache.get(action));
+  }
+
+  @Test
+  public void resultComputedBeforeInvalidateAllShouldNotBeCached() {
+    // Given
+    FooAction action = new FooAction(1);
+    long generation = resultCache.getGeneration(action);
+
+    // When
+    resultCache.invalidateAll();
+
+    // Then
+    assertFalse(resultCache.put(action, new FooResult(), 1000, generation));
+  }
+
+  private <A extends UnsecuredActionImpl<FooResult>> FooResult execute(A action)
+      throws ActionException, ServiceException {
+    return pipelines.findPipeline(action).execute(action, null);
+  }
+}
@@ -20,6 +20,10 @@ package com.gwtplatform.dispatch.shared;
  * This provides a simple way to send multiple actions to be executed in
  * sequence. If any fail, the rules for the {@link OnException} value provided
  * in the constructor determine the outcome.
+ * <p />
+ * Batches of independent actions can ask to be executed in parallel with
+ * {@link ExecutionStrategy#PARALLEL}. Results are always returned in the
+ * order of the actions.
  *
  * @author David Peterson
  */
@@ -42,10 +46,28 @@ public abstract class BatchAction implements Action<BatchResult> {
     ROLLBACK;
   }
 
+  /**
+   * {@link BatchAction}'s ExecutionStrategy enumeration.
+   */
+  public enum ExecutionStrategy {
+    /**
+     * The actions are executed one after the other, in order. This is the
+     * default.
+     */
+    SEQUENTIAL,
+    /**
+     * The actions are executed concurrently. Only use it for actions that
+     * don't depend on each other's side effects.
+     */
+    PARALLEL;
+  }
+
   private Action<?>[] actions;
 
   private OnException onException;
 
+  private ExecutionStrategy executionStrategy;
+
   /**
    * Constructs a new batch action, which will attempt to execute the provided
    * list of actions in order. If there is a failure, it will follow the rules
@@ -55,7 +77,21 @@ public abstract class BatchAction implements Action<BatchResult> {
    * @param actions The list of actions to execute.
    */
   public BatchAction(OnException onException, Action<?>... actions) {
+    this(onException, ExecutionStrategy.SEQUENTIAL, actions);
+  }
+
+  /**
+   * Constructs a new batch action, which will attempt to execute the provided
+   * list of actions following the specified execution strategy. If there is a
+   * failure, it will follow the rules specified by <code>onException</code>.
+   *
+   * @param onException If there is an exception, specify the behaviour.
+   * @param executionStrategy Whether the actions are executed in sequence or in parallel.
+   * @param actions The list of actions to execute.
+   */
+  public BatchAction(OnException onException, ExecutionStrategy executionStrategy, Action<?>... actions) {
     this.onException = onException;
+    this.executionStrategy = executionStrategy;
     this.actions = actions;
   }
 
@@ -82,4 +118,13 @@ public abstract class BatchAction implements Action<BatchResult> {
   public OnException getOnException() {
     return onException;
   }
+
+  /**
+   * How the sub-actions should be executed.
+   *
+   * @return The execution strategy, {@link ExecutionStrategy#SEQUENTIAL} if none was specified.
+   */
+  public ExecutionStrategy getExecutionStrategy() {
+    return executionStrategy == null ? ExecutionStrategy.SEQUENTIAL : executionStrategy;
+  }
 }
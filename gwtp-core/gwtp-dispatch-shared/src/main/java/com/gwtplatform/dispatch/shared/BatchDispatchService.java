@@ -0,0 +1,48 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * A {@link DispatchService} that can also execute several actions in a single
+ * request. The async client-side version is {@link BatchDispatchServiceAsync}.
+ * <p />
+ * The client only sends batches when batching is turned on, see
+ * {@link com.gwtplatform.dispatch.client.gin.DispatchAsyncModule.Builder#batchRequests}.
+ * The servlet must then implement this interface.
+ *
+ * @see com.gwtplatform.dispatch.server.AbstractDispatchServiceImpl
+ */
+public interface BatchDispatchService extends DispatchService {
+  /**
+   * This method is called server-side when the client sends several actions in
+   * a single request. Each action is executed independently, as if it had been
+   * sent through {@link #execute}, and a failing action doesn't prevent the
+   * others from running.
+   *
+   * @see BatchDispatchServiceAsync#executeBatch
+   *
+   * @param cookieSentByRPC This is the content of the security cookie accessed
+   *          on the client (in javascript), its goal is to prevent XSRF
+   *          attacks. See {@link SecurityCookieAccessor} for more details.
+   * @param actions The {@link Action}s to execute.
+   * @return The {@link Result} or the exception of every action, in order.
+   * @throws ServiceException Thrown if the batch could not be executed because
+   *           of a service error.
+   */
+  DispatchBatchResult executeBatch(String cookieSentByRPC, Action<?>[] actions)
+      throws ServiceException;
+}
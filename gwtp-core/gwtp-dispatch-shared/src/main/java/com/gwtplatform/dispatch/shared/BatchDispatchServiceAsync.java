@@ -0,0 +1,34 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import com.google.gwt.http.client.Request;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * The asynchronous client-side version of {@link BatchDispatchService}.
+ */
+public interface BatchDispatchServiceAsync extends DispatchServiceAsync {
+  /**
+   * This method is called client-side to execute several actions in a single
+   * request.
+   *
+   * @see BatchDispatchService#executeBatch
+   */
+  Request executeBatch(String cookieSentByRPC, Action<?>[] actions,
+      AsyncCallback<DispatchBatchResult> callback);
+}
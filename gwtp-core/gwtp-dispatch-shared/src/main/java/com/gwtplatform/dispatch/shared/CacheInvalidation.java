@@ -0,0 +1,129 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * Tells the clients that some of the {@link Result}s they cached are stale. An invalidation always names an
+ * {@link Action} class and applies to the cache entries whose key is an action of that class. It can be narrowed down
+ * to a single key, the action that was used to cache the result, or to the entries carrying a cache tag, see
+ * {@link HasCacheTags}.
+ */
+public class CacheInvalidation implements IsSerializable {
+
+  private String actionClassName;
+  private Action<?> key;
+  private String tag;
+
+  /**
+   * For serialization.
+   */
+  CacheInvalidation() {
+  }
+
+  private CacheInvalidation(String actionClassName, Action<?> key, String tag) {
+    this.actionClassName = actionClassName;
+    this.key = key;
+    this.tag = tag;
+  }
+
+  /**
+   * Invalidates every cached result of the actions of a class.
+   *
+   * @param actionClass The {@link Action} class.
+   * @return The {@link CacheInvalidation}.
+   */
+  public static CacheInvalidation forActionClass(Class<?> actionClass) {
+    return new CacheInvalidation(actionClass.getName(), null, null);
+  }
+
+  /**
+   * Invalidates the result cached for one action.
+   *
+   * @param key The action used as cache key. It must implement {@code equals} and {@code hashCode}.
+   * @return The {@link CacheInvalidation}.
+   */
+  public static CacheInvalidation forKey(Action<?> key) {
+    return new CacheInvalidation(key.getClass().getName(), key, null);
+  }
+
+  /**
+   * Invalidates the cached results of the actions of a class that carry a cache tag.
+   *
+   * @param actionClass The {@link Action} class.
+   * @param tag The cache tag.
+   * @return The {@link CacheInvalidation}.
+   */
+  public static CacheInvalidation forTag(Class<?> actionClass, String tag) {
+    return new CacheInvalidation(actionClass.getName(), null, tag);
+  }
+
+  public String getActionClassName() {
+    return actionClassName;
+  }
+
+  /**
+   * @return The action to evict, or {@code null}.
+   */
+  public Action<?> getKey() {
+    return key;
+  }
+
+  /**
+   * @return The cache tag to evict, or {@code null}.
+   */
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * @return {@code true} if this invalidates every cached result of its action class.
+   */
+  public boolean isClassWide() {
+    return key == null && tag == null;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof CacheInvalidation)) {
+      return false;
+    }
+
+    CacheInvalidation other = (CacheInvalidation) obj;
+    return actionClassName.equals(other.actionClassName)
+        && (key == null ? other.key == null : key.equals(other.key))
+        && (tag == null ? other.tag == null : tag.equals(other.tag));
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = actionClassName.hashCode();
+    hash = 31 * hash + (key == null ? 0 : key.hashCode());
+    hash = 31 * hash + (tag == null ? 0 : tag.hashCode());
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheInvalidation[" + actionClassName + (key == null ? "" : ", key=" + key)
+        + (tag == null ? "" : ", tag=" + tag) + "]";
+  }
+}
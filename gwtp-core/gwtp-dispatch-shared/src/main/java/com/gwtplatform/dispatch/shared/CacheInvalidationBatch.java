@@ -0,0 +1,76 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link CacheInvalidation}s published on the server since the last batch seen by a client, in reply to a
+ * {@link WatchCacheInvalidationsAction}.
+ */
+public class CacheInvalidationBatch implements Result {
+
+  private long epoch;
+  private long sequence;
+  private boolean clearAll;
+  private ArrayList<CacheInvalidation> invalidations;
+
+  /**
+   * For serialization.
+   */
+  CacheInvalidationBatch() {
+  }
+
+  /**
+   * @param epoch The epoch of the server instance that published the batch.
+   * @param sequence The sequence number of the last batch included.
+   * @param clearAll {@code true} if the client must clear its caches entirely, because it missed too many batches or
+   *          because too many invalidations were published at once.
+   * @param invalidations The invalidations, ignored when {@code clearAll} is set.
+   */
+  public CacheInvalidationBatch(long epoch, long sequence, boolean clearAll, List<CacheInvalidation> invalidations) {
+    this.epoch = epoch;
+    this.sequence = sequence;
+    this.clearAll = clearAll;
+    this.invalidations = clearAll ? new ArrayList<CacheInvalidation>()
+        : new ArrayList<CacheInvalidation>(invalidations);
+  }
+
+  /**
+   * @return The epoch to send with the next {@link WatchCacheInvalidationsAction}. Sequences are only comparable
+   *         within an epoch.
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * @return The sequence number to send with the next {@link WatchCacheInvalidationsAction}.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public boolean isClearAll() {
+    return clearAll;
+  }
+
+  public List<CacheInvalidation> getInvalidations() {
+    return invalidations;
+  }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link Action} class whose concurrent executions may be coalesced on the server: while an action is being
+ * executed, callers sending an equal action wait for it and receive the same {@link Result}, or the same exception,
+ * instead of running the handler again. The action must implement {@code equals} and {@code hashCode}, as the actions
+ * generated by {@code @GenDispatch} do, and its handler must not have side effects nor depend on who is calling.
+ * <p />
+ * Coalescing only applies when the server dispatch is configured with a
+ * {@code com.gwtplatform.dispatch.server.coalescing.CoalescingInterceptor}. The action validator still runs for every
+ * call.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Coalesced {
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * The outcome of {@link BatchDispatchService#executeBatch}. Each action of the batch either has a {@link Result} or the
+ * {@link ActionException} or {@link ServiceException} it failed with, at the same index as the action.
+ */
+public class DispatchBatchResult implements IsSerializable {
+
+  private Result[] results;
+  private ActionException[] actionExceptions;
+  private ServiceException[] serviceExceptions;
+
+  /**
+   * Creates an empty outcome for a batch of {@code size} actions.
+   *
+   * @param size The number of actions in the batch.
+   */
+  public DispatchBatchResult(int size) {
+    results = new Result[size];
+    actionExceptions = new ActionException[size];
+    serviceExceptions = new ServiceException[size];
+  }
+
+  /**
+   * For serialization.
+   */
+  DispatchBatchResult() {
+  }
+
+  /**
+   * @return The number of actions in the batch.
+   */
+  public int size() {
+    return results.length;
+  }
+
+  public void setResult(int index, Result result) {
+    results[index] = result;
+  }
+
+  public void setFailure(int index, ActionException caught) {
+    actionExceptions[index] = caught;
+  }
+
+  public void setFailure(int index, ServiceException caught) {
+    serviceExceptions[index] = caught;
+  }
+
+  /**
+   * @param index The index of the action in the batch.
+   * @return The {@link Result} of the action, or {@code null} if it failed.
+   */
+  public Result getResult(int index) {
+    return results[index];
+  }
+
+  /**
+   * @param index The index of the action in the batch.
+   * @return The exception the action failed with, or {@code null} if it succeeded.
+   */
+  public Throwable getFailure(int index) {
+    if (actionExceptions[index] != null) {
+      return actionExceptions[index];
+    }
+    return serviceExceptions[index];
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * The order in which actions waiting for a free connection are sent, when the client limits the number of requests in
+ * flight per service. Actions that don't implement {@link HasDispatchPriority} are {@link #INTERACTIVE}.
+ */
+public enum DispatchPriority {
+  /**
+   * Actions the user is waiting on. They are always sent first.
+   */
+  INTERACTIVE,
+  /**
+   * Actions loading data the user is likely to need soon.
+   */
+  PREFETCH,
+  /**
+   * Polling and other actions nobody is waiting on.
+   */
+  BACKGROUND;
+}
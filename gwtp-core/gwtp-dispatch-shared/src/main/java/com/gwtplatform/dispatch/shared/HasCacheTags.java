@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * Implemented by read {@link Action}s whose cached {@link Result}s depend on some data, named by tags. When an action
+ * implementing {@link InvalidatesCacheTags} succeeds, the cached results of the actions sharing one of its tags are
+ * evicted from the client caches.
+ * <p />
+ * With {@code @GenDispatch}, use its {@code cacheTags} attribute.
+ */
+public interface HasCacheTags {
+
+  /**
+   * @return The tags of the data the result of this action depends on.
+   */
+  String[] getCacheTags();
+}
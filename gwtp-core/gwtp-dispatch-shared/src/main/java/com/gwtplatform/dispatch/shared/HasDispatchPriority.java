@@ -0,0 +1,29 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * Implemented by {@link Action}s that shouldn't be sent with the default {@link DispatchPriority#INTERACTIVE}
+ * priority.
+ */
+public interface HasDispatchPriority {
+
+  /**
+   * @return The {@link DispatchPriority} of the action.
+   */
+  DispatchPriority getDispatchPriority();
+}
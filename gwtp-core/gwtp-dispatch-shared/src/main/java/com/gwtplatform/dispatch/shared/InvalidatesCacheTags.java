@@ -0,0 +1,31 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * Implemented by write {@link Action}s. Once such an action has been executed or undone successfully, the client
+ * evicts the cached results of every {@link HasCacheTags} action sharing one of its tags.
+ * <p />
+ * With {@code @GenDispatch}, use its {@code invalidatesCacheTags} attribute.
+ */
+public interface InvalidatesCacheTags {
+
+  /**
+   * @return The tags of the data this action changes.
+   */
+  String[] getInvalidatedCacheTags();
+}
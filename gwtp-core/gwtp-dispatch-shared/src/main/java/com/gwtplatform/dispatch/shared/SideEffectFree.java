@@ -0,0 +1,28 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * Marks an {@link Action} whose execution has no side effects, so that equal actions sent while one of them is in
+ * flight can share its {@link Result}. The action must implement {@code equals} and {@code hashCode}, as the actions
+ * generated by {@code @GenDispatch} do. With {@code @GenDispatch}, list this interface in
+ * {@code extraActionInterfaces}.
+ *
+ * @see com.gwtplatform.dispatch.client.DeduplicatingDispatchAsync
+ */
+public interface SideEffectFree {
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Subscribes a connection to a set of topics and waits on the server for the next {@link TopicMessages}. Every poll
+ * carries the complete set of topics, so changing the subscriptions is just a matter of polling again. As the server
+ * keeps the request suspended, it has to be sent to the Atmosphere poll dispatch service, which is why the service
+ * name is a parameter.
+ */
+public class SubscribeTopicsAction extends UnsecuredActionImpl<TopicMessages> {
+
+  private String serviceName;
+  private String subscriberId;
+  private long lastSequence;
+  private ArrayList<String> topics;
+
+  /**
+   * For serialization.
+   */
+  SubscribeTopicsAction() {
+  }
+
+  /**
+   * @param serviceName The name of the poll dispatch service.
+   * @param subscriberId The id given by the server in the last {@link TopicMessages}, or {@code null} for a new
+   *          connection.
+   * @param lastSequence The sequence of the last {@link TopicMessages} received, or {@code -1}.
+   * @param topics The topics to subscribe to.
+   */
+  public SubscribeTopicsAction(String serviceName, String subscriberId, long lastSequence,
+      Collection<String> topics) {
+    this.serviceName = serviceName;
+    this.subscriberId = subscriberId;
+    this.lastSequence = lastSequence;
+    this.topics = new ArrayList<String>(topics);
+  }
+
+  @Override
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  public String getSubscriberId() {
+    return subscriberId;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public List<String> getTopics() {
+    return topics;
+  }
+}
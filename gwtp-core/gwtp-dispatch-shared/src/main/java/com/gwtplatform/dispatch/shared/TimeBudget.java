@@ -0,0 +1,42 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits how long the server may spend executing an {@link Action}, sub-actions included. Once the budget is spent,
+ * the sub-actions executed through the {@code ExecutionContext} fail with a {@link DeadlineExceededException} and the
+ * action is rolled back. Handlers doing long work of their own should check {@code CancellableContext#isCancelled()}.
+ * <p />
+ * The budget is only enforced cooperatively: a handler blocked in a call that never returns is not interrupted.
+ * Actions that aren't annotated use the default budget of the server dispatch, if any.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface TimeBudget {
+  /**
+   * @return The budget in milliseconds, counted from the moment the dispatch starts executing the action. {@code 0}
+   *         means unlimited, even if the server dispatch has a default budget.
+   */
+  long value();
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * The latest {@link Result} published to a topic, see {@link SubscribeTopicsAction}.
+ */
+public class TopicMessage implements IsSerializable {
+
+  private String topic;
+  private Result result;
+
+  /**
+   * For serialization.
+   */
+  TopicMessage() {
+  }
+
+  public TopicMessage(String topic, Result result) {
+    this.topic = topic;
+    this.result = result;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public Result getResult() {
+    return result;
+  }
+}
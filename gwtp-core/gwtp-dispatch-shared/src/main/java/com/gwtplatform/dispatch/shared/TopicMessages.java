@@ -0,0 +1,61 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link TopicMessage}s delivered to one connection in reply to a {@link SubscribeTopicsAction}: at most one
+ * message per topic, carrying the latest {@link Result} published to it.
+ */
+public class TopicMessages implements Result {
+
+  private String subscriberId;
+  private long sequence;
+  private ArrayList<TopicMessage> messages;
+
+  /**
+   * For serialization.
+   */
+  TopicMessages() {
+  }
+
+  /**
+   * @param subscriberId The id the server gave to the connection.
+   * @param sequence The sequence number of this delivery, to acknowledge with the next
+   *          {@link SubscribeTopicsAction}.
+   * @param messages The messages.
+   */
+  public TopicMessages(String subscriberId, long sequence, List<TopicMessage> messages) {
+    this.subscriberId = subscriberId;
+    this.sequence = sequence;
+    this.messages = new ArrayList<TopicMessage>(messages);
+  }
+
+  public String getSubscriberId() {
+    return subscriberId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public List<TopicMessage> getMessages() {
+    return messages;
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+/**
+ * Waits on the server for the next {@link CacheInvalidationBatch}. The server keeps the request suspended until
+ * invalidations are published, so it has to be sent to the Atmosphere poll dispatch service, which is why the service
+ * name is a parameter.
+ */
+public class WatchCacheInvalidationsAction extends UnsecuredActionImpl<CacheInvalidationBatch> {
+
+  private String serviceName;
+  private long lastEpoch;
+  private long lastSequence;
+
+  /**
+   * For serialization.
+   */
+  WatchCacheInvalidationsAction() {
+  }
+
+  /**
+   * @param serviceName The name of the poll dispatch service.
+   * @param lastEpoch The epoch of the last {@link CacheInvalidationBatch} received, ignored when subscribing.
+   * @param lastSequence The sequence of the last {@link CacheInvalidationBatch} received, or {@code -1} when
+   *          subscribing.
+   */
+  public WatchCacheInvalidationsAction(String serviceName, long lastEpoch, long lastSequence) {
+    this.serviceName = serviceName;
+    this.lastEpoch = lastEpoch;
+    this.lastSequence = lastSequence;
+  }
+
+  @Override
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  public long getLastEpoch() {
+    return lastEpoch;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.gwtplatform.dispatch.annotation;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -28,6 +29,7 @@ import com.google.web.bindery.requestfactory.shared.ProxyFor;
 import com.google.web.bindery.requestfactory.shared.ValueProxy;
 import com.gwtplatform.dispatch.annotation.proxy.AddressProxy;
 import com.gwtplatform.dispatch.annotation.proxy.EmployeeProxy;
+import com.gwtplatform.dispatch.shared.HasCacheTags;
 
 /**
  * This test is being run by ant, but is not run in eclipse.
@@ -117,6 +119,16 @@ public class AnnotationProcessingTest {
     assertEquals(foo, result4.getThing());
   }
 
+  @Test
+  public void shouldGenerateDispatchWithCacheTags() {
+    RetrieveBarAction readAction = new RetrieveBarAction("blah");
+    assertArrayEquals(new String[] {"bar", "thing"}, readAction.getCacheTags());
+
+    UpdateBarAction writeAction = new UpdateBarAction("blah");
+    assertArrayEquals(new String[] {"bar"}, writeAction.getInvalidatedCacheTags());
+    assertFalse(writeAction instanceof HasCacheTags);
+  }
+
   @Test
   public void shouldGenerateDispatchWithOptionalFields() {
     RetrieveFooAction action = new RetrieveFooAction.Builder(42).additionalQuestion("meaning of life").build();
@@ -24,7 +24,8 @@ import com.gwtplatform.dispatch.shared.Action;
  * @author Brendan Doherty
  */
 @GenDispatch(isSecure = false, serviceName = Action.DEFAULT_SERVICE_NAME
-    + "Blah", extraResultInterfaces = "com.gwtplatform.dispatch.annotation.HasThing<com.gwtplatform.dispatch.annotation.Foo>")
+    + "Blah", extraResultInterfaces = "com.gwtplatform.dispatch.annotation.HasThing<com.gwtplatform.dispatch.annotation.Foo>",
+    cacheTags = {"bar", "thing"})
 public class RetrieveBar {
   @In(1)
   String goodName;
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2011 ArcBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.gwtplatform.dispatch.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DispatchBatchResult}.
+ */
+public class DispatchBatchResultTest {
+
+  static class FooResult implements Result {
+  }
+
+  @Test
+  public void everyIndexShouldKeepItsOwnOutcome() {
+    // Given
+    FooResult result = new FooResult();
+    ActionException actionException = new ActionException();
+    ServiceException serviceException = new ServiceException();
+    DispatchBatchResult batchResult = new DispatchBatchResult(4);
+
+    // When
+    batchResult.setResult(0, result);
+    batchResult.setFailure(1, actionException);
+    batchResult.setFailure(2, serviceException);
+
+    // Then
+    assertEquals(4, batchResult.size());
+    assertSame(result, batchResult.getResult(0));
+    assertNull(batchResult.getFailure(0));
+    assertNull(batchResult.getResult(1));
+    assertSame(actionException, batchResult.getFailure(1));
+    assertNull(batchResult.getResult(2));
+    assertSame(serviceException, batchResult.getFailure(2));
+    assertNull(batchResult.getResult(3));
+    assertNull(batchResult.getFailure(3));
+  }
+}
@@ -108,6 +108,16 @@ import java.lang.annotation.Target;
  *          interfaces that the Result class will implement. Each of the
  *          functions defined in the interface must match an function
  *          autogenerated using the field definitions.
+ * <p/>
+ * {@code cacheTags} The tags of the data the result depends on. If specified,
+ *          the Action class implements
+ *          {@link com.gwtplatform.dispatch.shared.HasCacheTags}.
+ * <p/>
+ * {@code invalidatesCacheTags} The tags of the data the action changes. If
+ *          specified, the Action class implements
+ *          {@link com.gwtplatform.dispatch.shared.InvalidatesCacheTags}, and
+ *          cached results tagged with any of them are evicted once the action
+ *          succeeds.
  *
  * @author Brendan Doherty
  * @author Stephen Haberman (concept)
@@ -125,4 +135,8 @@ public @interface GenDispatch {
   String extraActionInterfaces() default "";
 
   String extraResultInterfaces() default "";
+
+  String[] cacheTags() default { };
+
+  String[] invalidatesCacheTags() default { };
 }
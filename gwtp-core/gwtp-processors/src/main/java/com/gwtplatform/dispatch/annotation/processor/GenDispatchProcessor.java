@@ -50,18 +50,28 @@ import com.gwtplatform.dispatch.annotation.helper.ReflectionHelper;
 @SupportedAnnotationTypes("com.gwtplatform.dispatch.annotation.GenDispatch")
 public class GenDispatchProcessor extends GenProcessor {
 
+  private static final String HAS_CACHE_TAGS = "com.gwtplatform.dispatch.shared.HasCacheTags";
+  private static final String INVALIDATES_CACHE_TAGS = "com.gwtplatform.dispatch.shared.InvalidatesCacheTags";
+
   @Override
   public void process(Element dispatchElement) {
     GenDispatch genDispatch = dispatchElement.getAnnotation(GenDispatch.class);
     generateAction(dispatchElement,
         genDispatch.isSecure(),
         genDispatch.serviceName(),
-        genDispatch.extraActionInterfaces()
+        genDispatch.extraActionInterfaces(),
+        genDispatch.cacheTags(),
+        genDispatch.invalidatesCacheTags()
     );
     generateResult(dispatchElement, genDispatch.extraResultInterfaces());
   }
 
   protected void generateAction(Element dispatchElement, boolean isSecure, String serviceName, String extraActionInterfaces) {
+    generateAction(dispatchElement, isSecure, serviceName, extraActionInterfaces, new String[0], new String[0]);
+  }
+
+  protected void generateAction(Element dispatchElement, boolean isSecure, String serviceName,
+      String extraActionInterfaces, String[] cacheTags, String[] invalidatesCacheTags) {
     BuilderGenerationHelper writer = null;
     try {
       ReflectionHelper reflection = new ReflectionHelper(getEnvironment(), (TypeElement) dispatchElement);
@@ -86,7 +96,9 @@ public class GenDispatchProcessor extends GenProcessor {
       String actionInterface = "Action<" + dispatchElementSimpleName + "Result>";
       writer.generateClassHeader(dispatchActionSimpleName, null,
           reflection.getClassRepresenter().getModifiers(),
-          actionInterface, extraActionInterfaces
+          actionInterface, extraActionInterfaces,
+          cacheTags.length == 0 ? null : HAS_CACHE_TAGS,
+          invalidatesCacheTags.length == 0 ? null : INVALIDATES_CACHE_TAGS
       );
       writer.generateFieldDeclarations(annotatedInFields);
 
@@ -108,6 +120,12 @@ public class GenDispatchProcessor extends GenProcessor {
 
       generateServiceNameAccessor(writer, dispatchElementSimpleName, serviceName);
       generateIsSecuredMethod(writer, isSecure);
+      if (cacheTags.length > 0) {
+        generateTagsMethod(writer, "getCacheTags", cacheTags);
+      }
+      if (invalidatesCacheTags.length > 0) {
+        generateTagsMethod(writer, "getInvalidatedCacheTags", invalidatesCacheTags);
+      }
 
       writer.generateFieldAccessors(annotatedInFields);
       writer.generateEquals(dispatchActionSimpleName, annotatedInFields);
@@ -196,6 +214,22 @@ public class GenDispatchProcessor extends GenProcessor {
     writer.println("  }");
   }
 
+  protected void generateTagsMethod(GenerationHelper writer, String methodName, String[] tags) {
+    StringBuilder literals = new StringBuilder();
+    for (String tag : tags) {
+      if (literals.length() > 0) {
+        literals.append(", ");
+      }
+      literals.append('"').append(tag.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    }
+
+    writer.println();
+    writer.println("  @Override");
+    writer.println("  public String[] " + methodName + "() {");
+    writer.println("    return new String[] { " + literals + " };");
+    writer.println("  }");
+  }
+
   protected void generateServiceNameAccessor(GenerationHelper writer, String simpleClassName, String serviceName) {
     writer.println();
     writer.println("  @Override");
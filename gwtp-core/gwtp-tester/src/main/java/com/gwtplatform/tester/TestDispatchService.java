@@ -20,6 +20,8 @@ import com.google.inject.Inject;
 import com.gwtplatform.dispatch.server.Dispatch;
 import com.gwtplatform.dispatch.shared.Action;
 import com.gwtplatform.dispatch.shared.ActionException;
+import com.gwtplatform.dispatch.shared.BatchDispatchService;
+import com.gwtplatform.dispatch.shared.DispatchBatchResult;
 import com.gwtplatform.dispatch.shared.DispatchService;
 import com.gwtplatform.dispatch.shared.Result;
 import com.gwtplatform.dispatch.shared.ServiceException;
@@ -31,7 +33,7 @@ import com.gwtplatform.dispatch.shared.ServiceException;
  * @author Brendan Doherty
  */
 
-public class TestDispatchService implements DispatchService {
+public class TestDispatchService implements BatchDispatchService {
   private Dispatch dispatch;
 
   @Inject
@@ -45,6 +47,22 @@ public class TestDispatchService implements DispatchService {
     return dispatch.execute(action);
   }
 
+  @Override
+  public DispatchBatchResult executeBatch(String cookieSentByRPC, Action<?>[] actions)
+      throws ServiceException {
+    DispatchBatchResult batchResult = new DispatchBatchResult(actions.length);
+    for (int i = 0; i < actions.length; i++) {
+      try {
+        batchResult.setResult(i, dispatch.execute(actions[i]));
+      } catch (ActionException e) {
+        batchResult.setFailure(i, e);
+      } catch (ServiceException e) {
+        batchResult.setFailure(i, e);
+      }
+    }
+    return batchResult;
+  }
+
   @Override
   public void undo(String cookieSentByRPC, Action<Result> action, Result result)
       throws ActionException, ServiceException {